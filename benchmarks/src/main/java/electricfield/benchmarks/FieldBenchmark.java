@@ -0,0 +1,56 @@
+package electricfield.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import electricfield.FieldEngine;
+
+// Single-point kernels behind calculateElectricField and
+// calculateNetForceOnCharge, one call per operation
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldBenchmark {
+	private static final int POINTS = 1024; // Sample points cycled through
+
+	@Param({ "10", "100", "1000", "10000", "100000" })
+	int charges;
+
+	@Param({ "DIRECT", "TREE", "MESH" })
+	FieldEngine.Backend backend;
+
+	private FieldEngine engine;
+	private final double[] px = new double[POINTS], py = new double[POINTS];
+	private final double[] out = new double[2];
+	private int next;
+
+	@Setup
+	public void setUp() {
+		engine = Scenes.randomCharges(charges, 800, 600, 42);
+		engine.setBackend(backend);
+		Random random = new Random(7);
+		for (int i = 0; i < POINTS; i++) {
+			px[i] = random.nextDouble() * 800;
+			py[i] = random.nextDouble() * 600;
+		}
+		engine.field(400, 300, out); // Build the tree or mesh outside the measurement
+	}
+
+	@Benchmark
+	public double calculateElectricField() {
+		int i = next++ & (POINTS - 1);
+		engine.field(px[i], py[i], out);
+		return out[0] + out[1];
+	}
+
+	@Benchmark
+	public double calculateNetForceOnCharge() {
+		engine.forceOn(next++ % charges, out);
+		return out[0] + out[1];
+	}
+}
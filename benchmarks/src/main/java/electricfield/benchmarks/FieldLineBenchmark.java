@@ -0,0 +1,52 @@
+package electricfield.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import electricfield.FieldEngine;
+import electricfield.FieldGrid;
+import electricfield.FieldLineTracer;
+import electricfield.FieldLines;
+
+// Full field line tracing for a scene, as drawFieldLines requests it: every
+// line of every charge, over the cached field grid. Charge counts stop at
+// 1000 since each charge adds eight whole lines to trace.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FieldLineBenchmark {
+	@Param({ "10", "100", "1000" })
+	int charges;
+
+	@Param({ "RK45", "EULER" })
+	FieldLineTracer.Integrator integrator;
+
+	@Param({ "800x600", "1920x1080" })
+	String canvas;
+
+	private FieldEngine engine;
+	private FieldGrid grid;
+	private FieldLineTracer tracer;
+	private int width, height;
+
+	@Setup
+	public void setUp() {
+		int[] size = Scenes.canvas(canvas);
+		width = size[0];
+		height = size[1];
+		engine = Scenes.randomCharges(charges, width, height, 42);
+		grid = new FieldGrid(FieldGrid.DEFAULT_CELL_SIZE, width, height);
+		grid.rebuild(engine);
+		tracer = new FieldLineTracer(8, 100, 5.0); // Same settings as the simulator
+		tracer.setIntegrator(integrator);
+	}
+
+	@Benchmark
+	public FieldLines drawFieldLines() {
+		return tracer.traceNow(engine.version(), engine, grid, width, height);
+	}
+}
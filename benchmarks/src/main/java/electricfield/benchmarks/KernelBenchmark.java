@@ -0,0 +1,68 @@
+package electricfield.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import electricfield.FieldEngine;
+import electricfield.FieldKernel;
+
+// Scalar against vector direct-summation kernel (see FieldKernel), one
+// point per call and a tile of points per call. The forks add the incubator
+// module; without it the vector runs fail at setup instead of quietly
+// measuring the scalar kernel.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class KernelBenchmark {
+	private static final int POINTS = 1024; // Sample points, also the tile size
+
+	@Param({ "16", "256", "4096", "100000" })
+	int charges;
+
+	@Param({ "scalar", "vector" })
+	String kernel;
+
+	private FieldEngine engine;
+	private final double[] px = new double[POINTS], py = new double[POINTS];
+	private final double[] ex = new double[POINTS], ey = new double[POINTS];
+	private final double[] out = new double[3];
+	private int next;
+
+	@Setup
+	public void setUp() {
+		engine = Scenes.randomCharges(charges, 800, 600, 42);
+		engine.setKernel(kernel.equals("vector") ? FieldKernel.vector() : FieldKernel.SCALAR);
+		Random random = new Random(7);
+		for (int i = 0; i < POINTS; i++) {
+			px[i] = random.nextDouble() * 800;
+			py[i] = random.nextDouble() * 600;
+		}
+	}
+
+	@Benchmark
+	public double field() {
+		int i = next++ & (POINTS - 1);
+		engine.field(px[i], py[i], out);
+		return out[0] + out[1];
+	}
+
+	@Benchmark
+	public double fieldAndPotential() {
+		int i = next++ & (POINTS - 1);
+		engine.fieldAndPotential(px[i], py[i], out);
+		return out[0] + out[1] + out[2];
+	}
+
+	// One tile per invocation, reported per point
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public double fieldAtTile() {
+		engine.fieldAt(px, py, POINTS, ex, ey);
+		return ex[0] + ey[POINTS - 1];
+	}
+}
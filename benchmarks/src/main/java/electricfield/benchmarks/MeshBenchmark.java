@@ -0,0 +1,66 @@
+package electricfield.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import electricfield.FieldEngine;
+
+// Field over a dense lattice, one point every 4 pixels of an 800 x 600
+// canvas (30000 points, like a heatmap at stride 4), per backend.
+// denseGrid reuses the tree or mesh; denseGridAfterMove moves one charge
+// first, so the operation includes rebuilding it.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MeshBenchmark {
+	private static final int WIDTH = 800, HEIGHT = 600, STRIDE = 4;
+
+	@Param({ "1000", "10000", "100000" })
+	int charges;
+
+	@Param({ "DIRECT", "TREE", "MESH" })
+	FieldEngine.Backend backend;
+
+	private FieldEngine engine;
+	private double[] px, py, ex, ey;
+	private int points;
+	private boolean moved;
+
+	@Setup
+	public void setUp() {
+		engine = Scenes.randomCharges(charges, WIDTH, HEIGHT, 42);
+		engine.setBackend(backend);
+		points = (WIDTH / STRIDE) * (HEIGHT / STRIDE);
+		px = new double[points];
+		py = new double[points];
+		ex = new double[points];
+		ey = new double[points];
+		int p = 0;
+		for (int y = 0; y < HEIGHT; y += STRIDE) {
+			for (int x = 0; x < WIDTH; x += STRIDE) {
+				px[p] = x;
+				py[p] = y;
+				p++;
+			}
+		}
+		engine.fieldAt(px, py, points, ex, ey); // Build the tree or mesh outside the measurement
+	}
+
+	@Benchmark
+	public double denseGrid() {
+		engine.fieldAt(px, py, points, ex, ey);
+		return ex[points / 2] + ey[points / 2];
+	}
+
+	@Benchmark
+	public double denseGridAfterMove() {
+		engine.move(0, engine.x(0) + (moved ? -1 : 1), engine.y(0));
+		moved = !moved;
+		engine.fieldAt(px, py, points, ex, ey);
+		return ex[points / 2] + ey[points / 2];
+	}
+}
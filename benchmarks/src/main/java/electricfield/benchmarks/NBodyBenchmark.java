@@ -0,0 +1,48 @@
+package electricfield.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import electricfield.ChargeDynamics;
+
+// One N-body sub-step of moving charges, reported directly as steps per
+// second, for sizing ion-cloud runs. PAIRS forces the symmetric pairwise sum,
+// TREE the Barnes-Hut path, whatever ChargeDynamics would pick by itself.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NBodyBenchmark {
+	public enum Kernel {
+		PAIRS, TREE
+	}
+
+	@Param({ "100", "1000", "10000" })
+	int bodies;
+
+	@Param({ "PAIRS", "TREE" })
+	Kernel kernel;
+
+	private ChargeDynamics dynamics;
+
+	@Setup
+	public void setUp() {
+		dynamics = new ChargeDynamics();
+		dynamics.setTreeThreshold(kernel == Kernel.TREE ? 0 : Integer.MAX_VALUE);
+		Random random = new Random(42);
+		for (int i = 0; i < bodies; i++) {
+			dynamics.add(random.nextDouble() * 800, random.nextDouble() * 600, 0, 0,
+					(random.nextBoolean() ? 1 : -1) * 1.0e-9, 1.0e-15);
+		}
+	}
+
+	@Benchmark
+	public ChargeDynamics step() {
+		dynamics.step(1e-5, 1, 800, 600); // Small enough to keep the cloud intact over a run
+		return dynamics;
+	}
+}
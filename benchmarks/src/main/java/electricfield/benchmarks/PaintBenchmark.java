@@ -0,0 +1,137 @@
+package electricfield.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import electricfield.FieldEngine;
+import electricfield.FieldLineTracer;
+import electricfield.FieldLines;
+import electricfield.SceneRenderer;
+import electricfield.TrajectoryBuffer;
+
+// Headless paintComponent: the scene (grid, field vectors and traced field
+// lines over the charges) drawn into a BufferedImage. paintStatic redraws an
+// unchanged scene; paintAfterMove first moves one charge the way a drag does,
+// so the cached field grid is patched before drawing. paintAnimationFrame is
+// what the window draws per animation frame while nothing but particles
+// moves: the cached static layer, PARTICLES particles with their
+// trajectories, and the force on a selected charge; its gc.alloc.rate.norm
+// should be close to 0 B/op.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+	private static final int PARTICLES = 20;
+
+	@Param({ "10", "100", "1000" })
+	int charges;
+
+	@Param({ "800x600", "1920x1080" })
+	String canvas;
+
+	private FieldEngine engine;
+	private SceneRenderer renderer;
+	private FieldLines lines;
+	private BufferedImage image;
+	private int width, height;
+	private boolean moved; // Charge 0 is one pixel right of where it started
+	private BufferedImage staticLayer;
+	private Graphics2D frameGraphics; // Kept across frames like the one Swing paints with
+	private final TrajectoryBuffer[] trajectories = new TrajectoryBuffer[PARTICLES];
+	private final double[] particleX = new double[PARTICLES];
+	private final double[] particleY = new double[PARTICLES];
+	private final double[] forceOut = new double[2];
+
+	@TearDown
+	public void tearDown() {
+		frameGraphics.dispose();
+	}
+
+	@Setup
+	public void setUp() {
+		int[] size = Scenes.canvas(canvas);
+		width = size[0];
+		height = size[1];
+		engine = Scenes.randomCharges(charges, width, height, 42);
+		renderer = new SceneRenderer(engine);
+		lines = new FieldLineTracer(8, 100, 5.0).traceNow(engine.version(), engine.snapshot(),
+				renderer.ensureFieldGrid(width, height).copy(), width, height);
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		staticLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2d = staticLayer.createGraphics();
+		g2d.setColor(Color.WHITE);
+		g2d.fillRect(0, 0, width, height);
+		renderer.paint(g2d, width, height, lines, 0);
+		g2d.dispose();
+		frameGraphics = image.createGraphics();
+		frameGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+		// Random walks standing in for particle flights
+		Random random = new Random(7);
+		for (int i = 0; i < PARTICLES; i++) {
+			trajectories[i] = new TrajectoryBuffer();
+			double x = random.nextDouble() * width;
+			double y = random.nextDouble() * height;
+			double heading = random.nextDouble() * 2 * Math.PI;
+			for (int step = 0; step < 500; step++) {
+				heading += random.nextGaussian() * 0.2;
+				x += 3 * Math.cos(heading);
+				y += 3 * Math.sin(heading);
+				trajectories[i].add((float) x, (float) y);
+			}
+			particleX[i] = x;
+			particleY[i] = y;
+		}
+	}
+
+	@Benchmark
+	public BufferedImage paintStatic() {
+		return paint();
+	}
+
+	@Benchmark
+	public BufferedImage paintAfterMove() {
+		long before = engine.version();
+		double oldX = engine.x(0);
+		double y = engine.y(0);
+		double q = engine.charge(0);
+		double newX = moved ? oldX - 1 : oldX + 1; // Wiggle back and forth
+		moved = !moved;
+		engine.move(0, newX, y);
+		renderer.applyDelta(before, oldX, y, q, newX, y, q, true, true);
+		return paint();
+	}
+
+	@Benchmark
+	public BufferedImage paintAnimationFrame() {
+		Graphics2D g2d = frameGraphics;
+		g2d.drawImage(staticLayer, 0, 0, null);
+		renderer.beginParticles();
+		for (int i = 0; i < PARTICLES; i++) {
+			renderer.addTrajectory(trajectories[i]);
+			renderer.addParticle(particleX[i], particleY[i], i % 2 == 0 ? 1e-9 : -1e-9);
+		}
+		renderer.endParticles(g2d);
+		engine.forceOn(0, forceOut);
+		renderer.drawForce(g2d, engine.x(0), engine.y(0), forceOut[0], forceOut[1]);
+		return image;
+	}
+
+	private BufferedImage paint() {
+		Graphics2D g2d = image.createGraphics();
+		g2d.setColor(Color.WHITE);
+		g2d.fillRect(0, 0, width, height);
+		renderer.paint(g2d, width, height, lines, -1);
+		g2d.dispose();
+		return image;
+	}
+}
@@ -0,0 +1,42 @@
+package electricfield.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import electricfield.FieldEngine;
+import electricfield.PhysicsLoop;
+
+// One physics frame (updateParticlePositions): every particle advanced by
+// the default number of velocity-Verlet sub-steps and published as a snapshot
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParticleBenchmark {
+	@Param({ "1000", "100000" })
+	int particles;
+
+	@Param({ "10", "1000" })
+	int charges;
+
+	private PhysicsLoop loop;
+
+	@Setup
+	public void setUp() {
+		FieldEngine engine = Scenes.randomCharges(charges, 800, 600, 42);
+		loop = new PhysicsLoop(0.01); // Frame time of the simulator
+		loop.setField(engine.snapshot());
+		loop.setBounds(800, 600);
+		loop.launchCloud(particles, 400, 300, 200, 0, 0, 50, 1.0e-10, 1.0e-15, 1);
+		loop.advanceFrame(); // Applies the launch
+	}
+
+	@Benchmark
+	public PhysicsLoop.Snapshot updateParticlePositions() {
+		loop.advanceFrame();
+		return loop.latestSnapshot();
+	}
+}
@@ -0,0 +1,29 @@
+package electricfield.benchmarks;
+
+import java.util.Random;
+
+import electricfield.FieldEngine;
+
+// Reproducible scenes for the benchmarks
+final class Scenes {
+	static final double CHARGE = 1.0e-9; // Same default as the charge value field
+
+	private Scenes() {
+	}
+
+	// n charges of alternating sign spread uniformly over a width x height canvas
+	static FieldEngine randomCharges(int n, int width, int height, long seed) {
+		Random random = new Random(seed);
+		FieldEngine engine = new FieldEngine(n);
+		for (int i = 0; i < n; i++) {
+			engine.add(random.nextDouble() * width, random.nextDouble() * height, i % 2 == 0 ? CHARGE : -CHARGE);
+		}
+		return engine;
+	}
+
+	// "800x600" -> { 800, 600 }
+	static int[] canvas(String size) {
+		int x = size.indexOf('x');
+		return new int[] { Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1)) };
+	}
+}
@@ -0,0 +1,369 @@
+package electricfield;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Barnes-Hut quadtree over a FieldEngine's charges. Each cell stores its
+// monopole (total charge) and dipole moment about the cell's |q|-weighted
+// centre; cells that look small from the evaluation point (size / distance <
+// theta) are summed as one multipole term, everything else is opened down to
+// leaves which are summed directly. Node data lives in flat primitive arrays.
+public class BarnesHutTree {
+	static final int LEAF_SIZE = 8; // Charges per leaf before splitting
+	private static final int MAX_DEPTH = 40; // Guards against coincident charges
+
+	private final double theta;
+	private final double thetaSquared;
+	final long version; // Engine version this tree was built from
+
+	// Source charges, in tree order so every node covers a contiguous range
+	private final double[] xs;
+	private final double[] ys;
+	private final double[] qs;
+
+	// Per-node data
+	private double[] minX, minY, size; // Square cell bounds
+	private double[] ox, oy; // Expansion centre
+	private double[] monopole; // Total charge
+	private double[] dipoleX, dipoleY; // Dipole moment about (ox, oy)
+	private int[] start, end; // Charge range [start, end)
+	private int[] firstChild; // Index of the first of 4 children, -1 for leaves
+	private int nodeCount;
+
+	public BarnesHutTree(FieldEngine engine, double theta) {
+		this.theta = theta;
+		this.thetaSquared = theta * theta;
+		this.version = engine.version();
+
+		int n = engine.size();
+		xs = new double[n];
+		ys = new double[n];
+		qs = new double[n];
+		System.arraycopy(engine.xs, 0, xs, 0, n);
+		System.arraycopy(engine.ys, 0, ys, 0, n);
+		System.arraycopy(engine.qs, 0, qs, 0, n);
+
+		int capacity = Math.max(16, 4 * (n / LEAF_SIZE + 1) + 1);
+		allocateNodes(capacity);
+
+		double loX = Double.POSITIVE_INFINITY, loY = Double.POSITIVE_INFINITY;
+		double hiX = Double.NEGATIVE_INFINITY, hiY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			loX = Math.min(loX, xs[i]);
+			loY = Math.min(loY, ys[i]);
+			hiX = Math.max(hiX, xs[i]);
+			hiY = Math.max(hiY, ys[i]);
+		}
+		if (n == 0) {
+			loX = loY = hiX = hiY = 0;
+		}
+		double side = Math.max(hiX - loX, hiY - loY) * 1.0001 + 1e-9;
+		int root = newNode(loX, loY, side, 0, n);
+		build(root, 0);
+	}
+
+	public double theta() {
+		return theta;
+	}
+
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	private void allocateNodes(int capacity) {
+		minX = new double[capacity];
+		minY = new double[capacity];
+		size = new double[capacity];
+		ox = new double[capacity];
+		oy = new double[capacity];
+		monopole = new double[capacity];
+		dipoleX = new double[capacity];
+		dipoleY = new double[capacity];
+		start = new int[capacity];
+		end = new int[capacity];
+		firstChild = new int[capacity];
+	}
+
+	private void growNodes() {
+		int capacity = minX.length * 2;
+		minX = Arrays.copyOf(minX, capacity);
+		minY = Arrays.copyOf(minY, capacity);
+		size = Arrays.copyOf(size, capacity);
+		ox = Arrays.copyOf(ox, capacity);
+		oy = Arrays.copyOf(oy, capacity);
+		monopole = Arrays.copyOf(monopole, capacity);
+		dipoleX = Arrays.copyOf(dipoleX, capacity);
+		dipoleY = Arrays.copyOf(dipoleY, capacity);
+		start = Arrays.copyOf(start, capacity);
+		end = Arrays.copyOf(end, capacity);
+		firstChild = Arrays.copyOf(firstChild, capacity);
+	}
+
+	private int newNode(double x, double y, double side, int from, int to) {
+		if (nodeCount == minX.length) {
+			growNodes();
+		}
+		int node = nodeCount++;
+		minX[node] = x;
+		minY[node] = y;
+		size[node] = side;
+		start[node] = from;
+		end[node] = to;
+		firstChild[node] = -1;
+		return node;
+	}
+
+	private void build(int node, int depth) {
+		int from = start[node];
+		int to = end[node];
+		if (to - from > LEAF_SIZE && depth < MAX_DEPTH) {
+			double half = size[node] / 2;
+			double midX = minX[node] + half;
+			double midY = minY[node] + half;
+
+			// Partition into bottom (y < midY) and top, then each half by x
+			int splitY = partition(from, to, midY, false);
+			int splitBottom = partition(from, splitY, midX, true);
+			int splitTop = partition(splitY, to, midX, true);
+
+			int first = newNode(minX[node], minY[node], half, from, splitBottom);
+			newNode(midX, minY[node], half, splitBottom, splitY);
+			newNode(minX[node], midY, half, splitY, splitTop);
+			newNode(midX, midY, half, splitTop, to);
+			firstChild[node] = first;
+			for (int c = 0; c < 4; c++) {
+				build(first + c, depth + 1);
+			}
+		}
+		computeMoments(node);
+	}
+
+	// Moves charges with coordinate < split to the front of [from, to)
+	private int partition(int from, int to, double split, boolean byX) {
+		int i = from;
+		int j = to - 1;
+		while (i <= j) {
+			double c = byX ? xs[i] : ys[i];
+			if (c < split) {
+				i++;
+			} else {
+				swap(i, j);
+				j--;
+			}
+		}
+		return i;
+	}
+
+	private void swap(int a, int b) {
+		double t = xs[a];
+		xs[a] = xs[b];
+		xs[b] = t;
+		t = ys[a];
+		ys[a] = ys[b];
+		ys[b] = t;
+		t = qs[a];
+		qs[a] = qs[b];
+		qs[b] = t;
+	}
+
+	private void computeMoments(int node) {
+		double q = 0, weight = 0, wx = 0, wy = 0;
+		for (int i = start[node]; i < end[node]; i++) {
+			double w = Math.abs(qs[i]);
+			q += qs[i];
+			weight += w;
+			wx += w * xs[i];
+			wy += w * ys[i];
+		}
+		double cx, cy;
+		if (weight > 0) {
+			cx = wx / weight;
+			cy = wy / weight;
+		} else {
+			cx = minX[node] + size[node] / 2;
+			cy = minY[node] + size[node] / 2;
+		}
+		double px = 0, py = 0;
+		for (int i = start[node]; i < end[node]; i++) {
+			px += qs[i] * (xs[i] - cx);
+			py += qs[i] * (ys[i] - cy);
+		}
+		ox[node] = cx;
+		oy[node] = cy;
+		monopole[node] = q;
+		dipoleX[node] = px;
+		dipoleY[node] = py;
+	}
+
+	// Field at (x, y): out[0] = Ex, out[1] = Ey
+	public void field(double x, double y, double[] out) {
+		out[0] = 0;
+		out[1] = 0;
+		if (nodeCount > 0 && end[0] > 0) {
+			accumulateField(0, x, y, 0, FieldEngine.MIN_DIST_SQUARED, out);
+		}
+	}
+
+	// Field at (x, y) with Plummer softening: charges in opened leaves count
+	// with 1 / (r^2 + softeningSquared)^(3/2) instead of the clamp at distance
+	// 1, accepted cells are far enough away for softening not to matter.
+	// softeningSquared must be > 0, so a charge at (x, y) itself adds nothing.
+	public void softenedField(double x, double y, double softeningSquared, double[] out) {
+		out[0] = 0;
+		out[1] = 0;
+		if (nodeCount > 0 && end[0] > 0) {
+			accumulateField(0, x, y, softeningSquared, 0, out);
+		}
+	}
+
+	// Leaves sum with max(r^2 + softening, floor) as squared distance
+	private void accumulateField(int node, double x, double y, double softening, double floor, double[] out) {
+		double dx = x - ox[node];
+		double dy = y - oy[node];
+		double distSquared = dx * dx + dy * dy;
+		if (accept(node, x, y, distSquared)) {
+			double invDist = 1.0 / Math.sqrt(distSquared);
+			double inv3 = invDist * invDist * invDist;
+			double inv5 = inv3 * invDist * invDist;
+			double pDotR = dipoleX[node] * dx + dipoleY[node] * dy;
+			double s = FieldEngine.K * (monopole[node] * inv3 + 3 * pDotR * inv5);
+			out[0] += s * dx - FieldEngine.K * dipoleX[node] * inv3;
+			out[1] += s * dy - FieldEngine.K * dipoleY[node] * inv3;
+			return;
+		}
+		int first = firstChild[node];
+		if (first < 0) {
+			double ex = 0, ey = 0;
+			for (int i = start[node]; i < end[node]; i++) {
+				double cx = x - xs[i];
+				double cy = y - ys[i];
+				double d2 = cx * cx + cy * cy + softening;
+				if (d2 < floor) {
+					d2 = floor;
+				}
+				double invDist = 1.0 / Math.sqrt(d2);
+				double s = FieldEngine.K * qs[i] * invDist * invDist * invDist;
+				ex += s * cx;
+				ey += s * cy;
+			}
+			out[0] += ex;
+			out[1] += ey;
+			return;
+		}
+		for (int c = 0; c < 4; c++) {
+			if (end[first + c] > start[first + c]) {
+				accumulateField(first + c, x, y, softening, floor, out);
+			}
+		}
+	}
+
+	// Potential at (x, y)
+	public double potential(double x, double y) {
+		if (nodeCount == 0 || end[0] == 0) {
+			return 0;
+		}
+		return accumulatePotential(0, x, y);
+	}
+
+	private double accumulatePotential(int node, double x, double y) {
+		double dx = x - ox[node];
+		double dy = y - oy[node];
+		double distSquared = dx * dx + dy * dy;
+		if (accept(node, x, y, distSquared)) {
+			double invDist = 1.0 / Math.sqrt(distSquared);
+			double pDotR = dipoleX[node] * dx + dipoleY[node] * dy;
+			return FieldEngine.K * (monopole[node] * invDist + pDotR * invDist * invDist * invDist);
+		}
+		int first = firstChild[node];
+		double v = 0;
+		if (first < 0) {
+			for (int i = start[node]; i < end[node]; i++) {
+				double cx = x - xs[i];
+				double cy = y - ys[i];
+				double d2 = cx * cx + cy * cy;
+				if (d2 < FieldEngine.MIN_DIST_SQUARED) {
+					d2 = FieldEngine.MIN_DIST_SQUARED;
+				}
+				v += FieldEngine.K * qs[i] / Math.sqrt(d2);
+			}
+			return v;
+		}
+		for (int c = 0; c < 4; c++) {
+			if (end[first + c] > start[first + c]) {
+				v += accumulatePotential(first + c, x, y);
+			}
+		}
+		return v;
+	}
+
+	// Opening criterion: the cell must look small (size / distance < theta)
+	// and the point must lie outside the cell
+	private boolean accept(int node, double x, double y, double distSquared) {
+		double s = size[node];
+		if (s * s >= thetaSquared * distSquared) {
+			return false;
+		}
+		return x < minX[node] || x > minX[node] + s || y < minY[node] || y > minY[node] + s;
+	}
+
+	// Error of the tree against the direct sum, sampled at random points over
+	// the charges' bounding box (padded by 10%). Errors are normalised by the
+	// RMS field magnitude of the samples rather than per point, since mixed-sign
+	// scenes have spots where the exact field cancels to almost nothing.
+	public static ErrorStats measureError(FieldEngine engine, double theta, int samples, long seed) {
+		return measureError(engine, new BarnesHutTree(engine, theta)::field, samples, seed);
+	}
+
+	// Any approximation of the field at (x, y) into out
+	interface FieldFunction {
+		void field(double x, double y, double[] out);
+	}
+
+	// As above for any approximation, e.g. ParticleMesh's
+	static ErrorStats measureError(FieldEngine engine, FieldFunction approximation, int samples, long seed) {
+		double loX = Double.POSITIVE_INFINITY, loY = Double.POSITIVE_INFINITY;
+		double hiX = Double.NEGATIVE_INFINITY, hiY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < engine.size(); i++) {
+			loX = Math.min(loX, engine.x(i));
+			loY = Math.min(loY, engine.y(i));
+			hiX = Math.max(hiX, engine.x(i));
+			hiY = Math.max(hiY, engine.y(i));
+		}
+		ErrorStats stats = new ErrorStats();
+		if (engine.size() == 0) {
+			return stats;
+		}
+		double padX = (hiX - loX) * 0.1 + 1;
+		double padY = (hiY - loY) * 0.1 + 1;
+		Random random = new Random(seed);
+		double[] exact = new double[2];
+		double[] approx = new double[2];
+		double fieldSquared = 0;
+		double errorSquared = 0;
+		double maxError = 0;
+		for (int s = 0; s < samples; s++) {
+			double x = loX - padX + random.nextDouble() * (hiX - loX + 2 * padX);
+			double y = loY - padY + random.nextDouble() * (hiY - loY + 2 * padY);
+			engine.directField(x, y, exact);
+			approximation.field(x, y, approx);
+			double error = Math.hypot(approx[0] - exact[0], approx[1] - exact[1]);
+			fieldSquared += exact[0] * exact[0] + exact[1] * exact[1];
+			errorSquared += error * error;
+			maxError = Math.max(maxError, error);
+			stats.samples++;
+		}
+		if (fieldSquared > 0) {
+			double rmsField = Math.sqrt(fieldSquared / stats.samples);
+			stats.max = maxError / rmsField;
+			stats.rms = Math.sqrt(errorSquared / stats.samples) / rmsField;
+		}
+		return stats;
+	}
+
+	// Result of measureError
+	public static class ErrorStats {
+		public double max; // Worst error / RMS field
+		public double rms; // RMS error / RMS field
+		public int samples;
+	}
+}
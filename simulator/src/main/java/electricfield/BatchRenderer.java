@@ -0,0 +1,202 @@
+package electricfield;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+// Headless batch rendering of scene files (see SceneFile) to PNG, without
+// opening a window:
+//
+//   java -cp simulator.jar electricfield.BatchRenderer [-o dir] [-j threads] [-s WxH] [-b backend] scene...
+//
+// Scenes are rendered concurrently on a fixed pool of worker threads; at most
+// two scenes per worker are queued at once, so thousands of files do not
+// pile up in memory. Each scene reports its render time, the batch its total
+// images per second. -s renders at another resolution than the scene's own
+// size by scaling the drawing. -b picks the field solver (direct, tree or
+// mesh, see FieldEngine.Backend); mesh pays off for heatmaps of many charges.
+public class BatchRenderer {
+	// Same field line settings as the simulator window
+	static final int FIELD_LINE_COUNT = 8;
+	static final int FIELD_LINE_LENGTH = 100;
+	static final double STEP_SIZE = 5.0;
+
+	// Renders scene into a width x height image
+	public static BufferedImage render(Scene scene, int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2d = image.createGraphics();
+		g2d.setColor(Color.WHITE);
+		g2d.fillRect(0, 0, width, height);
+		g2d.scale((double) width / scene.width, (double) height / scene.height);
+
+		SceneRenderer renderer = new SceneRenderer(scene.charges);
+		renderer.setShowGrid(scene.showGrid);
+		renderer.setShowVectors(scene.showVectors);
+		renderer.setShowEquipotentials(scene.showEquipotentials);
+		renderer.setHeatmapMode(scene.heatmap);
+		FieldLines lines = null;
+		if (scene.showFieldLines) {
+			FieldLineTracer tracer = new FieldLineTracer(FIELD_LINE_COUNT, FIELD_LINE_LENGTH, STEP_SIZE);
+			lines = tracer.traceNow(scene.charges.version(), scene.charges,
+					renderer.ensureFieldGrid(scene.width, scene.height), scene.width, scene.height);
+		}
+		renderer.paint(g2d, scene.width, scene.height, lines, -1);
+		long t = System.nanoTime();
+		drawParticles(g2d, renderer, scene);
+		Metrics.lap(Metrics.Phase.TRAJECTORIES, t);
+		g2d.dispose();
+		return image;
+	}
+
+	// Flies the scene's particles for scene.frames frames and draws their
+	// trajectories and final positions
+	private static void drawParticles(Graphics2D g2d, SceneRenderer renderer, Scene scene) {
+		int n = scene.particleCount();
+		if (n == 0) {
+			return;
+		}
+		PhysicsLoop loop = new PhysicsLoop(scene.frameTime);
+		loop.setField(scene.charges.snapshot());
+		loop.setBounds(scene.width, scene.height);
+		TrajectoryBuffer[] trajectories = new TrajectoryBuffer[n];
+		for (int i = 0; i < n; i++) {
+			loop.launch(scene.particleX(i), scene.particleY(i), scene.particleVx(i), scene.particleVy(i),
+					scene.particleCharge(i), scene.particleMass(i));
+			// A point per frame at most, and straight runs collapse, so long
+			// flights fit the default ring without one float per frame each
+			trajectories[i] = new TrajectoryBuffer(
+					Math.max(2, Math.min(scene.frames + 1, TrajectoryBuffer.DEFAULT_CAPACITY)));
+			trajectories[i].add((float) scene.particleX(i), (float) scene.particleY(i));
+		}
+		PhysicsLoop.Snapshot snapshot = null;
+		for (int frame = 0; frame < scene.frames; frame++) {
+			loop.advanceFrame();
+			snapshot = loop.latestSnapshot();
+			for (int i = 0; i < n; i++) {
+				trajectories[i].add(snapshot.x[i], snapshot.y[i]);
+			}
+		}
+		renderer.beginParticles();
+		for (int i = 0; i < n; i++) {
+			renderer.addTrajectory(trajectories[i]);
+			double x = snapshot != null ? snapshot.x[i] : scene.particleX(i);
+			double y = snapshot != null ? snapshot.y[i] : scene.particleY(i);
+			renderer.addParticle(x, y, scene.particleCharge(i));
+		}
+		renderer.endParticles(g2d);
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		System.setProperty("java.awt.headless", "true");
+		Path outDir = Paths.get(".");
+		int threads = Runtime.getRuntime().availableProcessors();
+		int[] size = null;
+		FieldEngine.Backend backend = FieldEngine.Backend.DIRECT;
+		List<Path> files = new ArrayList<>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "-o":
+					outDir = Paths.get(args[++i]);
+					break;
+				case "-j":
+					threads = Integer.parseInt(args[++i]);
+					if (threads < 1) {
+						throw new IllegalArgumentException("threads must be >= 1");
+					}
+					break;
+				case "-s":
+					String[] wh = args[++i].split("x");
+					size = new int[] { Integer.parseInt(wh[0]), Integer.parseInt(wh[1]) };
+					if (size[0] <= 0 || size[1] <= 0) {
+						throw new IllegalArgumentException("size must be positive");
+					}
+					break;
+				case "-b":
+					backend = FieldEngine.Backend.valueOf(args[++i].toUpperCase(Locale.ROOT));
+					break;
+				default:
+					files.add(Paths.get(args[i]));
+				}
+			}
+		} catch (RuntimeException e) {
+			files.clear(); // Fall through to the usage message
+		}
+		if (files.isEmpty()) {
+			System.err.println("usage: BatchRenderer [-o dir] [-j threads] [-s WxH] [-b direct|tree|mesh] scene...");
+			System.exit(2);
+		}
+		try {
+			Files.createDirectories(outDir);
+		} catch (IOException e) {
+			System.err.println("cannot create " + outDir + ": " + e.getMessage());
+			System.exit(1);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		Semaphore queued = new Semaphore(2 * threads); // Scenes submitted but not finished
+		AtomicInteger rendered = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+		long start = System.nanoTime();
+		for (Path file : files) {
+			queued.acquire();
+			Path dir = outDir;
+			int[] outSize = size;
+			FieldEngine.Backend fileBackend = backend;
+			pool.execute(() -> {
+				try {
+					renderFile(file, dir, outSize, fileBackend);
+					rendered.incrementAndGet();
+				} catch (IOException | RuntimeException e) {
+					failed.incrementAndGet();
+					System.err.println(file + ": " + e.getMessage());
+				} finally {
+					queued.release();
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d images in %.2f s (%.1f images/s) on %d threads%s%n", rendered.get(), seconds,
+				rendered.get() / seconds, threads, failed.get() > 0 ? ", " + failed.get() + " failed" : "");
+		if (failed.get() > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static void renderFile(Path file, Path outDir, int[] size, FieldEngine.Backend backend)
+			throws IOException {
+		long start = System.nanoTime();
+		Scene scene = SceneFile.read(file);
+		scene.charges.setBackend(backend);
+		int width = size != null ? size[0] : scene.width;
+		int height = size != null ? size[1] : scene.height;
+		BufferedImage image = render(scene, width, height);
+		long rendered = System.nanoTime();
+
+		String name = file.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		Path out = outDir.resolve((dot > 0 ? name.substring(0, dot) : name) + ".png");
+		if (!ImageIO.write(image, "png", out.toFile())) {
+			throw new IOException("no PNG writer available");
+		}
+		long written = System.nanoTime();
+		System.out.printf("%s -> %s: render %.1f ms, write %.1f ms%n", file, out, (rendered - start) / 1e6,
+				(written - rendered) / 1e6);
+	}
+}
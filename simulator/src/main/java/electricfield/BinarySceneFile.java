@@ -0,0 +1,239 @@
+package electricfield;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Compact binary scenes for large charge counts. Little-endian, a fixed
+// 64-byte header followed by one packed column of doubles per quantity, in
+// the same structure-of-arrays layout as FieldEngine and Scene:
+//
+//   0  magic "EFSCENE\0"         8 bytes
+//   8  format version            int, currently 2
+//  12  layer flags               int, bit 0 grid, 1 vectors, 2 lines, 3 equipotentials
+//  16  width, height, frames     3 ints
+//  28  heatmap                   int, 0 off, 1 potential, 2 field strength
+//  32  frame time                double
+//  40  charge count n            long
+//  48  particle count p          long
+//  56  distribution count d      long, 0 in version 1 files
+//  64  charge x[n], y[n], q[n]
+//      particle x[p], y[p], vx[p], vy[p], q[p], m[p]
+//      distribution kind[d], parameters 0 to 4 [d], q[d]
+//
+// Distribution kinds are the ordinals of ChargeDistributions.Kind, stored as
+// doubles so every column is alike; angles are in radians. Version 1 files,
+// from before distributions, still read.
+//
+// Reading maps each column and bulk-copies it straight into the arrays the
+// engine then adopts, so a scene of millions of charges costs one memory
+// copy plus the spatial index rebuild; nothing is parsed per charge. The
+// columns are then scanned for what the text and JSON readers reject:
+// values that are not finite, and particle masses that are not positive.
+final class BinarySceneFile {
+	static final byte[] MAGIC = { 'E', 'F', 'S', 'C', 'E', 'N', 'E', 0 };
+	static final int VERSION = 2;
+	private static final int HEADER_BYTES = 64;
+	private static final int MAX_COLUMN = Integer.MAX_VALUE / Double.BYTES; // One mapping per column
+	private static final int WRITE_CHUNK = 1 << 20; // Bytes staged per write call
+
+	private static final int GRID = 1, VECTORS = 2, LINES = 4, EQUIPOTENTIALS = 8;
+
+	private BinarySceneFile() {
+	}
+
+	// True when the file starts with the binary magic
+	static boolean isBinary(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+		}
+	}
+
+	static Scene read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_BYTES) {
+				throw new IOException(file + ": not a binary scene file");
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException(file + ": not a binary scene file");
+			}
+			int version = header.getInt(8);
+			if (version != 1 && version != VERSION) {
+				throw new IOException(file + ": unsupported scene format version " + version);
+			}
+			Scene scene = new Scene();
+			int flags = header.getInt(12);
+			scene.showGrid = (flags & GRID) != 0;
+			scene.showVectors = (flags & VECTORS) != 0;
+			scene.showFieldLines = (flags & LINES) != 0;
+			scene.showEquipotentials = (flags & EQUIPOTENTIALS) != 0;
+			scene.width = header.getInt(16);
+			scene.height = header.getInt(20);
+			scene.frames = header.getInt(24);
+			int heatmap = header.getInt(28);
+			scene.frameTime = header.getDouble(32);
+			long chargeCount = header.getLong(40);
+			long particleCount = header.getLong(48);
+			long distributionCount = header.getLong(56);
+			if (scene.width <= 0 || scene.height <= 0 || scene.frames < 0 || heatmap < 0
+					|| heatmap > Heatmap.Mode.values().length || !(scene.frameTime > 0)) {
+				throw new IOException(file + ": corrupt scene header");
+			}
+			scene.heatmap = heatmap == 0 ? null : Heatmap.Mode.values()[heatmap - 1];
+			if (chargeCount < 0 || chargeCount > MAX_COLUMN || particleCount < 0 || particleCount > MAX_COLUMN
+					|| distributionCount < 0 || distributionCount > MAX_COLUMN) {
+				throw new IOException(file + ": unsupported charge, particle or distribution count");
+			}
+			int n = (int) chargeCount;
+			int p = (int) particleCount;
+			int d = (int) distributionCount;
+			long expected = HEADER_BYTES + (3L * n + 6L * p + 7L * d) * Double.BYTES;
+			if (size < expected) {
+				throw new IOException(file + ": truncated, " + size + " of " + expected + " bytes");
+			}
+
+			long offset = HEADER_BYTES;
+			double[] x = new double[n], y = new double[n], q = new double[n];
+			offset = readColumn(channel, offset, x, n);
+			offset = readColumn(channel, offset, y, n);
+			offset = readColumn(channel, offset, q, n);
+			checkFinite(file, "charge", n, x, y, q);
+			scene.charges.adopt(x, y, q, n);
+
+			double[][] columns = new double[6][p];
+			for (double[] column : columns) {
+				offset = readColumn(channel, offset, column, p);
+			}
+			checkFinite(file, "particle", p, columns);
+			for (int i = 0; i < p; i++) {
+				if (!(columns[5][i] > 0)) {
+					throw new IOException(file + ": particle " + i + " has mass " + columns[5][i] + ", must be > 0");
+				}
+			}
+			scene.adoptParticles(columns[0], columns[1], columns[2], columns[3], columns[4], columns[5], p);
+
+			double[][] distributions = new double[7][d];
+			for (double[] column : distributions) {
+				offset = readColumn(channel, offset, column, d);
+			}
+			try {
+				for (int i = 0; i < d; i++) {
+					addDistribution(scene.charges.distributions(), distributions, i);
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IOException(file + ": corrupt distribution: " + e.getMessage(), e);
+			}
+			return scene;
+		}
+	}
+
+	private static void addDistribution(ChargeDistributions distributions, double[][] columns, int i) {
+		double kind = columns[0][i];
+		double q = columns[6][i];
+		if (kind == ChargeDistributions.Kind.SEGMENT.ordinal()) {
+			distributions.addSegment(columns[1][i], columns[2][i], columns[3][i], columns[4][i], q);
+		} else if (kind == ChargeDistributions.Kind.ARC.ordinal()) {
+			distributions.addArc(columns[1][i], columns[2][i], columns[3][i], columns[4][i], columns[5][i], q);
+		} else if (kind == ChargeDistributions.Kind.SHEET.ordinal()) {
+			distributions.addSheet(columns[1][i], columns[2][i], columns[3][i], columns[4][i], columns[5][i], q);
+		} else {
+			throw new IllegalArgumentException("unknown kind " + kind);
+		}
+	}
+
+	// Throws unless the first n entries of every column are finite; what
+	// names a row in the message
+	private static void checkFinite(Path file, String what, int n, double[]... columns) throws IOException {
+		for (double[] column : columns) {
+			for (int i = 0; i < n; i++) {
+				if (!Double.isFinite(column[i])) {
+					throw new IOException(file + ": " + what + " " + i + " holds " + column[i] + ", not a finite number");
+				}
+			}
+		}
+	}
+
+	private static long readColumn(FileChannel channel, long offset, double[] column, int n) throws IOException {
+		if (n > 0) {
+			channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) n * Double.BYTES)
+					.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(column, 0, n);
+		}
+		return offset + (long) n * Double.BYTES;
+	}
+
+	static void write(Scene scene, Path file) throws IOException {
+		FieldEngine charges = scene.charges;
+		ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt((scene.showGrid ? GRID : 0) | (scene.showVectors ? VECTORS : 0)
+				| (scene.showFieldLines ? LINES : 0) | (scene.showEquipotentials ? EQUIPOTENTIALS : 0));
+		buffer.putInt(scene.width);
+		buffer.putInt(scene.height);
+		buffer.putInt(scene.frames);
+		buffer.putInt(scene.heatmap == null ? 0 : scene.heatmap.ordinal() + 1);
+		buffer.putDouble(scene.frameTime);
+		buffer.putLong(charges.size());
+		buffer.putLong(scene.particleCount());
+		ChargeDistributions distributions = charges.distributions();
+		int d = distributions.size();
+		buffer.putLong(d);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			flush(channel, buffer);
+			writeColumn(channel, buffer, charges.xs, charges.size());
+			writeColumn(channel, buffer, charges.ys, charges.size());
+			writeColumn(channel, buffer, charges.qs, charges.size());
+			int p = scene.particleCount();
+			writeColumn(channel, buffer, scene.particleX, p);
+			writeColumn(channel, buffer, scene.particleY, p);
+			writeColumn(channel, buffer, scene.particleVx, p);
+			writeColumn(channel, buffer, scene.particleVy, p);
+			writeColumn(channel, buffer, scene.particleCharge, p);
+			writeColumn(channel, buffer, scene.particleMass, p);
+			double[] kinds = new double[d];
+			for (int i = 0; i < d; i++) {
+				kinds[i] = distributions.kind(i).ordinal();
+			}
+			writeColumn(channel, buffer, kinds, d);
+			double[] column = new double[d];
+			for (int k = 0; k < ChargeDistributions.PARAMS; k++) {
+				for (int i = 0; i < d; i++) {
+					column[i] = distributions.param(i, k);
+				}
+				writeColumn(channel, buffer, column, d);
+			}
+			writeColumn(channel, buffer, distributions.qs, d);
+		}
+	}
+
+	private static void writeColumn(FileChannel channel, ByteBuffer buffer, double[] column, int n)
+			throws IOException {
+		int perChunk = buffer.capacity() / Double.BYTES;
+		for (int from = 0; from < n; from += perChunk) {
+			int length = Math.min(perChunk, n - from);
+			buffer.asDoubleBuffer().put(column, from, length);
+			buffer.position(length * Double.BYTES);
+			flush(channel, buffer);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
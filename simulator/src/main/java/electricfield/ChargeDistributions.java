@@ -0,0 +1,766 @@
+package electricfield;
+
+import java.util.Arrays;
+
+// Continuous charge distributions next to a FieldEngine's point charges:
+// uniformly charged line segments, circular arcs (a full turn is a ring) and
+// rectangular sheets, each holding a total charge q in Coulombs. Like the
+// charges they are parallel primitive arrays, five shape parameters per
+// distribution:
+//
+//   SEGMENT  x1, y1, x2, y2
+//   ARC      centre x, centre y, radius, start angle, sweep (radians, |sweep| <= 2 pi)
+//   SHEET    centre x, centre y, width, height, angle (radians)
+//
+// Segments and sheets have closed-form kernels, a couple of square roots and
+// logarithms per evaluation however long or large they are, and so do full
+// rings, through complete elliptic integrals. Shorter arcs are integrated
+// with 4-point Gauss-Legendre panels, split adaptively until each panel is
+// shorter than its distance to the point, so far points cost a few cached
+// panels and points close to the arc get the panels they need. Distances
+// are clamped at 1 pixel, as for point charges.
+//
+// Every change bumps version, which FieldEngine adds to its own.
+public class ChargeDistributions {
+	public enum Kind {
+		SEGMENT, ARC, SHEET
+	}
+
+	static final int PARAMS = 5; // Shape parameters per distribution
+	static final double MIN_DIST = 1; // sqrt(FieldEngine.MIN_DIST_SQUARED)
+	static final int MAX_DEPTH = 12; // Arc panel halvings
+	private static final double ARC_PANEL = Math.PI / 4; // Largest initial arc panel (radians)
+	private static final int FORCE_PANELS = 16; // Panels per side when integrating the force on one
+	private static final int NODE_STRIDE = 10; // Cached arc panel: middle, then four Gauss nodes, x/y interleaved
+	private static final double[] GAUSS_NODES = { -0.8611363115940526, -0.3399810435848563, 0.3399810435848563,
+			0.8611363115940526 };
+	private static final double[] GAUSS_WEIGHTS = { 0.3478548451374538, 0.6521451548625461, 0.6521451548625461,
+			0.3478548451374538 };
+
+	Kind[] kinds = new Kind[4];
+	double[] params = new double[4 * PARAMS];
+	double[] qs = new double[4];
+	double[][] arcNodes = new double[4][]; // Per arc short of a full turn, see arc
+	int count;
+	private long version;
+	private final double[] fieldScratch = new double[2]; // For forceOn
+
+	public int size() {
+		return count;
+	}
+
+	public long version() {
+		return version;
+	}
+
+	public Kind kind(int i) {
+		return kinds[i];
+	}
+
+	// Shape parameter k of distribution i, see the table above
+	public double param(int i, int k) {
+		return params[i * PARAMS + k];
+	}
+
+	public double charge(int i) {
+		return qs[i];
+	}
+
+	public int addSegment(double x1, double y1, double x2, double y2, double q) {
+		if (!(Math.hypot(x2 - x1, y2 - y1) > 0)) {
+			throw new IllegalArgumentException("segment must have a length");
+		}
+		return add(Kind.SEGMENT, x1, y1, x2, y2, 0, q);
+	}
+
+	public int addArc(double cx, double cy, double radius, double start, double sweep, double q) {
+		if (!(radius > 0)) {
+			throw new IllegalArgumentException("radius must be > 0");
+		}
+		if (!(sweep != 0 && Math.abs(sweep) <= 2 * Math.PI)) {
+			throw new IllegalArgumentException("sweep must be nonzero and at most a full turn");
+		}
+		return add(Kind.ARC, cx, cy, radius, start, sweep, q);
+	}
+
+	public int addRing(double cx, double cy, double radius, double q) {
+		return addArc(cx, cy, radius, 0, 2 * Math.PI, q);
+	}
+
+	public int addSheet(double cx, double cy, double width, double height, double angle, double q) {
+		if (!(width > 0 && height > 0)) {
+			throw new IllegalArgumentException("sheet width and height must be > 0");
+		}
+		return add(Kind.SHEET, cx, cy, width, height, angle, q);
+	}
+
+	private int add(Kind kind, double p0, double p1, double p2, double p3, double p4, double q) {
+		if (!Double.isFinite(p0 + p1 + p2 + p3 + p4 + q)) {
+			throw new IllegalArgumentException("distribution parameters must be finite");
+		}
+		if (count == qs.length) {
+			int capacity = qs.length * 2;
+			kinds = Arrays.copyOf(kinds, capacity);
+			params = Arrays.copyOf(params, capacity * PARAMS);
+			qs = Arrays.copyOf(qs, capacity);
+			arcNodes = Arrays.copyOf(arcNodes, capacity);
+		}
+		kinds[count] = kind;
+		int p = count * PARAMS;
+		params[p] = p0;
+		params[p + 1] = p1;
+		params[p + 2] = p2;
+		params[p + 3] = p3;
+		params[p + 4] = p4;
+		qs[count] = q;
+		arcNodes[count] = kind == Kind.ARC && Math.abs(p4) < 2 * Math.PI ? arcNodes(p0, p1, p2, p3, p4) : null;
+		version++;
+		return count++;
+	}
+
+	// Middles and Gauss nodes of an arc's top-level panels, which most points
+	// integrate over without splitting, so they need no trigonometry
+	private static double[] arcNodes(double cx, double cy, double r, double start, double sweep) {
+		int panels = (int) Math.ceil(Math.abs(sweep) / ARC_PANEL);
+		double step = sweep / panels;
+		double[] nodes = new double[panels * NODE_STRIDE];
+		for (int k = 0; k < panels; k++) {
+			double mid = start + (k + 0.5) * step;
+			int n = k * NODE_STRIDE;
+			nodes[n] = cx + r * Math.cos(mid);
+			nodes[n + 1] = cy + r * Math.sin(mid);
+			for (int g = 0; g < GAUSS_NODES.length; g++) {
+				double angle = mid + step / 2 * GAUSS_NODES[g];
+				nodes[n + 2 + 2 * g] = cx + r * Math.cos(angle);
+				nodes[n + 3 + 2 * g] = cy + r * Math.sin(angle);
+			}
+		}
+		return nodes;
+	}
+
+	public void setCharge(int i, double q) {
+		qs[i] = q;
+		version++;
+	}
+
+	// Moves distribution i by (dx, dy) without changing its shape
+	public void translate(int i, double dx, double dy) {
+		int p = i * PARAMS;
+		params[p] += dx;
+		params[p + 1] += dy;
+		if (kinds[i] == Kind.SEGMENT) {
+			params[p + 2] += dx;
+			params[p + 3] += dy;
+		}
+		double[] nodes = arcNodes[i];
+		if (nodes != null) {
+			for (int n = 0; n < nodes.length; n += 2) {
+				nodes[n] += dx;
+				nodes[n + 1] += dy;
+			}
+		}
+		version++;
+	}
+
+	public void remove(int i) {
+		int tail = count - i - 1;
+		if (tail > 0) {
+			System.arraycopy(kinds, i + 1, kinds, i, tail);
+			System.arraycopy(params, (i + 1) * PARAMS, params, i * PARAMS, tail * PARAMS);
+			System.arraycopy(qs, i + 1, qs, i, tail);
+			System.arraycopy(arcNodes, i + 1, arcNodes, i, tail);
+		}
+		arcNodes[count - 1] = null;
+		kinds[--count] = null;
+		version++;
+	}
+
+	public void clear() {
+		Arrays.fill(kinds, 0, count, null);
+		Arrays.fill(arcNodes, 0, count, null);
+		count = 0;
+		version++;
+	}
+
+	// Replaces every distribution with a copy of other's
+	public void setAll(ChargeDistributions other) {
+		kinds = Arrays.copyOf(other.kinds, Math.max(1, other.count));
+		params = Arrays.copyOf(other.params, Math.max(1, other.count) * PARAMS);
+		qs = Arrays.copyOf(other.qs, Math.max(1, other.count));
+		arcNodes = new double[Math.max(1, other.count)][];
+		for (int i = 0; i < other.count; i++) {
+			arcNodes[i] = other.arcNodes[i] == null ? null : other.arcNodes[i].clone(); // translate edits them
+		}
+		count = other.count;
+		version++;
+	}
+
+	public ChargeDistributions copy() {
+		ChargeDistributions copy = new ChargeDistributions();
+		copy.setAll(this);
+		copy.version = version;
+		return copy;
+	}
+
+	// Point the distribution is drawn around and its force is shown at: the
+	// middle of a segment or arc, the centre of a ring or sheet
+	public double centreX(int i) {
+		int p = i * PARAMS;
+		switch (kinds[i]) {
+		case SEGMENT:
+			return (params[p] + params[p + 2]) / 2;
+		case ARC:
+			return Math.abs(params[p + 4]) >= 2 * Math.PI ? params[p]
+					: params[p] + params[p + 2] * Math.cos(params[p + 3] + params[p + 4] / 2);
+		default:
+			return params[p];
+		}
+	}
+
+	public double centreY(int i) {
+		int p = i * PARAMS;
+		switch (kinds[i]) {
+		case SEGMENT:
+			return (params[p + 1] + params[p + 3]) / 2;
+		case ARC:
+			return Math.abs(params[p + 4]) >= 2 * Math.PI ? params[p + 1]
+					: params[p + 1] + params[p + 2] * Math.sin(params[p + 3] + params[p + 4] / 2);
+		default:
+			return params[p + 1];
+		}
+	}
+
+	// Adds the field of every distribution but skip (-1 for none) at (x, y)
+	// to out[0], out[1]
+	public void addField(double x, double y, double[] out, int skip) {
+		for (int i = 0; i < count; i++) {
+			if (i != skip) {
+				evaluate(i, x, y, out, false);
+			}
+		}
+	}
+
+	// Adds the field at (x, y) to out[0], out[1] and returns the potential
+	public double addFieldAndPotential(double x, double y, double[] out) {
+		double v = 0;
+		for (int i = 0; i < count; i++) {
+			v += evaluate(i, x, y, out, true);
+		}
+		return v;
+	}
+
+	public double potential(double x, double y) {
+		double v = 0;
+		for (int i = 0; i < count; i++) {
+			v += evaluate(i, x, y, null, true);
+		}
+		return v;
+	}
+
+	// Adds distribution i's field at (x, y) to out, unless out is null, and
+	// returns its potential, or 0 unless withPotential
+	private double evaluate(int i, double x, double y, double[] out, boolean withPotential) {
+		int p = i * PARAMS;
+		switch (kinds[i]) {
+		case SEGMENT:
+			return segment(params[p], params[p + 1], params[p + 2], params[p + 3], qs[i], x, y, out, withPotential);
+		case ARC:
+			if (arcNodes[i] == null) {
+				return ring(params[p], params[p + 1], params[p + 2], qs[i], x, y, out, withPotential);
+			}
+			return arc(i, x, y, out, withPotential);
+		default:
+			return sheet(params[p], params[p + 1], params[p + 2], params[p + 3], params[p + 4], qs[i], x, y, out,
+					withPotential);
+		}
+	}
+
+	// Segment from (x1, y1) to (x2, y2) in closed form. Along the segment's
+	// direction t the field is K lambda (1 / r2 - 1 / r1), across it (normal
+	// n) K lambda (a2 / r2 - a1 / r1) / h, where h is the point's distance
+	// from the segment's line and a1, a2 the ends' positions along it
+	// relative to the foot of the perpendicular; the potential is K lambda
+	// times the edge integral. Alongside the segment h is clamped at
+	// MIN_DIST and the normal field fades linearly to 0 on it; beyond its
+	// ends the normal term is rearranged so it does not cancel as h -> 0.
+	private static double segment(double x1, double y1, double x2, double y2, double q, double x, double y,
+			double[] out, boolean withPotential) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double length = Math.sqrt(dx * dx + dy * dy);
+		double tx = dx / length;
+		double ty = dy / length;
+		double px = x - x1;
+		double py = y - y1;
+		double along = px * tx + py * ty;
+		double h = px * -ty + py * tx; // Signed, along n = (-ty, tx)
+		double a1 = -along;
+		double a2 = length - along;
+		boolean beside = a1 <= 0 && a2 >= 0;
+		double h2 = beside ? Math.max(h * h, MIN_DIST * MIN_DIST) : h * h;
+		double kLambda = FieldEngine.K * q / length;
+		if (out != null) {
+			double r1 = Math.sqrt(Math.max(a1 * a1 + h2, MIN_DIST * MIN_DIST));
+			double r2 = Math.sqrt(Math.max(a2 * a2 + h2, MIN_DIST * MIN_DIST));
+			double et = kLambda * (1 / r2 - 1 / r1);
+			double en = beside ? kLambda * h * (a2 / r2 - a1 / r1) / h2
+					: kLambda * h * (a2 * a2 - a1 * a1) / (r1 * r2 * (a2 * r1 + a1 * r2));
+			out[0] += et * tx - en * ty;
+			out[1] += et * ty + en * tx;
+		}
+		return withPotential ? kLambda * edge(h, a1, a2) : 0;
+	}
+
+	// Full ring of radius R around (cx, cy) in closed form, with the complete
+	// elliptic integrals K(m) and E(m) of m = 4 R rho / (R + rho)^2, rho the
+	// point's distance from the centre:
+	//
+	//   V     = 2 K q K(m) / (pi (R + rho))
+	//   E_rho = K q (K(m) - (R + rho) / (R - rho) E(m)) / (pi rho (R + rho))
+	//
+	// Both integrals come from one arithmetic-geometric mean, a few square
+	// roots. Within MIN_DIST of the ring rho is held MIN_DIST away and the
+	// radial field fades linearly to 0 on it, as for segments.
+	private static double ring(double cx, double cy, double r, double q, double x, double y, double[] out,
+			boolean withPotential) {
+		double dx = x - cx;
+		double dy = y - cy;
+		double distance = Math.sqrt(dx * dx + dy * dy);
+		double h = distance - r;
+		double rho = distance;
+		double fade = 1;
+		if (Math.abs(h) < MIN_DIST) {
+			rho = Math.max(0, r + Math.copySign(MIN_DIST, h));
+			fade = Math.abs(h) / MIN_DIST;
+		}
+		if (rho < 1e-9 * r) { // The centre: no field, potential K q / R
+			return withPotential ? FieldEngine.K * q / r : 0;
+		}
+
+		// AGM from a = 1, b = sqrt(1 - m) = |R - rho| / (R + rho); then
+		// K(m) = pi / (2 a), E(m) = K(m) (1 - sum of 2^(n - 1) c_n^2)
+		double a = 1;
+		double b = Math.abs(r - rho) / (r + rho);
+		double sum = 2 * r * rho / ((r + rho) * (r + rho)); // c_0^2 / 2 = m / 2
+		double weight = 0.5;
+		for (int n = 0; n < 32; n++) {
+			double c = (a - b) / 2;
+			double next = (a + b) / 2;
+			b = Math.sqrt(a * b);
+			a = next;
+			weight *= 2;
+			sum += weight * c * c;
+			if (Math.abs(c) <= 1e-16 * a) {
+				break;
+			}
+		}
+		double ellipticK = Math.PI / (2 * a);
+		double ellipticE = ellipticK * (1 - sum);
+		if (out != null && distance > 0) {
+			double field = FieldEngine.K * q * (ellipticK - (r + rho) / (r - rho) * ellipticE)
+					/ (Math.PI * rho * (r + rho)) * fade;
+			out[0] += field * dx / distance;
+			out[1] += field * dy / distance;
+		}
+		return withPotential ? 2 * FieldEngine.K * q * ellipticK / (Math.PI * (r + rho)) : 0;
+	}
+
+	// Arc short of a full turn by 4-point Gauss-Legendre panels: the cached
+	// top-level panels where the point is further from a panel's middle than
+	// the panel is long, arcPanel's halves of the others
+	private double arc(int i, double x, double y, double[] out, boolean withPotential) {
+		int p = i * PARAMS;
+		double[] nodes = arcNodes[i];
+		int panels = nodes.length / NODE_STRIDE;
+		double step = params[p + 4] / panels;
+		double lambda = qs[i] / params[p + 4]; // Per radian, signed like the sweep
+		double length = params[p + 2] * step;
+		double v = 0;
+		for (int k = 0; k < panels; k++) {
+			int n = k * NODE_STRIDE;
+			double dx = x - nodes[n];
+			double dy = y - nodes[n + 1];
+			if (length * length > dx * dx + dy * dy) {
+				double a = params[p + 3] + k * step;
+				v += arcPanel(params[p], params[p + 1], params[p + 2], a, a + step / 2, lambda, x, y, out,
+						withPotential, 1)
+						+ arcPanel(params[p], params[p + 1], params[p + 2], a + step / 2, a + step, lambda, x, y, out,
+								withPotential, 1);
+				continue;
+			}
+			double ex = 0, ey = 0, sum = 0;
+			for (int g = 0; g < GAUSS_NODES.length; g++) {
+				double nx = x - nodes[n + 2 + 2 * g];
+				double ny = y - nodes[n + 3 + 2 * g];
+				double invDist = 1.0 / Math.sqrt(Math.max(nx * nx + ny * ny, MIN_DIST * MIN_DIST));
+				double dq = GAUSS_WEIGHTS[g] * invDist;
+				double s = dq * invDist * invDist;
+				ex += s * nx;
+				ey += s * ny;
+				sum += dq;
+			}
+			double scale = FieldEngine.K * lambda * step / 2;
+			if (out != null) {
+				out[0] += scale * ex;
+				out[1] += scale * ey;
+			}
+			v += scale * sum;
+		}
+		return withPotential ? v : 0;
+	}
+
+	// Arc of radius r around (cx, cy) from angle a to b, lambda Coulombs per
+	// radian, by 4-point Gauss-Legendre. A panel longer than its middle's
+	// distance to the point is halved instead, up to MAX_DEPTH times.
+	private static double arcPanel(double cx, double cy, double r, double a, double b, double lambda, double x,
+			double y, double[] out, boolean withPotential, int depth) {
+		double mid = (a + b) / 2;
+		double half = (b - a) / 2;
+		double mx = x - cx - r * Math.cos(mid);
+		double my = y - cy - r * Math.sin(mid);
+		if (depth < MAX_DEPTH && 4 * half * half * r * r > mx * mx + my * my) {
+			return arcPanel(cx, cy, r, a, mid, lambda, x, y, out, withPotential, depth + 1)
+					+ arcPanel(cx, cy, r, mid, b, lambda, x, y, out, withPotential, depth + 1);
+		}
+		double ex = 0, ey = 0, v = 0;
+		for (int k = 0; k < GAUSS_NODES.length; k++) {
+			double angle = mid + half * GAUSS_NODES[k];
+			double dx = x - cx - r * Math.cos(angle);
+			double dy = y - cy - r * Math.sin(angle);
+			double distSquared = Math.max(dx * dx + dy * dy, MIN_DIST * MIN_DIST);
+			double invDist = 1.0 / Math.sqrt(distSquared);
+			double dq = GAUSS_WEIGHTS[k] * invDist;
+			double s = dq * invDist * invDist;
+			ex += s * dx;
+			ey += s * dy;
+			v += dq;
+		}
+		double scale = FieldEngine.K * lambda * half;
+		if (out != null) {
+			out[0] += scale * ex;
+			out[1] += scale * ey;
+		}
+		return withPotential ? scale * v : 0;
+	}
+
+	// Rectangle of width w and height h centred on (cx, cy), turned by angle,
+	// in closed form. In the sheet's frame, with u and v the corner's offsets
+	// from the point, the field in x is K sigma times the difference of the
+	// edge integrals along the two sides at u1 and u2, likewise in y, and the
+	// potential the double difference over the corners of
+	// K sigma (u asinh(v / |u|) + v asinh(u / |v|)).
+	private static double sheet(double cx, double cy, double w, double h, double angle, double q, double x, double y,
+			double[] out, boolean withPotential) {
+		double cos = Math.cos(angle);
+		double sin = Math.sin(angle);
+		double dx = x - cx;
+		double dy = y - cy;
+		double lx = dx * cos + dy * sin; // Point in the sheet's frame
+		double ly = -dx * sin + dy * cos;
+		double u1 = -w / 2 - lx, u2 = w / 2 - lx;
+		double v1 = -h / 2 - ly, v2 = h / 2 - ly;
+		double kSigma = FieldEngine.K * q / (w * h);
+		if (out != null) {
+			double ex = kSigma * (edge(u2, v1, v2) - edge(u1, v1, v2));
+			double ey = kSigma * (edge(v2, u1, u2) - edge(v1, u1, u2));
+			out[0] += ex * cos - ey * sin;
+			out[1] += ex * sin + ey * cos;
+		}
+		if (!withPotential) {
+			return 0;
+		}
+		return kSigma * (corner(u2, v2) - corner(u2, v1) - corner(u1, v2) + corner(u1, v1));
+	}
+
+	// Antiderivative of 1 / r over a corner's offsets, less terms that cancel
+	// in the double difference
+	private static double corner(double u, double v) {
+		double value = 0;
+		if (u != 0) {
+			value += u * asinh(v / Math.abs(u));
+		}
+		if (v != 0) {
+			value += v * asinh(u / Math.abs(v));
+		}
+		return value;
+	}
+
+	// Integral of 1 / r along a line at distance |u| from the point, from a
+	// to b (a <= b) measured from the foot of the perpendicular:
+	// asinh(b / |u|) - asinh(a / |u|). Written as one logarithm when both
+	// ends lie on the same side, which stays exact as u -> 0; alongside the
+	// line, where it diverges as u -> 0, |u| is clamped at MIN_DIST.
+	static double edge(double u, double a, double b) {
+		if (a >= 0) {
+			return Math.log((b + Math.sqrt(Math.max(u * u + b * b, MIN_DIST * MIN_DIST)))
+					/ (a + Math.sqrt(Math.max(u * u + a * a, MIN_DIST * MIN_DIST))));
+		}
+		if (b <= 0) {
+			return Math.log((-a + Math.sqrt(Math.max(u * u + a * a, MIN_DIST * MIN_DIST)))
+					/ (-b + Math.sqrt(Math.max(u * u + b * b, MIN_DIST * MIN_DIST))));
+		}
+		double au = Math.max(Math.abs(u), MIN_DIST);
+		return asinh(b / au) - asinh(a / au);
+	}
+
+	static double asinh(double x) {
+		double a = Math.abs(x);
+		return Math.copySign(Math.log(a + Math.sqrt(a * a + 1)), x);
+	}
+
+	// Distance from (x, y) to distribution i, 0 on or inside it
+	public double distance(int i, double x, double y) {
+		int p = i * PARAMS;
+		switch (kinds[i]) {
+		case SEGMENT: {
+			double dx = params[p + 2] - params[p];
+			double dy = params[p + 3] - params[p + 1];
+			double t = ((x - params[p]) * dx + (y - params[p + 1]) * dy) / (dx * dx + dy * dy);
+			t = Math.max(0, Math.min(1, t));
+			return Math.hypot(x - params[p] - t * dx, y - params[p + 1] - t * dy);
+		}
+		case ARC: {
+			double dx = x - params[p];
+			double dy = y - params[p + 1];
+			double r = params[p + 2];
+			double start = params[p + 3];
+			double sweep = params[p + 4];
+			double offset = Math.atan2(dy, dx) - Math.min(start, start + sweep);
+			offset -= 2 * Math.PI * Math.floor(offset / (2 * Math.PI));
+			if (offset <= Math.abs(sweep)) {
+				return Math.abs(Math.hypot(dx, dy) - r);
+			}
+			double end = start + sweep;
+			return Math.min(Math.hypot(dx - r * Math.cos(start), dy - r * Math.sin(start)),
+					Math.hypot(dx - r * Math.cos(end), dy - r * Math.sin(end)));
+		}
+		default: {
+			double cos = Math.cos(params[p + 4]);
+			double sin = Math.sin(params[p + 4]);
+			double dx = x - params[p];
+			double dy = y - params[p + 1];
+			double outX = Math.max(0, Math.abs(dx * cos + dy * sin) - params[p + 2] / 2);
+			double outY = Math.max(0, Math.abs(-dx * sin + dy * cos) - params[p + 3] / 2);
+			return Math.hypot(outX, outY);
+		}
+		}
+	}
+
+	// Index of the distribution nearest to (x, y) no further than radius
+	// away, or -1
+	public int nearestWithin(double x, double y, double radius) {
+		int nearest = -1;
+		double best = radius;
+		for (int i = 0; i < count; i++) {
+			double d = distance(i, x, y);
+			if (d <= best) {
+				best = d;
+				nearest = i;
+			}
+		}
+		return nearest;
+	}
+
+	// Axis-aligned bounds of distribution i into out: min x, min y, max x,
+	// max y
+	public void bounds(int i, double[] out) {
+		int p = i * PARAMS;
+		switch (kinds[i]) {
+		case SEGMENT:
+			out[0] = Math.min(params[p], params[p + 2]);
+			out[1] = Math.min(params[p + 1], params[p + 3]);
+			out[2] = Math.max(params[p], params[p + 2]);
+			out[3] = Math.max(params[p + 1], params[p + 3]);
+			break;
+		case ARC: // The whole circle; tight enough for the few callers
+			out[0] = params[p] - params[p + 2];
+			out[1] = params[p + 1] - params[p + 2];
+			out[2] = params[p] + params[p + 2];
+			out[3] = params[p + 1] + params[p + 2];
+			break;
+		default:
+			double cos = Math.abs(Math.cos(params[p + 4]));
+			double sin = Math.abs(Math.sin(params[p + 4]));
+			double halfX = (params[p + 2] * cos + params[p + 3] * sin) / 2;
+			double halfY = (params[p + 2] * sin + params[p + 3] * cos) / 2;
+			out[0] = params[p] - halfX;
+			out[1] = params[p + 1] - halfY;
+			out[2] = params[p] + halfX;
+			out[3] = params[p + 1] + halfY;
+			break;
+		}
+	}
+
+	// Length of the outline at distance offset around distribution i, along
+	// which seed points are spread: a stadium around a segment, the two
+	// sides of an arc joined by half circles at its ends, a rectangle with
+	// rounded corners around a sheet
+	public double outlineLength(int i, double offset) {
+		int p = i * PARAMS;
+		switch (kinds[i]) {
+		case SEGMENT:
+			return 2 * Math.hypot(params[p + 2] - params[p], params[p + 3] - params[p + 1]) + 2 * Math.PI * offset;
+		case ARC:
+			double sweep = Math.abs(params[p + 4]);
+			double sides = sweep * (params[p + 2] + offset + Math.max(0, params[p + 2] - offset));
+			return sweep >= 2 * Math.PI ? sides : sides + 2 * Math.PI * offset;
+		default:
+			return 2 * (params[p + 2] + params[p + 3]) + 2 * Math.PI * offset;
+		}
+	}
+
+	// Point at arc length s (0 <= s < outlineLength) along the outline at
+	// distance offset around distribution i, into out[0], out[1]
+	public void outlinePoint(int i, double offset, double s, double[] out) {
+		int p = i * PARAMS;
+		switch (kinds[i]) {
+		case SEGMENT: {
+			double x1 = params[p], y1 = params[p + 1];
+			double dx = params[p + 2] - x1, dy = params[p + 3] - y1;
+			double length = Math.hypot(dx, dy);
+			double base = Math.atan2(dy, dx);
+			double cap = Math.PI * offset;
+			if (s < length) { // Side to the right of the direction, A to B
+				stadium(x1 + dx * s / length, y1 + dy * s / length, base - Math.PI / 2, offset, out);
+			} else if (s < length + cap) { // Around B
+				stadium(x1 + dx, y1 + dy, base - Math.PI / 2 + (s - length) / offset, offset, out);
+			} else if (s < 2 * length + cap) { // Back, B to A
+				double t = (s - length - cap) / length;
+				stadium(x1 + dx * (1 - t), y1 + dy * (1 - t), base + Math.PI / 2, offset, out);
+			} else { // Around A
+				stadium(x1, y1, base + Math.PI / 2 + (s - 2 * length - cap) / offset, offset, out);
+			}
+			break;
+		}
+		case ARC: {
+			double cx = params[p], cy = params[p + 1], r = params[p + 2];
+			double start = Math.min(params[p + 3], params[p + 3] + params[p + 4]);
+			double sweep = Math.abs(params[p + 4]);
+			double outer = r + offset;
+			double inner = Math.max(0, r - offset);
+			boolean ring = sweep >= 2 * Math.PI;
+			double cap = ring ? 0 : Math.PI * offset;
+			if (s < sweep * outer) {
+				stadium(cx, cy, start + s / outer, outer, out);
+			} else if (s < sweep * outer + cap) { // Around the far end
+				double end = start + sweep;
+				stadium(cx + r * Math.cos(end), cy + r * Math.sin(end), end + (s - sweep * outer) / offset, offset,
+						out);
+			} else if (s < sweep * (outer + inner) + cap) { // Inner side, backwards
+				stadium(cx, cy, start + sweep - (s - sweep * outer - cap) / inner, inner, out);
+			} else { // Around the start
+				stadium(cx + r * Math.cos(start), cy + r * Math.sin(start),
+						start + Math.PI + (s - sweep * (outer + inner) - cap) / offset, offset, out);
+			}
+			break;
+		}
+		default: {
+			double w = params[p + 2], h = params[p + 3];
+			double cos = Math.cos(params[p + 4]), sin = Math.sin(params[p + 4]);
+			double quarter = Math.PI / 2 * offset;
+			double lx, ly; // In the sheet's frame: bottom, right, top and left sides, corners in between
+			if (s < w) {
+				lx = -w / 2 + s;
+				ly = h / 2 + offset;
+			} else if (s < w + quarter) {
+				double a = Math.PI / 2 - (s - w) / offset;
+				lx = w / 2 + offset * Math.cos(a);
+				ly = h / 2 + offset * Math.sin(a);
+			} else if (s < w + quarter + h) {
+				lx = w / 2 + offset;
+				ly = h / 2 - (s - w - quarter);
+			} else if (s < w + 2 * quarter + h) {
+				double a = -(s - w - quarter - h) / offset;
+				lx = w / 2 + offset * Math.cos(a);
+				ly = -h / 2 + offset * Math.sin(a);
+			} else if (s < 2 * w + 2 * quarter + h) {
+				lx = w / 2 - (s - w - 2 * quarter - h);
+				ly = -h / 2 - offset;
+			} else if (s < 2 * w + 3 * quarter + h) {
+				double a = -Math.PI / 2 - (s - 2 * w - 2 * quarter - h) / offset;
+				lx = -w / 2 + offset * Math.cos(a);
+				ly = -h / 2 + offset * Math.sin(a);
+			} else if (s < 2 * w + 3 * quarter + 2 * h) {
+				lx = -w / 2 - offset;
+				ly = -h / 2 + (s - 2 * w - 3 * quarter - h);
+			} else {
+				double a = Math.PI - (s - 2 * w - 3 * quarter - 2 * h) / offset;
+				lx = -w / 2 + offset * Math.cos(a);
+				ly = h / 2 + offset * Math.sin(a);
+			}
+			out[0] = params[p] + lx * cos - ly * sin;
+			out[1] = params[p + 1] + lx * sin + ly * cos;
+			break;
+		}
+		}
+	}
+
+	private static void stadium(double x, double y, double angle, double radius, double[] out) {
+		out[0] = x + radius * Math.cos(angle);
+		out[1] = y + radius * Math.sin(angle);
+	}
+
+	// Net force on distribution i from the engine's point charges and the
+	// other distributions: out[0] = Fx, out[1] = Fy. The field is integrated
+	// over the distribution with Gauss-Legendre panels, FORCE_PANELS per side.
+	// Like the mutators, call from one thread at a time.
+	public void forceOn(int i, FieldEngine engine, double[] out) {
+		double[] e = fieldScratch;
+		double fx = 0, fy = 0;
+		int p = i * PARAMS;
+		int n = FORCE_PANELS * GAUSS_NODES.length;
+		switch (kinds[i]) {
+		case SEGMENT:
+			for (int k = 0; k < n; k++) {
+				double t = gaussPoint(k);
+				double w = gaussWeight(k);
+				externalField(engine, i, params[p] + t * (params[p + 2] - params[p]),
+						params[p + 1] + t * (params[p + 3] - params[p + 1]), e);
+				fx += w * e[0];
+				fy += w * e[1];
+			}
+			break;
+		case ARC:
+			for (int k = 0; k < n; k++) {
+				double angle = params[p + 3] + gaussPoint(k) * params[p + 4];
+				double w = gaussWeight(k);
+				externalField(engine, i, params[p] + params[p + 2] * Math.cos(angle),
+						params[p + 1] + params[p + 2] * Math.sin(angle), e);
+				fx += w * e[0];
+				fy += w * e[1];
+			}
+			break;
+		default:
+			double cos = Math.cos(params[p + 4]), sin = Math.sin(params[p + 4]);
+			for (int k = 0; k < n; k++) {
+				double lx = (gaussPoint(k) - 0.5) * params[p + 2];
+				for (int j = 0; j < n; j++) {
+					double ly = (gaussPoint(j) - 0.5) * params[p + 3];
+					double w = gaussWeight(k) * gaussWeight(j);
+					externalField(engine, i, params[p] + lx * cos - ly * sin, params[p + 1] + lx * sin + ly * cos, e);
+					fx += w * e[0];
+					fy += w * e[1];
+				}
+			}
+			break;
+		}
+		out[0] = fx * qs[i];
+		out[1] = fy * qs[i];
+	}
+
+	// Node k of FORCE_PANELS Gauss panels over [0, 1], and its weight; the
+	// weights sum to 1
+	private static double gaussPoint(int k) {
+		int panel = k / GAUSS_NODES.length;
+		return (panel + 0.5 + 0.5 * GAUSS_NODES[k % GAUSS_NODES.length]) / FORCE_PANELS;
+	}
+
+	private static double gaussWeight(int k) {
+		return 0.5 * GAUSS_WEIGHTS[k % GAUSS_NODES.length] / FORCE_PANELS;
+	}
+
+	private void externalField(FieldEngine engine, int i, double x, double y, double[] out) {
+		engine.pointField(x, y, out);
+		addField(x, y, out, i);
+	}
+}
@@ -0,0 +1,388 @@
+package electricfield;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Source charges with mass, moving under their mutual Coulomb forces (the
+// N-body mode). Bodies are parallel primitive arrays like ParticleStore and
+// are advanced with kick-drift-kick velocity Verlet, bouncing off the walls.
+//
+// Forces use Plummer softening, K qi qj r / (r^2 + eps^2)^(3/2), instead of
+// the field's clamp at distance 1, so close encounters stay smooth and
+// energy is not pumped in at the clamp edge. Up to treeThreshold bodies the
+// forces are summed pairwise, each pair once (N^2/2) with the reaction
+// applied to the partner: rows are split into tasks of equal pair count,
+// every task accumulates into its own force buffer, and the buffers are then
+// summed in parallel over bodies. Above the threshold a Barnes-Hut tree over
+// the current positions gives each body's field in O(log N).
+public class ChargeDynamics {
+	public static final double DEFAULT_SOFTENING = 1; // Pixels, like the old clamp distance
+	public static final int DEFAULT_TREE_THRESHOLD = 3000; // Measured crossover, roughly
+	static final int MIN_PARALLEL = 256; // Bodies below which the pair sum runs on the caller
+	static final int MIN_CHUNK = 1024; // Bodies per task, tree path and reduction
+
+	double[] x, y, vx, vy; // Position and velocity
+	double[] ax, ay; // Acceleration at the current position
+	double[] q, m; // Charge and mass
+	int count;
+	private boolean accelerationsValid; // False after bodies were added or edited
+
+	private double softening = DEFAULT_SOFTENING;
+	private int treeThreshold = DEFAULT_TREE_THRESHOLD;
+	private double theta = FieldEngine.DEFAULT_THETA;
+
+	private final ForkJoinPool pool;
+	private final FieldEngine treeSource = new FieldEngine(); // Bodies as charges, for the tree path
+	private PairTask[] pairTasks = new PairTask[0];
+	private RangeTask[] rangeTasks = new RangeTask[0];
+	private int taskedCount = -1; // Body count the tasks were laid out for, -1 to redo
+	private BarnesHutTree tree; // Current tree while the tree path runs
+
+	// Throughput: system steps per second, refreshed about twice a second
+	private long totalSteps;
+	private long windowSteps;
+	private long windowStart = System.nanoTime();
+	private volatile double stepsPerSecond;
+
+	public ChargeDynamics() {
+		this(ForkJoinPool.commonPool(), 16);
+	}
+
+	public ChargeDynamics(ForkJoinPool pool, int capacity) {
+		this.pool = pool;
+		capacity = Math.max(1, capacity);
+		x = new double[capacity];
+		y = new double[capacity];
+		vx = new double[capacity];
+		vy = new double[capacity];
+		ax = new double[capacity];
+		ay = new double[capacity];
+		q = new double[capacity];
+		m = new double[capacity];
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public double x(int i) {
+		return x[i];
+	}
+
+	public double y(int i) {
+		return y[i];
+	}
+
+	public double vx(int i) {
+		return vx[i];
+	}
+
+	public double vy(int i) {
+		return vy[i];
+	}
+
+	public double softening() {
+		return softening;
+	}
+
+	// Plummer softening length in pixels, > 0
+	public void setSoftening(double softening) {
+		if (!(softening > 0)) {
+			throw new IllegalArgumentException("softening must be > 0");
+		}
+		this.softening = softening;
+		accelerationsValid = false;
+	}
+
+	public int treeThreshold() {
+		return treeThreshold;
+	}
+
+	// Bodies above which forces come from the Barnes-Hut tree; 0 always uses
+	// the tree, Integer.MAX_VALUE never
+	public void setTreeThreshold(int treeThreshold) {
+		if (treeThreshold < 0) {
+			throw new IllegalArgumentException("treeThreshold must be >= 0");
+		}
+		this.treeThreshold = treeThreshold;
+		taskedCount = -1;
+		accelerationsValid = false;
+	}
+
+	public void setTheta(double theta) {
+		if (theta < 0) {
+			throw new IllegalArgumentException("theta must be >= 0");
+		}
+		this.theta = theta;
+		accelerationsValid = false;
+	}
+
+	public int add(double px, double py, double pvx, double pvy, double charge, double mass) {
+		if (!(mass > 0)) {
+			throw new IllegalArgumentException("mass must be > 0");
+		}
+		if (count == x.length) {
+			int capacity = count * 2;
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+			vx = Arrays.copyOf(vx, capacity);
+			vy = Arrays.copyOf(vy, capacity);
+			ax = Arrays.copyOf(ax, capacity);
+			ay = Arrays.copyOf(ay, capacity);
+			q = Arrays.copyOf(q, capacity);
+			m = Arrays.copyOf(m, capacity);
+		}
+		int i = count++;
+		x[i] = px;
+		y[i] = py;
+		vx[i] = pvx;
+		vy[i] = pvy;
+		q[i] = charge;
+		m[i] = mass;
+		accelerationsValid = false;
+		return i;
+	}
+
+	public void clear() {
+		count = 0;
+		accelerationsValid = false;
+	}
+
+	// Advances every body by subSteps kick-drift-kick steps of dt inside a
+	// width x height box at the origin
+	public void step(double dt, int subSteps, double width, double height) {
+		step(dt, subSteps, 0, 0, width, height);
+	}
+
+	// As above inside the box [minX, maxX] x [minY, maxY], whose walls only
+	// turn back bodies crossing them from inside, as in ParticleStore
+	public void step(double dt, int subSteps, double minX, double minY, double maxX, double maxY) {
+		if (count == 0) {
+			return;
+		}
+		if (!accelerationsValid) {
+			computeAccelerations();
+			accelerationsValid = true;
+		}
+		double half = dt / 2;
+		for (int step = 0; step < subSteps; step++) {
+			for (int i = 0; i < count; i++) {
+				vx[i] += ax[i] * half;
+				vy[i] += ay[i] * half;
+				double px = x[i], py = y[i];
+				x[i] += vx[i] * dt;
+				y[i] += vy[i] * dt;
+
+				// Bounce off the walls, losing some speed
+				if ((x[i] < minX && px >= minX) || (x[i] > maxX && px <= maxX)) {
+					vx[i] *= -ParticleStore.BOUNCE_DAMPING;
+					x[i] = Math.max(minX, Math.min(x[i], maxX));
+				}
+				if ((y[i] < minY && py >= minY) || (y[i] > maxY && py <= maxY)) {
+					vy[i] *= -ParticleStore.BOUNCE_DAMPING;
+					y[i] = Math.max(minY, Math.min(y[i], maxY));
+				}
+			}
+			computeAccelerations();
+			for (int i = 0; i < count; i++) {
+				vx[i] += ax[i] * half;
+				vy[i] += ay[i] * half;
+			}
+		}
+		countSteps(subSteps);
+	}
+
+	// Fills ax/ay from the current positions
+	void computeAccelerations() {
+		layOutTasks();
+		if (count > treeThreshold) {
+			treeSource.adopt(x, y, q, count); // Shares the arrays, the tree copies them
+			tree = new BarnesHutTree(treeSource, theta);
+			runRanges(RangeTask.TREE);
+			tree = null;
+		} else if (pairTasks.length == 1) {
+			pairTasks[0].sumPairs(ax, ay);
+			for (int i = 0; i < count; i++) {
+				ax[i] /= m[i];
+				ay[i] /= m[i];
+			}
+		} else {
+			run(pairTasks);
+			runRanges(RangeTask.REDUCE);
+		}
+	}
+
+	// Splits the pair triangle into tasks of equal pair count and the bodies
+	// into equal ranges, once per body count
+	private void layOutTasks() {
+		if (taskedCount == count) {
+			return;
+		}
+		taskedCount = count;
+		int n = count;
+		int parallelism = pool.getParallelism();
+
+		int chunk = Math.max(MIN_CHUNK, (n + parallelism * 4 - 1) / (parallelism * 4));
+		int chunks = (n + chunk - 1) / chunk;
+		rangeTasks = new RangeTask[chunks];
+		for (int c = 0; c < chunks; c++) {
+			rangeTasks[c] = new RangeTask(c * chunk, Math.min(n, (c + 1) * chunk));
+		}
+
+		if (n > treeThreshold) {
+			pairTasks = new PairTask[0]; // Their force buffers would go unused
+			return;
+		}
+		int tasks = n < MIN_PARALLEL || parallelism == 1 ? 1 : Math.min(parallelism * 2, n / 64);
+		pairTasks = new PairTask[tasks];
+		double totalPairs = (double) n * (n - 1) / 2;
+		int row = 0;
+		for (int t = 0; t < tasks; t++) {
+			int from = row;
+			double target = totalPairs * (t + 1) / tasks;
+			// Pairs in rows [0, r) are r * n - r * (r + 1) / 2
+			while (row < n && (double) (row + 1) * n - (double) (row + 1) * (row + 2) / 2 <= target) {
+				row++;
+			}
+			if (t == tasks - 1) {
+				row = n;
+			}
+			pairTasks[t] = new PairTask(from, row, tasks == 1 ? 0 : n); // A lone task sums into ax/ay
+		}
+	}
+
+	private void runRanges(int mode) {
+		for (RangeTask task : rangeTasks) {
+			task.mode = mode;
+		}
+		run(rangeTasks);
+	}
+
+	private void run(ForkJoinTask<?>[] tasks) {
+		for (ForkJoinTask<?> task : tasks) {
+			task.reinitialize();
+		}
+		if (tasks.length == 1) {
+			tasks[0].invoke();
+		} else if (ForkJoinTask.getPool() == pool) {
+			ForkJoinTask.invokeAll(tasks);
+		} else {
+			pool.invoke(new RecursiveAction() {
+				@Override
+				protected void compute() {
+					invokeAll(tasks);
+				}
+			});
+		}
+	}
+
+	private void countSteps(long steps) {
+		Metrics.countNBodySteps(steps);
+		totalSteps += steps;
+		windowSteps += steps;
+		long now = System.nanoTime();
+		long elapsed = now - windowStart;
+		if (elapsed >= 500_000_000L) {
+			stepsPerSecond = windowSteps * 1e9 / elapsed;
+			windowSteps = 0;
+			windowStart = now;
+		}
+	}
+
+	// Whole-system sub-steps per second over the last half second or so;
+	// times size() for body-steps
+	public double stepsPerSecond() {
+		return stepsPerSecond;
+	}
+
+	public long totalSteps() {
+		return totalSteps;
+	}
+
+	// Forces of the pairs (i, j > i) for rows i in [from, to), into a buffer
+	// of this task's own; only entries from 'from' on are ever touched
+	private class PairTask extends RecursiveAction {
+		final int from, to;
+		final double[] fx, fy;
+
+		PairTask(int from, int to, int n) {
+			this.from = from;
+			this.to = to;
+			fx = new double[n];
+			fy = new double[n];
+		}
+
+		@Override
+		protected void compute() {
+			sumPairs(fx, fy);
+		}
+
+		void sumPairs(double[] fx, double[] fy) {
+			int n = count;
+			double eps2 = softening * softening;
+			Arrays.fill(fx, from, n, 0);
+			Arrays.fill(fy, from, n, 0);
+			for (int i = from; i < to; i++) {
+				double xi = x[i], yi = y[i];
+				double kqi = FieldEngine.K * q[i];
+				double fxi = 0, fyi = 0;
+				for (int j = i + 1; j < n; j++) {
+					double dx = xi - x[j];
+					double dy = yi - y[j];
+					double d2 = dx * dx + dy * dy + eps2;
+					double invDist = 1.0 / Math.sqrt(d2);
+					double s = kqi * q[j] * invDist * invDist * invDist;
+					double sx = s * dx;
+					double sy = s * dy;
+					fxi += sx;
+					fyi += sy;
+					fx[j] -= sx;
+					fy[j] -= sy;
+				}
+				fx[i] += fxi;
+				fy[i] += fyi;
+			}
+		}
+	}
+
+	// Per-body work over [from, to): tree field, or summing the pair buffers
+	private class RangeTask extends RecursiveAction {
+		static final int TREE = 0, REDUCE = 1;
+		final int from, to;
+		int mode;
+		private final double[] fieldOut = new double[2];
+
+		RangeTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (mode == TREE) {
+				double eps2 = softening * softening;
+				for (int i = from; i < to; i++) {
+					tree.softenedField(x[i], y[i], eps2, fieldOut);
+					double qOverM = q[i] / m[i];
+					ax[i] = fieldOut[0] * qOverM;
+					ay[i] = fieldOut[1] * qOverM;
+				}
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				double sx = 0, sy = 0;
+				for (PairTask task : pairTasks) {
+					if (task.from > i) {
+						break; // Later tasks never touch body i
+					}
+					sx += task.fx[i];
+					sy += task.fy[i];
+				}
+				ax[i] = sx / m[i];
+				ay[i] = sy / m[i];
+			}
+		}
+	}
+}
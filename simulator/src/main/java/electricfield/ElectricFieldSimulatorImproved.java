@@ -0,0 +1,1527 @@
+package electricfield;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.text.DecimalFormat;
+import javax.swing.Timer;
+
+public class ElectricFieldSimulatorImproved extends JFrame {
+	private static final int WIDTH = 800;
+	private static final int HEIGHT = 600;
+	private static final int FIELD_LINE_COUNT = 8; // Number of field lines per
+													// charge
+	private static final int PREVIEW_FIELD_LINE_COUNT = 4; // Per charge while dragging
+	private static final int REFINE_DELAY = 150; // Idle ms before a drag preview is refined
+	private static final double DEFAULT_SOURCE_SIZE = 120; // Screen pixels across a newly placed distribution
+	private static final int FIELD_LINE_LENGTH = 100; // Length of field lines
+														// in steps
+	private static final double STEP_SIZE = 5.0; // Step size for field line
+													// calculation
+	private static final double TIME_STEP = 0.01; // Time step for particle
+													// motion simulation
+	private static final long CHARGE_DYNAMICS_REFRESH = 200; // Ms between field refreshes while charges move
+
+	private ArrayList<Charge> charges = new ArrayList<>();
+	private FieldEngine engine = new FieldEngine(); // Mirrors charges, same order
+	private final SceneRenderer renderer = new SceneRenderer(engine); // Grid, vectors, lines, charges
+	private final Viewport viewport = new Viewport(); // Wheel zooms, dragging the background pans
+	private final TileCache tileCache = new TileCache(); // Field layers of the view, see staticLayer
+	private long sceneVersion; // Bumped whenever anything the field depends on changes
+	private final FieldLineTracer fieldLineTracer = new FieldLineTracer(FIELD_LINE_COUNT, FIELD_LINE_LENGTH,
+			STEP_SIZE);
+	private FieldLines fieldLines; // Latest traced lines, only touched on the EDT
+	private final double[] forceOut = new double[2]; // Scratch for force lookups
+	private ArrayList<TestParticle> testParticles = new ArrayList<>(); // List
+																		// to
+																		// hold
+																		// test
+																		// particles
+	private JPanel controlPanel;
+	private JPanel simulationPanel;
+	private JTextField chargeValueField;
+	private JRadioButton positiveButton;
+	private JRadioButton negativeButton;
+	private JComboBox<String> sourceComboBox; // What a click on empty space places
+	private JCheckBox showGridCheckBox;
+	private JCheckBox showVectorsCheckBox;
+	private JCheckBox showEquipotentialsCheckBox;
+	private JComboBox<String> heatmapComboBox;
+	private JTextField contourStepField;
+	private JTextField contourCountField;
+	private JComboBox<String> backendComboBox;
+	private JTextField thetaField;
+	private JTextField meshCellField;
+	private JLabel solverErrorLabel;
+	private JTextField gridCellField;
+	private JCheckBox adaptiveLinesCheckBox;
+	private JLabel lineEvaluationsLabel;
+
+	// Cached static layers and what they were drawn for, see staticLayer
+	private BufferedImage staticLayer;
+	private long staticLayerTiles = -1;
+	private long staticLayerLanded = -1;
+	private long staticLayerMoved = -1;
+	private FieldLines staticLayerLines;
+	private Charge staticLayerSelection;
+	private int staticLayerSource = -1;
+	private int staticLayerLevel, staticLayerPanX, staticLayerPanY;
+
+	// View tiles: the version they are stamped with, what it was made from,
+	// and the painter that draws tiles of that version
+	private long tileVersion;
+	private long tileScene = -1;
+	private long tileSettings = -1;
+	private TileCache.TilePainter tilePainter;
+	private long tilesLanded; // Bumped on the EDT as rendered tiles come in
+	private boolean panning;
+	private int panLastX, panLastY;
+	private JLabel zoomLabel;
+	private JTextField tileCacheField;
+	private JLabel tileCacheLabel;
+
+	// Particle motion controls
+	private JTextField particleChargeField;
+	private JRadioButton particlePositiveButton;
+	private JRadioButton particleNegativeButton;
+	private JTextField particleMassField;
+	private JTextField particleVelocityXField;
+	private JTextField particleVelocityYField;
+	private JButton launchParticleButton;
+	private Timer particleTimer; // Repaints while particles are moving
+	private JTextField subStepsField;
+	private final PhysicsLoop physicsLoop = new PhysicsLoop(TIME_STEP); // Moves particles on its own thread
+	private long particleGeneration; // Matches PhysicsLoop snapshots to testParticles
+	private int launchedParticles; // Store index the next launched particle gets
+	private PhysicsLoop.Snapshot particleSnapshot; // Frame being drawn, see updateParticlesFromPhysics
+	private double particleAlpha; // How far into that frame we are drawing
+	private final PhysicsLoop.TraceConsumer traceConsumer = this::addTracePoint;
+	private JTextField beamCountField;
+	private JTextField trajectoryCapacityField;
+	private int trajectoryCapacity = TrajectoryBuffer.DEFAULT_CAPACITY; // For newly launched particles
+	private JLabel particleThroughputLabel;
+	private long shownParticleRate = -1; // Steps/s particleThroughputLabel shows
+
+	// Charge manipulation variables
+	private Charge selectedCharge = null;
+	private File lastSceneDirectory; // Where scene files were last loaded or saved
+	private boolean isDraggingCharge = false;
+
+	// Continuous distributions (see ChargeDistributions) live in the engine;
+	// one of them can be selected and dragged like a charge, by the offset
+	// from where it was grabbed
+	private int selectedSource = -1;
+	private boolean isDraggingSource;
+	private double sourceGrabX, sourceGrabY; // World coordinates
+
+	// Progressive rendering: drags show a cheap preview (see SceneRenderer's
+	// preview mode and PREVIEW_FIELD_LINE_COUNT) that is refined to full
+	// quality once the mouse has rested for REFINE_DELAY. Drag events are
+	// coalesced so only the latest position is applied per event-queue pass.
+	private boolean previewing;
+	private Timer refineTimer;
+	private boolean dragPending;
+	private double pendingDragX, pendingDragY; // World coordinates
+
+	// Force Calculation Display
+	private JLabel forceMagnitudeLabel;
+	private JLabel forceDirectionLabel;
+	private final DecimalFormat forceFormat = new DecimalFormat("0.##E0");
+	private boolean forceShown; // Labels show shownForceX/Y rather than N/A
+	private double shownForceX, shownForceY;
+
+	// N-body mode: charges move under each other's forces
+	private final ChargeDynamics chargeDynamics = new ChargeDynamics();
+	private boolean chargeDynamicsStale = true; // Charges edited since the bodies were filled
+	private Timer chargeDynamicsTimer;
+	private JCheckBox chargeDynamicsCheckBox;
+	private JTextField chargeMassField;
+	private JTextField softeningField;
+	private JLabel chargeDynamicsLabel;
+	private long shownChargeDynamicsRate = -1; // Steps/s chargeDynamicsLabel shows
+	private long chargesMoved; // Bumped by every N-body frame, see staticLayer
+	private long fieldRefreshedAt; // System.nanoTime() of the last refresh in N-body mode
+
+	// Frame timings and counters, also published over JMX
+	private final PerformanceMonitor performanceMonitor = PerformanceMonitor.register();
+	private JCheckBox performanceOverlayCheckBox;
+	private Timer performanceOverlayTimer; // Keeps the overlay's figures fresh while nothing else repaints
+
+	public ElectricFieldSimulatorImproved() {
+		setTitle("Electric Field Simulator");
+		setSize(WIDTH, HEIGHT);
+		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		setLayout(new BorderLayout());
+		renderer.setViewport(viewport);
+
+		createSimulationPanel();
+		createControlPanel();
+
+		add(simulationPanel, BorderLayout.CENTER);
+		add(new JScrollPane(controlPanel, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
+				ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER), BorderLayout.EAST);
+
+		setVisible(true);
+
+		// Full quality once a drag pauses
+		refineTimer = new Timer(REFINE_DELAY, e -> {
+			previewing = false;
+			simulationPanel.repaint();
+		});
+		refineTimer.setRepeats(false);
+
+		// Steps the moving charges while the N-body mode is on
+		chargeDynamicsTimer = new Timer((int) (TIME_STEP * 1000), e -> stepChargeDynamics());
+
+		// Timer for particle animation; the physics itself runs in physicsLoop
+		particleTimer = new Timer((int) (TIME_STEP * 1000), new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				simulationPanel.repaint();
+			}
+		});
+	}
+
+	// Off-screen image holding everything that does not move between particle
+	// frames: the field layers, composed from view tiles, and over them the
+	// field lines and charges. It is redrawn only when its key (tile version,
+	// tiles landed, field lines, selection, view, panel size) differs from
+	// what it was drawn with. Field lines are kept out of the tiles, so a
+	// trace landing only recomposes this image instead of re-rendering every
+	// tile; likewise charges moving in N-body mode.
+	private BufferedImage staticLayer() {
+		int width = Math.max(1, simulationPanel.getWidth());
+		int height = Math.max(1, simulationPanel.getHeight());
+		renderer.setPreview(previewing);
+		requestFieldLinesIfStale(width, height);
+		long version = tileVersion(width, height);
+		boolean resized = staticLayer == null || staticLayer.getWidth() != width || staticLayer.getHeight() != height;
+		if (!resized && staticLayerTiles == version && staticLayerLanded == tilesLanded && staticLayerMoved == chargesMoved
+				&& staticLayerLines == fieldLines && staticLayerSelection == selectedCharge && staticLayerSource == selectedSource
+				&& staticLayerLevel == viewport.level()
+				&& staticLayerPanX == viewport.panX() && staticLayerPanY == viewport.panY()) {
+			return staticLayer;
+		}
+		if (resized) {
+			GraphicsConfiguration gc = simulationPanel.getGraphicsConfiguration();
+			staticLayer = gc != null ? gc.createCompatibleImage(width, height)
+					: new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		}
+		staticLayerTiles = version;
+		staticLayerLanded = tilesLanded;
+		staticLayerMoved = chargesMoved;
+		staticLayerLines = fieldLines;
+		staticLayerSelection = selectedCharge;
+		staticLayerSource = selectedSource;
+		staticLayerLevel = viewport.level();
+		staticLayerPanX = viewport.panX();
+		staticLayerPanY = viewport.panY();
+
+		Graphics2D g2d = staticLayer.createGraphics();
+		g2d.setColor(simulationPanel.getBackground());
+		g2d.fillRect(0, 0, width, height);
+		tileCache.paint(g2d, viewport, width, height, version, tilePainter,
+				() -> SwingUtilities.invokeLater(this::tileLanded));
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		long t = System.nanoTime();
+		if (fieldLines != null) {
+			renderer.drawFieldLines(g2d, fieldLines);
+			t = Metrics.lap(Metrics.Phase.FIELD_LINES, t);
+		}
+		renderer.drawDistributions(g2d, selectedSource);
+		renderer.drawCharges(g2d, selectedCharge == null ? -1 : selectedCharge.index);
+		Metrics.lap(Metrics.Phase.CHARGES, t);
+		g2d.dispose();
+		tileCacheLabel.setText("Tiles: " + tileCache.size() + " cached (" + (tileCache.bytes() >> 20) + " MB), "
+				+ tileCache.rendered() + " rendered");
+		return staticLayer;
+	}
+
+	// Version stamp for view tiles, moved on whenever what they show changes
+	// (charges, display options). Each version gets a painter that draws from
+	// the renderer's TileLayers for that state, on pool threads: a snapshot of
+	// the engine and of the view grid, patched rather than rebuilt when a
+	// single charge changed. The heatmap keeps the colour scale of the view
+	// the version was made in, so colours hold still while panning and
+	// zooming.
+	private long tileVersion(int width, int height) {
+		if (tilePainter == null || tileScene != sceneVersion || tileSettings != renderer.settingsVersion()) {
+			tileVersion++;
+			tileScene = sceneVersion;
+			tileSettings = renderer.settingsVersion();
+			SceneRenderer.TileLayers layers = renderer.tileLayers(width, height);
+			Color background = simulationPanel.getBackground();
+			tilePainter = (g2d, zoom, originX, originY, size) -> {
+				g2d.setColor(background);
+				g2d.fillRect(0, 0, size, size);
+				layers.paintTile(g2d, zoom, originX, originY, size);
+			};
+		}
+		return tileVersion;
+	}
+
+	private void tileLanded() {
+		tilesLanded++;
+		simulationPanel.repaint();
+	}
+
+	// The view moved; tiles already cached for the new position are reused
+	private void viewChanged() {
+		zoomLabel.setText("Zoom: " + Math.round(viewport.zoom() * 100) + "%");
+		simulationPanel.repaint();
+	}
+
+	private void createSimulationPanel() {
+		simulationPanel = new JPanel() {
+			@Override
+			protected void paintComponent(Graphics g) {
+				long frameStart = System.nanoTime();
+				super.paintComponent(g);
+				Graphics2D g2d = (Graphics2D) g;
+				g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+				// Grid, field vectors, field lines and charges, redrawn only
+				// when they change
+				g2d.drawImage(staticLayer(), 0, 0, null);
+
+				// Draw particle trajectories and particles
+				updateParticlesFromPhysics();
+				long t = System.nanoTime();
+				drawParticleCloud(g2d);
+				t = Metrics.lap(Metrics.Phase.PARTICLES, t);
+				renderer.beginParticles();
+				for (int i = 0; i < testParticles.size(); i++) {
+					TestParticle particle = testParticles.get(i);
+					renderer.addTrajectory(particle.trajectory);
+					renderer.addParticle(particle.x, particle.y, particle.charge);
+				}
+				renderer.endParticles(g2d);
+				Metrics.lap(Metrics.Phase.TRAJECTORIES, t);
+
+				// Draw force vector on selected charge
+				if (selectedCharge != null) {
+					calculateNetForceOnCharge(selectedCharge, forceOut);
+					renderer.drawForce(g2d, selectedCharge.x, selectedCharge.y, forceOut[0], forceOut[1]);
+					displayForceMagnitudeDirection(forceOut[0], forceOut[1]); // Update labels
+				} else if (selectedSource >= 0) { // Drawn from the distribution's centre
+					ChargeDistributions distributions = engine.distributions();
+					distributions.forceOn(selectedSource, engine, forceOut);
+					renderer.drawForce(g2d, distributions.centreX(selectedSource),
+							distributions.centreY(selectedSource), forceOut[0], forceOut[1]);
+					displayForceMagnitudeDirection(forceOut[0], forceOut[1]);
+				} else {
+					clearForceDisplay(); // Clear labels if no charge selected
+				}
+				Metrics.recordFrame(System.nanoTime() - frameStart);
+
+				if (performanceOverlayCheckBox.isSelected()) {
+					performanceMonitor.paintOverlay(g2d, 8, 8);
+				}
+			}
+		};
+
+		simulationPanel.setBackground(Color.WHITE);
+
+		// Mouse Listener for adding and interacting with charges
+		simulationPanel.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (e.getButton() == MouseEvent.BUTTON1) { // Left click - Add
+															// charge/Select
+															// Charge
+					Charge clickedCharge = findChargeAt(e.getX(), e.getY());
+					int clickedSource = clickedCharge == null ? findSourceAt(e.getX(), e.getY()) : -1;
+					if (clickedCharge != null) {
+						selectedCharge = clickedCharge; // Select charge if
+														// clicked on
+					} else if (clickedSource >= 0) {
+						selectedSource = clickedSource;
+					} else if (!isDraggingCharge && selectedCharge == null) { // Add
+																				// new
+																				// charge
+																				// if
+																				// no
+																				// charge
+																				// clicked
+																				// and
+																				// not
+																				// dragging
+						try {
+							double chargeValue = Double.parseDouble(chargeValueField.getText());
+							if (negativeButton.isSelected()) {
+								chargeValue = -chargeValue;
+							}
+							if (sourceComboBox.getSelectedIndex() > 0) {
+								selectedSource = addSource(sourceComboBox.getSelectedIndex(),
+										viewport.worldX(e.getX()), viewport.worldY(e.getY()), chargeValue);
+							} else {
+								Charge charge = new Charge(viewport.worldX(e.getX()), viewport.worldY(e.getY()),
+										chargeValue);
+								charge.mass = chargeMass();
+								addCharge(charge);
+							}
+						} catch (NumberFormatException ex) {
+							JOptionPane.showMessageDialog(null, "Please enter a valid number for charge value.");
+						}
+					}
+					simulationPanel.repaint(); // Repaint to show selection or
+												// new charge
+				} else if (e.getButton() == MouseEvent.BUTTON3) { // Right click
+																	// -
+																	// Edit/Delete
+																	// Charge
+					if (!isDraggingCharge && selectedCharge == null) { // Prevent
+																		// editing
+																		// while
+																		// dragging
+																		// or
+																		// another
+																		// charge
+																		// is
+																		// selected
+						Charge clickedCharge = findChargeAt(e.getX(), e.getY());
+						if (clickedCharge != null) {
+							handleRightClickOnCharge(clickedCharge);
+						} else {
+							int clickedSource = findSourceAt(e.getX(), e.getY());
+							if (clickedSource >= 0) {
+								handleRightClickOnSource(clickedSource);
+							}
+						}
+					}
+				}
+				if (e.getButton() == MouseEvent.BUTTON1 && !isDraggingCharge) {
+					if (findChargeAt(e.getX(), e.getY()) == null) {
+						selectedCharge = null; // Deselect if clicked on
+												// background
+						if (findSourceAt(e.getX(), e.getY()) < 0) {
+							selectedSource = -1;
+						}
+						simulationPanel.repaint();
+					}
+				}
+				isDraggingCharge = false; // Reset drag flag after click action
+				isDraggingSource = false;
+			}
+
+			@Override
+			public void mousePressed(MouseEvent e) {
+				if (e.getButton() == MouseEvent.BUTTON1) { // Left mouse button
+															// press for
+															// dragging
+					selectedCharge = findChargeAt(e.getX(), e.getY());
+					selectedSource = selectedCharge == null ? findSourceAt(e.getX(), e.getY()) : -1;
+					if (selectedCharge != null) {
+						isDraggingCharge = true;
+					} else if (selectedSource >= 0) {
+						isDraggingSource = true;
+						sourceGrabX = viewport.worldX(e.getX());
+						sourceGrabY = viewport.worldY(e.getY());
+					} else { // Dragging the background pans the view
+						panning = true;
+						panLastX = e.getX();
+						panLastY = e.getY();
+					}
+				}
+			}
+
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				if (e.getButton() == MouseEvent.BUTTON1) { // Left mouse button
+															// release - stop
+															// dragging
+					isDraggingCharge = false;
+					isDraggingSource = false;
+					panning = false;
+					refineTimer.stop();
+					previewing = false;
+					simulationPanel.repaint(); // Full quality again
+				}
+			}
+		});
+
+		// Mouse Motion Listener for dragging charges
+		simulationPanel.addMouseMotionListener(new MouseMotionAdapter() {
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				if (panning) {
+					viewport.panBy(e.getX() - panLastX, e.getY() - panLastY);
+					panLastX = e.getX();
+					panLastY = e.getY();
+					viewChanged();
+				} else if ((isDraggingCharge && selectedCharge != null) || (isDraggingSource && selectedSource >= 0)) {
+					previewing = true;
+					refineTimer.restart();
+					pendingDragX = viewport.worldX(e.getX());
+					pendingDragY = viewport.worldY(e.getY());
+					if (!dragPending) {
+						dragPending = true;
+						SwingUtilities.invokeLater(() -> applyPendingDrag());
+					}
+				}
+			}
+		});
+		simulationPanel.addMouseWheelListener(this::zoomAt);
+	}
+
+	// Wheel zooms about the pointer
+	private void zoomAt(MouseWheelEvent e) {
+		if (viewport.zoomAt(e.getX(), e.getY(), -e.getWheelRotation())) {
+			viewChanged();
+		}
+	}
+
+	// Moves the dragged charge or distribution to the last position seen;
+	// drag events that arrived in the meantime only updated that position
+	private void applyPendingDrag() {
+		dragPending = false;
+		if (selectedCharge != null && selectedCharge.index >= 0) {
+			moveCharge(selectedCharge, pendingDragX, pendingDragY);
+			simulationPanel.repaint();
+		} else if (selectedSource >= 0 && selectedSource < engine.distributions().size()) {
+			engine.distributions().translate(selectedSource, pendingDragX - sourceGrabX, pendingDragY - sourceGrabY);
+			sourceGrabX = pendingDragX;
+			sourceGrabY = pendingDragY;
+			sceneChanged();
+			simulationPanel.repaint();
+		}
+	}
+
+	// Charge edits go through these so the field engine stays in step with
+	// the charges list, and each charge knows its index in both. The
+	// renderer's cached field grids are patched with just this charge's
+	// change, where they allow it, instead of being recomputed from every
+	// charge.
+	private void addCharge(Charge charge) {
+		long before = engine.version();
+		charges.add(charge);
+		charge.index = engine.add(charge.x, charge.y, charge.value);
+		renderer.applyDelta(before, 0, 0, 0, charge.x, charge.y, charge.value, false, true);
+		sceneChanged();
+	}
+
+	private void moveCharge(Charge charge, double x, double y) {
+		long before = engine.version();
+		double oldX = charge.x;
+		double oldY = charge.y;
+		charge.x = x;
+		charge.y = y;
+		engine.move(charge.index, x, y);
+		renderer.applyDelta(before, oldX, oldY, charge.value, x, y, charge.value, true, true);
+		sceneChanged();
+	}
+
+	private void setChargeValue(Charge charge, double value) {
+		long before = engine.version();
+		double oldValue = charge.value;
+		charge.value = value;
+		engine.setCharge(charge.index, value);
+		renderer.applyDelta(before, charge.x, charge.y, oldValue, charge.x, charge.y, value, true, true);
+		sceneChanged();
+	}
+
+	private void removeCharge(Charge charge) {
+		int index = charge.index;
+		if (index >= 0) {
+			long before = engine.version();
+			charges.remove(index);
+			engine.remove(index);
+			charge.index = -1;
+			for (int i = index; i < charges.size(); i++) {
+				charges.get(i).index = i; // Shifted down like the engine's
+			}
+			renderer.applyDelta(before, charge.x, charge.y, charge.value, 0, 0, 0, true, false);
+			sceneChanged();
+		}
+	}
+
+	private void applyContourLevels() {
+		try {
+			double step = Double.parseDouble(contourStepField.getText());
+			int count = Integer.parseInt(contourCountField.getText());
+			if (step <= 0 || count < 0) {
+				throw new NumberFormatException();
+			}
+			renderer.setContourLevels(Equipotentials.evenLevels(step, count));
+			simulationPanel.repaint();
+		} catch (NumberFormatException ex) {
+			JOptionPane.showMessageDialog(this,
+					"Please enter a positive contour step and a non-negative number of levels.");
+		}
+	}
+
+	private void clearCharges() {
+		for (Charge charge : charges) {
+			charge.index = -1;
+		}
+		charges.clear();
+		engine.clear(); // Distributions too
+		selectedSource = -1;
+		sceneChanged();
+	}
+
+	// Places a distribution of total charge q centred on world point (x, y),
+	// sized so it looks the same at any zoom: kind is the source combo's
+	// index (1 segment, 2 ring, 3 arc, 4 sheet). Distribution edits change
+	// the engine's version, so the field grid rebuilds rather than patching.
+	private int addSource(int kind, double x, double y, double q) {
+		ChargeDistributions distributions = engine.distributions();
+		double size = DEFAULT_SOURCE_SIZE / viewport.zoom();
+		int index;
+		switch (kind) {
+		case 1:
+			index = distributions.addSegment(x - size / 2, y, x + size / 2, y, q);
+			break;
+		case 2:
+			index = distributions.addRing(x, y, size / 2, q);
+			break;
+		case 3: // Upper half ring, opening downwards
+			index = distributions.addArc(x, y, size / 2, Math.PI, Math.PI, q);
+			break;
+		default:
+			index = distributions.addSheet(x, y, size, size / 5, 0, q);
+			break;
+		}
+		sceneChanged();
+		return index;
+	}
+
+	// Anything cached from the field is now stale: lines still being traced
+	// are abandoned right away, and the particles should move in the new field
+	private void sceneChanged() {
+		chargeDynamicsStale = true;
+		fieldChanged();
+	}
+
+	// As sceneChanged, for charges that moved on their own
+	private void fieldChanged() {
+		sceneVersion++;
+		fieldLineTracer.cancel();
+		physicsLoop.setField(engine.snapshot());
+	}
+
+	// Charge under screen point (x, y), the closest one where charges
+	// overlap. Charges are drawn the same size at every zoom.
+	private Charge findChargeAt(int x, int y) {
+		int i = engine.nearestWithin(viewport.worldX(x), viewport.worldY(y), Charge.RADIUS / viewport.zoom());
+		return i < 0 ? null : charges.get(i);
+	}
+
+	// Index of the distribution under screen point (x, y), or -1
+	private int findSourceAt(int x, int y) {
+		return engine.distributions().nearestWithin(viewport.worldX(x), viewport.worldY(y),
+				Charge.RADIUS / viewport.zoom());
+	}
+
+	private void handleRightClickOnSource(int index) {
+		ChargeDistributions distributions = engine.distributions();
+		String[] options = { "Edit Charge", "Delete", "Cancel" };
+		int choice = JOptionPane.showOptionDialog(this, "Select action for the distribution:", "Distribution Options",
+				JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+
+		if (choice == 0) { // Edit Charge
+			String newValueStr = JOptionPane.showInputDialog(this, "Enter new total charge (C):",
+					distributions.charge(index));
+			if (newValueStr != null) {
+				try {
+					distributions.setCharge(index, Double.parseDouble(newValueStr));
+					sceneChanged();
+					simulationPanel.repaint();
+				} catch (NumberFormatException e) {
+					JOptionPane.showMessageDialog(this, "Invalid charge value entered.");
+				}
+			}
+		} else if (choice == 1) { // Delete
+			distributions.remove(index);
+			selectedSource = -1;
+			sceneChanged();
+			simulationPanel.repaint();
+		}
+	}
+
+	private void handleRightClickOnCharge(Charge clickedCharge) {
+		String[] options = { "Edit Value", "Delete", "Cancel" };
+		int choice = JOptionPane.showOptionDialog(this, "Select action for the charge:", "Charge Options",
+				JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+
+		if (choice == 0) { // Edit Value
+			String newValueStr = JOptionPane.showInputDialog(this, "Enter new charge value (C):", clickedCharge.value);
+			if (newValueStr != null) {
+				try {
+					double newValue = Double.parseDouble(newValueStr);
+					setChargeValue(clickedCharge, newValue);
+					simulationPanel.repaint();
+				} catch (NumberFormatException e) {
+					JOptionPane.showMessageDialog(this, "Invalid charge value entered.");
+				}
+			}
+		} else if (choice == 1) { // Delete
+			removeCharge(clickedCharge);
+			selectedCharge = null; // Deselect if deleted
+			simulationPanel.repaint();
+		} // choice == 2 (Cancel) does nothing
+	}
+
+	private void createControlPanel() {
+		// Fixed width for the particle controls; the height is whatever the
+		// controls need, so the scroll pane around it can scroll
+		controlPanel = new JPanel() {
+			@Override
+			public Dimension getPreferredSize() {
+				return new Dimension(250, super.getPreferredSize().height);
+			}
+		};
+		controlPanel.setLayout(new BoxLayout(controlPanel, BoxLayout.Y_AXIS));
+		controlPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+		// --- Charge Controls ---
+		controlPanel.add(new JLabel("--- Charge Settings ---"));
+
+		// Charge value input
+		JPanel chargePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		chargePanel.add(new JLabel("Charge Value (C):"));
+		controlPanel.add(chargePanel);
+
+		chargeValueField = new JTextField("1.0e-9", 10);
+		JPanel fieldPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		fieldPanel.add(chargeValueField);
+		controlPanel.add(fieldPanel);
+
+		// Radio buttons for charge sign
+		ButtonGroup chargeGroup = new ButtonGroup();
+		positiveButton = new JRadioButton("Positive", true);
+		negativeButton = new JRadioButton("Negative");
+		chargeGroup.add(positiveButton);
+		chargeGroup.add(negativeButton);
+
+		JPanel radioPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		radioPanel.add(positiveButton);
+		radioPanel.add(negativeButton);
+		controlPanel.add(radioPanel);
+
+		// What clicking empty space places; the charge above is the total
+		JPanel sourcePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		sourcePanel.add(new JLabel("Source:"));
+		sourceComboBox = new JComboBox<>(new String[] { "Point Charge", "Line Segment", "Ring", "Arc", "Sheet" });
+		sourcePanel.add(sourceComboBox);
+		controlPanel.add(sourcePanel);
+
+		// Mass of new charges, used by the N-body mode
+		JPanel chargeMassPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		chargeMassPanel.add(new JLabel("Charge Mass (kg):"));
+		chargeMassField = new JTextField(String.valueOf(Charge.DEFAULT_MASS), 8);
+		chargeMassPanel.add(chargeMassField);
+		controlPanel.add(chargeMassPanel);
+
+		// --- Display Options ---
+		controlPanel.add(Box.createVerticalStrut(10));
+		controlPanel.add(new JLabel("--- Display Options ---"));
+
+		// Checkboxes for display options
+		showGridCheckBox = new JCheckBox("Show Grid", renderer.showGrid());
+		showGridCheckBox.addActionListener(e -> {
+			renderer.setShowGrid(showGridCheckBox.isSelected());
+			simulationPanel.repaint();
+		});
+
+		showVectorsCheckBox = new JCheckBox("Show Field Vectors", renderer.showVectors());
+		showVectorsCheckBox.addActionListener(e -> {
+			renderer.setShowVectors(showVectorsCheckBox.isSelected());
+			simulationPanel.repaint();
+		});
+
+		showEquipotentialsCheckBox = new JCheckBox("Show Equipotentials", renderer.showEquipotentials());
+		showEquipotentialsCheckBox.addActionListener(e -> {
+			renderer.setShowEquipotentials(showEquipotentialsCheckBox.isSelected());
+			simulationPanel.repaint();
+		});
+
+		JPanel checkBoxPanel = new JPanel();
+		checkBoxPanel.setLayout(new BoxLayout(checkBoxPanel, BoxLayout.Y_AXIS));
+		checkBoxPanel.add(showGridCheckBox);
+		checkBoxPanel.add(showVectorsCheckBox);
+		checkBoxPanel.add(showEquipotentialsCheckBox);
+		controlPanel.add(checkBoxPanel);
+
+		// Frame timing overlay, refreshed twice a second while shown
+		performanceOverlayTimer = new Timer(500, e -> simulationPanel.repaint());
+		performanceOverlayCheckBox = new JCheckBox("Show Performance Overlay", false);
+		performanceOverlayCheckBox.addActionListener(e -> {
+			if (performanceOverlayCheckBox.isSelected()) {
+				performanceOverlayTimer.start();
+			} else {
+				performanceOverlayTimer.stop();
+			}
+			simulationPanel.repaint();
+		});
+		checkBoxPanel.add(performanceOverlayCheckBox);
+
+		// Heatmap background
+		JPanel heatmapPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		heatmapPanel.add(new JLabel("Heatmap:"));
+		heatmapComboBox = new JComboBox<>(new String[] { "Off", "Potential", "Field Strength" });
+		heatmapComboBox.addActionListener(e -> {
+			int choice = heatmapComboBox.getSelectedIndex();
+			renderer.setHeatmapMode(choice == 1 ? Heatmap.Mode.POTENTIAL
+					: choice == 2 ? Heatmap.Mode.FIELD_MAGNITUDE : null);
+			simulationPanel.repaint();
+		});
+		heatmapPanel.add(heatmapComboBox);
+		controlPanel.add(heatmapPanel);
+
+		// Equipotential levels: 0 and +-step up to +-count * step
+		JPanel contourPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		contourPanel.add(new JLabel("Step (V):"));
+		contourStepField = new JTextField("0.1", 4);
+		contourStepField.addActionListener(e -> applyContourLevels());
+		contourPanel.add(contourStepField);
+		contourPanel.add(new JLabel("Levels:"));
+		contourCountField = new JTextField("8", 3);
+		contourCountField.addActionListener(e -> applyContourLevels());
+		contourPanel.add(contourCountField);
+		controlPanel.add(contourPanel);
+
+		// Field solver: exact, or Barnes-Hut tree / particle mesh for large scenes
+		JPanel backendPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		backendPanel.add(new JLabel("Field Solver:"));
+		backendComboBox = new JComboBox<>(new String[] { "Direct", "Barnes-Hut Tree", "Particle Mesh" });
+		backendComboBox.addActionListener(e -> applyFieldBackend());
+		backendPanel.add(backendComboBox);
+		controlPanel.add(backendPanel);
+		thetaField = new JTextField(String.valueOf(FieldEngine.DEFAULT_THETA), 4);
+		thetaField.addActionListener(e -> applyFieldBackend());
+		meshCellField = new JTextField(String.valueOf(ParticleMesh.DEFAULT_CELL_SIZE), 4);
+		meshCellField.addActionListener(e -> applyFieldBackend());
+		JPanel solverPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		solverPanel.add(new JLabel("θ:"));
+		solverPanel.add(thetaField);
+		solverPanel.add(new JLabel("Mesh Cell (px):"));
+		solverPanel.add(meshCellField);
+		controlPanel.add(solverPanel);
+		solverErrorLabel = new JLabel("Solver error: N/A");
+		controlPanel.add(solverErrorLabel);
+
+		// Resolution of the cached field grid used for drawing
+		JPanel gridCellPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		gridCellPanel.add(new JLabel("Field Cache Cell (px):"));
+		gridCellField = new JTextField(String.valueOf(renderer.fieldGridCellSize()), 4);
+		gridCellField.addActionListener(e -> {
+			try {
+				double cellSize = Double.parseDouble(gridCellField.getText());
+				if (cellSize <= 0) {
+					throw new NumberFormatException();
+				}
+				renderer.setFieldGridCellSize(cellSize); // Rebuilt at the new resolution on next paint
+				sceneChanged();
+				simulationPanel.repaint();
+			} catch (NumberFormatException ex) {
+				JOptionPane.showMessageDialog(this, "Please enter a positive number for the cache cell size.");
+			}
+		});
+		gridCellPanel.add(gridCellField);
+		controlPanel.add(gridCellPanel);
+
+		// Field line integrator and its cost
+		adaptiveLinesCheckBox = new JCheckBox("Adaptive Field Lines (RK45)", true);
+		adaptiveLinesCheckBox.addActionListener(e -> {
+			fieldLineTracer.setIntegrator(adaptiveLinesCheckBox.isSelected() ? FieldLineTracer.Integrator.RK45
+					: FieldLineTracer.Integrator.EULER);
+			sceneChanged();
+			simulationPanel.repaint();
+		});
+		controlPanel.add(adaptiveLinesCheckBox);
+		lineEvaluationsLabel = new JLabel("Line evals: N/A");
+		controlPanel.add(lineEvaluationsLabel);
+
+		// --- View: wheel zooms, dragging the background pans ---
+		controlPanel.add(new JLabel("--- View ---"));
+		JPanel viewPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		zoomLabel = new JLabel("Zoom: 100%");
+		viewPanel.add(zoomLabel);
+		JButton resetViewButton = new JButton("Reset View");
+		resetViewButton.addActionListener(e -> {
+			viewport.reset();
+			viewChanged();
+		});
+		viewPanel.add(resetViewButton);
+		controlPanel.add(viewPanel);
+		JPanel tileCachePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		tileCachePanel.add(new JLabel("Tile Cache (MB):"));
+		tileCacheField = new JTextField(String.valueOf(tileCache.maxBytes() >> 20), 4);
+		tileCacheField.addActionListener(e -> {
+			try {
+				tileCache.setMaxBytes(Long.parseLong(tileCacheField.getText()) << 20);
+				simulationPanel.repaint();
+			} catch (IllegalArgumentException ex) {
+				JOptionPane.showMessageDialog(this, "Please enter a positive number of megabytes.");
+			}
+		});
+		tileCachePanel.add(tileCacheField);
+		controlPanel.add(tileCachePanel);
+		tileCacheLabel = new JLabel("Tiles: N/A");
+		controlPanel.add(tileCacheLabel);
+
+		// --- Clear Button ---
+		JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		JButton clearButton = new JButton("Clear All Charges");
+		clearButton.addActionListener(e -> {
+			clearCharges();
+			selectedCharge = null; // Deselect on clear all
+			simulationPanel.repaint();
+		});
+		buttonPanel.add(clearButton);
+		controlPanel.add(buttonPanel);
+
+		// --- Scene Files ---
+		JPanel sceneFilePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		JButton loadSceneButton = new JButton("Load Scene...");
+		loadSceneButton.addActionListener(e -> loadScene());
+		JButton saveSceneButton = new JButton("Save Scene...");
+		saveSceneButton.addActionListener(e -> saveScene());
+		sceneFilePanel.add(loadSceneButton);
+		sceneFilePanel.add(saveSceneButton);
+		controlPanel.add(sceneFilePanel);
+
+		// --- Force Display ---
+		controlPanel.add(Box.createVerticalStrut(20));
+		controlPanel.add(new JLabel("--- Force on Selected Charge ---"));
+		forceMagnitudeLabel = new JLabel("Magnitude: N/A");
+		forceDirectionLabel = new JLabel("Direction: N/A");
+		controlPanel.add(forceMagnitudeLabel);
+		controlPanel.add(forceDirectionLabel);
+
+		// --- Particle Motion Controls ---
+		controlPanel.add(Box.createVerticalStrut(20));
+		controlPanel.add(new JLabel("--- Charge Dynamics ---"));
+		chargeDynamicsCheckBox = new JCheckBox("N-Body Mode (charges move)", false);
+		chargeDynamicsCheckBox.addActionListener(e -> {
+			if (chargeDynamicsCheckBox.isSelected()) {
+				chargeDynamicsStale = true;
+				chargeDynamicsTimer.start();
+			} else {
+				chargeDynamicsTimer.stop();
+				for (Charge charge : charges) {
+					charge.vx = charge.vy = 0; // Frozen where they are
+				}
+				fieldChanged(); // Catch up with the last frames
+				simulationPanel.repaint();
+				chargeDynamicsLabel.setText("N-body steps/s: N/A");
+				shownChargeDynamicsRate = -1;
+			}
+		});
+		controlPanel.add(chargeDynamicsCheckBox);
+		JPanel softeningPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		softeningPanel.add(new JLabel("Softening (px):"));
+		softeningField = new JTextField(String.valueOf(chargeDynamics.softening()), 4);
+		softeningField.addActionListener(e -> {
+			try {
+				chargeDynamics.setSoftening(Double.parseDouble(softeningField.getText()));
+			} catch (IllegalArgumentException ex) {
+				JOptionPane.showMessageDialog(this, "Please enter a positive softening length.");
+			}
+		});
+		softeningPanel.add(softeningField);
+		controlPanel.add(softeningPanel);
+		chargeDynamicsLabel = new JLabel("N-body steps/s: N/A");
+		controlPanel.add(chargeDynamicsLabel);
+
+		controlPanel.add(Box.createVerticalStrut(20));
+		controlPanel.add(new JLabel("--- Particle Motion ---"));
+
+		// Particle charge input
+		JPanel particleChargePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		particleChargePanel.add(new JLabel("Particle Charge (C):"));
+		controlPanel.add(particleChargePanel);
+		particleChargeField = new JTextField("1.0e-10", 10);
+		controlPanel.add(new JPanel(new FlowLayout(FlowLayout.LEFT)).add(particleChargeField));
+
+		// Particle charge sign
+		ButtonGroup particleChargeGroup = new ButtonGroup();
+		particlePositiveButton = new JRadioButton("Positive", true);
+		particleNegativeButton = new JRadioButton("Negative");
+		particleChargeGroup.add(particlePositiveButton);
+		particleChargeGroup.add(particleNegativeButton);
+		JPanel particleRadioPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		particleRadioPanel.add(particlePositiveButton);
+		particleRadioPanel.add(particleNegativeButton);
+		controlPanel.add(particleRadioPanel);
+
+		// Particle mass input
+		JPanel particleMassPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		particleMassPanel.add(new JLabel("Particle Mass (kg):"));
+		controlPanel.add(particleMassPanel);
+		particleMassField = new JTextField("1.0e-15", 10);
+		controlPanel.add(new JPanel(new FlowLayout(FlowLayout.LEFT)).add(particleMassField));
+
+		// Initial velocity input
+		JPanel velocityXPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		velocityXPanel.add(new JLabel("Velocity X (m/s):"));
+		controlPanel.add(velocityXPanel);
+		particleVelocityXField = new JTextField("0", 5);
+		controlPanel.add(new JPanel(new FlowLayout(FlowLayout.LEFT)).add(particleVelocityXField));
+
+		JPanel velocityYPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		velocityYPanel.add(new JLabel("Velocity Y (m/s):"));
+		controlPanel.add(velocityYPanel);
+		particleVelocityYField = new JTextField("0", 5);
+		controlPanel.add(new JPanel(new FlowLayout(FlowLayout.LEFT)).add(particleVelocityYField));
+
+		// Launch particle button
+		JPanel launchButtonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		launchParticleButton = new JButton("Launch Particle");
+		launchParticleButton.addActionListener(e -> launchTestParticle());
+		launchButtonPanel.add(launchParticleButton);
+		controlPanel.add(launchButtonPanel);
+
+		// Velocity-Verlet sub-steps per physics frame
+		JPanel subStepsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		subStepsPanel.add(new JLabel("Sub-steps per Frame:"));
+		subStepsField = new JTextField(String.valueOf(physicsLoop.subSteps()), 3);
+		subStepsField.addActionListener(e -> {
+			try {
+				physicsLoop.setSubSteps(Integer.parseInt(subStepsField.getText()));
+			} catch (IllegalArgumentException ex) {
+				JOptionPane.showMessageDialog(this, "Please enter a whole number of sub-steps (at least 1).");
+			}
+		});
+		subStepsPanel.add(subStepsField);
+		controlPanel.add(subStepsPanel);
+
+		// Trajectory length kept per launched particle
+		JPanel trajectoryPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		trajectoryPanel.add(new JLabel("Trajectory Points:"));
+		trajectoryCapacityField = new JTextField(String.valueOf(trajectoryCapacity), 5);
+		trajectoryCapacityField.addActionListener(e -> {
+			try {
+				int capacity = Integer.parseInt(trajectoryCapacityField.getText());
+				if (capacity < 2) {
+					throw new NumberFormatException();
+				}
+				trajectoryCapacity = capacity;
+			} catch (NumberFormatException ex) {
+				JOptionPane.showMessageDialog(this, "Please enter a whole number of trajectory points (at least 2).");
+			}
+		});
+		trajectoryPanel.add(trajectoryCapacityField);
+		controlPanel.add(trajectoryPanel);
+
+		// Beam of many particles launched at once with the settings above
+		JPanel beamPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		beamPanel.add(new JLabel("Beam Particles:"));
+		beamCountField = new JTextField("10000", 6);
+		beamPanel.add(beamCountField);
+		controlPanel.add(beamPanel);
+		JPanel beamButtonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		JButton launchBeamButton = new JButton("Launch Beam");
+		launchBeamButton.addActionListener(e -> launchParticleBeam());
+		beamButtonPanel.add(launchBeamButton);
+		controlPanel.add(beamButtonPanel);
+		JPanel sweepButtonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		JButton sweepButton = new JButton("Parameter Sweep...");
+		sweepButton.addActionListener(e -> openParameterSweep());
+		sweepButtonPanel.add(sweepButton);
+		controlPanel.add(sweepButtonPanel);
+		particleThroughputLabel = new JLabel("Particle steps/s: N/A");
+		controlPanel.add(particleThroughputLabel);
+
+		JButton clearParticlesButton = new JButton("Clear Particles");
+		clearParticlesButton.addActionListener(e -> {
+			clearParticles();
+			simulationPanel.repaint();
+		});
+		JPanel clearParticlesPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		clearParticlesPanel.add(clearParticlesButton);
+		controlPanel.add(clearParticlesPanel);
+
+		// Instructions
+		JTextArea instructionsArea = new JTextArea("Instructions:\n\n" + "1. Left-click to add/select\n   charges.\n"
+				+ "2. Drag charges to\n   reposition.\n" + "3. Right-click charges\n   to edit/delete.\n"
+				+ "4. Select a charge to\n   see net force.\n" + "5. Set particle params\n   and launch.\n"
+				+ "6. Toggle display\n   options as needed.");
+		instructionsArea.setEditable(false);
+		instructionsArea.setBackground(controlPanel.getBackground());
+		controlPanel.add(Box.createVerticalStrut(20));
+		controlPanel.add(instructionsArea);
+
+		// Add filler to push everything to the top
+		controlPanel.add(Box.createVerticalGlue());
+	}
+
+	// One frame of the N-body mode: every charge moves under the forces of all
+	// the others, with the particles' sub-step count. The bodies are refilled
+	// from the charges after any edit, so charges can still be added, edited
+	// and deleted while they move; dragging a charge or distribution pauses
+	// the motion. Each frame only redraws the charges over the cached tiles:
+	// the field layers, field lines and the field the particles fly through
+	// catch up at most every CHARGE_DYNAMICS_REFRESH ms.
+	private void stepChargeDynamics() {
+		if (isDraggingCharge || isDraggingSource) {
+			return;
+		}
+		if (chargeDynamicsStale) {
+			chargeDynamics.clear();
+			for (Charge charge : charges) {
+				chargeDynamics.add(charge.x, charge.y, charge.vx, charge.vy, charge.value, charge.mass);
+			}
+			chargeDynamicsStale = false;
+		}
+		if (chargeDynamics.size() == 0) {
+			return;
+		}
+		int subSteps = physicsLoop.subSteps();
+		chargeDynamics.step(TIME_STEP / subSteps, subSteps, viewport.worldX(0), viewport.worldY(0),
+				viewport.worldX(simulationPanel.getWidth()), viewport.worldY(simulationPanel.getHeight()));
+		for (int i = 0; i < charges.size(); i++) {
+			Charge charge = charges.get(i);
+			charge.x = chargeDynamics.x(i);
+			charge.y = chargeDynamics.y(i);
+			charge.vx = chargeDynamics.vx(i);
+			charge.vy = chargeDynamics.vy(i);
+		}
+		engine.setPositions(chargeDynamics.x, chargeDynamics.y);
+		chargesMoved++;
+		long now = System.nanoTime();
+		if (now - fieldRefreshedAt >= CHARGE_DYNAMICS_REFRESH * 1_000_000) {
+			fieldRefreshedAt = now;
+			fieldChanged();
+		}
+		long rate = (long) chargeDynamics.stepsPerSecond();
+		if (rate != shownChargeDynamicsRate) {
+			chargeDynamicsLabel.setText("N-body steps/s: " + rate);
+			shownChargeDynamicsRate = rate;
+		}
+		simulationPanel.repaint();
+	}
+
+	// Mass for a new point charge, the default where the field does not
+	// hold a positive number: it only matters in the N-body mode
+	private double chargeMass() {
+		try {
+			double mass = Double.parseDouble(chargeMassField.getText());
+			return mass > 0 && mass < Double.POSITIVE_INFINITY ? mass : Charge.DEFAULT_MASS;
+		} catch (NumberFormatException ex) {
+			return Charge.DEFAULT_MASS;
+		}
+	}
+
+	private void clearParticles() {
+		testParticles.clear();
+		physicsLoop.clear();
+		particleGeneration++;
+		launchedParticles = 0;
+		particleTimer.stop(); // Stop timer when particles are cleared.
+	}
+
+	// Replaces the charges, display options and particles with those of a
+	// scene file (text, JSON or binary, see SceneFile). The loaded charge
+	// arrays are handed to the engine as they are, without copying.
+	private void loadScene() {
+		JFileChooser chooser = sceneFileChooser();
+		if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		Scene scene;
+		try {
+			scene = SceneFile.read(chooser.getSelectedFile().toPath());
+		} catch (IOException ex) {
+			JOptionPane.showMessageDialog(this, "Cannot load scene: " + ex.getMessage());
+			return;
+		}
+		lastSceneDirectory = chooser.getCurrentDirectory();
+
+		FieldEngine loaded = scene.charges;
+		for (Charge charge : charges) {
+			charge.index = -1;
+		}
+		charges.clear();
+		charges.ensureCapacity(loaded.size());
+		for (int i = 0; i < loaded.size(); i++) {
+			Charge charge = new Charge(loaded.x(i), loaded.y(i), loaded.charge(i));
+			charge.index = i;
+			charges.add(charge);
+		}
+		engine.adopt(loaded.xs, loaded.ys, loaded.qs, loaded.size());
+		engine.distributions().setAll(loaded.distributions());
+		selectedCharge = null;
+		selectedSource = -1;
+		renderer.invalidateFieldGrid();
+		sceneChanged();
+
+		showGridCheckBox.setSelected(scene.showGrid);
+		renderer.setShowGrid(scene.showGrid);
+		showVectorsCheckBox.setSelected(scene.showVectors);
+		renderer.setShowVectors(scene.showVectors);
+		showEquipotentialsCheckBox.setSelected(scene.showEquipotentials);
+		renderer.setShowEquipotentials(scene.showEquipotentials);
+		heatmapComboBox.setSelectedIndex(scene.heatmap == null ? 0
+				: scene.heatmap == Heatmap.Mode.POTENTIAL ? 1 : 2); // Listener updates the renderer
+
+		clearParticles();
+		if (scene.particleCount() > 0) {
+			updateWalls();
+			for (int i = 0; i < scene.particleCount(); i++) {
+				TestParticle particle = new TestParticle(scene.particleX(i), scene.particleY(i),
+						scene.particleCharge(i), scene.particleMass(i), scene.particleVx(i), scene.particleVy(i));
+				particle.index = launchedParticles++;
+				testParticles.add(particle);
+				physicsLoop.launch(particle.x, particle.y, particle.vx, particle.vy, particle.charge, particle.mass);
+				physicsLoop.trace(particle.index);
+			}
+			physicsLoop.start();
+			particleTimer.start();
+		}
+		simulationPanel.repaint();
+	}
+
+	// Saves the charges and display options. Particles already in flight are
+	// not saved, their launch conditions are gone.
+	private void saveScene() {
+		JFileChooser chooser = sceneFileChooser();
+		if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		Scene scene = new Scene(engine);
+		scene.width = simulationPanel.getWidth();
+		scene.height = simulationPanel.getHeight();
+		scene.showGrid = renderer.showGrid();
+		scene.showVectors = renderer.showVectors();
+		scene.showEquipotentials = renderer.showEquipotentials();
+		scene.heatmap = renderer.heatmapMode();
+		try {
+			SceneFile.write(scene, chooser.getSelectedFile().toPath());
+			lastSceneDirectory = chooser.getCurrentDirectory();
+		} catch (IOException ex) {
+			JOptionPane.showMessageDialog(this, "Cannot save scene: " + ex.getMessage());
+		}
+	}
+
+	private JFileChooser sceneFileChooser() {
+		JFileChooser chooser = new JFileChooser(lastSceneDirectory);
+		chooser.setFileFilter(new FileNameExtensionFilter("Scenes (*.scene, *.json, *.efs)", "scene", "json", "efs"));
+		return chooser;
+	}
+
+	// Switches the engine between direct summation, the Barnes-Hut tree and
+	// the particle mesh, and reports the approximation's measured error
+	// against the direct sum
+	private void applyFieldBackend() {
+		try {
+			double theta = Double.parseDouble(thetaField.getText());
+			engine.setTheta(theta);
+		} catch (IllegalArgumentException ex) {
+			JOptionPane.showMessageDialog(this, "Please enter a non-negative number for θ.");
+			return;
+		}
+		try {
+			engine.setMeshCellSize(Double.parseDouble(meshCellField.getText()));
+		} catch (IllegalArgumentException ex) {
+			JOptionPane.showMessageDialog(this, "Please enter a positive mesh cell size.");
+			return;
+		}
+		BarnesHutTree.ErrorStats stats = null;
+		switch (backendComboBox.getSelectedIndex()) {
+		case 1:
+			engine.setBackend(FieldEngine.Backend.TREE);
+			stats = BarnesHutTree.measureError(engine, engine.theta(), 500, 1);
+			break;
+		case 2:
+			engine.setBackend(FieldEngine.Backend.MESH);
+			stats = ParticleMesh.measureError(engine, engine.meshCellSize(), 500, 1);
+			break;
+		default:
+			engine.setBackend(FieldEngine.Backend.DIRECT);
+		}
+		if (stats != null) {
+			DecimalFormat df = new DecimalFormat("0.###");
+			solverErrorLabel.setText("Solver error: max " + df.format(stats.max * 100) + "%, rms "
+					+ df.format(stats.rms * 100) + "%");
+		} else {
+			solverErrorLabel.setText("Solver error: N/A");
+		}
+		renderer.invalidateFieldGrid(); // Cached samples came from the other backend
+		sceneChanged();
+		simulationPanel.repaint();
+	}
+
+	private void launchTestParticle() {
+		try {
+			double particleChargeValue = Double.parseDouble(particleChargeField.getText());
+			if (particleNegativeButton.isSelected()) {
+				particleChargeValue = -particleChargeValue;
+			}
+			double particleMass = Double.parseDouble(particleMassField.getText());
+			double particleVelocityX = Double.parseDouble(particleVelocityXField.getText());
+			double particleVelocityY = Double.parseDouble(particleVelocityYField.getText());
+
+			TestParticle particle = new TestParticle(viewport.worldX(simulationPanel.getWidth() / 2.0),
+					viewport.worldY(simulationPanel.getHeight() / 2.0), particleChargeValue, particleMass,
+					particleVelocityX, particleVelocityY); // Start at the centre of the view
+			particle.index = launchedParticles++;
+			testParticles.add(particle);
+			updateWalls();
+			physicsLoop.launch(particle.x, particle.y, particle.vx, particle.vy, particle.charge, particle.mass);
+			physicsLoop.trace(particle.index);
+			physicsLoop.start();
+			if (!particleTimer.isRunning()) {
+				particleTimer.start(); // Start timer only when particles are
+										// launched
+			}
+			simulationPanel.repaint();
+
+		} catch (NumberFormatException ex) {
+			JOptionPane.showMessageDialog(null, "Please enter valid numbers for particle parameters.");
+		}
+	}
+
+	// Opens a sweep over launches from the centre, starting from the particle
+	// fields' values, through the field as it is now
+	private void openParameterSweep() {
+		try {
+			double particleChargeValue = Double.parseDouble(particleChargeField.getText());
+			if (particleNegativeButton.isSelected()) {
+				particleChargeValue = -particleChargeValue;
+			}
+			double particleMass = Double.parseDouble(particleMassField.getText());
+			double particleVelocityX = Double.parseDouble(particleVelocityXField.getText());
+			double particleVelocityY = Double.parseDouble(particleVelocityYField.getText());
+			new ParameterSweepDialog(this, engine.snapshot(), Math.max(1, simulationPanel.getWidth()),
+					Math.max(1, simulationPanel.getHeight()), WIDTH / 2.0, HEIGHT / 2.0, particleChargeValue,
+					particleMass, particleVelocityX, particleVelocityY).setVisible(true);
+		} catch (NumberFormatException ex) {
+			JOptionPane.showMessageDialog(null, "Please enter valid numbers for particle parameters.");
+		}
+	}
+
+	// Launches a beam of particles from the centre of the view: charge, mass and velocity
+	// come from the particle fields, with a little spread in position and
+	// velocity. Beam particles are drawn as dots without trajectories.
+	private void launchParticleBeam() {
+		try {
+			int count = Integer.parseInt(beamCountField.getText());
+			double particleChargeValue = Double.parseDouble(particleChargeField.getText());
+			if (particleNegativeButton.isSelected()) {
+				particleChargeValue = -particleChargeValue;
+			}
+			double particleMass = Double.parseDouble(particleMassField.getText());
+			double particleVelocityX = Double.parseDouble(particleVelocityXField.getText());
+			double particleVelocityY = Double.parseDouble(particleVelocityYField.getText());
+			if (count <= 0) {
+				throw new NumberFormatException();
+			}
+
+			double speed = Math.hypot(particleVelocityX, particleVelocityY);
+			updateWalls();
+			physicsLoop.launchCloud(count, viewport.worldX(simulationPanel.getWidth() / 2.0),
+					viewport.worldY(simulationPanel.getHeight() / 2.0), 10 / viewport.zoom(), particleVelocityX,
+					particleVelocityY, Math.max(1, speed * 0.05), particleChargeValue, particleMass, System.nanoTime());
+			launchedParticles += count;
+			physicsLoop.start();
+			if (!particleTimer.isRunning()) {
+				particleTimer.start();
+			}
+		} catch (NumberFormatException ex) {
+			JOptionPane.showMessageDialog(null, "Please enter valid numbers for the beam and particle parameters.");
+		}
+	}
+
+	// Particles bounce off the edges of the view, wherever it is panned and
+	// zoomed to
+	private void updateWalls() {
+		physicsLoop.setBounds(viewport.worldX(0), viewport.worldY(0), viewport.worldX(simulationPanel.getWidth()),
+				viewport.worldY(simulationPanel.getHeight()));
+	}
+
+	// Pulls the latest physics frame and places each particle between its
+	// start and end positions according to how far into the frame we are.
+	// Trajectories take every frame simulated since the last call.
+	private void updateParticlesFromPhysics() {
+		updateWalls();
+		physicsLoop.drainTrace(particleGeneration, traceConsumer);
+		PhysicsLoop.Snapshot snapshot = physicsLoop.latestSnapshot();
+		if (snapshot.generation != particleGeneration) {
+			particleSnapshot = null;
+			return; // Still showing particles from before the last clear
+		}
+		double alpha = snapshot.alpha(System.nanoTime(), physicsLoop.frameTime());
+		for (int p = 0; p < testParticles.size(); p++) {
+			TestParticle particle = testParticles.get(p);
+			int i = particle.index;
+			if (i >= snapshot.count) {
+				continue; // Launched after this frame
+			}
+			particle.x = snapshot.prevX[i] + (snapshot.x[i] - snapshot.prevX[i]) * alpha;
+			particle.y = snapshot.prevY[i] + (snapshot.y[i] - snapshot.prevY[i]) * alpha;
+		}
+		particleSnapshot = snapshot;
+		particleAlpha = alpha;
+		long rate = (long) physicsLoop.stepsPerSecond();
+		if (rate != shownParticleRate) {
+			particleThroughputLabel.setText("Particle steps/s: " + rate);
+			shownParticleRate = rate;
+		}
+	}
+
+	// Adds a traced position to the trajectory of the test particle with that
+	// store index; testParticles is in index order
+	private void addTracePoint(int index, float x, float y) {
+		int lo = 0, hi = testParticles.size() - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			TestParticle particle = testParticles.get(mid);
+			if (particle.index < index) {
+				lo = mid + 1;
+			} else if (particle.index > index) {
+				hi = mid - 1;
+			} else {
+				particle.trajectory.add(x, y);
+				return;
+			}
+		}
+	}
+
+	// Every simulated particle that is not a test particle as a small dot,
+	// one pass per sign (neutral ones in gray) so the colour changes twice
+	private void drawParticleCloud(Graphics2D g2d) {
+		PhysicsLoop.Snapshot snapshot = particleSnapshot;
+		if (snapshot == null) {
+			return;
+		}
+		float alpha = (float) particleAlpha;
+		for (int sign = 1; sign >= -1; sign--) {
+			g2d.setColor(sign > 0 ? SceneRenderer.POSITIVE_PARTICLE_COLOR
+					: sign < 0 ? SceneRenderer.NEGATIVE_PARTICLE_COLOR : SceneRenderer.NEUTRAL_PARTICLE_COLOR);
+			int t = 0; // Next test particle in index order
+			for (int i = 0; i < snapshot.count; i++) {
+				if (t < testParticles.size() && testParticles.get(t).index == i) {
+					t++;
+					continue; // Drawn with its trajectory by the renderer
+				}
+				if (Math.signum(snapshot.charge[i]) == sign) {
+					int px = (int) viewport.screenX(snapshot.prevX[i] + (snapshot.x[i] - snapshot.prevX[i]) * alpha);
+					int py = (int) viewport.screenY(snapshot.prevY[i] + (snapshot.y[i] - snapshot.prevY[i]) * alpha);
+					g2d.fillRect(px - 1, py - 1, 2, 2);
+				}
+			}
+		}
+	}
+
+	// Starts a background trace when the lines no longer match the scene, or
+	// are a preview and the scene is idle again. Until it lands the previous
+	// lines stay up.
+	private void requestFieldLinesIfStale(int width, int height) {
+		int linesPerCharge = previewing ? PREVIEW_FIELD_LINE_COUNT : FIELD_LINE_COUNT;
+		if ((fieldLines == null || !fieldLines.matches(sceneVersion, 0, 0, linesPerCharge))
+				&& (fieldLineTracer.requestedVersion() != sceneVersion
+						|| fieldLineTracer.requestedLinesPerCharge() != linesPerCharge)) {
+			requestFieldLines(width, height, linesPerCharge);
+		}
+	}
+
+	// Lines run unbounded (width and height 0 to the tracer), as the view can
+	// pan anywhere; the field grid speeds them up where it covers the panel
+	private void requestFieldLines(int width, int height, int linesPerCharge) {
+		long version = sceneVersion;
+		FieldGrid grid = renderer.ensureFieldGrid(width, height).copy();
+		fieldLineTracer.trace(version, linesPerCharge, engine.snapshot(), grid, 0, 0,
+				lines -> SwingUtilities.invokeLater(() -> {
+					if (lines.version == sceneVersion) { // Drop traces overtaken by edits
+						fieldLines = lines;
+						long total = lines.totalEvaluations();
+						lineEvaluationsLabel.setText("Line evals: " + total + " ("
+								+ (lines.lineCount() > 0 ? total / lines.lineCount() : 0) + "/line)");
+						simulationPanel.repaint();
+					}
+				}));
+	}
+
+	// Net force on a charge from all the others, written into out
+	private void calculateNetForceOnCharge(Charge targetCharge, double[] out) {
+		engine.forceOn(targetCharge.index, out);
+	}
+
+	// Labels change only when the force does, so a still selection formats
+	// and allocates nothing per frame
+	private void displayForceMagnitudeDirection(double fx, double fy) {
+		if (forceShown && fx == shownForceX && fy == shownForceY) {
+			return;
+		}
+		double magnitude = Math.hypot(fx, fy);
+		double directionDegrees = Math.toDegrees(Math.atan2(fy, fx));
+		if (directionDegrees < 0)
+			directionDegrees += 360; // Ensure angle is 0-360
+
+		forceMagnitudeLabel.setText("Magnitude: " + forceFormat.format(magnitude) + " N");
+		forceDirectionLabel.setText("Direction: " + forceFormat.format(directionDegrees) + "°");
+		forceShown = true;
+		shownForceX = fx;
+		shownForceY = fy;
+	}
+
+	private void clearForceDisplay() {
+		if (forceShown) {
+			forceMagnitudeLabel.setText("Magnitude: N/A");
+			forceDirectionLabel.setText("Direction: N/A");
+			forceShown = false;
+		}
+	}
+
+	private double distance(double x1, double y1, double x2, double y2) {
+		return Math.sqrt((x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1));
+	}
+
+	public static void main(String[] args) {
+		SwingUtilities.invokeLater(() -> new ElectricFieldSimulatorImproved());
+	}
+
+	// Class to represent a charge
+	class Charge {
+		double x, y;
+		double value; // in Coulombs
+		double mass = DEFAULT_MASS; // in kg, for the N-body mode
+		double vx, vy; // Velocity in the N-body mode
+		int index = -1; // Position in charges and the engine, -1 once removed
+		private static final int RADIUS = SceneRenderer.CHARGE_RADIUS;
+		private static final double DEFAULT_MASS = 1e-15;
+
+		public Charge(double x, double y, double value) {
+			this.x = x;
+			this.y = y;
+			this.value = value;
+		}
+
+		public boolean contains(double px, double py) {
+			return distance(x, y, px, py) <= RADIUS;
+		}
+
+		private double distance(double x1, double y1, double x2, double y2) {
+			return Math.sqrt((x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1));
+		}
+	}
+
+	// Class to represent a test particle
+	class TestParticle {
+		double x, y;
+		double vx, vy;
+		double charge;
+		double mass;
+		int index; // Position in the physics particle store
+		TrajectoryBuffer trajectory = new TrajectoryBuffer(trajectoryCapacity);
+
+		public TestParticle(double x, double y, double charge, double mass, double vx, double vy) {
+			this.x = x;
+			this.y = y;
+			this.charge = charge;
+			this.mass = mass;
+			this.vx = vx;
+			this.vy = vy;
+			trajectory.add((float) x, (float) y); // Add initial position to
+													// trajectory
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package electricfield;
+
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Equipotential contours extracted from the potential stored in a FieldGrid
+// with marching squares. Rows of grid cells are split into bands that are
+// contoured in parallel; each band collects its own segments, which are joined
+// in band order afterwards. The result is immutable and remembers the grid
+// state and levels it came from, so it can be kept until the charges change.
+public final class Equipotentials {
+	static final int BAND_ROWS = 16; // Cell rows per task
+
+	private final FieldGrid source;
+	private final long version; // Grid version the contours were extracted from
+	private final double[] levels;
+	private final float[][] segments; // Per level: x0, y0, x1, y1 for each segment
+
+	private Equipotentials(FieldGrid source, double[] levels, float[][] segments) {
+		this.source = source;
+		this.version = source.version();
+		this.levels = levels;
+		this.segments = segments;
+	}
+
+	// Levels spaced step apart: 0, +-step, ..., +-count * step
+	public static double[] evenLevels(double step, int count) {
+		double[] levels = new double[2 * count + 1];
+		for (int k = 1; k <= count; k++) {
+			levels[2 * k - 1] = k * step;
+			levels[2 * k] = -k * step;
+		}
+		return levels;
+	}
+
+	// Contours of grid at the given levels, using the common pool
+	public static Equipotentials extract(FieldGrid grid, double[] levels) {
+		return extract(ForkJoinPool.commonPool(), grid, levels);
+	}
+
+	public static Equipotentials extract(ForkJoinPool pool, FieldGrid grid, double[] levels) {
+		int cellRows = Math.max(0, grid.rows - 1);
+		int bands = Math.max(1, (cellRows + BAND_ROWS - 1) / BAND_ROWS);
+		Segments[][] parts = new Segments[bands][levels.length];
+		ContourBands task = new ContourBands(grid, levels, parts, 0, bands);
+		if (ForkJoinTask.getPool() == pool) {
+			task.invoke();
+		} else {
+			pool.invoke(task);
+		}
+
+		float[][] segments = new float[levels.length][];
+		for (int l = 0; l < levels.length; l++) {
+			int total = 0;
+			for (int b = 0; b < bands; b++) {
+				total += parts[b][l].size;
+			}
+			float[] joined = new float[total];
+			int offset = 0;
+			for (int b = 0; b < bands; b++) {
+				Segments part = parts[b][l];
+				System.arraycopy(part.data, 0, joined, offset, part.size);
+				offset += part.size;
+			}
+			segments[l] = joined;
+		}
+		return new Equipotentials(grid, levels, segments);
+	}
+
+	// True while grid still holds the potential these contours came from
+	public boolean matches(FieldGrid grid, double[] levels) {
+		return source == grid && version == grid.version() && this.levels == levels;
+	}
+
+	public int levelCount() {
+		return levels.length;
+	}
+
+	public double level(int i) {
+		return levels[i];
+	}
+
+	public int segmentCount(int level) {
+		return segments[level].length / 4;
+	}
+
+	// Appends the segments of one level to path as separate moveTo/lineTo pairs
+	public void appendTo(int level, Path2D.Float path) {
+		float[] s = segments[level];
+		for (int i = 0; i < s.length; i += 4) {
+			path.moveTo(s[i], s[i + 1]);
+			path.lineTo(s[i + 2], s[i + 3]);
+		}
+	}
+
+	// Marching squares over cell rows [fromBand * BAND_ROWS, toBand * BAND_ROWS)
+	private static class ContourBands extends RecursiveAction {
+		private final FieldGrid grid;
+		private final double[] levels;
+		private final Segments[][] parts;
+		private final int fromBand, toBand;
+
+		ContourBands(FieldGrid grid, double[] levels, Segments[][] parts, int fromBand, int toBand) {
+			this.grid = grid;
+			this.levels = levels;
+			this.parts = parts;
+			this.fromBand = fromBand;
+			this.toBand = toBand;
+		}
+
+		@Override
+		protected void compute() {
+			if (toBand - fromBand > 1) {
+				int mid = (fromBand + toBand) >>> 1;
+				invokeAll(new ContourBands(grid, levels, parts, fromBand, mid),
+						new ContourBands(grid, levels, parts, mid, toBand));
+				return;
+			}
+			int fromRow = fromBand * BAND_ROWS;
+			int toRow = Math.min(grid.rows - 1, fromRow + BAND_ROWS);
+			for (int l = 0; l < levels.length; l++) {
+				Segments out = new Segments();
+				for (int row = fromRow; row < toRow; row++) {
+					contourRow(row, levels[l], out);
+				}
+				parts[fromBand][l] = out;
+			}
+		}
+
+		private void contourRow(int row, double level, Segments out) {
+			double[] v = grid.v;
+			int cols = grid.cols;
+			double size = grid.cellSize;
+			double y0 = grid.y0 + row * size;
+			double y1 = y0 + size;
+			for (int col = 0; col < cols - 1; col++) {
+				int i = row * cols + col;
+				double a = v[i]; // Top left
+				double b = v[i + 1]; // Top right
+				double c = v[i + cols + 1]; // Bottom right
+				double d = v[i + cols]; // Bottom left
+				int cell = (a > level ? 8 : 0) | (b > level ? 4 : 0) | (c > level ? 2 : 0) | (d > level ? 1 : 0);
+				if (cell == 0 || cell == 15) {
+					continue;
+				}
+				double x0 = grid.x0 + col * size;
+				double x1 = x0 + size;
+				// Crossing points on the top, right, bottom and left edges
+				float tx = (float) (x0 + size * fraction(a, b, level));
+				float ry = (float) (y0 + size * fraction(b, c, level));
+				float bx = (float) (x0 + size * fraction(d, c, level));
+				float ly = (float) (y0 + size * fraction(a, d, level));
+				float top = (float) y0, right = (float) x1, bottom = (float) y1, left = (float) x0;
+				switch (cell) {
+				case 1:
+				case 14:
+					out.add(left, ly, bx, bottom);
+					break;
+				case 2:
+				case 13:
+					out.add(bx, bottom, right, ry);
+					break;
+				case 3:
+				case 12:
+					out.add(left, ly, right, ry);
+					break;
+				case 4:
+				case 11:
+					out.add(tx, top, right, ry);
+					break;
+				case 6:
+				case 9:
+					out.add(tx, top, bx, bottom);
+					break;
+				case 7:
+				case 8:
+					out.add(left, ly, tx, top);
+					break;
+				case 5: // Saddles: the centre value decides which corners connect
+				case 10:
+					boolean centreAbove = (a + b + c + d) / 4 > level;
+					if ((cell == 5) == centreAbove) {
+						out.add(left, ly, tx, top);
+						out.add(bx, bottom, right, ry);
+					} else {
+						out.add(left, ly, bx, bottom);
+						out.add(tx, top, right, ry);
+					}
+					break;
+				default:
+					break;
+				}
+			}
+		}
+
+		// Where level lies between p and q, as a fraction of the way from p
+		private static double fraction(double p, double q, double level) {
+			if (p == q) {
+				return 0.5; // Edge not crossed, value unused
+			}
+			double t = (level - p) / (q - p);
+			return t < 0 ? 0 : (t > 1 ? 1 : t);
+		}
+	}
+
+	// Growable float buffer of segment endpoints
+	private static class Segments {
+		float[] data = new float[64];
+		int size;
+
+		void add(float x0, float y0, float x1, float y1) {
+			if (size + 4 > data.length) {
+				data = Arrays.copyOf(data, data.length * 2);
+			}
+			data[size++] = x0;
+			data[size++] = y0;
+			data[size++] = x1;
+			data[size++] = y1;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package electricfield;
+
+// In-place radix-2 complex FFT over separate real and imaginary arrays, with
+// the twiddle factors and bit-reversal permutation of one size precomputed.
+// Forward transforms use exp(-2 pi i k n / N); inverse ones are unscaled
+// unless they go through transform2d.
+final class Fft {
+	private final int n;
+	private final int[] reversed; // Bit-reversed index of each position
+	private final double[] cos, sin; // Twiddles for the largest butterfly span
+
+	Fft(int n) {
+		if (n < 1 || Integer.bitCount(n) != 1) {
+			throw new IllegalArgumentException("size must be a power of two: " + n);
+		}
+		this.n = n;
+		reversed = new int[n];
+		int bits = Integer.numberOfTrailingZeros(n);
+		for (int i = 0; i < n; i++) {
+			reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+		}
+		cos = new double[n / 2];
+		sin = new double[n / 2];
+		for (int i = 0; i < n / 2; i++) {
+			double angle = 2 * Math.PI * i / n;
+			cos[i] = Math.cos(angle);
+			sin[i] = Math.sin(angle);
+		}
+	}
+
+	int size() {
+		return n;
+	}
+
+	// Transforms the n values starting at offset
+	void transform(double[] re, double[] im, int offset, boolean inverse) {
+		for (int i = 0; i < n; i++) {
+			int j = reversed[i];
+			if (j > i) {
+				double t = re[offset + i];
+				re[offset + i] = re[offset + j];
+				re[offset + j] = t;
+				t = im[offset + i];
+				im[offset + i] = im[offset + j];
+				im[offset + j] = t;
+			}
+		}
+		double sign = inverse ? 1 : -1;
+		for (int span = 1; span < n; span <<= 1) {
+			int step = n / (2 * span); // Twiddle stride for this span
+			for (int start = offset; start < offset + n; start += 2 * span) {
+				for (int k = 0; k < span; k++) {
+					double wr = cos[k * step];
+					double wi = sign * sin[k * step];
+					int a = start + k;
+					int b = a + span;
+					double br = re[b] * wr - im[b] * wi;
+					double bi = re[b] * wi + im[b] * wr;
+					re[b] = re[a] - br;
+					im[b] = im[a] - bi;
+					re[a] += br;
+					im[a] += bi;
+				}
+			}
+		}
+	}
+
+	// 2D transform of a row-major width x height array, rows then columns.
+	// The inverse is scaled by 1 / (width * height), so it undoes the forward
+	// transform.
+	static void transform2d(double[] re, double[] im, int width, int height, boolean inverse) {
+		transformRows(re, im, width, 0, height, inverse);
+		transformColumns(re, im, width, height, inverse);
+		if (inverse) {
+			scale(re, im, 1.0 / ((double) width * height));
+		}
+	}
+
+	// Transforms rows [from, to) of a row-major array, e.g. only those that
+	// are not all zero
+	static void transformRows(double[] re, double[] im, int width, int from, int to, boolean inverse) {
+		Fft rows = new Fft(width);
+		for (int y = from; y < to; y++) {
+			rows.transform(re, im, y * width, inverse);
+		}
+	}
+
+	// Transforms every column, through a contiguous copy of each
+	static void transformColumns(double[] re, double[] im, int width, int height, boolean inverse) {
+		Fft columns = new Fft(height);
+		double[] columnRe = new double[height];
+		double[] columnIm = new double[height];
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				columnRe[y] = re[y * width + x];
+				columnIm[y] = im[y * width + x];
+			}
+			columns.transform(columnRe, columnIm, 0, inverse);
+			for (int y = 0; y < height; y++) {
+				re[y * width + x] = columnRe[y];
+				im[y * width + x] = columnIm[y];
+			}
+		}
+	}
+
+	static void scale(double[] re, double[] im, double factor) {
+		for (int i = 0; i < re.length; i++) {
+			re[i] *= factor;
+			im[i] *= factor;
+		}
+	}
+}
@@ -0,0 +1,417 @@
+package electricfield;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+// Headless point-charge field engine. Charges are kept as parallel primitive
+// arrays (structure of arrays) and every evaluation writes into caller-provided
+// buffers, so the hot loops neither touch objects nor allocate. Batch queries
+// (fieldAt) count towards Metrics.fieldEvaluations(); callers of the
+// single-point queries count theirs once per batch.
+//
+// Line segments, arcs and sheets of charge (ChargeDistributions) sit next to
+// the point charges: field, potential and force queries add their closed-form
+// or quadrature terms to whatever the backend summed for the points, so every
+// caller sees them without knowing they are there.
+public class FieldEngine {
+	public static final double K = 8.99e9; // Coulomb constant
+	static final double MIN_DIST_SQUARED = 1; // Same clamp as the original kernel
+	public static final double DEFAULT_THETA = 0.5; // Barnes-Hut opening angle
+
+	// How field and potential queries are evaluated
+	public enum Backend {
+		DIRECT, // Exact O(N) sum over every charge
+		TREE, // Barnes-Hut quadtree, O(log N) per point
+		MESH // Particle mesh, O(M log M) once for M grid nodes, then O(1) per point
+	}
+
+	double[] xs;
+	double[] ys;
+	double[] qs;
+	int count;
+	private long version; // Bumped on every add/move/edit/delete
+	private ChargeDistributions distributions = new ChargeDistributions();
+
+	private Backend backend = Backend.DIRECT;
+	private double theta = DEFAULT_THETA;
+	private FieldKernel kernel = FieldKernel.best(); // Inner loops of the DIRECT backend
+	private volatile BarnesHutTree tree; // Rebuilt lazily when version moves on
+	private double meshCellSize = ParticleMesh.DEFAULT_CELL_SIZE;
+	private volatile ParticleMesh mesh; // Likewise
+	private SpatialHash index = new SpatialHash(); // Charge positions by cell
+	private volatile boolean indexStale; // Set by adopt(), rebuilt on the first proximity query
+	private final double[] batchOut = new double[2]; // Scratch for fieldAt, see there
+
+	public FieldEngine() {
+		this(16);
+	}
+
+	public FieldEngine(int capacity) {
+		xs = new double[Math.max(1, capacity)];
+		ys = new double[xs.length];
+		qs = new double[xs.length];
+	}
+
+	public int size() {
+		return count;
+	}
+
+	// Changes with every edit of the charges or the distributions
+	public long version() {
+		return version + distributions.version();
+	}
+
+	// Continuous distributions; edit them in place, the engine's version
+	// follows
+	public ChargeDistributions distributions() {
+		return distributions;
+	}
+
+	public Backend backend() {
+		return backend;
+	}
+
+	public void setBackend(Backend backend) {
+		this.backend = backend;
+	}
+
+	public FieldKernel kernel() {
+		return kernel;
+	}
+
+	public void setKernel(FieldKernel kernel) {
+		this.kernel = Objects.requireNonNull(kernel);
+	}
+
+	public double theta() {
+		return theta;
+	}
+
+	// Larger theta is faster and less accurate; 0 degenerates to the direct sum
+	public void setTheta(double theta) {
+		if (theta < 0) {
+			throw new IllegalArgumentException("theta must be >= 0");
+		}
+		this.theta = theta;
+	}
+
+	public double meshCellSize() {
+		return meshCellSize;
+	}
+
+	// Grid spacing of the MESH backend in pixels; smaller is slower to build
+	// and more accurate
+	public void setMeshCellSize(double cellSize) {
+		if (!(cellSize > 0)) {
+			throw new IllegalArgumentException("cellSize must be > 0");
+		}
+		this.meshCellSize = cellSize;
+	}
+
+	// Tree for the current charges, rebuilt only after a charge was added,
+	// moved, edited or removed (or theta changed)
+	BarnesHutTree tree() {
+		BarnesHutTree t = tree;
+		if (t == null || t.version != version() || t.theta() != theta) {
+			synchronized (this) {
+				t = tree;
+				if (t == null || t.version != version() || t.theta() != theta) {
+					t = new BarnesHutTree(this, theta);
+					tree = t;
+				}
+			}
+		}
+		return t;
+	}
+
+	// Mesh for the current charges, rebuilt like the tree
+	ParticleMesh mesh() {
+		ParticleMesh m = mesh;
+		if (m == null || m.version != version() || m.cellSize() != meshCellSize) {
+			synchronized (this) {
+				m = mesh;
+				if (m == null || m.version != version() || m.cellSize() != meshCellSize) {
+					m = new ParticleMesh(this, meshCellSize);
+					mesh = m;
+				}
+			}
+		}
+		return m;
+	}
+
+	public double x(int i) {
+		return xs[i];
+	}
+
+	public double y(int i) {
+		return ys[i];
+	}
+
+	public double charge(int i) {
+		return qs[i];
+	}
+
+	public int add(double x, double y, double q) {
+		if (count == xs.length) {
+			int capacity = xs.length * 2;
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			qs = Arrays.copyOf(qs, capacity);
+		}
+		xs[count] = x;
+		ys[count] = y;
+		qs[count] = q;
+		if (!indexStale) {
+			index.add(x, y);
+		}
+		version++;
+		return count++;
+	}
+
+	public void move(int i, double x, double y) {
+		xs[i] = x;
+		ys[i] = y;
+		if (!indexStale) {
+			index.move(i, x, y);
+		}
+		version++;
+	}
+
+	public void setCharge(int i, double q) {
+		qs[i] = q;
+		version++;
+	}
+
+	// Moves every charge at once to (x[i], y[i]), e.g. after a step of the
+	// N-body mode; one version bump and index rebuild instead of n moves
+	public void setPositions(double[] x, double[] y) {
+		System.arraycopy(x, 0, xs, 0, count);
+		System.arraycopy(y, 0, ys, 0, count);
+		if (!indexStale) {
+			index.rebuild(xs, ys, count);
+		}
+		version++;
+	}
+
+	// Removes charge i and shifts the rest down so indices keep matching the
+	// order in which charges were added
+	public void remove(int i) {
+		int tail = count - i - 1;
+		if (tail > 0) {
+			System.arraycopy(xs, i + 1, xs, i, tail);
+			System.arraycopy(ys, i + 1, ys, i, tail);
+			System.arraycopy(qs, i + 1, qs, i, tail);
+		}
+		count--;
+		if (!indexStale) {
+			index.rebuild(xs, ys, count); // Every later index shifted
+		}
+		version++;
+	}
+
+	// Removes every charge and distribution
+	public void clear() {
+		count = 0;
+		index.clear();
+		indexStale = false;
+		distributions.clear();
+		version++;
+	}
+
+	// Replaces every charge with the first n entries of x, y and q, taking
+	// ownership of the arrays instead of copying them, for loaders that read
+	// whole columns at once (see BinarySceneFile). The spatial index is only
+	// rebuilt when first needed; for millions of charges that rebuild costs
+	// far more than the load itself.
+	void adopt(double[] x, double[] y, double[] q, int n) {
+		if (x.length < n || y.length < n || q.length < n) {
+			throw new IllegalArgumentException("arrays shorter than " + n);
+		}
+		if (n == 0) { // add() grows by doubling, so keep room for one
+			x = new double[1];
+			y = new double[1];
+			q = new double[1];
+		}
+		xs = x;
+		ys = y;
+		qs = q;
+		count = n;
+		indexStale = true;
+		version++;
+	}
+
+	// Electric field at (x, y): out[0] = Ex, out[1] = Ey. Single points are
+	// not counted in Metrics, which would put a shared counter in every inner
+	// loop; callers count their evaluations once per batch.
+	public void field(double x, double y, double[] out) {
+		pointField(x, y, out);
+		if (distributions.count > 0) {
+			distributions.addField(x, y, out, -1);
+		}
+	}
+
+	// Field of the point charges alone, by the backend
+	void pointField(double x, double y, double[] out) {
+		if (backend == Backend.MESH && mesh().field(x, y, out)) {
+			return;
+		}
+		if (backend != Backend.DIRECT) {
+			tree().field(x, y, out); // Also points off the mesh
+		} else {
+			directField(x, y, out);
+		}
+	}
+
+	// Exact field of the point charges by direct summation, regardless of
+	// backend
+	public void directField(double x, double y, double[] out) {
+		kernel.field(xs, ys, qs, count, x, y, out);
+	}
+
+	// Electric potential at (x, y)
+	public double potential(double x, double y) {
+		double v = pointPotential(x, y);
+		return distributions.count > 0 ? v + distributions.potential(x, y) : v;
+	}
+
+	private double pointPotential(double x, double y) {
+		if (backend == Backend.MESH) {
+			double v = mesh().potential(x, y);
+			if (!Double.isNaN(v)) {
+				return v;
+			}
+		}
+		if (backend != Backend.DIRECT) {
+			return tree().potential(x, y);
+		}
+		return kernel.potential(xs, ys, qs, count, x, y);
+	}
+
+	// Field and potential in one pass: out[0] = Ex, out[1] = Ey, out[2] = V
+	public void fieldAndPotential(double x, double y, double[] out) {
+		pointFieldAndPotential(x, y, out);
+		if (distributions.count > 0) {
+			out[2] += distributions.addFieldAndPotential(x, y, out);
+		}
+	}
+
+	private void pointFieldAndPotential(double x, double y, double[] out) {
+		if (backend == Backend.MESH && mesh().fieldAndPotential(x, y, out)) {
+			return;
+		}
+		if (backend != Backend.DIRECT) {
+			BarnesHutTree t = tree();
+			t.field(x, y, out);
+			out[2] = t.potential(x, y);
+			return;
+		}
+		kernel.fieldAndPotential(xs, ys, qs, count, x, y, out);
+	}
+
+	// Batched field evaluation for n points. Works in the engine's own
+	// scratch rather than allocating, so one engine must not run fieldAt on
+	// two threads at once; give each thread a snapshot instead.
+	public void fieldAt(double[] px, double[] py, int n, double[] ex, double[] ey) {
+		Metrics.countFieldEvaluations(n);
+		double[] out = batchOut;
+		if (backend != Backend.DIRECT) {
+			ParticleMesh m = backend == Backend.MESH ? mesh() : null;
+			BarnesHutTree t = null; // Built only when needed
+			for (int p = 0; p < n; p++) {
+				if (m == null || !m.field(px[p], py[p], out)) {
+					if (t == null) {
+						t = tree();
+					}
+					t.field(px[p], py[p], out);
+				}
+				ex[p] = out[0];
+				ey[p] = out[1];
+			}
+		} else {
+			kernel.fieldAt(xs, ys, qs, count, px, py, n, ex, ey);
+		}
+		if (distributions.count > 0) {
+			for (int p = 0; p < n; p++) {
+				out[0] = ex[p];
+				out[1] = ey[p];
+				distributions.addField(px[p], py[p], out, -1);
+				ex[p] = out[0];
+				ey[p] = out[1];
+			}
+		}
+	}
+
+	// Net Coulomb force on charge i from all other charges and the
+	// distributions: out[0] = Fx, out[1] = Fy. Like charges repel; the
+	// original calculateNetForceOnCharge had the sign flipped, so forces
+	// drawn before the engine existed pointed the other way.
+	public void forceOn(int i, double[] out) {
+		double x = xs[i];
+		double y = ys[i];
+		double fx = 0;
+		double fy = 0;
+		for (int j = 0; j < count; j++) {
+			if (j == i) {
+				continue; // No self-force
+			}
+			double dx = x - xs[j];
+			double dy = y - ys[j];
+			double distSquared = dx * dx + dy * dy;
+			if (distSquared < MIN_DIST_SQUARED) {
+				distSquared = MIN_DIST_SQUARED;
+			}
+			double invDist = 1.0 / Math.sqrt(distSquared);
+			double s = K * qs[j] * invDist * invDist * invDist;
+			fx += s * dx;
+			fy += s * dy;
+		}
+		if (distributions.count > 0) {
+			out[0] = fx;
+			out[1] = fy;
+			distributions.addField(x, y, out, -1);
+			fx = out[0];
+			fy = out[1];
+		}
+		out[0] = fx * qs[i];
+		out[1] = fy * qs[i];
+	}
+
+	// Index of the charge nearest to (x, y) no further than radius away, or -1.
+	// Looks only at nearby cells of the spatial index, so the cost does not
+	// grow with the number of charges.
+	public int nearestWithin(double x, double y, double radius) {
+		return spatialIndex().nearestWithin(x, y, radius);
+	}
+
+	private SpatialHash spatialIndex() {
+		if (indexStale) {
+			synchronized (this) {
+				if (indexStale) {
+					index.rebuild(xs, ys, count);
+					indexStale = false;
+				}
+			}
+		}
+		return index;
+	}
+
+	// Independent copy that background workers can read while the UI keeps editing
+	public FieldEngine snapshot() {
+		FieldEngine copy = new FieldEngine(count);
+		System.arraycopy(xs, 0, copy.xs, 0, count);
+		System.arraycopy(ys, 0, copy.ys, 0, count);
+		System.arraycopy(qs, 0, copy.qs, 0, count);
+		copy.count = count;
+		copy.version = version;
+		copy.backend = backend;
+		copy.theta = theta;
+		copy.kernel = kernel;
+		copy.tree = tree; // Immutable once built, safe to share
+		copy.meshCellSize = meshCellSize;
+		copy.mesh = mesh; // Likewise
+		copy.index = indexStale ? new SpatialHash() : index.copy();
+		copy.indexStale = indexStale;
+		copy.distributions = distributions.copy();
+		return copy;
+	}
+}
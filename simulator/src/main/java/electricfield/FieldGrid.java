@@ -0,0 +1,293 @@
+package electricfield;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Field and potential sampled on a regular lattice covering the canvas. The
+// lattice is rebuilt only when the charge set changes; lookups in between are
+// bilinear interpolations of the four surrounding nodes. Cells close to a
+// charge, or to a charge distribution, are flagged and fall back to exact
+// evaluation, since the field varies too fast there for interpolation to be
+// trusted.
+//
+// When a single charge moves, changes value, appears or disappears the nodes
+// are patched in O(nodes) by removing its old contribution and adding the new
+// one (applyDelta). Every REBUILD_INTERVAL patches the grid is recomputed from
+// scratch so rounding error cannot pile up. Patches use the exact point
+// kernel, so they are only applied to grids filled by the DIRECT backend; on
+// an approximate backend the grid is rebuilt instead, rather than mixing
+// exact and approximate contributions. Full rebuilds fill the nodes in bands
+// of rows spread over the common fork-join pool.
+//
+// The canvas grid starts at the world origin; grids for the tiles of a
+// panned and zoomed view start at the tile's corner (x0, y0) instead.
+public class FieldGrid {
+	public static final double DEFAULT_CELL_SIZE = 10; // Pixels between nodes
+	static final double EXACT_RADIUS_CELLS = 2.5; // Exact zone around charges
+	static final int REBUILD_INTERVAL = 256; // Incremental patches between full rebuilds
+	static final int BAND_ROWS = 8; // Node rows per rebuild task
+
+	final double cellSize;
+	final int cols, rows; // Node counts
+	final double x0, y0; // World position of node (0, 0)
+	final double width, height; // Extent this grid covers
+	final double[] ex, ey, v; // Node values, row-major
+	private final int[] nearCharges; // Per cell: charges close enough to need exact evaluation
+	private FieldEngine engine;
+	private long version = -1; // Engine version the nodes were computed from
+	private FieldEngine.Backend backend; // Engine backend the nodes were computed with
+	private int patches; // applyDelta calls since the last full rebuild
+
+	public FieldGrid(double cellSize, int width, int height) {
+		this(cellSize, 0, 0, width, height);
+	}
+
+	public FieldGrid(double cellSize, double x0, double y0, double width, double height) {
+		if (cellSize <= 0) {
+			throw new IllegalArgumentException("cellSize must be > 0");
+		}
+		this.cellSize = cellSize;
+		this.x0 = x0;
+		this.y0 = y0;
+		this.width = width;
+		this.height = height;
+		cols = (int) Math.ceil(width / cellSize) + 1;
+		rows = (int) Math.ceil(height / cellSize) + 1;
+		ex = new double[cols * rows];
+		ey = new double[cols * rows];
+		v = new double[cols * rows];
+		nearCharges = new int[cols * rows];
+	}
+
+	// True when the nodes still describe the engine's charges, as its current
+	// backend evaluates them, at this size
+	public boolean isValidFor(FieldEngine engine, int width, int height) {
+		return describes(engine, engine.version()) && x0 == 0 && y0 == 0 && this.width == width
+				&& this.height == height;
+	}
+
+	// True when the nodes hold engine's field at the given version, as its
+	// current backend evaluates it
+	public boolean describes(FieldEngine engine, long version) {
+		return this.engine == engine && this.version == version && backend == engine.backend();
+	}
+
+	public void invalidate() {
+		version = -1;
+	}
+
+	public long version() {
+		return version;
+	}
+
+	public void rebuild(FieldEngine engine) {
+		RowBands task = new RowBands(engine, 0, rows);
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		if (rows <= BAND_ROWS) {
+			task.fill(); // Not worth a hand-off
+		} else if (ForkJoinTask.getPool() == pool) {
+			task.invoke();
+		} else {
+			pool.invoke(task);
+		}
+		Arrays.fill(nearCharges, 0);
+		for (int c = 0; c < engine.size(); c++) {
+			markNear(engine.x(c), engine.y(c), 1);
+		}
+		ChargeDistributions distributions = engine.distributions();
+		for (int d = 0; d < distributions.size(); d++) {
+			markNear(distributions, d);
+		}
+		this.engine = engine;
+		this.version = engine.version();
+		this.backend = engine.backend();
+		patches = 0;
+	}
+
+	// Patches the grid after one charge changed from (oldX, oldY, oldQ) to
+	// (newX, newY, newQ) in engine; use a charge of 0 on one side for charges
+	// that were added or removed. The grid must have been valid for the engine
+	// just before that change. Grids of an approximate backend are rebuilt,
+	// as the patch would add exact terms to approximate ones.
+	public void applyDelta(FieldEngine engine, double oldX, double oldY, double oldQ, double newX, double newY,
+			double newQ, boolean existedBefore, boolean existsAfter) {
+		if (backend != FieldEngine.Backend.DIRECT || engine.backend() != FieldEngine.Backend.DIRECT) {
+			rebuild(engine);
+			return;
+		}
+		if (++patches >= REBUILD_INTERVAL) {
+			rebuild(engine); // Guard against accumulated rounding drift
+			return;
+		}
+		if (existedBefore) {
+			superpose(oldX, oldY, -oldQ);
+			markNear(oldX, oldY, -1);
+		}
+		if (existsAfter) {
+			superpose(newX, newY, newQ);
+			markNear(newX, newY, 1);
+		}
+		version = engine.version();
+	}
+
+	// Evaluates node rows [from, to), splitting until bands are small
+	private class RowBands extends RecursiveAction {
+		private final FieldEngine engine;
+		private final int from, to;
+
+		RowBands(FieldEngine engine, int from, int to) {
+			this.engine = engine;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= BAND_ROWS) {
+				fill();
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new RowBands(engine, from, mid), new RowBands(engine, mid, to));
+		}
+
+		void fill() {
+			double[] out = new double[3];
+			for (int row = from; row < to; row++) {
+				double y = y0 + row * cellSize;
+				for (int col = 0; col < cols; col++) {
+					int i = row * cols + col;
+					engine.fieldAndPotential(x0 + col * cellSize, y, out);
+					ex[i] = out[0];
+					ey[i] = out[1];
+					v[i] = out[2];
+				}
+			}
+			Metrics.countFieldEvaluations((long) (to - from) * cols);
+		}
+	}
+
+	// Adds the field and potential of a point charge q at (cx, cy) to every node
+	private void superpose(double cx, double cy, double q) {
+		if (q == 0) {
+			return;
+		}
+		double kq = FieldEngine.K * q;
+		for (int row = 0; row < rows; row++) {
+			double dy = y0 + row * cellSize - cy;
+			int i = row * cols;
+			for (int col = 0; col < cols; col++, i++) {
+				double dx = x0 + col * cellSize - cx;
+				double distSquared = dx * dx + dy * dy;
+				if (distSquared < FieldEngine.MIN_DIST_SQUARED) {
+					distSquared = FieldEngine.MIN_DIST_SQUARED;
+				}
+				double invDist = 1.0 / Math.sqrt(distSquared);
+				double s = kq * invDist * invDist * invDist;
+				ex[i] += s * dx;
+				ey[i] += s * dy;
+				v[i] += kq * invDist;
+			}
+		}
+	}
+
+	// Independent copy that background workers can sample while this grid is
+	// rebuilt
+	public FieldGrid copy() {
+		FieldGrid copy = new FieldGrid(cellSize, x0, y0, width, height);
+		System.arraycopy(ex, 0, copy.ex, 0, ex.length);
+		System.arraycopy(ey, 0, copy.ey, 0, ey.length);
+		System.arraycopy(v, 0, copy.v, 0, v.length);
+		System.arraycopy(nearCharges, 0, copy.nearCharges, 0, nearCharges.length);
+		copy.engine = engine;
+		copy.version = version;
+		copy.backend = backend;
+		return copy;
+	}
+
+	// Counts a charge at (x, y) in (delta 1) or out of (delta -1) every cell
+	// within EXACT_RADIUS_CELLS of it
+	private void markNear(double x, double y, int delta) {
+		int reach = (int) Math.ceil(EXACT_RADIUS_CELLS);
+		int col = (int) Math.floor((x - x0) / cellSize);
+		int row = (int) Math.floor((y - y0) / cellSize);
+		for (int r = row - reach; r <= row + reach; r++) {
+			if (r < 0 || r >= rows) {
+				continue;
+			}
+			for (int k = col - reach; k <= col + reach; k++) {
+				if (k >= 0 && k < cols) {
+					nearCharges[r * cols + k] += delta;
+				}
+			}
+		}
+	}
+
+	// Counts distribution d in every cell whose centre lies within
+	// EXACT_RADIUS_CELLS of it, plus half a cell diagonal
+	private void markNear(ChargeDistributions distributions, int d) {
+		double[] bounds = new double[4];
+		distributions.bounds(d, bounds);
+		double reach = (EXACT_RADIUS_CELLS + 0.75) * cellSize;
+		int fromCol = Math.max(0, (int) Math.floor((bounds[0] - reach - x0) / cellSize));
+		int toCol = Math.min(cols - 2, (int) Math.floor((bounds[2] + reach - x0) / cellSize));
+		int fromRow = Math.max(0, (int) Math.floor((bounds[1] - reach - y0) / cellSize));
+		int toRow = Math.min(rows - 2, (int) Math.floor((bounds[3] + reach - y0) / cellSize));
+		for (int r = fromRow; r <= toRow; r++) {
+			double y = y0 + (r + 0.5) * cellSize;
+			for (int k = fromCol; k <= toCol; k++) {
+				if (distributions.distance(d, x0 + (k + 0.5) * cellSize, y) <= reach) {
+					nearCharges[r * cols + k]++;
+				}
+			}
+		}
+	}
+
+	// Interpolated field at (x, y) into out[0..1]; returns false when the
+	// point is outside the grid or inside an exact zone, in which case the
+	// caller should evaluate the engine directly
+	public boolean sampleField(double x, double y, double[] out) {
+		int i = cellIndex(x, y);
+		if (i < 0) {
+			return false;
+		}
+		double fx = (x - x0) / cellSize - (i % cols);
+		double fy = (y - y0) / cellSize - (i / cols);
+		out[0] = bilinear(ex, i, fx, fy);
+		out[1] = bilinear(ey, i, fx, fy);
+		return true;
+	}
+
+	// Interpolated potential, or NaN when the caller should evaluate exactly
+	public double samplePotential(double x, double y) {
+		int i = cellIndex(x, y);
+		if (i < 0) {
+			return Double.NaN;
+		}
+		return bilinear(v, i, (x - x0) / cellSize - (i % cols), (y - y0) / cellSize - (i / cols));
+	}
+
+	// Index of the lower-left node of the cell containing (x, y), or -1
+	private int cellIndex(double x, double y) {
+		double gx = (x - x0) / cellSize;
+		double gy = (y - y0) / cellSize;
+		if (!(gx >= 0 && gy >= 0)) {
+			return -1; // Also rejects NaN
+		}
+		int col = (int) gx;
+		int row = (int) gy;
+		if (col >= cols - 1 || row >= rows - 1) {
+			return -1;
+		}
+		int i = row * cols + col;
+		return nearCharges[i] > 0 ? -1 : i;
+	}
+
+	private double bilinear(double[] values, int i, double fx, double fy) {
+		double bottom = values[i] + (values[i + 1] - values[i]) * fx;
+		double top = values[i + cols] + (values[i + cols + 1] - values[i + cols]) * fx;
+		return bottom + (top - bottom) * fy;
+	}
+}
@@ -0,0 +1,86 @@
+package electricfield;
+
+// Direct-summation inner loops over packed charge arrays (dx, dy, r^2,
+// 1/r^3, accumulate), used by FieldEngine's DIRECT backend. There are two:
+// the plain scalar loops, and VectorFieldKernel on the incubating Vector API,
+// which handles as many charges (one point) or points (fieldAt) per
+// instruction as the host's widest vector holds, e.g. 4 doubles with AVX2,
+// 8 with AVX-512.
+//
+// The vector kernel needs the JVM started with
+// --add-modules jdk.incubator.vector. best() falls back to the scalar kernel
+// without it, or when the host's preferred vector holds a single double;
+// -Delectricfield.kernel=scalar or =vector overrides the choice.
+public abstract class FieldKernel {
+	public static final FieldKernel SCALAR = new ScalarFieldKernel();
+	private static final String VECTOR_CLASS = "electricfield.VectorFieldKernel";
+	private static final FieldKernel VECTOR = loadVector();
+	private static final FieldKernel BEST = chooseBest();
+
+	// The vector kernel, or null when the module is missing or the host has
+	// no useful vector width
+	private static FieldKernel loadVector() {
+		if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			return null;
+		}
+		try {
+			FieldKernel kernel = (FieldKernel) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+			return kernel.lanes() > 1 ? kernel : null;
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	private static FieldKernel chooseBest() {
+		String choice = System.getProperty("electricfield.kernel", "");
+		if (choice.equalsIgnoreCase("scalar") || VECTOR == null) {
+			if (choice.equalsIgnoreCase("vector")) {
+				System.err.println("Vector field kernel unavailable (run with --add-modules jdk.incubator.vector), "
+						+ "using the scalar one");
+			}
+			return SCALAR;
+		}
+		return VECTOR;
+	}
+
+	// Kernel new engines start with
+	public static FieldKernel best() {
+		return BEST;
+	}
+
+	// The vector kernel; throws when this JVM cannot run it
+	public static FieldKernel vector() {
+		if (VECTOR == null) {
+			throw new UnsupportedOperationException(
+					"vector kernel unavailable, run with --add-modules jdk.incubator.vector");
+		}
+		return VECTOR;
+	}
+
+	public static boolean isVectorAvailable() {
+		return VECTOR != null;
+	}
+
+	// Doubles handled per instruction, 1 for the scalar kernel
+	public abstract int lanes();
+
+	public abstract String name();
+
+	@Override
+	public String toString() {
+		return name();
+	}
+
+	// Field at (x, y) of charges [0, n): out[0] = Ex, out[1] = Ey
+	abstract void field(double[] xs, double[] ys, double[] qs, int n, double x, double y, double[] out);
+
+	abstract double potential(double[] xs, double[] ys, double[] qs, int n, double x, double y);
+
+	// out[0] = Ex, out[1] = Ey, out[2] = V
+	abstract void fieldAndPotential(double[] xs, double[] ys, double[] qs, int n, double x, double y,
+			double[] out);
+
+	// Field at points [0, m) of px/py into ex/ey
+	abstract void fieldAt(double[] xs, double[] ys, double[] qs, int n, double[] px, double[] py, int m,
+			double[] ex, double[] ey);
+}
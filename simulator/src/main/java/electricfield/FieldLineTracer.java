@@ -0,0 +1,453 @@
+package electricfield;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Traces field lines on a fork-join pool, one task per small batch of lines,
+// against an engine snapshot and a private copy of the field grid so the UI
+// can keep editing charges meanwhile. Every trace carries the scene version it
+// was requested for; once a newer trace is requested, or cancel() is called,
+// the older one stops within a step of each line being traced and its result
+// is dropped.
+//
+// Lines are integrated along the unit field direction, i.e. by arc length,
+// with an adaptive Dormand-Prince 5(4) stepper: steps grow where the line is
+// straight and shrink near charges, lines end after maxLength pixels or when
+// a sink captures them, and a cubic Hermite fill-in keeps long steps smooth on
+// screen without extra field evaluations. The original fixed-step Euler loop
+// is kept as Integrator.EULER for comparison.
+//
+// Charge distributions seed their lines evenly along the outline SEED_RADIUS
+// around them, more of them the longer it is, and end lines that come within
+// STOP_RADIUS like charges do.
+public class FieldLineTracer {
+	private static final int LINES_PER_TASK = 4; // Fork-join split threshold
+	static final double SEED_RADIUS = 15; // Lines start this far from a charge
+	static final double STOP_RADIUS = 10; // Lines end this close to a charge
+	static final double TOLERANCE = 0.1; // Local position error per step (px)
+	static final double MIN_STEP = 0.25; // Adaptive step bounds (px)
+	static final double MAX_STEP = 120;
+	static final double OUTPUT_SPACING = 4; // Max polyline segment length (px)
+	static final int MAX_SEED_FACTOR = 4; // A distribution seeds at most this many times a charge's lines
+
+	public enum Integrator {
+		EULER, // Fixed steps of stepSize, one evaluation each
+		RK45 // Adaptive Dormand-Prince with error control
+	}
+
+	private final ForkJoinPool pool;
+	private final int linesPerCharge;
+	private final int maxSteps;
+	private final double stepSize;
+	private final double maxLength; // Arc length limit for adaptive lines
+	private volatile Integrator integrator = Integrator.RK45;
+	private final AtomicLong latestRequest = new AtomicLong(); // Bumped by every trace and cancel
+	private volatile long requestedVersion = -1;
+	private volatile int requestedLinesPerCharge;
+
+	// Euler takes maxSteps steps of stepSize; RK45 covers the same arc length
+	public FieldLineTracer(int linesPerCharge, int maxSteps, double stepSize) {
+		this(ForkJoinPool.commonPool(), linesPerCharge, maxSteps, stepSize);
+	}
+
+	public FieldLineTracer(ForkJoinPool pool, int linesPerCharge, int maxSteps, double stepSize) {
+		this.pool = pool;
+		this.linesPerCharge = linesPerCharge;
+		this.maxSteps = maxSteps;
+		this.stepSize = stepSize;
+		this.maxLength = maxSteps * stepSize;
+	}
+
+	public Integrator integrator() {
+		return integrator;
+	}
+
+	public void setIntegrator(Integrator integrator) {
+		this.integrator = integrator;
+	}
+
+	public int linesPerCharge() {
+		return linesPerCharge;
+	}
+
+	// Version of the most recent trace request, -1 after cancel()
+	public long requestedVersion() {
+		return requestedVersion;
+	}
+
+	// Lines per charge of the most recent trace request
+	public int requestedLinesPerCharge() {
+		return requestedLinesPerCharge;
+	}
+
+	// Starts tracing in the background. onDone runs on a pool thread, and only
+	// if no newer trace was requested in the meantime. grid may be null. Lines
+	// stop at the edges of the width x height canvas; pass 0 for both to
+	// trace on an unbounded plane, as for a view that pans and zooms, where
+	// only the length limit and sinks end them.
+	public void trace(long version, FieldEngine snapshot, FieldGrid grid, int width, int height,
+			Consumer<FieldLines> onDone) {
+		trace(version, linesPerCharge, snapshot, grid, width, height, onDone);
+	}
+
+	// As above with a different number of lines per charge, e.g. fewer for a
+	// quick preview
+	public void trace(long version, int linesPerCharge, FieldEngine snapshot, FieldGrid grid, int width, int height,
+			Consumer<FieldLines> onDone) {
+		long request = latestRequest.incrementAndGet();
+		requestedVersion = version;
+		requestedLinesPerCharge = linesPerCharge;
+		pool.execute(() -> {
+			FieldLines lines = traceAll(version, request, linesPerCharge, snapshot, grid, width, height);
+			if (lines != null && latestRequest.get() == request) {
+				onDone.accept(lines);
+			}
+		});
+	}
+
+	// Stops the trace in flight, if any, without starting another
+	public void cancel() {
+		latestRequest.incrementAndGet();
+		requestedVersion = -1;
+	}
+
+	// Traces every line on the pool and waits for the result, outside of the
+	// versioning used by trace
+	public FieldLines traceNow(long version, FieldEngine snapshot, FieldGrid grid, int width, int height) {
+		return traceAll(version, -1, linesPerCharge, snapshot, grid, width, height);
+	}
+
+	private static boolean outside(double x, double y, int width, int height) {
+		return (width > 0 || height > 0) && (x < 0 || x > width || y < 0 || y > height);
+	}
+
+	private boolean cancelled(long request) {
+		return request != -1 && latestRequest.get() != request;
+	}
+
+	// Returns null when request was superseded; -1 is never cancelled
+	private FieldLines traceAll(long version, long request, int linesPerCharge, FieldEngine snapshot, FieldGrid grid,
+			int width, int height) {
+		int seeds = 0;
+		for (int c = 0; c < snapshot.size(); c++) {
+			if (Math.abs(snapshot.charge(c)) > 0) {
+				seeds += linesPerCharge;
+			}
+		}
+		ChargeDistributions distributions = snapshot.distributions();
+		for (int d = 0; d < distributions.size(); d++) {
+			if (Math.abs(distributions.charge(d)) > 0) {
+				seeds += seedCount(distributions, d, linesPerCharge);
+			}
+		}
+		double[] seedX = new double[seeds];
+		double[] seedY = new double[seeds];
+		boolean[] outward = new boolean[seeds];
+		int s = 0;
+		double angleStep = 2 * Math.PI / linesPerCharge;
+		for (int c = 0; c < snapshot.size(); c++) {
+			double q = snapshot.charge(c);
+			if (Math.abs(q) > 0) {
+				for (int i = 0; i < linesPerCharge; i++) {
+					double angle = i * angleStep;
+					seedX[s] = snapshot.x(c) + SEED_RADIUS * Math.cos(angle);
+					seedY[s] = snapshot.y(c) + SEED_RADIUS * Math.sin(angle);
+					outward[s] = q > 0;
+					s++;
+				}
+			}
+		}
+		double[] point = new double[2];
+		for (int d = 0; d < distributions.size(); d++) {
+			double q = distributions.charge(d);
+			if (Math.abs(q) > 0) {
+				int n = seedCount(distributions, d, linesPerCharge);
+				double spacing = distributions.outlineLength(d, SEED_RADIUS) / n;
+				for (int i = 0; i < n; i++) {
+					distributions.outlinePoint(d, SEED_RADIUS, (i + 0.5) * spacing, point);
+					seedX[s] = point[0];
+					seedY[s] = point[1];
+					outward[s] = q > 0;
+					s++;
+				}
+			}
+		}
+
+		float[][] lines = new float[seeds][];
+		int[] evaluations = new int[seeds];
+		TraceRange task = new TraceRange(request, snapshot, grid, width, height, seedX, seedY, outward, lines,
+				evaluations, 0, seeds);
+		if (ForkJoinTask.getPool() == pool) {
+			task.invoke();
+		} else {
+			pool.invoke(task);
+		}
+		if (cancelled(request)) {
+			return null;
+		}
+		return new FieldLines(version, width, height, linesPerCharge, lines, evaluations);
+	}
+
+	// Lines seeded around distribution d: as many per length of its outline
+	// as a charge has around its circle, within linesPerCharge and
+	// MAX_SEED_FACTOR times that
+	private static int seedCount(ChargeDistributions distributions, int d, int linesPerCharge) {
+		double perCircle = distributions.outlineLength(d, SEED_RADIUS) / (2 * Math.PI * SEED_RADIUS);
+		return (int) Math.max(linesPerCharge, Math.min(MAX_SEED_FACTOR * linesPerCharge,
+				Math.round(perCircle * linesPerCharge)));
+	}
+
+	// Traces one line, cut short once request is superseded; the number of
+	// field evaluations it took goes into evaluations[slot]
+	float[] traceLine(long request, FieldEngine snapshot, FieldGrid grid, int width, int height, double startX,
+			double startY, boolean outward, int[] evaluations, int slot) {
+		Polyline line = new Polyline((float) startX, (float) startY);
+		if (integrator == Integrator.EULER) {
+			evaluations[slot] = traceEuler(request, snapshot, grid, width, height, startX, startY, outward, line);
+		} else {
+			evaluations[slot] = traceAdaptive(request, snapshot, grid, width, height, startX, startY, outward, line);
+		}
+		Metrics.countFieldEvaluations(line.exact);
+		return line.toArray();
+	}
+
+	// Unit field direction at (x, y) into out, flipped for inward lines;
+	// false where the field is too weak to follow. Exact evaluations are
+	// counted on line.
+	private static boolean direction(FieldEngine snapshot, FieldGrid grid, double x, double y, boolean outward,
+			double[] out, Polyline line) {
+		if (grid == null || !grid.sampleField(x, y, out)) {
+			snapshot.field(x, y, out);
+			line.exact++;
+		}
+		double magnitude = Math.hypot(out[0], out[1]);
+		if (magnitude < 1e-10) {
+			return false;
+		}
+		double scale = (outward ? 1 : -1) / magnitude;
+		out[0] *= scale;
+		out[1] *= scale;
+		return true;
+	}
+
+	// Original fixed-step loop: stops on leaving the canvas or coming within
+	// STOP_RADIUS of any charge
+	private int traceEuler(long request, FieldEngine snapshot, FieldGrid grid, int width, int height, double x,
+			double y, boolean outward, Polyline line) {
+		double[] dir = new double[2];
+		int evaluations = 0;
+		for (int i = 0; i < maxSteps && !cancelled(request); i++) {
+			evaluations++;
+			if (!direction(snapshot, grid, x, y, outward, dir, line)) {
+				break; // Stop if field is too weak
+			}
+			x += dir[0] * stepSize;
+			y += dir[1] * stepSize;
+
+			if (outside(x, y, width, height)) {
+				break;
+			}
+			if (snapshot.nearestWithin(x, y, STOP_RADIUS) >= 0
+					|| snapshot.distributions().nearestWithin(x, y, STOP_RADIUS) >= 0) {
+				break;
+			}
+			line.add((float) x, (float) y);
+		}
+		return evaluations;
+	}
+
+	// Dormand-Prince 5(4) tableau
+	private static final double A21 = 1.0 / 5;
+	private static final double A31 = 3.0 / 40, A32 = 9.0 / 40;
+	private static final double A41 = 44.0 / 45, A42 = -56.0 / 15, A43 = 32.0 / 9;
+	private static final double A51 = 19372.0 / 6561, A52 = -25360.0 / 2187, A53 = 64448.0 / 6561,
+			A54 = -212.0 / 729;
+	private static final double A61 = 9017.0 / 3168, A62 = -355.0 / 33, A63 = 46732.0 / 5247, A64 = 49.0 / 176,
+			A65 = -5103.0 / 18656;
+	private static final double B1 = 35.0 / 384, B3 = 500.0 / 1113, B4 = 125.0 / 192, B5 = -2187.0 / 6784,
+			B6 = 11.0 / 84;
+	private static final double E1 = 71.0 / 57600, E3 = -71.0 / 16695, E4 = 71.0 / 1920, E5 = -17253.0 / 339200,
+			E6 = 22.0 / 525, E7 = -1.0 / 40;
+
+	// Adaptive line: ends after maxLength of arc, when a sink captures it
+	// (the charge centre becomes the last point), on a source or weak field,
+	// or once it has left the canvas
+	private int traceAdaptive(long request, FieldEngine snapshot, FieldGrid grid, int width, int height, double x,
+			double y, boolean outward, Polyline line) {
+		double[] k = new double[14]; // Stages k1..k7, x/y interleaved
+		double[] dir = new double[2];
+		int evaluations = 1;
+		if (!direction(snapshot, grid, x, y, outward, dir, line)) {
+			return evaluations;
+		}
+		k[0] = dir[0];
+		k[1] = dir[1];
+
+		double h = Math.min(stepSize, MAX_STEP);
+		double length = 0;
+		while (length < maxLength && !cancelled(request)) {
+			h = Math.min(h, maxLength - length);
+			boolean ok = stage(snapshot, grid, outward, dir, k, 2, x + h * A21 * k[0], y + h * A21 * k[1], line)
+					&& stage(snapshot, grid, outward, dir, k, 4, x + h * (A31 * k[0] + A32 * k[2]),
+							y + h * (A31 * k[1] + A32 * k[3]), line)
+					&& stage(snapshot, grid, outward, dir, k, 6, x + h * (A41 * k[0] + A42 * k[2] + A43 * k[4]),
+							y + h * (A41 * k[1] + A42 * k[3] + A43 * k[5]), line)
+					&& stage(snapshot, grid, outward, dir, k, 8,
+							x + h * (A51 * k[0] + A52 * k[2] + A53 * k[4] + A54 * k[6]),
+							y + h * (A51 * k[1] + A52 * k[3] + A53 * k[5] + A54 * k[7]), line)
+					&& stage(snapshot, grid, outward, dir, k, 10,
+							x + h * (A61 * k[0] + A62 * k[2] + A63 * k[4] + A64 * k[6] + A65 * k[8]),
+							y + h * (A61 * k[1] + A62 * k[3] + A63 * k[5] + A64 * k[7] + A65 * k[9]), line);
+			evaluations += 5;
+			if (!ok) {
+				break; // Field vanished inside the step
+			}
+			double nx = x + h * (B1 * k[0] + B3 * k[4] + B4 * k[6] + B5 * k[8] + B6 * k[10]);
+			double ny = y + h * (B1 * k[1] + B3 * k[5] + B4 * k[7] + B5 * k[9] + B6 * k[11]);
+			evaluations++;
+			if (!stage(snapshot, grid, outward, dir, k, 12, nx, ny, line)) {
+				line.add((float) nx, (float) ny);
+				break;
+			}
+			double errX = h * (E1 * k[0] + E3 * k[4] + E4 * k[6] + E5 * k[8] + E6 * k[10] + E7 * k[12]);
+			double errY = h * (E1 * k[1] + E3 * k[5] + E4 * k[7] + E5 * k[9] + E6 * k[11] + E7 * k[13]);
+			double error = Math.hypot(errX, errY);
+
+			if (error > TOLERANCE && h > MIN_STEP) {
+				h = Math.max(MIN_STEP, h * Math.max(0.2, 0.9 * Math.pow(TOLERANCE / error, 0.2)));
+				continue; // Rejected, retry smaller
+			}
+
+			fillIn(line, x, y, k[0], k[1], nx, ny, k[12], k[13], h);
+			line.add((float) nx, (float) ny);
+			x = nx;
+			y = ny;
+			length += h;
+			k[0] = k[12]; // First same as last
+			k[1] = k[13];
+
+			if (outside(x, y, width, height)) {
+				break;
+			}
+			int nearest = snapshot.nearestWithin(x, y, STOP_RADIUS);
+			if (nearest >= 0) {
+				if (outward ? snapshot.charge(nearest) < 0 : snapshot.charge(nearest) > 0) {
+					line.add((float) snapshot.x(nearest), (float) snapshot.y(nearest)); // Captured by a sink
+				}
+				break;
+			}
+			if (snapshot.distributions().nearestWithin(x, y, STOP_RADIUS) >= 0) {
+				break; // Reached a distribution, source or sink
+			}
+
+			double grow = error > 0 ? 0.9 * Math.pow(TOLERANCE / error, 0.2) : 5;
+			h = Math.min(MAX_STEP, h * Math.min(5, Math.max(0.2, grow)));
+		}
+		return evaluations;
+	}
+
+	// Evaluates one stage into k[offset], k[offset + 1]
+	private static boolean stage(FieldEngine snapshot, FieldGrid grid, boolean outward, double[] dir, double[] k,
+			int offset, double x, double y, Polyline line) {
+		if (!direction(snapshot, grid, x, y, outward, dir, line)) {
+			return false;
+		}
+		k[offset] = dir[0];
+		k[offset + 1] = dir[1];
+		return true;
+	}
+
+	// Adds cubic Hermite points between the ends of an accepted step so that
+	// no drawn segment is longer than OUTPUT_SPACING
+	private static void fillIn(Polyline line, double x0, double y0, double tx0, double ty0, double x1, double y1,
+			double tx1, double ty1, double h) {
+		int segments = (int) Math.ceil(h / OUTPUT_SPACING);
+		for (int i = 1; i < segments; i++) {
+			double t = (double) i / segments;
+			double t2 = t * t;
+			double t3 = t2 * t;
+			double h00 = 2 * t3 - 3 * t2 + 1;
+			double h10 = (t3 - 2 * t2 + t) * h;
+			double h01 = -2 * t3 + 3 * t2;
+			double h11 = (t3 - t2) * h;
+			line.add((float) (h00 * x0 + h10 * tx0 + h01 * x1 + h11 * tx1),
+					(float) (h00 * y0 + h10 * ty0 + h01 * y1 + h11 * ty1));
+		}
+	}
+
+	// Growable packed x/y buffer for one line
+	private static class Polyline {
+		private float[] points = new float[64];
+		private int size;
+		int exact; // Field evaluations that went to the engine rather than the grid
+
+		Polyline(float x, float y) {
+			add(x, y);
+		}
+
+		void add(float x, float y) {
+			if (size + 2 > points.length) {
+				points = Arrays.copyOf(points, points.length * 2);
+			}
+			points[size++] = x;
+			points[size++] = y;
+		}
+
+		float[] toArray() {
+			return Arrays.copyOf(points, size);
+		}
+	}
+
+	// Traces lines [from, to), splitting until batches are small
+	private class TraceRange extends RecursiveAction {
+		private final long request; // -1 when not cancellable
+		private final FieldEngine snapshot;
+		private final FieldGrid grid;
+		private final int width, height;
+		private final double[] seedX, seedY;
+		private final boolean[] outward;
+		private final float[][] lines;
+		private final int[] evaluations;
+		private final int from, to;
+
+		TraceRange(long request, FieldEngine snapshot, FieldGrid grid, int width, int height, double[] seedX,
+				double[] seedY, boolean[] outward, float[][] lines, int[] evaluations, int from, int to) {
+			this.request = request;
+			this.snapshot = snapshot;
+			this.grid = grid;
+			this.width = width;
+			this.height = height;
+			this.seedX = seedX;
+			this.seedY = seedY;
+			this.outward = outward;
+			this.lines = lines;
+			this.evaluations = evaluations;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= LINES_PER_TASK) {
+				for (int i = from; i < to; i++) {
+					if (cancelled(request)) {
+						return; // Superseded, stop early
+					}
+					lines[i] = traceLine(request, snapshot, grid, width, height, seedX[i], seedY[i], outward[i],
+							evaluations, i);
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(
+					new TraceRange(request, snapshot, grid, width, height, seedX, seedY, outward, lines, evaluations,
+							from, mid),
+					new TraceRange(request, snapshot, grid, width, height, seedX, seedY, outward, lines, evaluations,
+							mid, to));
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package electricfield;
+
+// Immutable set of traced field lines. Each polyline is a packed float array
+// of x0, y0, x1, y1, ... so painting only has to stroke them.
+public final class FieldLines {
+	public final long version; // Scene version the lines were traced for
+	public final int width, height; // Canvas size used as the tracing bounds
+	public final int linesPerCharge; // Fewer than usual for a preview
+	private final float[][] lines;
+	private final int[] evaluations; // Field evaluations spent per line
+
+	FieldLines(long version, int width, int height, int linesPerCharge, float[][] lines, int[] evaluations) {
+		this.version = version;
+		this.width = width;
+		this.height = height;
+		this.linesPerCharge = linesPerCharge;
+		this.lines = lines;
+		this.evaluations = evaluations;
+	}
+
+	public int lineCount() {
+		return lines.length;
+	}
+
+	// Number of points in line i
+	public int pointCount(int i) {
+		return lines[i].length / 2;
+	}
+
+	public float x(int line, int point) {
+		return lines[line][2 * point];
+	}
+
+	public float y(int line, int point) {
+		return lines[line][2 * point + 1];
+	}
+
+	public int evaluations(int line) {
+		return evaluations[line];
+	}
+
+	public long totalEvaluations() {
+		long total = 0;
+		for (int e : evaluations) {
+			total += e;
+		}
+		return total;
+	}
+
+	public boolean matches(long version, int width, int height) {
+		return this.version == version && this.width == width && this.height == height;
+	}
+
+	public boolean matches(long version, int width, int height, int linesPerCharge) {
+		return matches(version, width, height) && this.linesPerCharge == linesPerCharge;
+	}
+}
@@ -0,0 +1,275 @@
+package electricfield;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Background heatmap of the potential or the field strength. One sample is
+// taken per stride x stride block of the canvas and written as a packed RGB
+// int straight into the pixel array of a small TYPE_INT_RGB image, which the
+// caller scales up to the canvas. Colours come from a 256-entry lookup table,
+// and rows are split into bands spread over a fork-join pool: a first pass
+// samples the field engine, a second maps the samples to colours once the
+// scale is known.
+//
+// Tiles of a zoomed view render a region of the plane instead of the canvas
+// and share one colour scale, taken from the whole view by colourScale, so
+// that neighbouring tiles match. Both can interpolate from a FieldGrid
+// covering the region, going to the engine only where the grid asks for
+// exact evaluation.
+public class Heatmap {
+	public enum Mode {
+		POTENTIAL, // Signed, diverging blue-white-red
+		FIELD_MAGNITUDE // |E| on a log scale, dark to bright
+	}
+
+	static final int BAND_ROWS = 8; // Image rows per task
+	static final int SCALE_SAMPLES = 4096; // Samples used to pick the colour range
+	static final double SCALE_PERCENTILE = 0.98; // Brightest colour is reached here
+
+	private static final int[] DIVERGING = lookupTable(new int[] { 0x2040a0, 0x8cb4e6, 0xffffff, 0xf0a078, 0xb01c1c });
+	private static final int[] SEQUENTIAL = lookupTable(new int[] { 0x000004, 0x420a68, 0x932667, 0xdd513a, 0xfca50a,
+			0xfcffa4 });
+
+	private final ForkJoinPool pool;
+	private BufferedImage image;
+	private float[] values = new float[0]; // Per pixel, before colour mapping
+
+	public Heatmap() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public Heatmap(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	// Renders the heatmap for a width x height canvas at one sample per
+	// stride x stride pixels. The returned image is ceil(width / stride) by
+	// ceil(height / stride) and is reused by the next call.
+	public BufferedImage render(FieldEngine engine, Mode mode, int width, int height, int stride) {
+		return render(engine, mode, 0, 0, 1, width, height, stride, Double.NaN);
+	}
+
+	// As above for width x height pixels, each pixelSize world units across,
+	// starting at world point (x0, y0). scale is a colour scale from
+	// colourScale, or NaN to pick one from this image's own samples.
+	public BufferedImage render(FieldEngine engine, Mode mode, double x0, double y0, double pixelSize, int width,
+			int height, int stride, double scale) {
+		return render(engine, null, mode, x0, y0, pixelSize, width, height, stride, scale);
+	}
+
+	// As above, sampling grid where it can (grid may be null)
+	public BufferedImage render(FieldEngine engine, FieldGrid grid, Mode mode, double x0, double y0,
+			double pixelSize, int width, int height, int stride, double scale) {
+		if (stride < 1) {
+			throw new IllegalArgumentException("stride must be >= 1");
+		}
+		int w = Math.max(1, (width + stride - 1) / stride);
+		int h = Math.max(1, (height + stride - 1) / stride);
+		if (image == null || image.getWidth() != w || image.getHeight() != h) {
+			image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+			values = new float[w * h];
+		}
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+		Region region = new Region(x0, y0, pixelSize, stride);
+		run(new Bands(engine, grid, mode, region, w, 0, h, null, 0));
+		if (Double.isNaN(scale)) {
+			scale = scale(mode, values, values.length);
+		}
+		run(new Bands(engine, grid, mode, region, w, 0, h, pixels, scale));
+		return image;
+	}
+
+	// Colour scale for the width x height pixel region described as for
+	// render, from a coarse lattice of samples across it, taken from grid
+	// where it can (grid may be null)
+	public static double colourScale(FieldEngine engine, FieldGrid grid, Mode mode, double x0, double y0,
+			double pixelSize, int width, int height) {
+		int side = (int) Math.sqrt(SCALE_SAMPLES);
+		float[] samples = new float[side * side];
+		double[] out = new double[2];
+		int exact = 0;
+		for (int row = 0; row < side; row++) {
+			double y = y0 + (row + 0.5) * height / side * pixelSize;
+			for (int col = 0; col < side; col++) {
+				double x = x0 + (col + 0.5) * width / side * pixelSize;
+				float v = sampled(grid, mode, x, y, out);
+				if (Float.isNaN(v)) {
+					v = exact(engine, mode, x, y, out);
+					exact++;
+				}
+				samples[row * side + col] = v;
+			}
+		}
+		Metrics.countFieldEvaluations(exact);
+		return scale(mode, samples, samples.length);
+	}
+
+	// Potential, or log10 |E| floored so empty space stays finite, from grid;
+	// NaN where grid is null or cannot be trusted
+	private static float sampled(FieldGrid grid, Mode mode, double x, double y, double[] out) {
+		if (grid == null) {
+			return Float.NaN;
+		}
+		if (mode == Mode.POTENTIAL) {
+			return (float) grid.samplePotential(x, y);
+		}
+		return grid.sampleField(x, y, out) ? logMagnitude(out) : Float.NaN;
+	}
+
+	// As sampled, evaluated by the engine
+	private static float exact(FieldEngine engine, Mode mode, double x, double y, double[] out) {
+		if (mode == Mode.POTENTIAL) {
+			return (float) engine.potential(x, y);
+		}
+		engine.field(x, y, out);
+		return logMagnitude(out);
+	}
+
+	private static float logMagnitude(double[] e) {
+		return (float) Math.log10(Math.hypot(e[0], e[1]) + 1e-3);
+	}
+
+	// World position of image pixel (0, 0)'s block and the world size of a
+	// pixel and of a sample block
+	private static final class Region {
+		final double x0, y0, pixelSize;
+		final int stride;
+
+		Region(double x0, double y0, double pixelSize, int stride) {
+			this.x0 = x0;
+			this.y0 = y0;
+			this.pixelSize = pixelSize;
+			this.stride = stride;
+		}
+	}
+
+	private void run(Bands task) {
+		if (task.to - task.from <= BAND_ROWS) {
+			task.compute(); // Not worth a hand-off
+		} else if (ForkJoinTask.getPool() == pool) {
+			task.invoke();
+		} else {
+			pool.invoke(task);
+		}
+	}
+
+	// Magnitude at which the colour map saturates, from a spread-out subset of
+	// the samples so a handful of pixels on top of charges cannot wash out the
+	// rest of the image
+	private static double scale(Mode mode, float[] values, int count) {
+		int n = Math.min(count, SCALE_SAMPLES);
+		float[] sample = new float[n];
+		double step = (double) count / n;
+		for (int i = 0; i < n; i++) {
+			float v = values[(int) (i * step)];
+			sample[i] = mode == Mode.POTENTIAL ? Math.abs(v) : v;
+		}
+		Arrays.sort(sample);
+		double s = sample[Math.min(n - 1, (int) (n * SCALE_PERCENTILE))];
+		if (mode == Mode.FIELD_MAGNITUDE) {
+			return s; // A log10, may be negative
+		}
+		return s > 0 ? s : 1;
+	}
+
+	// Pass one (pixels == null) samples the engine into values; pass two maps
+	// values to colours with the given scale
+	private class Bands extends RecursiveAction {
+		private final FieldEngine engine;
+		private final FieldGrid grid;
+		private final Mode mode;
+		private final Region region;
+		private final int w;
+		final int from, to;
+		private final int[] pixels;
+		private final double scale;
+
+		Bands(FieldEngine engine, FieldGrid grid, Mode mode, Region region, int w, int from, int to, int[] pixels,
+				double scale) {
+			this.engine = engine;
+			this.grid = grid;
+			this.mode = mode;
+			this.region = region;
+			this.w = w;
+			this.from = from;
+			this.to = to;
+			this.pixels = pixels;
+			this.scale = scale;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > BAND_ROWS) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Bands(engine, grid, mode, region, w, from, mid, pixels, scale),
+						new Bands(engine, grid, mode, region, w, mid, to, pixels, scale));
+			} else if (pixels == null) {
+				sample();
+			} else {
+				colour();
+			}
+		}
+
+		private void sample() {
+			double[] out = new double[2];
+			int stride = region.stride;
+			double size = region.pixelSize;
+			double half = (stride - 1) / 2.0; // Sample the centre of each block
+			int exact = 0;
+			for (int row = from; row < to; row++) {
+				double y = region.y0 + (row * stride + half) * size;
+				for (int col = 0; col < w; col++) {
+					double x = region.x0 + (col * stride + half) * size;
+					float v = sampled(grid, mode, x, y, out);
+					if (Float.isNaN(v)) {
+						v = exact(engine, mode, x, y, out);
+						exact++;
+					}
+					values[row * w + col] = v;
+				}
+			}
+			Metrics.countFieldEvaluations(exact);
+		}
+
+		private void colour() {
+			for (int i = from * w, end = to * w; i < end; i++) {
+				double t;
+				int[] table;
+				if (mode == Mode.POTENTIAL) {
+					// Signed, compressed so weak regions still show: 0 -> middle
+					double s = values[i] / scale;
+					t = 0.5 + 0.5 * Math.signum(s) * Math.log1p(4 * Math.abs(s)) / Math.log1p(4);
+					table = DIVERGING;
+				} else {
+					// Three decades below the scale up to the scale
+					t = (values[i] - scale + 3) / 3;
+					table = SEQUENTIAL;
+				}
+				int index = (int) (t * 255);
+				pixels[i] = table[index < 0 ? 0 : (index > 255 ? 255 : index)];
+			}
+		}
+	}
+
+	// 256 colours linearly interpolated between evenly spaced RGB stops
+	private static int[] lookupTable(int[] stops) {
+		int[] table = new int[256];
+		for (int i = 0; i < 256; i++) {
+			double pos = i / 255.0 * (stops.length - 1);
+			int k = Math.min(stops.length - 2, (int) pos);
+			double f = pos - k;
+			int a = stops[k];
+			int b = stops[k + 1];
+			int r = (int) Math.round(((a >> 16) & 0xff) * (1 - f) + ((b >> 16) & 0xff) * f);
+			int g = (int) Math.round(((a >> 8) & 0xff) * (1 - f) + ((b >> 8) & 0xff) * f);
+			int bl = (int) Math.round((a & 0xff) * (1 - f) + (b & 0xff) * f);
+			table[i] = (r << 16) | (g << 8) | bl;
+		}
+		return table;
+	}
+}
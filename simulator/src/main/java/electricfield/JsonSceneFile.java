@@ -0,0 +1,411 @@
+package electricfield;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Scenes as JSON, for exchanging small scenes with other tools:
+//
+//   {
+//     "width": 800, "height": 600, "frames": 400, "frameTime": 0.01,
+//     "grid": true, "vectors": true, "lines": true, "equipotentials": false,
+//     "heatmap": "off",
+//     "charges": [ { "x": 300, "y": 300, "q": 1e-9 }, ... ],
+//     "distributions": [
+//       { "type": "segment", "x1": 200, "y1": 400, "x2": 600, "y2": 400, "q": 1e-9 },
+//       { "type": "ring", "x": 400, "y": 300, "r": 80, "q": 1e-9 },
+//       { "type": "arc", "x": 400, "y": 300, "r": 80, "start": 0, "sweep": 90, "q": 1e-9 },
+//       { "type": "sheet", "x": 400, "y": 300, "width": 200, "height": 40, "angle": 0, "q": 1e-9 }, ...
+//     ],
+//     "particles": [ { "x": 400, "y": 100, "vx": 0, "vy": 50, "q": 1e-9, "m": 1e-6 }, ... ]
+//   }
+//
+// Angles are in degrees, as in the text format.
+//
+// Every member is optional and defaults as in Scene; unknown members are
+// ignored. The reader is a small recursive descent parser of its own, the
+// project has no dependencies.
+final class JsonSceneFile {
+	private JsonSceneFile() {
+	}
+
+	static Scene read(Path file) throws IOException {
+		String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		Parser parser = new Parser(text);
+		try {
+			Object root = parser.value();
+			parser.skipSpace();
+			if (parser.pos < text.length()) {
+				throw parser.error("trailing characters");
+			}
+			return toScene(object(root, "scene"));
+		} catch (IllegalArgumentException e) {
+			throw new IOException(file + ": " + e.getMessage(), e);
+		}
+	}
+
+	private static Scene toScene(Map<String, Object> json) {
+		Scene scene = new Scene();
+		scene.width = (int) positive(number(json, "width", scene.width));
+		scene.height = (int) positive(number(json, "height", scene.height));
+		scene.frames = (int) number(json, "frames", scene.frames);
+		if (scene.frames < 0) {
+			throw new IllegalArgumentException("frames must be >= 0");
+		}
+		scene.frameTime = positive(number(json, "frameTime", scene.frameTime));
+		scene.showGrid = bool(json, "grid", scene.showGrid);
+		scene.showVectors = bool(json, "vectors", scene.showVectors);
+		scene.showFieldLines = bool(json, "lines", scene.showFieldLines);
+		scene.showEquipotentials = bool(json, "equipotentials", scene.showEquipotentials);
+		Object heatmap = json.get("heatmap");
+		if (heatmap != null) {
+			scene.heatmap = SceneFile.heatmap(string(heatmap, "heatmap"));
+		}
+		for (Object item : list(json.get("charges"), "charges")) {
+			Map<String, Object> charge = object(item, "charge");
+			scene.charges.add(required(charge, "x"), required(charge, "y"), required(charge, "q"));
+		}
+		for (Object item : list(json.get("distributions"), "distributions")) {
+			addDistribution(scene.charges.distributions(), object(item, "distribution"));
+		}
+		for (Object item : list(json.get("particles"), "particles")) {
+			Map<String, Object> particle = object(item, "particle");
+			scene.addParticle(required(particle, "x"), required(particle, "y"), number(particle, "vx", 0),
+					number(particle, "vy", 0), required(particle, "q"), positive(required(particle, "m")));
+		}
+		return scene;
+	}
+
+	private static void addDistribution(ChargeDistributions distributions, Map<String, Object> json) {
+		String type = string(json.get("type"), "type");
+		switch (type) {
+		case "segment":
+			distributions.addSegment(required(json, "x1"), required(json, "y1"), required(json, "x2"),
+					required(json, "y2"), required(json, "q"));
+			break;
+		case "ring":
+			distributions.addRing(required(json, "x"), required(json, "y"), required(json, "r"), required(json, "q"));
+			break;
+		case "arc":
+			distributions.addArc(required(json, "x"), required(json, "y"), required(json, "r"),
+					Math.toRadians(required(json, "start")), Math.toRadians(required(json, "sweep")),
+					required(json, "q"));
+			break;
+		case "sheet":
+			distributions.addSheet(required(json, "x"), required(json, "y"), required(json, "width"),
+					required(json, "height"), Math.toRadians(number(json, "angle", 0)), required(json, "q"));
+			break;
+		default:
+			throw new IllegalArgumentException("unknown distribution type " + type);
+		}
+	}
+
+	private static String distribution(ChargeDistributions distributions, int i) {
+		double p0 = distributions.param(i, 0), p1 = distributions.param(i, 1), p2 = distributions.param(i, 2);
+		double p3 = distributions.param(i, 3), p4 = distributions.param(i, 4);
+		double q = distributions.charge(i);
+		switch (distributions.kind(i)) {
+		case SEGMENT:
+			return "{ \"type\": \"segment\", \"x1\": " + p0 + ", \"y1\": " + p1 + ", \"x2\": " + p2 + ", \"y2\": "
+					+ p3 + ", \"q\": " + q + " }";
+		case ARC:
+			if (Math.abs(p4) >= 2 * Math.PI) {
+				return "{ \"type\": \"ring\", \"x\": " + p0 + ", \"y\": " + p1 + ", \"r\": " + p2 + ", \"q\": " + q
+						+ " }";
+			}
+			return "{ \"type\": \"arc\", \"x\": " + p0 + ", \"y\": " + p1 + ", \"r\": " + p2 + ", \"start\": "
+					+ Math.toDegrees(p3) + ", \"sweep\": " + Math.toDegrees(p4) + ", \"q\": " + q + " }";
+		default:
+			return "{ \"type\": \"sheet\", \"x\": " + p0 + ", \"y\": " + p1 + ", \"width\": " + p2
+					+ ", \"height\": " + p3 + ", \"angle\": " + Math.toDegrees(p4) + ", \"q\": " + q + " }";
+		}
+	}
+
+	static void write(Scene scene, Path file) throws IOException {
+		try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			out.write("{\n");
+			out.write("  \"width\": " + scene.width + ", \"height\": " + scene.height + ", \"frames\": "
+					+ scene.frames + ", \"frameTime\": " + scene.frameTime + ",\n");
+			out.write("  \"grid\": " + scene.showGrid + ", \"vectors\": " + scene.showVectors + ", \"lines\": "
+					+ scene.showFieldLines + ", \"equipotentials\": " + scene.showEquipotentials + ",\n");
+			out.write("  \"heatmap\": \"" + SceneFile.heatmapName(scene.heatmap) + "\",\n");
+			out.write("  \"charges\": [");
+			FieldEngine charges = scene.charges;
+			for (int i = 0; i < charges.size(); i++) {
+				out.write(i == 0 ? "\n" : ",\n");
+				out.write("    { \"x\": " + charges.x(i) + ", \"y\": " + charges.y(i) + ", \"q\": " + charges.charge(i)
+						+ " }");
+			}
+			out.write(charges.size() == 0 ? "],\n" : "\n  ],\n");
+			out.write("  \"distributions\": [");
+			ChargeDistributions distributions = charges.distributions();
+			for (int i = 0; i < distributions.size(); i++) {
+				out.write(i == 0 ? "\n" : ",\n");
+				out.write("    " + distribution(distributions, i));
+			}
+			out.write(distributions.size() == 0 ? "],\n" : "\n  ],\n");
+			out.write("  \"particles\": [");
+			for (int i = 0; i < scene.particleCount(); i++) {
+				out.write(i == 0 ? "\n" : ",\n");
+				out.write("    { \"x\": " + scene.particleX(i) + ", \"y\": " + scene.particleY(i) + ", \"vx\": "
+						+ scene.particleVx(i) + ", \"vy\": " + scene.particleVy(i) + ", \"q\": "
+						+ scene.particleCharge(i) + ", \"m\": " + scene.particleMass(i) + " }");
+			}
+			out.write(scene.particleCount() == 0 ? "]\n" : "\n  ]\n");
+			out.write("}\n");
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> object(Object value, String what) {
+		if (!(value instanceof Map)) {
+			throw new IllegalArgumentException(what + " must be an object");
+		}
+		return (Map<String, Object>) value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Object> list(Object value, String what) {
+		if (value == null) {
+			return List.of();
+		}
+		if (!(value instanceof List)) {
+			throw new IllegalArgumentException(what + " must be an array");
+		}
+		return (List<Object>) value;
+	}
+
+	private static String string(Object value, String what) {
+		if (!(value instanceof String)) {
+			throw new IllegalArgumentException(what + " must be a string");
+		}
+		return (String) value;
+	}
+
+	private static double number(Map<String, Object> json, String name, double fallback) {
+		Object value = json.get(name);
+		if (value == null) {
+			return fallback;
+		}
+		if (!(value instanceof Double)) {
+			throw new IllegalArgumentException(name + " must be a number");
+		}
+		return (Double) value;
+	}
+
+	private static double required(Map<String, Object> json, String name) {
+		if (!json.containsKey(name)) {
+			throw new IllegalArgumentException("missing " + name);
+		}
+		return number(json, name, 0);
+	}
+
+	private static boolean bool(Map<String, Object> json, String name, boolean fallback) {
+		Object value = json.get(name);
+		if (value == null) {
+			return fallback;
+		}
+		if (!(value instanceof Boolean)) {
+			throw new IllegalArgumentException(name + " must be true or false");
+		}
+		return (Boolean) value;
+	}
+
+	private static double positive(double value) {
+		if (!(value > 0)) {
+			throw new IllegalArgumentException("must be > 0: " + value);
+		}
+		return value;
+	}
+
+	// JSON text to Map, List, Double, String, Boolean and null
+	private static final class Parser {
+		private final String text;
+		int pos;
+
+		Parser(String text) {
+			this.text = text;
+		}
+
+		Object value() {
+			skipSpace();
+			if (pos >= text.length()) {
+				throw error("unexpected end of input");
+			}
+			char c = text.charAt(pos);
+			switch (c) {
+			case '{':
+				return object();
+			case '[':
+				return array();
+			case '"':
+				return string();
+			case 't':
+				return literal("true", Boolean.TRUE);
+			case 'f':
+				return literal("false", Boolean.FALSE);
+			case 'n':
+				return literal("null", null);
+			default:
+				return number();
+			}
+		}
+
+		private Map<String, Object> object() {
+			Map<String, Object> members = new LinkedHashMap<>();
+			pos++; // {
+			skipSpace();
+			if (peek() == '}') {
+				pos++;
+				return members;
+			}
+			while (true) {
+				skipSpace();
+				if (peek() != '"') {
+					throw error("expected a member name");
+				}
+				String name = string();
+				expect(':');
+				members.put(name, value());
+				skipSpace();
+				if (peek() == ',') {
+					pos++;
+				} else {
+					expect('}');
+					return members;
+				}
+			}
+		}
+
+		private List<Object> array() {
+			List<Object> items = new ArrayList<>();
+			pos++; // [
+			skipSpace();
+			if (peek() == ']') {
+				pos++;
+				return items;
+			}
+			while (true) {
+				items.add(value());
+				skipSpace();
+				if (peek() == ',') {
+					pos++;
+				} else {
+					expect(']');
+					return items;
+				}
+			}
+		}
+
+		private String string() {
+			StringBuilder s = new StringBuilder();
+			pos++; // Opening quote
+			while (true) {
+				if (pos >= text.length()) {
+					throw error("unterminated string");
+				}
+				char c = text.charAt(pos++);
+				if (c == '"') {
+					return s.toString();
+				}
+				if (c != '\\') {
+					s.append(c);
+					continue;
+				}
+				if (pos >= text.length()) {
+					throw error("unterminated string");
+				}
+				char escape = text.charAt(pos++);
+				switch (escape) {
+				case 'b':
+					s.append('\b');
+					break;
+				case 'f':
+					s.append('\f');
+					break;
+				case 'n':
+					s.append('\n');
+					break;
+				case 'r':
+					s.append('\r');
+					break;
+				case 't':
+					s.append('\t');
+					break;
+				case 'u':
+					if (pos + 4 > text.length()) {
+						throw error("bad unicode escape");
+					}
+					try {
+						s.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+					} catch (NumberFormatException e) {
+						throw error("bad unicode escape");
+					}
+					pos += 4;
+					break;
+				default: // " \ /
+					s.append(escape);
+				}
+			}
+		}
+
+		private Double number() {
+			int start = pos;
+			while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+				pos++;
+			}
+			try {
+				double value = Double.parseDouble(text.substring(start, pos));
+				if (!Double.isFinite(value) || start == pos) {
+					throw new NumberFormatException();
+				}
+				return value;
+			} catch (NumberFormatException e) {
+				pos = start;
+				throw error("expected a value");
+			}
+		}
+
+		private Object literal(String word, Object value) {
+			if (!text.startsWith(word, pos)) {
+				throw error("expected a value");
+			}
+			pos += word.length();
+			return value;
+		}
+
+		private void expect(char c) {
+			skipSpace();
+			if (peek() != c) {
+				throw error("expected '" + c + "'");
+			}
+			pos++;
+		}
+
+		private char peek() {
+			return pos < text.length() ? text.charAt(pos) : 0;
+		}
+
+		void skipSpace() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		IllegalArgumentException error(String message) {
+			int line = 1;
+			for (int i = 0; i < pos && i < text.length(); i++) {
+				if (text.charAt(i) == '\n') {
+					line++;
+				}
+			}
+			return new IllegalArgumentException("line " + line + ": " + message);
+		}
+	}
+}
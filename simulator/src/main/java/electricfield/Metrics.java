@@ -0,0 +1,107 @@
+package electricfield;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide performance counters, cheap enough to leave on: LongAdder
+// spreads concurrent increments over per-thread cells instead of contending
+// on one word, and timing a phase is a System.nanoTime() call either side.
+// PerformanceMonitor turns the running totals into rates for the overlay
+// and for JMX.
+public final class Metrics {
+	// Timed parts of a frame, in drawing order
+	public enum Phase {
+		HEATMAP("Heatmap"),
+		GRID("Grid"),
+		EQUIPOTENTIALS("Equipotentials"),
+		VECTORS("Vectors"),
+		FIELD_LINES("Field lines"),
+		CHARGES("Charges"),
+		TRAJECTORIES("Trajectories"),
+		PARTICLES("Particle cloud");
+
+		final String label;
+
+		Phase(String label) {
+			this.label = label;
+		}
+	}
+
+	private static final int PHASES = Phase.values().length;
+	private static final LongAdder FIELD_EVALUATIONS = new LongAdder();
+	private static final LongAdder PHYSICS_STEPS = new LongAdder();
+	private static final LongAdder N_BODY_STEPS = new LongAdder();
+	private static final LongAdder FRAMES = new LongAdder();
+	private static final LongAdder FRAME_NANOS = new LongAdder();
+	private static final LongAdder[] PHASE_NANOS = new LongAdder[PHASES];
+	private static final AtomicLongArray LAST_PHASE_NANOS = new AtomicLongArray(PHASES); // Latest run of each
+	static {
+		for (int i = 0; i < PHASES; i++) {
+			PHASE_NANOS[i] = new LongAdder();
+		}
+	}
+
+	private Metrics() {
+	}
+
+	// Point evaluations of the field or potential, whichever backend. Counted
+	// by the callers once per batch (task, band, line), not per point.
+	public static void countFieldEvaluations(long n) {
+		FIELD_EVALUATIONS.add(n);
+	}
+
+	// Particle sub-steps
+	public static void countPhysicsSteps(long n) {
+		PHYSICS_STEPS.add(n);
+	}
+
+	// Whole-system sub-steps of the moving source charges (ChargeDynamics)
+	public static void countNBodySteps(long n) {
+		N_BODY_STEPS.add(n);
+	}
+
+	// Records the phase as having run from start until now and returns now,
+	// so consecutive phases chain: t = Metrics.lap(Phase.GRID, t);
+	public static long lap(Phase phase, long start) {
+		long now = System.nanoTime();
+		PHASE_NANOS[phase.ordinal()].add(now - start);
+		LAST_PHASE_NANOS.set(phase.ordinal(), now - start);
+		return now;
+	}
+
+	// One painted frame that took nanos, all phases included
+	public static void recordFrame(long nanos) {
+		FRAMES.increment();
+		FRAME_NANOS.add(nanos);
+	}
+
+	public static long fieldEvaluations() {
+		return FIELD_EVALUATIONS.sum();
+	}
+
+	public static long physicsSteps() {
+		return PHYSICS_STEPS.sum();
+	}
+
+	public static long nBodySteps() {
+		return N_BODY_STEPS.sum();
+	}
+
+	public static long frames() {
+		return FRAMES.sum();
+	}
+
+	public static long frameNanos() {
+		return FRAME_NANOS.sum();
+	}
+
+	// Total time spent in phase since start-up
+	public static long phaseNanos(Phase phase) {
+		return PHASE_NANOS[phase.ordinal()].sum();
+	}
+
+	// Duration of the most recent run of phase
+	public static long lastPhaseNanos(Phase phase) {
+		return LAST_PHASE_NANOS.get(phase.ordinal());
+	}
+}
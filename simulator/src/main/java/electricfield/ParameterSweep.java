@@ -0,0 +1,525 @@
+package electricfield;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Parameter sweep over particle launches: every combination of charge, mass
+// and initial velocity on a grid is flown from one launch point through a
+// fixed field, without drawing, until it leaves the bounds, is captured by a
+// charge or runs out of time. Runs are independent, so worker threads claim
+// them CHUNK at a time and each integrates its own with velocity Verlet, as
+// ParticleStore does, with no walls. Finished chunks are appended to the CSV
+// as they complete, so rows come in completion order; the index column gives
+// each run's place in the grid, with vy varying fastest, then vx, mass and
+// charge.
+//
+//   java -cp simulator.jar electricfield.ParameterSweep [-o out.csv] [-j threads] [-q from:to:n] [-m from:to:n]
+//        [-vx from:to:n] [-vy from:to:n] [-at x,y] [-t seconds] [-dt seconds] [-c radius] scene
+//
+// The scene supplies the charges and the bounds; launches start from its
+// centre unless -at says otherwise. A range with one value is just that
+// value. Progress and throughput go to stderr about once a second.
+public class ParameterSweep {
+	public static final int CHUNK = 64; // Runs a worker claims at a time
+	public static final double DEFAULT_MAX_TIME = 10; // Seconds of flight when the scene sets no frames
+	public static final String CSV_HEADER = "index,charge,mass,vx,vy,outcome,end_x,end_y,time,captured_by,"
+			+ "max_speed,steps";
+	private static final String[] OUTCOME_NAMES = { "exited", "captured", "timeout" }; // CSV spelling, by ordinal
+
+	public enum Outcome {
+		EXITED, // Left the bounds; the end point is where it crossed them
+		CAPTURED, // Came within the capture radius of a charge
+		TIMEOUT // Still in flight after the maximum time
+	}
+
+	// count values evenly spaced from..to inclusive
+	public static final class Range {
+		final double from, to;
+		final int count;
+
+		public Range(double from, double to, int count) {
+			if (count < 1) {
+				throw new IllegalArgumentException("count must be >= 1");
+			}
+			if (!Double.isFinite(from) || !Double.isFinite(to)) {
+				throw new IllegalArgumentException("range must be finite");
+			}
+			this.from = from;
+			this.to = to;
+			this.count = count;
+		}
+
+		public static Range of(double value) {
+			return new Range(value, value, 1);
+		}
+
+		// "from:to:count", or a single value
+		public static Range parse(String s) {
+			String[] parts = s.split(":");
+			if (parts.length == 1) {
+				return of(Double.parseDouble(parts[0]));
+			}
+			if (parts.length != 3) {
+				throw new IllegalArgumentException("expected from:to:count, got " + s);
+			}
+			return new Range(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Integer.parseInt(parts[2]));
+		}
+
+		public int count() {
+			return count;
+		}
+
+		public double value(int i) {
+			return count == 1 ? from : from + (to - from) * i / (count - 1);
+		}
+	}
+
+	private final FieldEngine field; // Snapshot, read by all workers
+	private final double width, height; // Leaving [0, width] x [0, height] ends a run
+	private double startX, startY;
+	private Range charge = Range.of(1.0e-10);
+	private Range mass = Range.of(1.0e-15);
+	private Range velocityX = Range.of(0);
+	private Range velocityY = Range.of(0);
+	private double timeStep = 0.01 / PhysicsLoop.DEFAULT_SUB_STEPS; // Same sub-step as the simulator
+	private double maxTime = DEFAULT_MAX_TIME;
+	private double captureRadius = SceneRenderer.CHARGE_RADIUS; // As drawn at zoom 1
+
+	// Progress, readable from any thread while run is going
+	private final AtomicLong next = new AtomicLong(); // First run not yet claimed
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong steps = new AtomicLong();
+	private volatile long startNanos, endNanos;
+	private volatile boolean cancelled;
+	private IOException writeFailure; // First failed write, guarded by the writer
+	private RuntimeException runFailure; // First run that threw, guarded by the writer
+
+	// Sweep through field, which should be a snapshot, launching from the
+	// centre of the bounds
+	public ParameterSweep(FieldEngine field, double width, double height) {
+		if (!(width > 0) || !(height > 0)) {
+			throw new IllegalArgumentException("bounds must be positive");
+		}
+		this.field = field;
+		this.width = width;
+		this.height = height;
+		startX = width / 2;
+		startY = height / 2;
+	}
+
+	// Sweep through a scene's charges and bounds, flying for as long as the
+	// scene's particles would
+	public static ParameterSweep forScene(Scene scene) {
+		ParameterSweep sweep = new ParameterSweep(scene.charges.snapshot(), scene.width, scene.height);
+		sweep.setTimeStep(scene.frameTime / PhysicsLoop.DEFAULT_SUB_STEPS);
+		if (scene.frames > 0) {
+			sweep.setMaxTime(scene.frames * scene.frameTime);
+		}
+		return sweep;
+	}
+
+	public void setLaunchPoint(double x, double y) {
+		startX = x;
+		startY = y;
+	}
+
+	public void setCharge(Range charge) {
+		this.charge = charge;
+	}
+
+	public void setMass(Range mass) {
+		for (int i = 0; i < mass.count; i++) {
+			if (!(mass.value(i) > 0)) {
+				throw new IllegalArgumentException("masses must be positive");
+			}
+		}
+		this.mass = mass;
+	}
+
+	public void setVelocityX(Range velocityX) {
+		this.velocityX = velocityX;
+	}
+
+	public void setVelocityY(Range velocityY) {
+		this.velocityY = velocityY;
+	}
+
+	public void setTimeStep(double timeStep) {
+		if (!(timeStep > 0)) {
+			throw new IllegalArgumentException("timeStep must be positive");
+		}
+		this.timeStep = timeStep;
+	}
+
+	public void setMaxTime(double maxTime) {
+		if (!(maxTime > 0)) {
+			throw new IllegalArgumentException("maxTime must be positive");
+		}
+		this.maxTime = maxTime;
+	}
+
+	// Distance from a charge at which a particle counts as captured, 0 to
+	// let particles pass through
+	public void setCaptureRadius(double captureRadius) {
+		if (!(captureRadius >= 0)) {
+			throw new IllegalArgumentException("captureRadius must be >= 0");
+		}
+		this.captureRadius = captureRadius;
+	}
+
+	// Runs in the grid
+	public long total() {
+		return (long) charge.count * mass.count * velocityX.count * velocityY.count;
+	}
+
+	public long completed() {
+		return completed.get();
+	}
+
+	// Velocity-Verlet steps taken so far, over all runs
+	public long steps() {
+		return steps.get();
+	}
+
+	public double elapsedSeconds() {
+		long start = startNanos;
+		if (start == 0) {
+			return 0;
+		}
+		long end = endNanos;
+		return ((end != 0 ? end : System.nanoTime()) - start) / 1e9;
+	}
+
+	public double runsPerSecond() {
+		double seconds = elapsedSeconds();
+		return seconds > 0 ? completed() / seconds : 0;
+	}
+
+	public double stepsPerSecond() {
+		double seconds = elapsedSeconds();
+		return seconds > 0 ? steps() / seconds : 0;
+	}
+
+	// Stops handing out runs; chunks already claimed still finish and are
+	// written
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	// Flies every run on threads workers, writing the header and then one
+	// row per run to out, which is flushed after every chunk. Blocks until
+	// all runs are done or the sweep is cancelled, and returns the number
+	// of runs written. A run that throws stops the sweep, and run rethrows
+	// its exception once the other workers are done. A sweep runs once.
+	public long run(Writer out, int threads) throws IOException, InterruptedException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be >= 1");
+		}
+		if (startNanos != 0) {
+			throw new IllegalStateException("sweep already run");
+		}
+		startNanos = System.nanoTime();
+		out.write(CSV_HEADER);
+		out.write('\n');
+		out.flush();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			for (int t = 0; t < threads; t++) {
+				pool.execute(() -> work(out));
+			}
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		} finally {
+			pool.shutdownNow(); // Interrupted while waiting
+			endNanos = System.nanoTime();
+		}
+		synchronized (out) {
+			if (writeFailure != null) {
+				throw writeFailure;
+			}
+			if (runFailure != null) {
+				throw runFailure;
+			}
+		}
+		return completed();
+	}
+
+	// Claims chunks until the grid is used up, formatting each chunk's rows
+	// before taking the writer's lock
+	private void work(Writer out) {
+		long total = total();
+		StringBuilder rows = new StringBuilder(CHUNK * 160);
+		double[] result = new double[6];
+		double[] e = new double[2];
+		while (!cancelled && !Thread.currentThread().isInterrupted()) {
+			long from = next.getAndAdd(CHUNK);
+			if (from >= total) {
+				return;
+			}
+			long to = Math.min(total, from + CHUNK);
+			rows.setLength(0);
+			long chunkSteps = 0;
+			long chunkEvaluations = 0;
+			try {
+				for (long i = from; i < to; i++) {
+					int vyIndex = (int) (i % velocityY.count);
+					long rest = i / velocityY.count;
+					int vxIndex = (int) (rest % velocityX.count);
+					rest /= velocityX.count;
+					int massIndex = (int) (rest % mass.count);
+					int chargeIndex = (int) (rest / mass.count);
+					double q = charge.value(chargeIndex);
+					double m = mass.value(massIndex);
+					double vx = velocityX.value(vxIndex);
+					double vy = velocityY.value(vyIndex);
+					Outcome outcome = fly(q, m, vx, vy, e, result);
+					chunkSteps += (long) result[5];
+					// One to start, then one per step unless the run ended in it
+					chunkEvaluations += (long) result[5] + (outcome == Outcome.TIMEOUT ? 1 : 0);
+					rows.append(i).append(',').append(q).append(',').append(m).append(',').append(vx)
+							.append(',').append(vy).append(',').append(OUTCOME_NAMES[outcome.ordinal()])
+							.append(',').append(result[0]).append(',').append(result[1]).append(',')
+							.append(result[2]).append(',').append((long) result[3]).append(',').append(result[4])
+							.append(',').append((long) result[5]).append('\n');
+				}
+			} catch (RuntimeException ex) {
+				// Recorded like a write failure, so run does not end normally
+				// with this chunk missing from the CSV
+				synchronized (out) {
+					if (runFailure == null) {
+						runFailure = ex;
+					}
+				}
+				cancelled = true;
+				return;
+			}
+			synchronized (out) {
+				if (writeFailure != null) {
+					return;
+				}
+				try {
+					out.append(rows);
+					out.flush();
+				} catch (IOException ex) {
+					writeFailure = ex;
+					cancelled = true;
+					return;
+				}
+			}
+			steps.addAndGet(chunkSteps);
+			Metrics.countPhysicsSteps(chunkSteps);
+			Metrics.countFieldEvaluations(chunkEvaluations);
+			completed.addAndGet(to - from);
+		}
+	}
+
+	// One run, kick-drift-kick as in ParticleStore. Writes the end point,
+	// time, capturing charge (-1 if none), maximum speed and steps taken
+	// into result; e is scratch for field lookups.
+	private Outcome fly(double q, double m, double vx, double vy, double[] e, double[] result) {
+		FieldEngine field = this.field;
+		double dt = timeStep;
+		double half = dt / 2;
+		double qOverM = q / m;
+		double capture = captureRadius;
+		long maxSteps = (long) Math.ceil(maxTime / dt);
+		double x = startX, y = startY;
+		field.field(x, y, e);
+		double ax = e[0] * qOverM, ay = e[1] * qOverM;
+		double maxSpeed = Math.hypot(vx, vy);
+		for (long step = 0; step < maxSteps; step++) {
+			vx += ax * half;
+			vy += ay * half;
+			double prevX = x, prevY = y;
+			x += vx * dt;
+			y += vy * dt;
+
+			if (x < 0 || x > width || y < 0 || y > height) {
+				// Cut the last step where it crosses the bounds
+				double f = 1;
+				if (x < 0) {
+					f = Math.min(f, prevX / (prevX - x));
+				} else if (x > width) {
+					f = Math.min(f, (width - prevX) / (x - prevX));
+				}
+				if (y < 0) {
+					f = Math.min(f, prevY / (prevY - y));
+				} else if (y > height) {
+					f = Math.min(f, (height - prevY) / (y - prevY));
+				}
+				maxSpeed = Math.max(maxSpeed, Math.hypot(vx, vy));
+				return finish(Outcome.EXITED, prevX + f * (x - prevX), prevY + f * (y - prevY), (step + f) * dt,
+						-1, maxSpeed, step + 1, result);
+			}
+			if (capture > 0) {
+				int c = field.nearestWithin(x, y, capture);
+				if (c >= 0) {
+					maxSpeed = Math.max(maxSpeed, Math.hypot(vx, vy));
+					return finish(Outcome.CAPTURED, field.x(c), field.y(c), (step + 1) * dt, c, maxSpeed, step + 1,
+							result);
+				}
+			}
+
+			field.field(x, y, e);
+			ax = e[0] * qOverM;
+			ay = e[1] * qOverM;
+			vx += ax * half;
+			vy += ay * half;
+			double speed = Math.hypot(vx, vy);
+			if (speed > maxSpeed) {
+				maxSpeed = speed;
+			}
+		}
+		return finish(Outcome.TIMEOUT, x, y, maxSteps * dt, -1, maxSpeed, maxSteps, result);
+	}
+
+	private static Outcome finish(Outcome outcome, double x, double y, double time, int capturedBy, double maxSpeed,
+			long steps, double[] result) {
+		result[0] = x;
+		result[1] = y;
+		result[2] = time;
+		result[3] = capturedBy;
+		result[4] = maxSpeed;
+		result[5] = steps;
+		return outcome;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		System.setProperty("java.awt.headless", "true");
+		String output = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String scenePath = null;
+		Range charge = null, mass = null, velocityX = null, velocityY = null;
+		double[] at = null;
+		double maxTime = 0, timeStep = 0, captureRadius = -1;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "-o":
+					output = args[++i];
+					break;
+				case "-j":
+					threads = Integer.parseInt(args[++i]);
+					if (threads < 1) {
+						throw new IllegalArgumentException("threads must be >= 1");
+					}
+					break;
+				case "-q":
+					charge = Range.parse(args[++i]);
+					break;
+				case "-m":
+					mass = Range.parse(args[++i]);
+					break;
+				case "-vx":
+					velocityX = Range.parse(args[++i]);
+					break;
+				case "-vy":
+					velocityY = Range.parse(args[++i]);
+					break;
+				case "-at":
+					String[] xy = args[++i].split(",");
+					at = new double[] { Double.parseDouble(xy[0]), Double.parseDouble(xy[1]) };
+					break;
+				case "-t":
+					maxTime = Double.parseDouble(args[++i]);
+					break;
+				case "-dt":
+					timeStep = Double.parseDouble(args[++i]);
+					break;
+				case "-c":
+					captureRadius = Double.parseDouble(args[++i]);
+					break;
+				default:
+					if (scenePath != null) {
+						throw new IllegalArgumentException("one scene only");
+					}
+					scenePath = args[i];
+				}
+			}
+		} catch (RuntimeException e) {
+			scenePath = null; // Fall through to the usage message
+		}
+		if (scenePath == null) {
+			System.err.println("usage: ParameterSweep [-o out.csv] [-j threads] [-q from:to:n] [-m from:to:n]"
+					+ " [-vx from:to:n] [-vy from:to:n] [-at x,y] [-t seconds] [-dt seconds] [-c radius] scene");
+			System.exit(2);
+		}
+
+		ParameterSweep sweep;
+		try {
+			sweep = forScene(SceneFile.read(Paths.get(scenePath)));
+			if (charge != null) {
+				sweep.setCharge(charge);
+			}
+			if (mass != null) {
+				sweep.setMass(mass);
+			}
+			if (velocityX != null) {
+				sweep.setVelocityX(velocityX);
+			}
+			if (velocityY != null) {
+				sweep.setVelocityY(velocityY);
+			}
+			if (at != null) {
+				sweep.setLaunchPoint(at[0], at[1]);
+			}
+			if (maxTime != 0) {
+				sweep.setMaxTime(maxTime);
+			}
+			if (timeStep != 0) {
+				sweep.setTimeStep(timeStep);
+			}
+			if (captureRadius >= 0) {
+				sweep.setCaptureRadius(captureRadius);
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println(scenePath + ": " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		Thread progress = new Thread(() -> {
+			try {
+				while (true) {
+					Thread.sleep(1000);
+					System.err.println(sweep.progressLine());
+				}
+			} catch (InterruptedException e) {
+				// Sweep done
+			}
+		}, "sweep-progress");
+		progress.setDaemon(true);
+		progress.start();
+		try (Writer out = output != null ? Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)
+				: new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+			sweep.run(out, threads);
+		} catch (IOException e) {
+			System.err.println((output != null ? output : "stdout") + ": " + e.getMessage());
+			System.exit(1);
+		} finally {
+			progress.interrupt();
+		}
+		System.err.printf("%d runs in %.2f s (%.0f runs/s, %.3g steps/s) on %d threads%n", sweep.completed(),
+				sweep.elapsedSeconds(), sweep.runsPerSecond(), sweep.stepsPerSecond(), threads);
+	}
+
+	// "done/total runs (percent), runs/s, steps/s"
+	public String progressLine() {
+		long total = total();
+		return String.format("%d/%d runs (%.1f%%), %.0f runs/s, %.3g steps/s", completed(), total,
+				total > 0 ? 100.0 * completed() / total : 100.0, runsPerSecond(), stepsPerSecond());
+	}
+}
@@ -0,0 +1,221 @@
+package electricfield;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import javax.swing.Timer;
+
+// Window front end for ParameterSweep: ranges for charge, mass and velocity,
+// where to launch from and how long to fly, and the CSV file rows stream to.
+// The sweep runs on its own thread through the field as it was when the
+// dialog opened; a timer polls its progress and throughput, so the window
+// stays responsive and the simulator keeps running alongside.
+public class ParameterSweepDialog extends JDialog {
+	private static final int PROGRESS_INTERVAL = 250; // ms between progress updates
+
+	private final FieldEngine field; // Snapshot taken when the dialog opened
+	private final double width, height;
+
+	private final JTextField[] chargeFields, massFields, velocityXFields, velocityYFields;
+	private final JTextField launchXField, launchYField;
+	private final JTextField maxTimeField, timeStepField, captureRadiusField, threadsField;
+	private final JTextField outputField;
+	private final JProgressBar progressBar = new JProgressBar(0, 1000);
+	private final JLabel statusLabel = new JLabel("Not started");
+	private final JButton startButton = new JButton("Start");
+	private final JButton cancelButton = new JButton("Cancel");
+	private final Timer progressTimer;
+	private ParameterSweep sweep; // Running or last run
+
+	// Sweeps through field within width x height; the other values prefill
+	// the form, each range starting out as a single value
+	public ParameterSweepDialog(Frame owner, FieldEngine field, double width, double height, double launchX,
+			double launchY, double charge, double mass, double velocityX, double velocityY) {
+		super(owner, "Parameter Sweep", false);
+		this.field = field;
+		this.width = width;
+		this.height = height;
+
+		JPanel form = new JPanel(new GridBagLayout());
+		form.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+		GridBagConstraints c = new GridBagConstraints();
+		c.insets = new Insets(2, 4, 2, 4);
+		c.anchor = GridBagConstraints.WEST;
+		c.gridy = 0;
+		addRow(form, c, "", new JLabel("From"), new JLabel("To"), new JLabel("Steps"));
+		chargeFields = rangeRow(form, c, "Charge (C):", charge);
+		massFields = rangeRow(form, c, "Mass (kg):", mass);
+		velocityXFields = rangeRow(form, c, "Velocity X:", velocityX);
+		velocityYFields = rangeRow(form, c, "Velocity Y:", velocityY);
+		launchXField = new JTextField(String.valueOf(launchX), 8);
+		launchYField = new JTextField(String.valueOf(launchY), 8);
+		addRow(form, c, "Launch X, Y:", launchXField, launchYField);
+		maxTimeField = new JTextField(String.valueOf(ParameterSweep.DEFAULT_MAX_TIME), 8);
+		timeStepField = new JTextField(String.valueOf(0.01 / PhysicsLoop.DEFAULT_SUB_STEPS), 8);
+		addRow(form, c, "Max Time, Step (s):", maxTimeField, timeStepField);
+		captureRadiusField = new JTextField(String.valueOf(SceneRenderer.CHARGE_RADIUS), 8);
+		threadsField = new JTextField(String.valueOf(Runtime.getRuntime().availableProcessors()), 8);
+		addRow(form, c, "Capture Radius, Threads:", captureRadiusField, threadsField);
+		outputField = new JTextField(new File("sweep.csv").getAbsolutePath(), 20);
+		JButton browseButton = new JButton("Browse...");
+		browseButton.addActionListener(e -> browse());
+		c.gridx = 0;
+		form.add(new JLabel("Output CSV:"), c);
+		c.gridx = 1;
+		c.gridwidth = 2;
+		c.fill = GridBagConstraints.HORIZONTAL;
+		form.add(outputField, c);
+		c.gridwidth = 1;
+		c.fill = GridBagConstraints.NONE;
+		c.gridx = 3;
+		form.add(browseButton, c);
+		c.gridy++;
+
+		progressBar.setStringPainted(true);
+		progressBar.setString("");
+		JPanel statusPanel = new JPanel(new BorderLayout(4, 4));
+		statusPanel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 10));
+		statusPanel.add(progressBar, BorderLayout.NORTH);
+		statusPanel.add(statusLabel, BorderLayout.SOUTH);
+
+		progressTimer = new Timer(PROGRESS_INTERVAL, e -> showProgress());
+		JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		startButton.addActionListener(e -> start());
+		cancelButton.addActionListener(e -> {
+			if (sweep != null && progressTimer.isRunning()) {
+				sweep.cancel();
+			} else {
+				dispose();
+			}
+		});
+		buttonPanel.add(startButton);
+		buttonPanel.add(cancelButton);
+
+		setLayout(new BorderLayout());
+		add(form, BorderLayout.NORTH);
+		add(statusPanel, BorderLayout.CENTER);
+		add(buttonPanel, BorderLayout.SOUTH);
+		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+		addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				progressTimer.stop();
+				if (sweep != null) {
+					sweep.cancel(); // Closing the window stops a running sweep
+				}
+			}
+		});
+		pack();
+		setLocationRelativeTo(owner);
+	}
+
+	private static JTextField[] rangeRow(JPanel form, GridBagConstraints c, String label, double value) {
+		JTextField[] fields = { new JTextField(String.valueOf(value), 8), new JTextField(String.valueOf(value), 8),
+				new JTextField("1", 4) };
+		addRow(form, c, label, fields);
+		return fields;
+	}
+
+	private static void addRow(JPanel form, GridBagConstraints c, String label, JComponent... cells) {
+		c.gridx = 0;
+		form.add(new JLabel(label), c);
+		for (JComponent cell : cells) {
+			c.gridx++;
+			form.add(cell, c);
+		}
+		c.gridy++;
+	}
+
+	private static ParameterSweep.Range range(JTextField[] fields) {
+		return new ParameterSweep.Range(Double.parseDouble(fields[0].getText()),
+				Double.parseDouble(fields[1].getText()), Integer.parseInt(fields[2].getText()));
+	}
+
+	private void browse() {
+		JFileChooser chooser = new JFileChooser(new File(outputField.getText()).getParentFile());
+		chooser.setSelectedFile(new File(outputField.getText()));
+		if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+			outputField.setText(chooser.getSelectedFile().getAbsolutePath());
+		}
+	}
+
+	// Reads the form, opens the output and runs the sweep on its own thread
+	private void start() {
+		ParameterSweep next = new ParameterSweep(field, width, height);
+		int threads;
+		try {
+			next.setCharge(range(chargeFields));
+			next.setMass(range(massFields));
+			next.setVelocityX(range(velocityXFields));
+			next.setVelocityY(range(velocityYFields));
+			next.setLaunchPoint(Double.parseDouble(launchXField.getText()),
+					Double.parseDouble(launchYField.getText()));
+			next.setMaxTime(Double.parseDouble(maxTimeField.getText()));
+			next.setTimeStep(Double.parseDouble(timeStepField.getText()));
+			next.setCaptureRadius(Double.parseDouble(captureRadiusField.getText()));
+			threads = Integer.parseInt(threadsField.getText());
+			if (threads < 1) {
+				throw new NumberFormatException();
+			}
+		} catch (IllegalArgumentException ex) { // NumberFormatException included
+			JOptionPane.showMessageDialog(this, "Please enter valid numbers: whole step counts of at least 1, "
+					+ "positive masses, time step and maximum time, and at least one thread.");
+			return;
+		}
+		Writer out;
+		try {
+			out = Files.newBufferedWriter(new File(outputField.getText()).toPath(), StandardCharsets.UTF_8);
+		} catch (IOException | RuntimeException ex) {
+			JOptionPane.showMessageDialog(this, "Cannot write " + outputField.getText() + ": " + ex.getMessage());
+			return;
+		}
+
+		sweep = next;
+		startButton.setEnabled(false);
+		cancelButton.setText("Stop");
+		progressTimer.start();
+		Thread thread = new Thread(() -> {
+			String failure = null;
+			try (Writer w = out) {
+				next.run(w, threads);
+			} catch (IOException ex) {
+				failure = ex.getMessage();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			String message = failure;
+			SwingUtilities.invokeLater(() -> finished(message));
+		}, "sweep");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void showProgress() {
+		long total = sweep.total();
+		long done = sweep.completed();
+		progressBar.setValue(total > 0 ? (int) (1000 * done / total) : 1000);
+		progressBar.setString(done + " / " + total + " runs");
+		statusLabel.setText(String.format("%.0f runs/s, %.3g steps/s, %.1f s", sweep.runsPerSecond(),
+				sweep.stepsPerSecond(), sweep.elapsedSeconds()));
+	}
+
+	private void finished(String failure) {
+		progressTimer.stop();
+		showProgress();
+		if (failure != null) {
+			statusLabel.setText("Failed: " + failure);
+		} else if (sweep.isCancelled()) {
+			statusLabel.setText("Stopped after " + sweep.completed() + " runs, " + statusLabel.getText());
+		} else {
+			statusLabel.setText("Done, " + statusLabel.getText());
+		}
+		startButton.setEnabled(true);
+		cancelButton.setText("Close");
+	}
+}
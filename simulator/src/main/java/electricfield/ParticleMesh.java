@@ -0,0 +1,342 @@
+package electricfield;
+
+// Particle-mesh (P3M-style) solver over a FieldEngine's charges. Charges are
+// spread onto a regular grid of nodes with cloud-in-cell weights, the grid is
+// convolved with the Coulomb kernel K / r by FFT (zero-padded to twice the
+// grid, so the sum is the free-space one and not periodic), and the field on
+// the nodes is the central difference of the resulting potential. Building
+// costs O(M log M) for M nodes whatever the number of charges; a point is
+// then interpolated bilinearly from its four nodes.
+//
+// The mesh alone smears out charges closer than a few cells. For those, the
+// short-range correction removes each nearby charge's exact mesh contribution
+// (the same kernel sums the convolution did, looked up in a small table) and
+// adds its exact direct term instead, so only charges further than
+// CORRECTION_RADIUS cells away are approximated.
+//
+// The grid covers the charges' bounding box plus a margin; points outside it
+// are not handled (field returns false), FieldEngine hands them to the tree.
+public class ParticleMesh {
+	public static final double DEFAULT_CELL_SIZE = 6; // Pixels; an 800 x 600 scene pads to 512 x 512
+	static final int MAX_CELLS = 512; // Nodes per side; cells grow beyond that
+	static final int MARGIN_CELLS = 8; // Least empty border around the charges
+	static final double MARGIN_FRACTION = 0.25; // Border as a fraction of the charges' extent
+	static final int CORRECTION_RADIUS = 3; // Cells around a point whose charges are summed exactly
+	private static final int TABLE_SIDE = 2 * CORRECTION_RADIUS + 3; // Node offsets -(R + 1)..R + 1
+
+	private static volatile KernelTransform kernelCache; // Last kernel transform, reused while sizes match
+
+	final long version; // Engine version this mesh was built from
+	private final double cellSize; // As requested
+	private final double h; // As used, at least cellSize
+	private final double originX, originY; // Position of node (0, 0)
+	private final int nx, ny; // Nodes per side, 0 without charges
+
+	// Per node, row-major; the field is left 0 on the outermost nodes
+	private final double[] potential;
+	private final double[] fieldX, fieldY;
+
+	// Charges sorted by the cell they were deposited from: cell (i, j), with
+	// nodes (i, j) to (i + 1, j + 1) as corners, holds [cellStart[c],
+	// cellStart[c + 1]) for c = j * nx + i
+	private final double[] xs, ys, qs;
+	private final int[] cellStart;
+
+	// Mesh response between nodes offset by (dx, dy), for the correction:
+	// potential and field at one node of a unit charge on the other
+	private final double[] tableV = new double[TABLE_SIDE * TABLE_SIDE];
+	private final double[] tableX = new double[TABLE_SIDE * TABLE_SIDE];
+	private final double[] tableY = new double[TABLE_SIDE * TABLE_SIDE];
+
+	public ParticleMesh(FieldEngine engine, double cellSize) {
+		if (!(cellSize > 0)) {
+			throw new IllegalArgumentException("cellSize must be > 0");
+		}
+		this.cellSize = cellSize;
+		this.version = engine.version();
+		int n = engine.size();
+
+		double loX = Double.POSITIVE_INFINITY, loY = Double.POSITIVE_INFINITY;
+		double hiX = Double.NEGATIVE_INFINITY, hiY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			loX = Math.min(loX, engine.xs[i]);
+			loY = Math.min(loY, engine.ys[i]);
+			hiX = Math.max(hiX, engine.xs[i]);
+			hiY = Math.max(hiY, engine.ys[i]);
+		}
+		if (n == 0) {
+			loX = loY = hiX = hiY = 0;
+		}
+		double extent = Math.max(hiX - loX, hiY - loY);
+		h = Math.max(cellSize, extent * (1 + 2 * MARGIN_FRACTION) / (MAX_CELLS - 2 * MARGIN_CELLS - 4));
+		double margin = Math.max(extent * MARGIN_FRACTION, MARGIN_CELLS * h);
+		originX = loX - margin;
+		originY = loY - margin;
+		nx = n == 0 ? 0 : (int) Math.ceil((hiX - loX + 2 * margin) / h) + 2;
+		ny = n == 0 ? 0 : (int) Math.ceil((hiY - loY + 2 * margin) / h) + 2;
+
+		// Sort the charges by cell, counting sort
+		cellStart = new int[nx * ny + 1];
+		int[] cellOf = new int[n];
+		for (int i = 0; i < n; i++) {
+			int c = (int) ((engine.ys[i] - originY) / h) * nx + (int) ((engine.xs[i] - originX) / h);
+			cellOf[i] = c;
+			cellStart[c + 1]++;
+		}
+		for (int c = 0; c < nx * ny; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		xs = new double[n];
+		ys = new double[n];
+		qs = new double[n];
+		int[] fill = new int[nx * ny];
+		for (int i = 0; i < n; i++) {
+			int c = cellOf[i];
+			int k = cellStart[c] + fill[c]++;
+			xs[k] = engine.xs[i];
+			ys[k] = engine.ys[i];
+			qs[k] = engine.qs[i];
+		}
+
+		potential = new double[nx * ny];
+		fieldX = new double[nx * ny];
+		fieldY = new double[nx * ny];
+		if (n > 0) {
+			solve();
+		}
+		fillTables();
+	}
+
+	public double cellSize() {
+		return cellSize;
+	}
+
+	// Cell size actually used, larger than cellSize for widely spread charges
+	public double spacing() {
+		return h;
+	}
+
+	public int columns() {
+		return nx;
+	}
+
+	public int rows() {
+		return ny;
+	}
+
+	// Coulomb kernel between nodes offset by (dx, dy) cells. At offset 0 any
+	// finite value would do, since charges that close are always corrected;
+	// K / (h / 2) keeps it the same order as its neighbours.
+	private double kernel(int dx, int dy) {
+		if (dx == 0 && dy == 0) {
+			return 2 * FieldEngine.K / h;
+		}
+		double d2 = h * h * ((double) dx * dx + (double) dy * dy);
+		return FieldEngine.K / Math.sqrt(Math.max(d2, FieldEngine.MIN_DIST_SQUARED));
+	}
+
+	// Deposit, convolve, differentiate
+	private void solve() {
+		int px = Integer.highestOneBit(2 * nx - 2) << 1; // Padded sizes, powers of two >= 2 * nodes - 1
+		int py = Integer.highestOneBit(2 * ny - 2) << 1;
+		double[] re = new double[px * py];
+		double[] im = new double[px * py];
+		for (int k = 0; k < xs.length; k++) {
+			double fx = (xs[k] - originX) / h;
+			double fy = (ys[k] - originY) / h;
+			int i = (int) fx;
+			int j = (int) fy;
+			double tx = fx - i;
+			double ty = fy - j;
+			int node = j * px + i;
+			re[node] += qs[k] * (1 - tx) * (1 - ty);
+			re[node + 1] += qs[k] * tx * (1 - ty);
+			re[node + px] += qs[k] * (1 - tx) * ty;
+			re[node + px + 1] += qs[k] * tx * ty;
+		}
+
+		// Rows from ny on are padding, zero before and unused after
+		Fft.transformRows(re, im, px, 0, ny, false);
+		Fft.transformColumns(re, im, px, py, false);
+		double[] kernelHat = kernelTransform(px, py);
+		for (int i = 0; i < re.length; i++) {
+			re[i] *= kernelHat[i]; // The kernel is real and even, so is its transform
+			im[i] *= kernelHat[i];
+		}
+		Fft.transformColumns(re, im, px, py, true);
+		Fft.transformRows(re, im, px, 0, ny, true);
+		Fft.scale(re, im, 1.0 / ((double) px * py));
+
+		for (int j = 0; j < ny; j++) {
+			System.arraycopy(re, j * px, potential, j * nx, nx);
+		}
+		double scale = -1 / (2 * h);
+		for (int j = 1; j < ny - 1; j++) {
+			for (int i = 1; i < nx - 1; i++) {
+				int node = j * nx + i;
+				fieldX[node] = scale * (potential[node + 1] - potential[node - 1]);
+				fieldY[node] = scale * (potential[node + nx] - potential[node - nx]);
+			}
+		}
+	}
+
+	// Transform of the kernel laid out for circular convolution on px x py:
+	// entry (i, j) is the kernel at offset (min(i, px - i), min(j, py - j))
+	private double[] kernelTransform(int px, int py) {
+		KernelTransform cached = kernelCache;
+		if (cached != null && cached.width == px && cached.height == py && cached.spacing == h) {
+			return cached.values;
+		}
+		double[] re = new double[px * py];
+		double[] im = new double[px * py];
+		for (int j = 0; j < py; j++) {
+			int dy = Math.min(j, py - j);
+			for (int i = 0; i < px; i++) {
+				re[j * px + i] = kernel(Math.min(i, px - i), dy);
+			}
+		}
+		Fft.transform2d(re, im, px, py, false);
+		kernelCache = new KernelTransform(px, py, h, re);
+		return re;
+	}
+
+	// Mesh potential and field at a node from a unit charge on another node
+	// offset by (dx, dy), with the field by the same central differences
+	// solve() takes
+	private void fillTables() {
+		int r = CORRECTION_RADIUS + 1;
+		double scale = -1 / (2 * h);
+		for (int dy = -r; dy <= r; dy++) {
+			for (int dx = -r; dx <= r; dx++) {
+				int t = (dy + r) * TABLE_SIDE + dx + r;
+				tableV[t] = kernel(Math.abs(dx), Math.abs(dy));
+				tableX[t] = scale * (kernel(Math.abs(dx + 1), Math.abs(dy)) - kernel(Math.abs(dx - 1), Math.abs(dy)));
+				tableY[t] = scale * (kernel(Math.abs(dx), Math.abs(dy + 1)) - kernel(Math.abs(dx), Math.abs(dy - 1)));
+			}
+		}
+	}
+
+	// Field at (x, y) into out[0], out[1]; false, with out untouched, when
+	// the point lies outside the mesh
+	public boolean field(double x, double y, double[] out) {
+		return !Double.isNaN(evaluate(x, y, out, false));
+	}
+
+	// Field and potential at (x, y): out[0] = Ex, out[1] = Ey, out[2] = V;
+	// false when outside the mesh
+	public boolean fieldAndPotential(double x, double y, double[] out) {
+		double v = evaluate(x, y, out, true);
+		if (Double.isNaN(v)) {
+			return false;
+		}
+		out[2] = v;
+		return true;
+	}
+
+	// Potential at (x, y), NaN outside the mesh
+	public double potential(double x, double y) {
+		return evaluate(x, y, null, true);
+	}
+
+	// Interpolated mesh values plus the short-range correction. Writes the
+	// field into out unless it is null and returns the potential (0 unless
+	// withPotential), or NaN when (x, y) is outside the mesh.
+	private double evaluate(double x, double y, double[] out, boolean withPotential) {
+		double fx = (x - originX) / h;
+		double fy = (y - originY) / h;
+		if (!(fx >= 1 && fy >= 1 && fx < nx - 2 && fy < ny - 2)) {
+			return Double.NaN; // Also when the mesh is empty
+		}
+		int i = (int) fx;
+		int j = (int) fy;
+		double tx = fx - i;
+		double ty = fy - j;
+		int node = j * nx + i;
+		double w00 = (1 - tx) * (1 - ty), w10 = tx * (1 - ty), w01 = (1 - tx) * ty, w11 = tx * ty;
+		double ex = w00 * fieldX[node] + w10 * fieldX[node + 1] + w01 * fieldX[node + nx] + w11 * fieldX[node + nx + 1];
+		double ey = w00 * fieldY[node] + w10 * fieldY[node + 1] + w01 * fieldY[node + nx] + w11 * fieldY[node + nx + 1];
+		double v = withPotential ? w00 * potential[node] + w10 * potential[node + 1] + w01 * potential[node + nx]
+				+ w11 * potential[node + nx + 1] : 0;
+
+		int r = CORRECTION_RADIUS;
+		int r1 = r + 1;
+		for (int cj = Math.max(0, j - r); cj <= Math.min(ny - 2, j + r); cj++) {
+			for (int ci = Math.max(0, i - r); ci <= Math.min(nx - 2, i + r); ci++) {
+				int c = cj * nx + ci;
+				for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+					double q = qs[k];
+
+					// Exact term
+					double dx = x - xs[k];
+					double dy = y - ys[k];
+					double distSquared = Math.max(dx * dx + dy * dy, FieldEngine.MIN_DIST_SQUARED);
+					double invDist = 1.0 / Math.sqrt(distSquared);
+					double kq = FieldEngine.K * q * invDist;
+					double s = kq * invDist * invDist;
+					ex += s * dx;
+					ey += s * dy;
+					v += kq;
+
+					// Minus its mesh term. Interpolating from nodes i, i + 1
+					// what was deposited on ci, ci + 1 only involves node
+					// offsets i - ci - 1, i - ci and i - ci + 1 per axis, with
+					// these combined weights.
+					double gx = (xs[k] - originX) / h - ci;
+					double gy = (ys[k] - originY) / h - cj;
+					double ax0 = (1 - tx) * gx, ax1 = (1 - tx) * (1 - gx) + tx * gx, ax2 = tx * (1 - gx);
+					double ay0 = (1 - ty) * gy, ay1 = (1 - ty) * (1 - gy) + ty * gy, ay2 = ty * (1 - gy);
+					int t = (j - cj - 1 + r1) * TABLE_SIDE + (i - ci - 1 + r1);
+					double meshX = ay0 * (ax0 * tableX[t] + ax1 * tableX[t + 1] + ax2 * tableX[t + 2])
+							+ ay1 * (ax0 * tableX[t + TABLE_SIDE] + ax1 * tableX[t + TABLE_SIDE + 1]
+									+ ax2 * tableX[t + TABLE_SIDE + 2])
+							+ ay2 * (ax0 * tableX[t + 2 * TABLE_SIDE] + ax1 * tableX[t + 2 * TABLE_SIDE + 1]
+									+ ax2 * tableX[t + 2 * TABLE_SIDE + 2]);
+					double meshY = ay0 * (ax0 * tableY[t] + ax1 * tableY[t + 1] + ax2 * tableY[t + 2])
+							+ ay1 * (ax0 * tableY[t + TABLE_SIDE] + ax1 * tableY[t + TABLE_SIDE + 1]
+									+ ax2 * tableY[t + TABLE_SIDE + 2])
+							+ ay2 * (ax0 * tableY[t + 2 * TABLE_SIDE] + ax1 * tableY[t + 2 * TABLE_SIDE + 1]
+									+ ax2 * tableY[t + 2 * TABLE_SIDE + 2]);
+					ex -= q * meshX;
+					ey -= q * meshY;
+					if (withPotential) {
+						double meshV = ay0 * (ax0 * tableV[t] + ax1 * tableV[t + 1] + ax2 * tableV[t + 2])
+								+ ay1 * (ax0 * tableV[t + TABLE_SIDE] + ax1 * tableV[t + TABLE_SIDE + 1]
+										+ ax2 * tableV[t + TABLE_SIDE + 2])
+								+ ay2 * (ax0 * tableV[t + 2 * TABLE_SIDE] + ax1 * tableV[t + 2 * TABLE_SIDE + 1]
+										+ ax2 * tableV[t + 2 * TABLE_SIDE + 2]);
+						v -= q * meshV;
+					}
+				}
+			}
+		}
+		if (out != null) {
+			out[0] = ex;
+			out[1] = ey;
+		}
+		return v;
+	}
+
+	// Error of the mesh against the direct sum, sampled like the tree's
+	public static BarnesHutTree.ErrorStats measureError(FieldEngine engine, double cellSize, int samples, long seed) {
+		ParticleMesh mesh = new ParticleMesh(engine, cellSize);
+		return BarnesHutTree.measureError(engine, (x, y, out) -> {
+			if (!mesh.field(x, y, out)) {
+				engine.directField(x, y, out);
+			}
+		}, samples, seed);
+	}
+
+	// Kernel transform for one padded size and spacing
+	private static final class KernelTransform {
+		final int width, height;
+		final double spacing;
+		final double[] values;
+
+		KernelTransform(int width, int height, double spacing, double[] values) {
+			this.width = width;
+			this.height = height;
+			this.spacing = spacing;
+			this.values = values;
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package electricfield;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Test particles as parallel primitive arrays, advanced with velocity Verlet
+// in fixed-size chunks spread over a fork-join pool. Chunk tasks and their
+// scratch buffers are kept and reinitialised between steps, so stepping
+// allocates nothing once the store has stopped growing.
+public class ParticleStore {
+	static final int MIN_CHUNK = 1024; // Particles per task, at least
+	static final double BOUNCE_DAMPING = 0.8; // Speed kept after a wall hit
+
+	double[] x, y, vx, vy; // Position and velocity
+	double[] ax, ay; // Acceleration at the current position
+	double[] q, m; // Charge and mass
+	private double[] qOverM;
+	int[] capturedBy; // Charge that captured each particle, -1 while free
+	int count;
+	private double captureRadius; // 0 lets particles pass through charges
+
+	private final ForkJoinPool pool;
+	private ChunkTask[] tasks = new ChunkTask[0];
+	private final RecursiveAction root = new RecursiveAction() {
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}
+	};
+
+	// Current step parameters, read by the chunk tasks
+	private FieldEngine stepField;
+	private double stepDt, stepMinX, stepMinY, stepMaxX, stepMaxY;
+	private int stepCount;
+
+	// Throughput: particle sub-steps per second, refreshed about twice a second
+	private long totalSteps;
+	private long windowSteps;
+	private long windowStart = System.nanoTime();
+	private volatile double stepsPerSecond;
+
+	public ParticleStore() {
+		this(ForkJoinPool.commonPool(), 16);
+	}
+
+	public ParticleStore(ForkJoinPool pool, int capacity) {
+		this.pool = pool;
+		allocate(Math.max(1, capacity));
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public double captureRadius() {
+		return captureRadius;
+	}
+
+	// Particles coming within radius of a charge stop there, see capturedBy.
+	// Uses the field's spatial index, so the check is cheap for many charges.
+	public void setCaptureRadius(double radius) {
+		if (radius < 0) {
+			throw new IllegalArgumentException("radius must be >= 0");
+		}
+		captureRadius = radius;
+	}
+
+	// Index of the charge that captured particle i, or -1
+	public int capturedBy(int i) {
+		return capturedBy[i];
+	}
+
+	private void allocate(int capacity) {
+		x = new double[capacity];
+		y = new double[capacity];
+		vx = new double[capacity];
+		vy = new double[capacity];
+		ax = new double[capacity];
+		ay = new double[capacity];
+		q = new double[capacity];
+		m = new double[capacity];
+		qOverM = new double[capacity];
+		capturedBy = new int[capacity];
+	}
+
+	private void ensureCapacity(int n) {
+		if (n > x.length) {
+			int capacity = Math.max(n, x.length * 2);
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+			vx = Arrays.copyOf(vx, capacity);
+			vy = Arrays.copyOf(vy, capacity);
+			ax = Arrays.copyOf(ax, capacity);
+			ay = Arrays.copyOf(ay, capacity);
+			q = Arrays.copyOf(q, capacity);
+			m = Arrays.copyOf(m, capacity);
+			qOverM = Arrays.copyOf(qOverM, capacity);
+			capturedBy = Arrays.copyOf(capturedBy, capacity);
+		}
+	}
+
+	// Adds one particle; its acceleration is seeded from field
+	public int add(FieldEngine field, double px, double py, double pvx, double pvy, double charge, double mass,
+			double[] scratch) {
+		Metrics.countFieldEvaluations(1);
+		return place(field, px, py, pvx, pvy, charge, mass, scratch);
+	}
+
+	private int place(FieldEngine field, double px, double py, double pvx, double pvy, double charge, double mass,
+			double[] scratch) {
+		ensureCapacity(count + 1);
+		int i = count++;
+		x[i] = px;
+		y[i] = py;
+		vx[i] = pvx;
+		vy[i] = pvy;
+		q[i] = charge;
+		m[i] = mass;
+		qOverM[i] = charge / mass;
+		capturedBy[i] = -1;
+		field.field(px, py, scratch);
+		ax[i] = scratch[0] * qOverM[i];
+		ay[i] = scratch[1] * qOverM[i];
+		return i;
+	}
+
+	// Adds n particles spread uniformly over a disc of the given radius around
+	// (cx, cy), each with velocity (pvx, pvy) plus Gaussian noise of
+	// velocitySpread, like a beam leaving a source
+	public void addCloud(FieldEngine field, int n, double cx, double cy, double radius, double pvx, double pvy,
+			double velocitySpread, double charge, double mass, long seed) {
+		ensureCapacity(count + n);
+		Random random = new Random(seed);
+		double[] scratch = new double[2];
+		for (int k = 0; k < n; k++) {
+			double r = radius * Math.sqrt(random.nextDouble());
+			double angle = 2 * Math.PI * random.nextDouble();
+			place(field, cx + r * Math.cos(angle), cy + r * Math.sin(angle),
+					pvx + velocitySpread * random.nextGaussian(), pvy + velocitySpread * random.nextGaussian(),
+					charge, mass, scratch);
+		}
+		Metrics.countFieldEvaluations(n);
+	}
+
+	public void clear() {
+		count = 0;
+	}
+
+	// Advances every particle by subSteps velocity-Verlet steps of dt,
+	// bouncing off the walls of a width x height box at the origin
+	public void step(FieldEngine field, double dt, int subSteps, double width, double height) {
+		step(field, dt, subSteps, 0, 0, width, height);
+	}
+
+	// As above with the walls of the box [minX, maxX] x [minY, maxY]. Walls
+	// only turn back particles crossing them from inside; particles outside
+	// the box, say after it moved with the view, fly on freely.
+	public void step(FieldEngine field, double dt, int subSteps, double minX, double minY, double maxX,
+			double maxY) {
+		if (count == 0) {
+			return;
+		}
+		stepField = field;
+		stepDt = dt;
+		stepCount = subSteps;
+		stepMinX = minX;
+		stepMinY = minY;
+		stepMaxX = maxX;
+		stepMaxY = maxY;
+
+		int chunk = Math.max(MIN_CHUNK, (count + pool.getParallelism() * 4 - 1) / (pool.getParallelism() * 4));
+		int chunks = (count + chunk - 1) / chunk;
+		if (tasks.length != chunks) {
+			tasks = new ChunkTask[chunks];
+			for (int c = 0; c < chunks; c++) {
+				tasks[c] = new ChunkTask();
+			}
+		}
+		for (int c = 0; c < chunks; c++) {
+			tasks[c].reinitialize();
+			tasks[c].from = c * chunk;
+			tasks[c].to = Math.min(count, (c + 1) * chunk);
+		}
+		if (chunks == 1) {
+			tasks[0].advance(); // Not worth a hand-off
+		} else {
+			root.reinitialize();
+			if (ForkJoinTask.getPool() == pool) {
+				root.invoke();
+			} else {
+				pool.invoke(root);
+			}
+		}
+		stepField = null;
+		countSteps((long) count * subSteps);
+	}
+
+	private void countSteps(long steps) {
+		Metrics.countPhysicsSteps(steps);
+		totalSteps += steps;
+		windowSteps += steps;
+		long now = System.nanoTime();
+		long elapsed = now - windowStart;
+		if (elapsed >= 500_000_000L) {
+			stepsPerSecond = windowSteps * 1e9 / elapsed;
+			windowSteps = 0;
+			windowStart = now;
+		}
+	}
+
+	// Particle-steps per second over the last half second or so
+	public double stepsPerSecond() {
+		return stepsPerSecond;
+	}
+
+	public long totalSteps() {
+		return totalSteps;
+	}
+
+	// Kick-drift-kick over [from, to) for all sub-steps
+	private class ChunkTask extends RecursiveAction {
+		int from, to;
+		private final double[] fieldOut = new double[2];
+
+		@Override
+		protected void compute() {
+			advance();
+		}
+
+		void advance() {
+			FieldEngine field = stepField;
+			double dt = stepDt;
+			double half = dt / 2;
+			double minX = stepMinX, minY = stepMinY;
+			double maxX = stepMaxX, maxY = stepMaxY;
+			double capture = captureRadius;
+			double[] e = fieldOut;
+			long evaluations = 0;
+			for (int step = 0; step < stepCount; step++) {
+				for (int i = from; i < to; i++) {
+					if (capturedBy[i] >= 0) {
+						continue;
+					}
+					vx[i] += ax[i] * half;
+					vy[i] += ay[i] * half;
+					double px = x[i], py = y[i];
+					x[i] += vx[i] * dt;
+					y[i] += vy[i] * dt;
+
+					// Bounce off the walls, losing some speed
+					if ((x[i] < minX && px >= minX) || (x[i] > maxX && px <= maxX)) {
+						vx[i] *= -BOUNCE_DAMPING;
+						x[i] = Math.max(minX, Math.min(x[i], maxX));
+					}
+					if ((y[i] < minY && py >= minY) || (y[i] > maxY && py <= maxY)) {
+						vy[i] *= -BOUNCE_DAMPING;
+						y[i] = Math.max(minY, Math.min(y[i], maxY));
+					}
+
+					if (capture > 0) {
+						int c = field.nearestWithin(x[i], y[i], capture);
+						if (c >= 0) {
+							capturedBy[i] = c; // Stuck on the charge from now on
+							x[i] = field.x(c);
+							y[i] = field.y(c);
+							vx[i] = vy[i] = ax[i] = ay[i] = 0;
+							continue;
+						}
+					}
+
+					field.field(x[i], y[i], e);
+					evaluations++;
+					ax[i] = e[0] * qOverM[i];
+					ay[i] = e[1] * qOverM[i];
+					vx[i] += ax[i] * half;
+					vy[i] += ay[i] * half;
+				}
+			}
+			Metrics.countFieldEvaluations(evaluations);
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package electricfield;
+
+// Performance attributes published over JMX as electricfield:type=Performance.
+// Rates and per-frame times are averages over the last sampling window of
+// about half a second; counts are totals since start-up.
+public interface PerformanceMXBean {
+	double getFramesPerSecond();
+
+	double getFrameMillis();
+
+	double getHeatmapMillis();
+
+	double getGridMillis();
+
+	double getEquipotentialsMillis();
+
+	double getVectorsMillis();
+
+	double getFieldLinesMillis();
+
+	double getChargesMillis();
+
+	double getTrajectoriesMillis();
+
+	double getParticlesMillis();
+
+	long getFieldEvaluations();
+
+	double getFieldEvaluationsPerSecond();
+
+	long getPhysicsSteps();
+
+	double getPhysicsStepsPerSecond();
+
+	long getNBodySteps();
+
+	double getNBodyStepsPerSecond();
+
+	// Bytes allocated per second by all live threads, -1 when the JVM
+	// cannot measure it
+	double getAllocatedBytesPerSecond();
+}
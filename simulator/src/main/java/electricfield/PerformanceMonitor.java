@@ -0,0 +1,277 @@
+package electricfield;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.DecimalFormat;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Turns the Metrics totals into rates over windows of about half a second,
+// for the on-canvas overlay and the JMX bean. Sampling happens lazily when
+// either asks, so nothing runs in the background.
+//
+// Per-phase times are averaged over frames: phases drawn into the cached
+// static layer only cost time in frames that rebuilt the layer, which is
+// where the frame time actually goes. The overlay also shows each phase's
+// latest run.
+public class PerformanceMonitor implements PerformanceMXBean {
+	public static final String OBJECT_NAME = "electricfield:type=Performance";
+	private static final long WINDOW_NANOS = 500_000_000L;
+	private static final Metrics.Phase[] PHASES = Metrics.Phase.values();
+
+	private final com.sun.management.ThreadMXBean allocation; // null when unsupported
+
+	// Totals at the start of the current window
+	private long windowStart;
+	private long frames, frameNanos, fieldEvaluations, physicsSteps, nBodySteps, allocatedBytes;
+	private final long[] phaseNanos = new long[PHASES.length];
+
+	// Results of the last complete window
+	private double framesPerSecond, frameMillis, fieldEvaluationsPerSecond, physicsStepsPerSecond;
+	private double nBodyStepsPerSecond;
+	private double allocatedBytesPerSecond = -1;
+	private final double[] phaseMillis = new double[PHASES.length];
+	private String[] overlayLines; // Rebuilt when a window closes
+
+	private final DecimalFormat millisFormat = new DecimalFormat("0.00");
+	private final DecimalFormat rateFormat = new DecimalFormat("0.0");
+	private final Font overlayFont = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+	private final Color overlayBackground = new Color(0, 0, 0, 160);
+
+	public PerformanceMonitor() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean measured = null;
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			measured = (com.sun.management.ThreadMXBean) threads;
+			if (!measured.isThreadAllocatedMemorySupported() || !measured.isThreadAllocatedMemoryEnabled()) {
+				measured = null;
+			}
+		}
+		allocation = measured;
+		windowStart = System.nanoTime();
+		frames = Metrics.frames();
+		frameNanos = Metrics.frameNanos();
+		fieldEvaluations = Metrics.fieldEvaluations();
+		physicsSteps = Metrics.physicsSteps();
+		nBodySteps = Metrics.nBodySteps();
+		allocatedBytes = allocatedBytes();
+		for (int i = 0; i < PHASES.length; i++) {
+			phaseNanos[i] = Metrics.phaseNanos(PHASES[i]);
+		}
+		overlayLines = overlayLines();
+	}
+
+	// New monitor, also registered with the platform MBean server unless
+	// another one already is (both read the same process-wide Metrics)
+	public static PerformanceMonitor register() {
+		PerformanceMonitor monitor = new PerformanceMonitor();
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(monitor, name);
+			}
+		} catch (JMException | SecurityException e) {
+			System.err.println("Cannot register " + OBJECT_NAME + ": " + e.getMessage());
+		}
+		return monitor;
+	}
+
+	// Sums the allocation counters of all live threads; threads that ended
+	// during a window take their share with them, so a window can come out
+	// short but never negative (see sample)
+	private long allocatedBytes() {
+		if (allocation == null) {
+			return 0;
+		}
+		long total = 0;
+		for (long bytes : allocation.getThreadAllocatedBytes(allocation.getAllThreadIds())) {
+			if (bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
+
+	// Closes the current window once it is long enough
+	private synchronized void sample() {
+		long now = System.nanoTime();
+		long elapsed = now - windowStart;
+		if (elapsed < WINDOW_NANOS) {
+			return;
+		}
+		double seconds = elapsed / 1e9;
+		long frameCount = Metrics.frames();
+		long frameTime = Metrics.frameNanos();
+		long evaluations = Metrics.fieldEvaluations();
+		long steps = Metrics.physicsSteps();
+		long bodySteps = Metrics.nBodySteps();
+		long allocated = allocatedBytes();
+
+		long newFrames = frameCount - frames;
+		framesPerSecond = newFrames / seconds;
+		frameMillis = newFrames > 0 ? (frameTime - frameNanos) / 1e6 / newFrames : 0;
+		for (int i = 0; i < PHASES.length; i++) {
+			long total = Metrics.phaseNanos(PHASES[i]);
+			phaseMillis[i] = newFrames > 0 ? (total - phaseNanos[i]) / 1e6 / newFrames : 0;
+			phaseNanos[i] = total;
+		}
+		fieldEvaluationsPerSecond = (evaluations - fieldEvaluations) / seconds;
+		physicsStepsPerSecond = (steps - physicsSteps) / seconds;
+		nBodyStepsPerSecond = (bodySteps - nBodySteps) / seconds;
+		if (allocation != null) {
+			allocatedBytesPerSecond = Math.max(0, allocated - allocatedBytes) / seconds;
+		}
+
+		windowStart = now;
+		frames = frameCount;
+		frameNanos = frameTime;
+		fieldEvaluations = evaluations;
+		physicsSteps = steps;
+		nBodySteps = bodySteps;
+		allocatedBytes = allocated;
+		overlayLines = overlayLines();
+	}
+
+	// Text of the overlay for the last complete window; the last-run column
+	// is as of the same moment, so all figures change together
+	private String[] overlayLines() {
+		String[] lines = new String[PHASES.length + 6];
+		int n = 0;
+		lines[n++] = rateFormat.format(framesPerSecond) + " fps, " + millisFormat.format(frameMillis) + " ms/frame";
+		for (Metrics.Phase phase : PHASES) {
+			lines[n++] = String.format("%-15s%7s%8s", phase.label,
+					millisFormat.format(phaseMillis[phase.ordinal()]),
+					millisFormat.format(Metrics.lastPhaseNanos(phase) / 1e6));
+		}
+		lines[n++] = "Field evals/s   " + rateFormat.format(fieldEvaluationsPerSecond / 1e6) + " M";
+		lines[n++] = "Physics steps/s " + rateFormat.format(physicsStepsPerSecond / 1e6) + " M";
+		lines[n++] = "N-body steps/s  " + rateFormat.format(nBodyStepsPerSecond);
+		lines[n++] = "Allocation      " + (allocatedBytesPerSecond < 0 ? "N/A"
+				: rateFormat.format(allocatedBytesPerSecond / (1 << 20)) + " MB/s");
+		lines[n++] = "(phase ms: per frame, last run)";
+		return lines;
+	}
+
+	private synchronized double phaseMillis(Metrics.Phase phase) {
+		sample();
+		return phaseMillis[phase.ordinal()];
+	}
+
+	@Override
+	public synchronized double getFramesPerSecond() {
+		sample();
+		return framesPerSecond;
+	}
+
+	@Override
+	public synchronized double getFrameMillis() {
+		sample();
+		return frameMillis;
+	}
+
+	@Override
+	public double getHeatmapMillis() {
+		return phaseMillis(Metrics.Phase.HEATMAP);
+	}
+
+	@Override
+	public double getGridMillis() {
+		return phaseMillis(Metrics.Phase.GRID);
+	}
+
+	@Override
+	public double getEquipotentialsMillis() {
+		return phaseMillis(Metrics.Phase.EQUIPOTENTIALS);
+	}
+
+	@Override
+	public double getVectorsMillis() {
+		return phaseMillis(Metrics.Phase.VECTORS);
+	}
+
+	@Override
+	public double getFieldLinesMillis() {
+		return phaseMillis(Metrics.Phase.FIELD_LINES);
+	}
+
+	@Override
+	public double getChargesMillis() {
+		return phaseMillis(Metrics.Phase.CHARGES);
+	}
+
+	@Override
+	public double getTrajectoriesMillis() {
+		return phaseMillis(Metrics.Phase.TRAJECTORIES);
+	}
+
+	@Override
+	public double getParticlesMillis() {
+		return phaseMillis(Metrics.Phase.PARTICLES);
+	}
+
+	@Override
+	public long getFieldEvaluations() {
+		return Metrics.fieldEvaluations();
+	}
+
+	@Override
+	public synchronized double getFieldEvaluationsPerSecond() {
+		sample();
+		return fieldEvaluationsPerSecond;
+	}
+
+	@Override
+	public long getPhysicsSteps() {
+		return Metrics.physicsSteps();
+	}
+
+	@Override
+	public synchronized double getPhysicsStepsPerSecond() {
+		sample();
+		return physicsStepsPerSecond;
+	}
+
+	@Override
+	public long getNBodySteps() {
+		return Metrics.nBodySteps();
+	}
+
+	@Override
+	public synchronized double getNBodyStepsPerSecond() {
+		sample();
+		return nBodyStepsPerSecond;
+	}
+
+	@Override
+	public synchronized double getAllocatedBytesPerSecond() {
+		sample();
+		return allocatedBytesPerSecond;
+	}
+
+	// Draws the current figures as a translucent panel with its top-left
+	// corner at (x, y)
+	public synchronized void paintOverlay(Graphics2D g2d, int x, int y) {
+		sample();
+		String[] lines = overlayLines;
+		g2d.setFont(overlayFont);
+		FontMetrics metrics = g2d.getFontMetrics();
+		int width = 0;
+		for (String line : lines) {
+			width = Math.max(width, metrics.stringWidth(line));
+		}
+		int lineHeight = metrics.getHeight();
+		g2d.setColor(overlayBackground);
+		g2d.fillRect(x, y, width + 12, lineHeight * lines.length + 8);
+		g2d.setColor(Color.WHITE);
+		for (int i = 0; i < lines.length; i++) {
+			g2d.drawString(lines[i], x + 6, y + 4 + metrics.getAscent() + i * lineHeight);
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package electricfield;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+// Test-particle simulation on its own thread. The loop advances in fixed
+// frames of frameTime seconds of simulated time per frameTime of wall time,
+// each split into a configurable number of velocity-Verlet sub-steps, so the
+// physics rate no longer depends on how long painting takes. The particles
+// themselves live in a ParticleStore, which spreads each frame over all cores.
+//
+// After every frame the particle positions before and after it are published
+// as a Snapshot. Snapshots are double-buffered with a spare: the loop writes
+// the back buffer and swaps it with the middle one, the renderer swaps the
+// middle one to the front when it asks for the latest, so neither side ever
+// waits for or reads a buffer the other is writing.
+//
+// A renderer that falls behind skips snapshots, so positions of traced
+// particles are also queued after every frame; drainTrace hands them over,
+// and trajectories get every frame however often they are painted.
+public class PhysicsLoop implements Runnable {
+	private static final int MAX_CATCH_UP_FRAMES = 5; // Drop time beyond this
+	public static final int DEFAULT_SUB_STEPS = 4;
+	static final int TRACE_CAPACITY = 1 << 15; // Queued trace points; newer ones are dropped when full
+
+	private final double frameTime; // Seconds per frame, simulated and wall
+	private volatile int subSteps = DEFAULT_SUB_STEPS;
+	private volatile FieldEngine field = new FieldEngine(); // Snapshot to move in
+	private volatile double[] walls = new double[4]; // minX, minY, maxX, maxY, replaced whole
+
+	// Particle state, only touched by the simulation thread
+	private final ParticleStore store = new ParticleStore();
+	private final double[] fieldOut = new double[2];
+	private long generation; // Bumped by clear so stale snapshots can be told apart
+	private long frame;
+	private int[] traced = new int[0]; // Store indices of traced particles
+	private int tracedCount;
+
+	// Launches and clears, run on the simulation thread at the start of the
+	// next frame in the order they were made
+	private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+	private final Object swapLock = new Object();
+	private Snapshot back = new Snapshot(), middle = new Snapshot(), front = new Snapshot();
+	private boolean fresh;
+
+	// Trace queue: a ring written by the simulation thread only and read by
+	// drainTrace only, each side publishing its progress through a volatile
+	private final int[] traceIndex = new int[TRACE_CAPACITY];
+	private final long[] traceGeneration = new long[TRACE_CAPACITY];
+	private final float[] traceX = new float[TRACE_CAPACITY], traceY = new float[TRACE_CAPACITY];
+	private volatile long traceHead, traceTail;
+
+	private volatile Thread thread;
+
+	public PhysicsLoop(double frameTime) {
+		this.frameTime = frameTime;
+	}
+
+	public double frameTime() {
+		return frameTime;
+	}
+
+	public int subSteps() {
+		return subSteps;
+	}
+
+	public void setSubSteps(int subSteps) {
+		if (subSteps < 1) {
+			throw new IllegalArgumentException("subSteps must be >= 1");
+		}
+		this.subSteps = subSteps;
+	}
+
+	// Charges to move the particles in; pass a snapshot, not the live engine
+	public void setField(FieldEngine snapshot) {
+		field = snapshot;
+	}
+
+	// Radius around charges at which particles get stuck, 0 to turn off
+	public void setCaptureRadius(double radius) {
+		if (radius < 0) {
+			throw new IllegalArgumentException("radius must be >= 0");
+		}
+		pending.add(() -> store.setCaptureRadius(radius));
+	}
+
+	public void setBounds(double width, double height) {
+		setBounds(0, 0, width, height);
+	}
+
+	// Walls of the box [minX, maxX] x [minY, maxY], see ParticleStore.step.
+	// Allocates only when they move, so it can be called every paint.
+	public void setBounds(double minX, double minY, double maxX, double maxY) {
+		double[] w = walls;
+		if (w[0] != minX || w[1] != minY || w[2] != maxX || w[3] != maxY) {
+			walls = new double[] { minX, minY, maxX, maxY };
+		}
+	}
+
+	public void launch(double x, double y, double vx, double vy, double charge, double mass) {
+		pending.add(() -> store.add(field, x, y, vx, vy, charge, mass, fieldOut));
+	}
+
+	// Launches n particles at once, see ParticleStore.addCloud. Particles get
+	// consecutive indices in launch order, singles and clouds alike.
+	public void launchCloud(int n, double x, double y, double radius, double vx, double vy, double velocitySpread,
+			double charge, double mass, long seed) {
+		pending.add(() -> store.addCloud(field, n, x, y, radius, vx, vy, velocitySpread, charge, mass, seed));
+	}
+
+	// Queues the position of the particle with store index i after every
+	// frame from now on, see drainTrace
+	public void trace(int i) {
+		pending.add(() -> {
+			if (tracedCount == traced.length) {
+				traced = Arrays.copyOf(traced, Math.max(8, tracedCount * 2));
+			}
+			traced[tracedCount++] = i;
+		});
+	}
+
+	public void clear() {
+		pending.add(() -> {
+			store.clear();
+			tracedCount = 0;
+			generation++;
+		});
+	}
+
+	// Hands every queued trace point of the given generation to consumer, in
+	// the order the frames were simulated; points from other generations,
+	// i.e. from before a clear, are dropped
+	public void drainTrace(long generation, TraceConsumer consumer) {
+		long tail = traceTail, head = traceHead;
+		for (; tail < head; tail++) {
+			int slot = (int) (tail & (TRACE_CAPACITY - 1));
+			if (traceGeneration[slot] == generation) {
+				consumer.point(traceIndex[slot], traceX[slot], traceY[slot]);
+			}
+		}
+		traceTail = tail;
+	}
+
+	// Particle-steps per second actually achieved
+	public double stepsPerSecond() {
+		return store.stepsPerSecond();
+	}
+
+	public synchronized void start() {
+		if (thread == null) {
+			thread = new Thread(this, "physics");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	public synchronized void stop() {
+		if (thread != null) {
+			thread.interrupt();
+			thread = null;
+		}
+	}
+
+	public boolean isRunning() {
+		return thread != null;
+	}
+
+	@Override
+	public void run() {
+		long frameNanos = (long) (frameTime * 1e9);
+		long next = System.nanoTime();
+		while (!Thread.currentThread().isInterrupted()) {
+			long now = System.nanoTime();
+			if (now < next) {
+				LockSupport.parkNanos(next - now);
+				continue;
+			}
+			int frames = 0;
+			while (next <= now && frames < MAX_CATCH_UP_FRAMES) {
+				advanceFrame();
+				next += frameNanos;
+				frames++;
+			}
+			if (next <= now) {
+				next = now + frameNanos; // Too far behind, skip rather than spiral
+			}
+		}
+	}
+
+	// One frame: apply launches/clears, sub-step, publish. Public so the loop
+	// can also be driven without its thread, e.g. headless.
+	public void advanceFrame() {
+		applyPending();
+		FieldEngine field = this.field;
+		double[] w = walls;
+
+		int count = store.size();
+		Snapshot s = back;
+		s.ensureCapacity(count);
+		double[] x = store.x, y = store.y;
+		for (int i = 0; i < count; i++) {
+			s.prevX[i] = (float) x[i];
+			s.prevY[i] = (float) y[i];
+		}
+
+		int n = subSteps;
+		store.step(field, frameTime / n, n, w[0], w[1], w[2], w[3]);
+
+		frame++;
+		double[] q = store.q;
+		for (int i = 0; i < count; i++) {
+			s.x[i] = (float) x[i];
+			s.y[i] = (float) y[i];
+			s.charge[i] = (float) q[i];
+		}
+		recordTrace(count);
+		s.count = count;
+		s.frame = frame;
+		s.generation = generation;
+		s.publishNanos = System.nanoTime();
+		synchronized (swapLock) {
+			back = middle;
+			middle = s;
+			fresh = true;
+		}
+	}
+
+	private void recordTrace(int count) {
+		long head = traceHead;
+		long free = TRACE_CAPACITY - (head - traceTail);
+		double[] x = store.x, y = store.y;
+		for (int t = 0; t < tracedCount && free > 0; t++) {
+			int i = traced[t];
+			if (i < count) {
+				int slot = (int) (head & (TRACE_CAPACITY - 1));
+				traceIndex[slot] = i;
+				traceGeneration[slot] = generation;
+				traceX[slot] = (float) x[i];
+				traceY[slot] = (float) y[i];
+				head++;
+				free--;
+			}
+		}
+		traceHead = head;
+	}
+
+	private void applyPending() {
+		Runnable action;
+		while ((action = pending.poll()) != null) {
+			action.run();
+		}
+	}
+
+	// Most recently published frame. The returned snapshot stays untouched
+	// until the next call, so the caller can read it without locking.
+	public Snapshot latestSnapshot() {
+		synchronized (swapLock) {
+			if (fresh) {
+				Snapshot t = front;
+				front = middle;
+				middle = t;
+				fresh = false;
+			}
+			return front;
+		}
+	}
+
+	public interface TraceConsumer {
+		void point(int index, float x, float y);
+	}
+
+	// Particle positions at the start and end of one frame
+	public static class Snapshot {
+		public int count;
+		public long frame; // Frames simulated so far, 0 before the first
+		public long generation;
+		public long publishNanos; // System.nanoTime() when published
+		public float[] prevX = new float[0], prevY = new float[0];
+		public float[] x = new float[0], y = new float[0];
+		public float[] charge = new float[0];
+
+		void ensureCapacity(int n) {
+			if (x.length < n) {
+				int capacity = Math.max(n, x.length * 2);
+				prevX = new float[capacity];
+				prevY = new float[capacity];
+				x = new float[capacity];
+				y = new float[capacity];
+				charge = new float[capacity];
+			}
+		}
+
+		// Interpolation factor for drawing at time now: 0 shows the start of
+		// the frame, 1 its end
+		public double alpha(long now, double frameTime) {
+			double a = (now - publishNanos) / (frameTime * 1e9);
+			return a < 0 ? 0 : (a > 1 ? 1 : a);
+		}
+	}
+}
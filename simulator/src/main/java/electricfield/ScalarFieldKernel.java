@@ -0,0 +1,98 @@
+package electricfield;
+
+// The plain loops, one charge per iteration; see FieldKernel
+final class ScalarFieldKernel extends FieldKernel {
+	@Override
+	public int lanes() {
+		return 1;
+	}
+
+	@Override
+	public String name() {
+		return "scalar";
+	}
+
+	@Override
+	void field(double[] xs, double[] ys, double[] qs, int n, double x, double y, double[] out) {
+		double ex = 0;
+		double ey = 0;
+		for (int i = 0; i < n; i++) {
+			double dx = x - xs[i];
+			double dy = y - ys[i];
+			double distSquared = dx * dx + dy * dy;
+			if (distSquared < FieldEngine.MIN_DIST_SQUARED) {
+				distSquared = FieldEngine.MIN_DIST_SQUARED;
+			}
+			double invDist = 1.0 / Math.sqrt(distSquared);
+			double s = FieldEngine.K * qs[i] * invDist * invDist * invDist;
+			ex += s * dx;
+			ey += s * dy;
+		}
+		out[0] = ex;
+		out[1] = ey;
+	}
+
+	@Override
+	double potential(double[] xs, double[] ys, double[] qs, int n, double x, double y) {
+		double v = 0;
+		for (int i = 0; i < n; i++) {
+			double dx = x - xs[i];
+			double dy = y - ys[i];
+			double distSquared = dx * dx + dy * dy;
+			if (distSquared < FieldEngine.MIN_DIST_SQUARED) {
+				distSquared = FieldEngine.MIN_DIST_SQUARED;
+			}
+			v += FieldEngine.K * qs[i] / Math.sqrt(distSquared);
+		}
+		return v;
+	}
+
+	@Override
+	void fieldAndPotential(double[] xs, double[] ys, double[] qs, int n, double x, double y, double[] out) {
+		double ex = 0;
+		double ey = 0;
+		double v = 0;
+		for (int i = 0; i < n; i++) {
+			double dx = x - xs[i];
+			double dy = y - ys[i];
+			double distSquared = dx * dx + dy * dy;
+			if (distSquared < FieldEngine.MIN_DIST_SQUARED) {
+				distSquared = FieldEngine.MIN_DIST_SQUARED;
+			}
+			double invDist = 1.0 / Math.sqrt(distSquared);
+			double kq = FieldEngine.K * qs[i] * invDist;
+			double s = kq * invDist * invDist;
+			ex += s * dx;
+			ey += s * dy;
+			v += kq;
+		}
+		out[0] = ex;
+		out[1] = ey;
+		out[2] = v;
+	}
+
+	@Override
+	void fieldAt(double[] xs, double[] ys, double[] qs, int n, double[] px, double[] py, int m, double[] ex,
+			double[] ey) {
+		for (int p = 0; p < m; p++) {
+			double x = px[p];
+			double y = py[p];
+			double sx = 0;
+			double sy = 0;
+			for (int i = 0; i < n; i++) {
+				double dx = x - xs[i];
+				double dy = y - ys[i];
+				double distSquared = dx * dx + dy * dy;
+				if (distSquared < FieldEngine.MIN_DIST_SQUARED) {
+					distSquared = FieldEngine.MIN_DIST_SQUARED;
+				}
+				double invDist = 1.0 / Math.sqrt(distSquared);
+				double s = FieldEngine.K * qs[i] * invDist * invDist * invDist;
+				sx += s * dx;
+				sy += s * dy;
+			}
+			ex[p] = sx;
+			ey[p] = sy;
+		}
+	}
+}
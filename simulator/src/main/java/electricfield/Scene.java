@@ -0,0 +1,101 @@
+package electricfield;
+
+import java.util.Arrays;
+
+// Everything needed to draw a picture without the window: canvas size,
+// charges, test particles with how long to let them fly, and which layers
+// to show. Particles are parallel primitive arrays like the charges.
+public class Scene {
+	public int width = 800;
+	public int height = 600;
+	public final FieldEngine charges;
+
+	double[] particleX = new double[4], particleY = new double[4];
+	double[] particleVx = new double[4], particleVy = new double[4];
+	double[] particleCharge = new double[4], particleMass = new double[4];
+	int particleCount;
+	public int frames; // Physics frames to simulate for trajectories
+	public double frameTime = 0.01; // Seconds per frame, as in the simulator
+
+	public boolean showGrid = true;
+	public boolean showVectors = true;
+	public boolean showFieldLines = true;
+	public boolean showEquipotentials = false;
+	public Heatmap.Mode heatmap; // null for none
+
+	public Scene() {
+		this(new FieldEngine());
+	}
+
+	// Scene around existing charges, e.g. the simulator's own for saving
+	public Scene(FieldEngine charges) {
+		this.charges = charges;
+	}
+
+	public int particleCount() {
+		return particleCount;
+	}
+
+	public double particleX(int i) {
+		return particleX[i];
+	}
+
+	public double particleY(int i) {
+		return particleY[i];
+	}
+
+	public double particleVx(int i) {
+		return particleVx[i];
+	}
+
+	public double particleVy(int i) {
+		return particleVy[i];
+	}
+
+	public double particleCharge(int i) {
+		return particleCharge[i];
+	}
+
+	public double particleMass(int i) {
+		return particleMass[i];
+	}
+
+	public void addParticle(double x, double y, double vx, double vy, double charge, double mass) {
+		if (particleCount == particleX.length) {
+			int capacity = particleCount * 2;
+			particleX = Arrays.copyOf(particleX, capacity);
+			particleY = Arrays.copyOf(particleY, capacity);
+			particleVx = Arrays.copyOf(particleVx, capacity);
+			particleVy = Arrays.copyOf(particleVy, capacity);
+			particleCharge = Arrays.copyOf(particleCharge, capacity);
+			particleMass = Arrays.copyOf(particleMass, capacity);
+		}
+		int i = particleCount++;
+		particleX[i] = x;
+		particleY[i] = y;
+		particleVx[i] = vx;
+		particleVy[i] = vy;
+		particleCharge[i] = charge;
+		particleMass[i] = mass;
+	}
+
+	// Replaces the particles with the first n entries of the given columns,
+	// taking ownership of the arrays (see BinarySceneFile)
+	void adoptParticles(double[] x, double[] y, double[] vx, double[] vy, double[] charge, double[] mass, int n) {
+		if (n == 0) { // addParticle() grows by doubling, so keep room for one
+			x = new double[1];
+			y = new double[1];
+			vx = new double[1];
+			vy = new double[1];
+			charge = new double[1];
+			mass = new double[1];
+		}
+		particleX = x;
+		particleY = y;
+		particleVx = vx;
+		particleVy = vy;
+		particleCharge = charge;
+		particleMass = mass;
+		particleCount = n;
+	}
+}
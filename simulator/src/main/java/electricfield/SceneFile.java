@@ -0,0 +1,262 @@
+package electricfield;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+// Reads scenes from plain text, one directive per line, '#' starts a comment:
+//
+//   size 1920 1080
+//   charge <x> <y> <q>
+//   segment <x1> <y1> <x2> <y2> <q>
+//   ring <x> <y> <radius> <q>
+//   arc <x> <y> <radius> <start> <sweep> <q>      angles in degrees
+//   sheet <x> <y> <width> <height> <angle> <q>    centred on (x, y)
+//   particle <x> <y> <vx> <vy> <q> <m>
+//   frames <n>                     physics frames of trajectory to draw
+//   grid|vectors|lines|equipotentials on|off
+//   heatmap off|potential|field
+//
+// Coordinates are pixels of the scene's canvas, charges in Coulombs; a
+// segment, ring, arc or sheet holds q spread evenly over it (see
+// ChargeDistributions).
+//
+// Scenes too large to place by hand go into the binary format instead
+// (BinarySceneFile, *.efs), and JsonSceneFile (*.json) exchanges them with
+// other tools. read() recognises all three, write() picks by extension, and
+// main converts between them:
+//
+//   java -cp simulator.jar electricfield.SceneFile in.scene out.efs
+public final class SceneFile {
+	private SceneFile() {
+	}
+
+	public static Scene read(Path file) throws IOException {
+		if (BinarySceneFile.isBinary(file)) {
+			return BinarySceneFile.read(file);
+		}
+		if (hasExtension(file, ".json")) {
+			return JsonSceneFile.read(file);
+		}
+		return readText(file);
+	}
+
+	public static void write(Scene scene, Path file) throws IOException {
+		if (hasExtension(file, ".efs")) {
+			BinarySceneFile.write(scene, file);
+		} else if (hasExtension(file, ".json")) {
+			JsonSceneFile.write(scene, file);
+		} else {
+			writeText(scene, file);
+		}
+	}
+
+	private static boolean hasExtension(Path file, String extension) {
+		return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(extension);
+	}
+
+	private static Scene readText(Path file) throws IOException {
+		Scene scene = new Scene();
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			int number = 0;
+			while ((line = in.readLine()) != null) {
+				number++;
+				int comment = line.indexOf('#');
+				if (comment >= 0) {
+					line = line.substring(0, comment);
+				}
+				String[] words = line.trim().split("\\s+");
+				if (words[0].isEmpty()) {
+					continue;
+				}
+				try {
+					parse(scene, words);
+				} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+					throw new IOException(file + ":" + number + ": cannot read \"" + line.trim() + "\"", e);
+				}
+			}
+		}
+		return scene;
+	}
+
+	private static void writeText(Scene scene, Path file) throws IOException {
+		try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			out.write("size " + scene.width + " " + scene.height + "\n");
+			out.write("grid " + onOff(scene.showGrid) + "\n");
+			out.write("vectors " + onOff(scene.showVectors) + "\n");
+			out.write("lines " + onOff(scene.showFieldLines) + "\n");
+			out.write("equipotentials " + onOff(scene.showEquipotentials) + "\n");
+			out.write("heatmap " + heatmapName(scene.heatmap) + "\n");
+			FieldEngine charges = scene.charges;
+			for (int i = 0; i < charges.size(); i++) {
+				out.write("charge " + charges.x(i) + " " + charges.y(i) + " " + charges.charge(i) + "\n");
+			}
+			ChargeDistributions distributions = charges.distributions();
+			for (int i = 0; i < distributions.size(); i++) {
+				out.write(distributionLine(distributions, i) + "\n");
+			}
+			for (int i = 0; i < scene.particleCount(); i++) {
+				out.write("particle " + scene.particleX(i) + " " + scene.particleY(i) + " " + scene.particleVx(i) + " "
+						+ scene.particleVy(i) + " " + scene.particleCharge(i) + " " + scene.particleMass(i) + "\n");
+			}
+			out.write("frames " + scene.frames + "\n");
+		}
+	}
+
+	private static void parse(Scene scene, String[] words) {
+		switch (words[0].toLowerCase(Locale.ROOT)) {
+		case "size":
+			scene.width = positive(Integer.parseInt(words[1]));
+			scene.height = positive(Integer.parseInt(words[2]));
+			break;
+		case "charge":
+			scene.charges.add(number(words[1]), number(words[2]), number(words[3]));
+			break;
+		case "segment":
+			scene.charges.distributions().addSegment(number(words[1]), number(words[2]), number(words[3]),
+					number(words[4]), number(words[5]));
+			break;
+		case "ring":
+			scene.charges.distributions().addRing(number(words[1]), number(words[2]), number(words[3]),
+					number(words[4]));
+			break;
+		case "arc":
+			scene.charges.distributions().addArc(number(words[1]), number(words[2]), number(words[3]),
+					Math.toRadians(number(words[4])), Math.toRadians(number(words[5])), number(words[6]));
+			break;
+		case "sheet":
+			scene.charges.distributions().addSheet(number(words[1]), number(words[2]), number(words[3]),
+					number(words[4]), Math.toRadians(number(words[5])), number(words[6]));
+			break;
+		case "particle":
+			scene.addParticle(number(words[1]), number(words[2]), number(words[3]), number(words[4]),
+					number(words[5]), positive(number(words[6])));
+			break;
+		case "frames":
+			scene.frames = Integer.parseInt(words[1]);
+			if (scene.frames < 0) {
+				throw new IllegalArgumentException("frames must be >= 0");
+			}
+			break;
+		case "grid":
+			scene.showGrid = onOff(words[1]);
+			break;
+		case "vectors":
+			scene.showVectors = onOff(words[1]);
+			break;
+		case "lines":
+			scene.showFieldLines = onOff(words[1]);
+			break;
+		case "equipotentials":
+			scene.showEquipotentials = onOff(words[1]);
+			break;
+		case "heatmap":
+			scene.heatmap = heatmap(words[1]);
+			break;
+		default:
+			throw new IllegalArgumentException("unknown directive " + words[0]);
+		}
+	}
+
+	// Directive for distribution i, angles in degrees
+	static String distributionLine(ChargeDistributions distributions, int i) {
+		double p0 = distributions.param(i, 0), p1 = distributions.param(i, 1), p2 = distributions.param(i, 2);
+		double p3 = distributions.param(i, 3), p4 = distributions.param(i, 4);
+		double q = distributions.charge(i);
+		switch (distributions.kind(i)) {
+		case SEGMENT:
+			return "segment " + p0 + " " + p1 + " " + p2 + " " + p3 + " " + q;
+		case ARC:
+			if (Math.abs(p4) >= 2 * Math.PI) {
+				return "ring " + p0 + " " + p1 + " " + p2 + " " + q;
+			}
+			return "arc " + p0 + " " + p1 + " " + p2 + " " + Math.toDegrees(p3) + " " + Math.toDegrees(p4) + " " + q;
+		default:
+			return "sheet " + p0 + " " + p1 + " " + p2 + " " + p3 + " " + Math.toDegrees(p4) + " " + q;
+		}
+	}
+
+	private static double number(String word) {
+		double value = Double.parseDouble(word);
+		if (!Double.isFinite(value)) {
+			throw new IllegalArgumentException("not a finite number: " + word);
+		}
+		return value;
+	}
+
+	private static int positive(int value) {
+		if (value <= 0) {
+			throw new IllegalArgumentException("must be > 0");
+		}
+		return value;
+	}
+
+	private static double positive(double value) {
+		if (value <= 0) {
+			throw new IllegalArgumentException("must be > 0");
+		}
+		return value;
+	}
+
+	private static String onOff(boolean on) {
+		return on ? "on" : "off";
+	}
+
+	private static boolean onOff(String word) {
+		switch (word.toLowerCase(Locale.ROOT)) {
+		case "on":
+			return true;
+		case "off":
+			return false;
+		default:
+			throw new IllegalArgumentException("expected on or off: " + word);
+		}
+	}
+
+	static Heatmap.Mode heatmap(String word) {
+		switch (word.toLowerCase(Locale.ROOT)) {
+		case "off":
+			return null;
+		case "potential":
+			return Heatmap.Mode.POTENTIAL;
+		case "field":
+			return Heatmap.Mode.FIELD_MAGNITUDE;
+		default:
+			throw new IllegalArgumentException("expected off, potential or field: " + word);
+		}
+	}
+
+	static String heatmapName(Heatmap.Mode mode) {
+		if (mode == null) {
+			return "off";
+		}
+		return mode == Heatmap.Mode.POTENTIAL ? "potential" : "field";
+	}
+
+	// Converts a scene between the text, JSON and binary formats
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("usage: SceneFile in out   (.scene text, .json, .efs binary)");
+			System.exit(2);
+		}
+		try {
+			long start = System.nanoTime();
+			Scene scene = read(Paths.get(args[0]));
+			long loaded = System.nanoTime();
+			write(scene, Paths.get(args[1]));
+			long written = System.nanoTime();
+			System.out.printf("%d charges, %d distributions, %d particles: read %.1f ms, write %.1f ms%n",
+					scene.charges.size(), scene.charges.distributions().size(), scene.particleCount(),
+					(loaded - start) / 1e6, (written - loaded) / 1e6);
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
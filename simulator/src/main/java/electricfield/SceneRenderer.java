@@ -0,0 +1,928 @@
+package electricfield;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+// Draws the static part of a scene (heatmap, grid, equipotentials, field
+// vectors, field lines and charges) for a field engine onto any Graphics2D,
+// so the same code paints the window, off-screen images and headless
+// renders. It owns the caches derived from the charges (field grid,
+// contours, heatmap raster); every display setting change bumps
+// settingsVersion so callers can tell when a cached picture is stale.
+//
+// In preview mode, for frames drawn while the user is still dragging, the
+// heatmap is sampled at least every PREVIEW_HEATMAP_STRIDE pixels and field
+// vectors every PREVIEW_VECTOR_SPACING pixels, a fraction of a full frame.
+//
+// Painting allocates next to nothing once warmed up: colours and strokes are
+// constants, shapes are batched into a few reused paths (one for all field
+// lines, one per palette colour for field vectors, one per sign for charges),
+// and charge labels are formatted again only when a charge's value changes.
+// Particles and trajectories, drawn every animation frame, are batched the
+// same way: add them between beginParticles and endParticles, which strokes
+// every trajectory at once and fills the particles in one path per sign.
+// What little is left per frame is the path iterator Java2D makes for each
+// shape drawn.
+//
+// Charge distributions are drawn under the charges: segments and arcs as
+// thick lines, sheets filled and outlined, in the colour of their sign.
+//
+// A view that pans and zooms draws its field layers tile by tile with
+// paintTile (see TileCache and TileLayers) and the field lines, charges,
+// particles and force on top, placed through the renderer's Viewport. Tiles
+// sample the field from a view grid, a FieldGrid over the visible tiles at
+// the current zoom with fieldGridCellSize pixels between nodes, which
+// applyDelta patches along with the canvas grid. paint draws the canvas at
+// the identity view.
+public class SceneRenderer {
+	public static final int CHARGE_RADIUS = 12;
+	static final int VECTOR_SPACING = 40; // Spacing between field vectors
+	static final int PREVIEW_VECTOR_SPACING = 80;
+	static final int PREVIEW_HEATMAP_STRIDE = 8; // Pixels per heatmap sample in preview mode
+	static final int GRID_SPACING = 50;
+	static final int MIN_GRID_PIXELS = 12; // Zoomed out, grid spacing doubles until lines are this far apart
+	static final int NEAR_CHARGE_PIXELS = 20; // No field vectors this close to a charge
+	static final int ARROW_REACH = 30; // Longest arrow plus its head, in pixels
+	static final Color POSITIVE_PARTICLE_COLOR = new Color(255, 100, 100, 200); // Lighter than charges
+	static final Color NEGATIVE_PARTICLE_COLOR = new Color(100, 100, 255, 200);
+	static final Color NEUTRAL_PARTICLE_COLOR = new Color(150, 150, 150, 200);
+	private static final int PARTICLE_RADIUS = 6;
+	private static final Color GRID_COLOR = new Color(220, 220, 220);
+	private static final Color POSITIVE_CONTOUR_COLOR = new Color(220, 120, 120);
+	private static final Color NEGATIVE_CONTOUR_COLOR = new Color(120, 120, 220);
+	private static final Color FIELD_LINE_COLOR = new Color(0, 0, 200, 150);
+	private static final Color TRAJECTORY_COLOR = new Color(150, 150, 150, 100); // Light gray
+	private static final Color POSITIVE_CHARGE_COLOR = new Color(255, 0, 0, 200);
+	private static final Color NEGATIVE_CHARGE_COLOR = new Color(0, 0, 255, 200);
+	private static final Color FORCE_COLOR = new Color(0, 200, 0);
+	private static final Stroke THIN_STROKE = new BasicStroke(1.0f);
+	private static final Stroke FIELD_LINE_STROKE = new BasicStroke(1.5f);
+	private static final Stroke TRAJECTORY_STROKE = new BasicStroke(0.5f);
+	private static final Stroke FORCE_STROKE = new BasicStroke(2.0f);
+	private static final Stroke HIGHLIGHT_STROKE = new BasicStroke(3);
+	private static final Stroke DISTRIBUTION_STROKE = new BasicStroke(5, BasicStroke.CAP_ROUND,
+			BasicStroke.JOIN_ROUND);
+	private static final Stroke DISTRIBUTION_HIGHLIGHT_STROKE = new BasicStroke(9, BasicStroke.CAP_ROUND,
+			BasicStroke.JOIN_ROUND);
+	private static final Color POSITIVE_SHEET_COLOR = new Color(255, 0, 0, 70);
+	private static final Color NEGATIVE_SHEET_COLOR = new Color(0, 0, 255, 70);
+	private static final double ARC_STEP = Math.PI / 32; // Arcs are drawn as polylines of this step
+	private static final Color[] ARROW_PALETTE = new Color[256]; // Field vectors, weak (blue) to strong (red)
+	private static final double ARROW_SCALE = 1e12; // Makes field magnitudes visible
+	private static final double KAPPA = 0.5522847498; // Bezier control offset for a quarter circle
+	// Arrowhead barbs sit 30 degrees either side of the shaft
+	private static final double BARB_COS = Math.cos(Math.PI / 6);
+	private static final double BARB_SIN = Math.sin(Math.PI / 6);
+
+	static {
+		for (int i = 0; i < ARROW_PALETTE.length; i++) {
+			ARROW_PALETTE[i] = new Color(i, 0, 255 - i);
+		}
+	}
+
+	private final FieldEngine engine;
+	private final double[] fieldOut = new double[2]; // Scratch for field lookups
+	private FieldGrid fieldGrid; // Cached field for drawing, see sampleField
+	private FieldGrid viewGrid; // Cached field over the view's tiles, see ensureViewGrid
+	private double fieldGridCellSize = FieldGrid.DEFAULT_CELL_SIZE;
+	private double[] contourLevels = Equipotentials.evenLevels(0.1, 8); // Volts
+	private Equipotentials equipotentials; // Contours of fieldGrid's potential
+	private final Path2D.Float path = new Path2D.Float(); // Reused for lines, contours, arrows and the force
+	private final AffineTransform transform = new AffineTransform(); // World to tile or view pixels
+	private Viewport viewport = new Viewport(); // Places charges, particles and the force
+	private final Heatmap heatmap = new Heatmap();
+	private final Ellipse2D.Double disc = new Ellipse2D.Double(); // Selection highlight
+	private final Path2D.Float positiveCharges = new Path2D.Float();
+	private final Path2D.Float negativeCharges = new Path2D.Float();
+	private final Path2D.Float positiveSheets = new Path2D.Float();
+	private final Path2D.Float negativeSheets = new Path2D.Float();
+	private final Path2D.Float trajectoryBatch = new Path2D.Float();
+	private final Path2D.Float positiveParticles = new Path2D.Float();
+	private final Path2D.Float negativeParticles = new Path2D.Float();
+	private final Path2D.Float neutralParticles = new Path2D.Float();
+	// Field vectors of the frame being drawn: tail, tip and both barb ends (8
+	// floats) and a palette index each, then their order sorted by colour
+	private float[] arrowPoints = new float[0];
+	private int[] arrowColors = new int[0];
+	private int[] arrowOrder = new int[0];
+	private final int[] colorEnd = new int[ARROW_PALETTE.length + 1];
+	// Label of each charge and the value it was formatted from
+	private final DecimalFormat labelFormat = new DecimalFormat("0.##E0");
+	private String[] labels = new String[0];
+	private double[] labelValues = new double[0];
+
+	private boolean showGrid = true;
+	private boolean showVectors = true;
+	private boolean showEquipotentials = false;
+	private Heatmap.Mode heatmapMode; // null when the heatmap is off
+	private int heatmapStride = 1; // Pixels per heatmap sample
+	private boolean preview;
+	private long settingsVersion;
+
+	public SceneRenderer(FieldEngine engine) {
+		this.engine = engine;
+	}
+
+	public FieldEngine engine() {
+		return engine;
+	}
+
+	// A renderer with the same display settings for another engine, e.g. a
+	// snapshot drawn on a worker thread. Renderers keep scratch state, so
+	// each thread needs its own.
+	public SceneRenderer copyFor(FieldEngine engine) {
+		SceneRenderer copy = new SceneRenderer(engine);
+		copy.fieldGridCellSize = fieldGridCellSize;
+		copy.contourLevels = contourLevels;
+		copy.showGrid = showGrid;
+		copy.showVectors = showVectors;
+		copy.showEquipotentials = showEquipotentials;
+		copy.heatmapMode = heatmapMode;
+		copy.heatmapStride = heatmapStride;
+		copy.preview = preview;
+		copy.settingsVersion = settingsVersion;
+		copy.viewport = viewport;
+		return copy;
+	}
+
+	public Viewport viewport() {
+		return viewport;
+	}
+
+	// View the overlay (charges, particles, force) is drawn through
+	public void setViewport(Viewport viewport) {
+		this.viewport = viewport;
+	}
+
+	public long settingsVersion() {
+		return settingsVersion;
+	}
+
+	public boolean showGrid() {
+		return showGrid;
+	}
+
+	public void setShowGrid(boolean showGrid) {
+		this.showGrid = showGrid;
+		settingsVersion++;
+	}
+
+	public boolean showVectors() {
+		return showVectors;
+	}
+
+	public void setShowVectors(boolean showVectors) {
+		this.showVectors = showVectors;
+		settingsVersion++;
+	}
+
+	public boolean showEquipotentials() {
+		return showEquipotentials;
+	}
+
+	public void setShowEquipotentials(boolean showEquipotentials) {
+		this.showEquipotentials = showEquipotentials;
+		settingsVersion++;
+	}
+
+	public void setContourLevels(double[] levels) {
+		contourLevels = levels;
+		settingsVersion++;
+	}
+
+	public Heatmap.Mode heatmapMode() {
+		return heatmapMode;
+	}
+
+	public void setHeatmapMode(Heatmap.Mode mode) {
+		heatmapMode = mode;
+		settingsVersion++;
+	}
+
+	public void setHeatmapStride(int stride) {
+		if (stride < 1) {
+			throw new IllegalArgumentException("stride must be >= 1");
+		}
+		if (stride != heatmapStride) {
+			heatmapStride = stride;
+			settingsVersion++;
+		}
+	}
+
+	public boolean preview() {
+		return preview;
+	}
+
+	// Cheaper heatmap and vectors while true, see above
+	public void setPreview(boolean preview) {
+		if (preview != this.preview) {
+			this.preview = preview;
+			settingsVersion++;
+		}
+	}
+
+	public double fieldGridCellSize() {
+		return fieldGridCellSize;
+	}
+
+	public void setFieldGridCellSize(double cellSize) {
+		if (cellSize <= 0) {
+			throw new IllegalArgumentException("cellSize must be > 0");
+		}
+		fieldGridCellSize = cellSize;
+		fieldGrid = null; // Rebuilt at the new resolution on next use
+		viewGrid = null;
+		settingsVersion++;
+	}
+
+	// Drops the cached field, e.g. after the engine switched backends
+	public void invalidateFieldGrid() {
+		fieldGrid = null;
+		viewGrid = null;
+	}
+
+	// Patches the cached grids after one charge changed from (oldX, oldY,
+	// oldQ) to (newX, newY, newQ), as FieldGrid.applyDelta does; before is the
+	// engine's version just ahead of that change. Grids that were not current
+	// then, or were filled by an approximate backend, rebuild on next use.
+	public void applyDelta(long before, double oldX, double oldY, double oldQ, double newX, double newY,
+			double newQ, boolean existedBefore, boolean existsAfter) {
+		if (engine.backend() != FieldEngine.Backend.DIRECT) {
+			return;
+		}
+		if (fieldGrid != null && fieldGrid.describes(engine, before)) {
+			fieldGrid.applyDelta(engine, oldX, oldY, oldQ, newX, newY, newQ, existedBefore, existsAfter);
+		}
+		if (viewGrid != null && viewGrid.describes(engine, before)) {
+			viewGrid.applyDelta(engine, oldX, oldY, oldQ, newX, newY, newQ, existedBefore, existsAfter);
+		}
+	}
+
+	public FieldGrid ensureFieldGrid(int width, int height) {
+		if (fieldGrid == null || !fieldGrid.isValidFor(engine, width, height)) {
+			if (fieldGrid == null || fieldGrid.width != width || fieldGrid.height != height) {
+				fieldGrid = new FieldGrid(fieldGridCellSize, width, height);
+			}
+			fieldGrid.rebuild(engine);
+		}
+		return fieldGrid;
+	}
+
+	// Everything but particles and overlays, back to front. lines may be null;
+	// selected is the index of the highlighted charge or -1. Each layer drawn
+	// is timed into Metrics.
+	public void paint(Graphics2D g2d, int width, int height, FieldLines lines, int selected) {
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		long t = System.nanoTime();
+
+		// Draw heatmap background if enabled
+		if (heatmapMode != null) {
+			drawHeatmap(g2d, width, height);
+			t = Metrics.lap(Metrics.Phase.HEATMAP, t);
+		}
+
+		// Draw grid if enabled
+		if (showGrid) {
+			drawGrid(g2d, width, height);
+			t = Metrics.lap(Metrics.Phase.GRID, t);
+		}
+
+		// Draw equipotential contours if enabled
+		if (showEquipotentials) {
+			drawEquipotentials(g2d, width, height);
+			t = Metrics.lap(Metrics.Phase.EQUIPOTENTIALS, t);
+		}
+
+		// Draw electric field vectors if enabled
+		if (showVectors) {
+			drawFieldVectors(g2d, width, height);
+			t = Metrics.lap(Metrics.Phase.VECTORS, t);
+		}
+
+		// Draw field lines
+		if (lines != null) {
+			drawFieldLines(g2d, lines);
+			t = Metrics.lap(Metrics.Phase.FIELD_LINES, t);
+		}
+
+		drawDistributions(g2d, -1);
+		drawCharges(g2d, selected);
+		Metrics.lap(Metrics.Phase.CHARGES, t);
+	}
+
+	private void drawGrid(Graphics2D g2d, int width, int height) {
+		g2d.setColor(GRID_COLOR);
+
+		// Draw horizontal grid lines
+		for (int y = 0; y < height; y += GRID_SPACING) {
+			g2d.drawLine(0, y, width, y);
+		}
+
+		// Draw vertical grid lines
+		for (int x = 0; x < width; x += GRID_SPACING) {
+			g2d.drawLine(x, 0, x, height);
+		}
+	}
+
+	// Samples the field on a lattice, then strokes the arrows one path per
+	// palette colour instead of three shapes and a colour change per arrow
+	private void drawFieldVectors(Graphics2D g2d, int width, int height) {
+		int spacing = preview ? PREVIEW_VECTOR_SPACING : VECTOR_SPACING;
+		ensureArrowCapacity(Math.max(0, (width - 1) / spacing) * Math.max(0, (height - 1) / spacing));
+		int n = 0;
+		int exact = 0;
+		for (int x = spacing; x < width; x += spacing) {
+			for (int y = spacing; y < height; y += spacing) {
+				// Skip drawing vectors too close to charges
+				if (!nearSource(x, y, NEAR_CHARGE_PIXELS)) {
+					if (sampleField(x, y, width, height, fieldOut)) {
+						exact++;
+					}
+					if (addArrow(n, x, y, fieldOut[0], fieldOut[1])) {
+						n++;
+					}
+				}
+			}
+		}
+		Metrics.countFieldEvaluations(exact);
+		strokeArrows(g2d, n);
+	}
+
+	// True within radius of a charge or a distribution
+	private boolean nearSource(double x, double y, double radius) {
+		return engine.nearestWithin(x, y, radius) >= 0 || engine.distributions().nearestWithin(x, y, radius) >= 0;
+	}
+
+	private void ensureArrowCapacity(int capacity) {
+		if (arrowColors.length < capacity) {
+			arrowPoints = new float[capacity * 8];
+			arrowColors = new int[capacity];
+			arrowOrder = new int[capacity];
+		}
+	}
+
+	// Draws the first n stored arrows
+	private void strokeArrows(Graphics2D g2d, int n) {
+		// Counting sort by colour; afterwards colorEnd[c] is where colour c's
+		// run in arrowOrder ends
+		Arrays.fill(colorEnd, 0);
+		for (int i = 0; i < n; i++) {
+			colorEnd[arrowColors[i] + 1]++;
+		}
+		for (int c = 0; c < ARROW_PALETTE.length; c++) {
+			colorEnd[c + 1] += colorEnd[c];
+		}
+		for (int i = 0; i < n; i++) {
+			arrowOrder[colorEnd[arrowColors[i]]++] = i;
+		}
+
+		g2d.setStroke(THIN_STROKE);
+		int start = 0;
+		for (int c = 0; c < ARROW_PALETTE.length; c++) {
+			int end = colorEnd[c];
+			if (end == start) {
+				continue;
+			}
+			path.reset();
+			for (int k = start; k < end; k++) {
+				int p = arrowOrder[k] * 8;
+				path.moveTo(arrowPoints[p], arrowPoints[p + 1]);
+				path.lineTo(arrowPoints[p + 2], arrowPoints[p + 3]);
+				path.moveTo(arrowPoints[p + 4], arrowPoints[p + 5]);
+				path.lineTo(arrowPoints[p + 2], arrowPoints[p + 3]);
+				path.lineTo(arrowPoints[p + 6], arrowPoints[p + 7]);
+			}
+			g2d.setColor(ARROW_PALETTE[c]);
+			g2d.draw(path);
+			start = end;
+		}
+	}
+
+	// Stores the arrow for field (ex, ey) at (x, y) in slot n, or returns
+	// false when the field is too weak to draw
+	private boolean addArrow(int n, double x, double y, double ex, double ey) {
+		double magnitude = Math.hypot(ex, ey);
+		if (magnitude < 1e-12) {
+			return false; // Don't draw very small vectors
+		}
+
+		// Scale magnitude logarithmically for better visualization
+		double logScale = Math.log10(magnitude * ARROW_SCALE) * 5;
+		if (logScale < 5)
+			logScale = 5;
+		if (logScale > 25)
+			logScale = 25;
+
+		double ux = ex / magnitude;
+		double uy = ey / magnitude;
+		double endX = x + ux * logScale;
+		double endY = y + uy * logScale;
+		int p = n * 8;
+		arrowPoints[p] = (float) x;
+		arrowPoints[p + 1] = (float) y;
+		arrowPoints[p + 2] = (float) endX;
+		arrowPoints[p + 3] = (float) endY;
+		double arrowLength = 5;
+		arrowPoints[p + 4] = (float) (endX - arrowLength * (ux * BARB_COS + uy * BARB_SIN));
+		arrowPoints[p + 5] = (float) (endY - arrowLength * (uy * BARB_COS - ux * BARB_SIN));
+		arrowPoints[p + 6] = (float) (endX - arrowLength * (ux * BARB_COS - uy * BARB_SIN));
+		arrowPoints[p + 7] = (float) (endY - arrowLength * (uy * BARB_COS + ux * BARB_SIN));
+
+		// Determine color based on field strength
+		arrowColors[n] = (int) Math.min(255, Math.max(0, (magnitude * ARROW_SCALE) * 100));
+		return true;
+	}
+
+	// Field for drawing: interpolated from the cached grid, which is rebuilt
+	// only when the charges or the canvas size change, and evaluated exactly
+	// near charges and outside the grid. True when it was evaluated exactly.
+	public boolean sampleField(double x, double y, int width, int height, double[] out) {
+		if (ensureFieldGrid(width, height).sampleField(x, y, out)) {
+			return false;
+		}
+		engine.field(x, y, out);
+		return true;
+	}
+
+	private void drawHeatmap(Graphics2D g2d, int width, int height) {
+		int stride = preview ? Math.max(heatmapStride, PREVIEW_HEATMAP_STRIDE) : heatmapStride;
+		BufferedImage image = heatmap.render(engine, heatmapMode, width, height, stride);
+		g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2d.drawImage(image, 0, 0, image.getWidth() * stride, image.getHeight() * stride, null);
+	}
+
+	// Strokes equipotential contours, positive levels red, negative blue. The
+	// contours come from the cached field grid and are only extracted again
+	// once the grid or the levels change.
+	private void drawEquipotentials(Graphics2D g2d, int width, int height) {
+		FieldGrid grid = ensureFieldGrid(width, height);
+		if (equipotentials == null || !equipotentials.matches(grid, contourLevels)) {
+			equipotentials = Equipotentials.extract(grid, contourLevels);
+		}
+		strokeContours(g2d, equipotentials, null);
+	}
+
+	// Contours through toPixels, or as they are when it is null
+	private void strokeContours(Graphics2D g2d, Equipotentials contours, AffineTransform toPixels) {
+		g2d.setStroke(THIN_STROKE);
+		for (int l = 0; l < contours.levelCount(); l++) {
+			double level = contours.level(l);
+			g2d.setColor(level > 0 ? POSITIVE_CONTOUR_COLOR : level < 0 ? NEGATIVE_CONTOUR_COLOR : Color.GRAY);
+			path.reset();
+			contours.appendTo(l, path);
+			if (toPixels != null) {
+				path.transform(toPixels);
+			}
+			g2d.draw(path);
+		}
+	}
+
+	// Traced field lines, placed through the viewport
+	public void drawFieldLines(Graphics2D g2d, FieldLines lines) {
+		appendFieldLines(lines);
+		if (!viewport.isIdentity()) {
+			setViewTransform();
+			path.transform(transform);
+		}
+		g2d.setColor(FIELD_LINE_COLOR);
+		g2d.setStroke(FIELD_LINE_STROKE);
+		g2d.draw(path);
+	}
+
+	// Replaces path with every line of at least two points
+	private void appendFieldLines(FieldLines lines) {
+		path.reset();
+		for (int i = 0; i < lines.lineCount(); i++) {
+			int points = lines.pointCount(i);
+			if (points < 2) {
+				continue;
+			}
+			path.moveTo(lines.x(i, 0), lines.y(i, 0));
+			for (int p = 1; p < points; p++) {
+				path.lineTo(lines.x(i, p), lines.y(i, p));
+			}
+		}
+	}
+
+	// Grid over the tiles a width x height view shows at its zoom, with
+	// fieldGridCellSize pixels between nodes. It is kept, and patched by
+	// applyDelta, while the view stays on the same tiles at the same zoom, and
+	// rebuilt once it moves to others.
+	private FieldGrid ensureViewGrid(int width, int height) {
+		int fromX = Math.floorDiv(viewport.panX(), TileCache.TILE_SIZE) * TileCache.TILE_SIZE;
+		int fromY = Math.floorDiv(viewport.panY(), TileCache.TILE_SIZE) * TileCache.TILE_SIZE;
+		int toX = (Math.floorDiv(viewport.panX() + width - 1, TileCache.TILE_SIZE) + 1) * TileCache.TILE_SIZE;
+		int toY = (Math.floorDiv(viewport.panY() + height - 1, TileCache.TILE_SIZE) + 1) * TileCache.TILE_SIZE;
+		double zoom = viewport.zoom();
+		double cellSize = fieldGridCellSize / zoom;
+		double x0 = fromX / zoom;
+		double y0 = fromY / zoom;
+		double gridWidth = (toX - fromX) / zoom;
+		double gridHeight = (toY - fromY) / zoom;
+		if (viewGrid == null || viewGrid.cellSize != cellSize || viewGrid.x0 != x0 || viewGrid.y0 != y0
+				|| viewGrid.width != gridWidth || viewGrid.height != gridHeight) {
+			viewGrid = new FieldGrid(cellSize, x0, y0, gridWidth, gridHeight);
+		}
+		if (!viewGrid.describes(engine, engine.version())) {
+			viewGrid.rebuild(engine);
+		}
+		return viewGrid;
+	}
+
+	// What every tile of the current scene needs, for a width x height view:
+	// see TileLayers. Patches or rebuilds the view grid first, if any field
+	// layer is shown.
+	public TileLayers tileLayers(int width, int height) {
+		FieldGrid grid = null;
+		if (heatmapMode != null || showEquipotentials || showVectors) {
+			grid = ensureViewGrid(width, height).copy();
+		}
+		return new TileLayers(copyFor(engine.snapshot()), grid, viewport.zoom(), viewport.worldX(0),
+				viewport.worldY(0), width, height);
+	}
+
+	// The state the tiles of one scene version share, taken on the EDT: a
+	// snapshot of the engine with the display settings, and a copy of the view
+	// grid. The heatmap's colour scale and the contours come from that grid
+	// and are worked out by the first tile that needs them, on its pool
+	// thread, then reused by the rest.
+	public static final class TileLayers {
+		private final SceneRenderer settings;
+		private final FieldGrid grid; // null when no layer samples the field
+		private final double zoom; // The grid's
+		private final double viewX, viewY; // World point at the view's top-left
+		private final int viewWidth, viewHeight;
+		private boolean scaled;
+		private double heatmapScale;
+		private Equipotentials contours;
+
+		TileLayers(SceneRenderer settings, FieldGrid grid, double zoom, double viewX, double viewY, int viewWidth,
+				int viewHeight) {
+			this.settings = settings;
+			this.grid = grid;
+			this.zoom = zoom;
+			this.viewX = viewX;
+			this.viewY = viewY;
+			this.viewWidth = viewWidth;
+			this.viewHeight = viewHeight;
+		}
+
+		// Draws one tile, see paintTile; safe to call on several threads
+		public void paintTile(Graphics2D g2d, double zoom, int originX, int originY, int size) {
+			settings.copyFor(settings.engine).paintTile(g2d, zoom, originX, originY, size, this);
+		}
+
+		// The view grid when it covers the tile at (originX, originY) of the
+		// plane scaled by zoom, else null
+		FieldGrid gridFor(double zoom, int originX, int originY, int size) {
+			if (grid == null || zoom != this.zoom) {
+				return null;
+			}
+			boolean covers = originX >= Math.round(grid.x0 * zoom) && originY >= Math.round(grid.y0 * zoom)
+					&& originX + size <= Math.round((grid.x0 + grid.width) * zoom)
+					&& originY + size <= Math.round((grid.y0 + grid.height) * zoom);
+			return covers ? grid : null;
+		}
+
+		// Colour scale that makes the heatmap tiles of the view agree, NaN when
+		// the heatmap is off
+		synchronized double heatmapScale() {
+			if (!scaled) {
+				heatmapScale = settings.heatmapMode == null ? Double.NaN
+						: Heatmap.colourScale(settings.engine, grid, settings.heatmapMode, viewX, viewY, 1 / zoom,
+								viewWidth, viewHeight);
+				scaled = true;
+			}
+			return heatmapScale;
+		}
+
+		// Contours of the whole view grid
+		synchronized Equipotentials contours() {
+			if (contours == null) {
+				contours = Equipotentials.extract(grid, settings.contourLevels);
+			}
+			return contours;
+		}
+	}
+
+	// One tile of a panned and zoomed view: heatmap, grid, equipotentials and
+	// field vectors for the size x size pixels whose top-left is pixel
+	// (originX, originY) of the plane scaled by zoom, i.e. world
+	// x = (originX + px) / zoom. Stroke widths, arrows and the vector spacing
+	// stay in pixels at any zoom, and the vector lattice is laid over the
+	// whole plane so neighbouring tiles line up. The field is interpolated
+	// from the view grid in layers, and evaluated exactly only near charges;
+	// a tile the view grid does not cover, because the view moved since the
+	// scene last changed, gets a grid of its own. Field lines and charges are
+	// left to the caller.
+	void paintTile(Graphics2D g2d, double zoom, int originX, int originY, int size, TileLayers layers) {
+		transform.setTransform(zoom, 0, 0, zoom, -originX, -originY);
+		double x0 = originX / zoom;
+		double y0 = originY / zoom;
+		FieldGrid grid = layers.gridFor(zoom, originX, originY, size);
+		Equipotentials contours = null;
+		if (grid == null && (heatmapMode != null || showEquipotentials || showVectors)) {
+			// With nodes on the tile's edges, so contours meet those of the
+			// neighbours
+			int cells = Math.max(1, (int) Math.ceil(size / fieldGridCellSize));
+			grid = new FieldGrid(size / zoom / cells, x0, y0, size / zoom, size / zoom);
+			grid.rebuild(engine);
+			if (showEquipotentials) {
+				contours = Equipotentials.extract(grid, contourLevels);
+			}
+		}
+		long t = System.nanoTime();
+
+		if (heatmapMode != null) {
+			int stride = preview ? Math.max(heatmapStride, PREVIEW_HEATMAP_STRIDE) : heatmapStride;
+			BufferedImage image = heatmap.render(engine, grid, heatmapMode, x0, y0, 1 / zoom, size, size, stride,
+					layers.heatmapScale());
+			g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g2d.drawImage(image, 0, 0, image.getWidth() * stride, image.getHeight() * stride, null);
+			t = Metrics.lap(Metrics.Phase.HEATMAP, t);
+		}
+
+		if (showGrid) {
+			drawTileGrid(g2d, zoom, originX, originY, size);
+			t = Metrics.lap(Metrics.Phase.GRID, t);
+		}
+
+		if (showEquipotentials) {
+			strokeContours(g2d, contours != null ? contours : layers.contours(), transform);
+			t = Metrics.lap(Metrics.Phase.EQUIPOTENTIALS, t);
+		}
+
+		if (showVectors) {
+			drawTileVectors(g2d, zoom, originX, originY, size, grid);
+			Metrics.lap(Metrics.Phase.VECTORS, t);
+		}
+	}
+
+	// Grid lines every GRID_SPACING world units, doubled as often as needed
+	// to keep them MIN_GRID_PIXELS apart
+	private void drawTileGrid(Graphics2D g2d, double zoom, int originX, int originY, int size) {
+		double spacing = GRID_SPACING * zoom;
+		while (spacing < MIN_GRID_PIXELS) {
+			spacing *= 2;
+		}
+		g2d.setColor(GRID_COLOR);
+		for (long k = (long) Math.ceil(originY / spacing); k * spacing < originY + size; k++) {
+			int y = (int) Math.round(k * spacing) - originY;
+			g2d.drawLine(0, y, size, y);
+		}
+		for (long k = (long) Math.ceil(originX / spacing); k * spacing < originX + size; k++) {
+			int x = (int) Math.round(k * spacing) - originX;
+			g2d.drawLine(x, 0, x, size);
+		}
+	}
+
+	// Field vectors on the lattice of the zoomed plane, including those just
+	// outside the tile whose arrows reach into it. The field comes from grid,
+	// or is evaluated exactly where grid cannot be trusted or does not reach.
+	private void drawTileVectors(Graphics2D g2d, double zoom, int originX, int originY, int size, FieldGrid grid) {
+		int spacing = preview ? PREVIEW_VECTOR_SPACING : VECTOR_SPACING;
+		int fromCol = Math.floorDiv(originX - ARROW_REACH, spacing) + 1;
+		int toCol = Math.floorDiv(originX + size + ARROW_REACH, spacing);
+		int fromRow = Math.floorDiv(originY - ARROW_REACH, spacing) + 1;
+		int toRow = Math.floorDiv(originY + size + ARROW_REACH, spacing);
+		ensureArrowCapacity(Math.max(0, toCol - fromCol + 1) * Math.max(0, toRow - fromRow + 1));
+		int n = 0;
+		int exact = 0;
+		for (int col = fromCol; col <= toCol; col++) {
+			double x = (double) col * spacing / zoom;
+			for (int row = fromRow; row <= toRow; row++) {
+				double y = (double) row * spacing / zoom;
+				if (!nearSource(x, y, NEAR_CHARGE_PIXELS / zoom)) {
+					if (!grid.sampleField(x, y, fieldOut)) {
+						engine.field(x, y, fieldOut);
+						exact++;
+					}
+					if (addArrow(n, col * spacing - originX, row * spacing - originY, fieldOut[0], fieldOut[1])) {
+						n++;
+					}
+				}
+			}
+		}
+		Metrics.countFieldEvaluations(exact);
+		strokeArrows(g2d, n);
+	}
+
+	// Starts a batch of particles and trajectories, see endParticles
+	public void beginParticles() {
+		trajectoryBatch.reset();
+		positiveParticles.reset();
+		negativeParticles.reset();
+		neutralParticles.reset();
+	}
+
+	public void addTrajectory(TrajectoryBuffer trajectory) {
+		if (trajectory.size() > 1) {
+			trajectory.appendTo(trajectoryBatch);
+		}
+	}
+
+	// A test particle as a small disc, lighter than a charge
+	public void addParticle(double x, double y, double charge) {
+		appendCircle(charge > 0 ? positiveParticles : charge < 0 ? negativeParticles : neutralParticles,
+				viewport.screenX(x), viewport.screenY(y), PARTICLE_RADIUS);
+	}
+
+	// Draws the batch, all trajectories under all particles
+	public void endParticles(Graphics2D g2d) {
+		if (!viewport.isIdentity()) {
+			setViewTransform();
+			trajectoryBatch.transform(transform);
+		}
+		g2d.setColor(TRAJECTORY_COLOR);
+		g2d.setStroke(TRAJECTORY_STROKE);
+		g2d.draw(trajectoryBatch);
+		g2d.setColor(POSITIVE_PARTICLE_COLOR);
+		g2d.fill(positiveParticles);
+		g2d.setColor(NEGATIVE_PARTICLE_COLOR);
+		g2d.fill(negativeParticles);
+		g2d.setColor(NEUTRAL_PARTICLE_COLOR);
+		g2d.fill(neutralParticles);
+	}
+
+	// A circle as four cubic arcs, as Ellipse2D would add it but without the
+	// iterator
+	private static void appendCircle(Path2D.Float path, double x, double y, double r) {
+		double k = KAPPA * r;
+		path.moveTo(x + r, y);
+		path.curveTo(x + r, y + k, x + k, y + r, x, y + r);
+		path.curveTo(x - k, y + r, x - r, y + k, x - r, y);
+		path.curveTo(x - r, y - k, x - k, y - r, x, y - r);
+		path.curveTo(x + k, y - r, x + r, y - k, x + r, y);
+		path.closePath();
+	}
+
+	private void setViewTransform() {
+		transform.setTransform(viewport.zoom(), 0, 0, viewport.zoom(), -viewport.panX(), -viewport.panY());
+	}
+
+	// Net force (fx, fy) on the charge at world point (x, y) as a green arrow
+	// of a fixed scale in pixels
+	public void drawForce(Graphics2D g2d, double worldX, double worldY, double fx, double fy) {
+		double scaleFactor = 5e9; // Adjust scale factor as needed to visualize
+									// force vector
+		double x = viewport.screenX(worldX);
+		double y = viewport.screenY(worldY);
+		double endX = x + fx * scaleFactor;
+		double endY = y + fy * scaleFactor;
+		double magnitude = Math.hypot(fx, fy);
+		double ux = magnitude > 0 ? fx / magnitude : 1; // Zero force points along x, as atan2(0, 0) did
+		double uy = magnitude > 0 ? fy / magnitude : 0;
+		double arrowLength = 8;
+		path.reset();
+		path.moveTo(x, y);
+		path.lineTo(endX, endY);
+		path.moveTo(endX - arrowLength * (ux * BARB_COS + uy * BARB_SIN),
+				endY - arrowLength * (uy * BARB_COS - ux * BARB_SIN));
+		path.lineTo(endX, endY);
+		path.lineTo(endX - arrowLength * (ux * BARB_COS - uy * BARB_SIN),
+				endY - arrowLength * (uy * BARB_COS + ux * BARB_SIN));
+		g2d.setColor(FORCE_COLOR);
+		g2d.setStroke(FORCE_STROKE);
+		g2d.draw(path);
+	}
+
+	// Every charge distribution, the selected one (index, or -1) under a
+	// highlight. Lines and arcs go into one path per sign, sheets into
+	// another, so there are four shapes to draw however many there are.
+	public void drawDistributions(Graphics2D g2d, int selected) {
+		ChargeDistributions distributions = engine.distributions();
+		int n = distributions.size();
+		if (n == 0) {
+			return;
+		}
+		positiveCharges.reset();
+		negativeCharges.reset();
+		positiveSheets.reset();
+		negativeSheets.reset();
+		for (int i = 0; i < n; i++) {
+			boolean positive = distributions.charge(i) > 0;
+			if (distributions.kind(i) == ChargeDistributions.Kind.SHEET) {
+				appendDistribution(positive ? positiveSheets : negativeSheets, distributions, i);
+			} else {
+				appendDistribution(positive ? positiveCharges : negativeCharges, distributions, i);
+			}
+		}
+		if (selected >= 0 && selected < n) {
+			path.reset();
+			appendDistribution(path, distributions, selected);
+			g2d.setColor(Color.YELLOW);
+			g2d.setStroke(DISTRIBUTION_HIGHLIGHT_STROKE);
+			g2d.draw(path);
+		}
+		g2d.setColor(POSITIVE_SHEET_COLOR);
+		g2d.fill(positiveSheets);
+		g2d.setColor(NEGATIVE_SHEET_COLOR);
+		g2d.fill(negativeSheets);
+		g2d.setStroke(THIN_STROKE);
+		g2d.setColor(POSITIVE_CHARGE_COLOR);
+		g2d.draw(positiveSheets);
+		g2d.setColor(NEGATIVE_CHARGE_COLOR);
+		g2d.draw(negativeSheets);
+		g2d.setStroke(DISTRIBUTION_STROKE);
+		g2d.setColor(POSITIVE_CHARGE_COLOR);
+		g2d.draw(positiveCharges);
+		g2d.setColor(NEGATIVE_CHARGE_COLOR);
+		g2d.draw(negativeCharges);
+		g2d.setStroke(THIN_STROKE);
+	}
+
+	// Outline of distribution i in view pixels
+	private void appendDistribution(Path2D.Float path, ChargeDistributions distributions, int i) {
+		double p0 = distributions.param(i, 0), p1 = distributions.param(i, 1), p2 = distributions.param(i, 2);
+		double p3 = distributions.param(i, 3), p4 = distributions.param(i, 4);
+		switch (distributions.kind(i)) {
+		case SEGMENT:
+			path.moveTo(viewport.screenX(p0), viewport.screenY(p1));
+			path.lineTo(viewport.screenX(p2), viewport.screenY(p3));
+			break;
+		case ARC:
+			int steps = (int) Math.ceil(Math.abs(p4) / ARC_STEP);
+			path.moveTo(viewport.screenX(p0 + p2 * Math.cos(p3)), viewport.screenY(p1 + p2 * Math.sin(p3)));
+			for (int k = 1; k <= steps; k++) {
+				double angle = p3 + p4 * k / steps;
+				path.lineTo(viewport.screenX(p0 + p2 * Math.cos(angle)), viewport.screenY(p1 + p2 * Math.sin(angle)));
+			}
+			if (Math.abs(p4) >= 2 * Math.PI) {
+				path.closePath();
+			}
+			break;
+		default:
+			double cos = Math.cos(p4), sin = Math.sin(p4);
+			for (int corner = 0; corner < 4; corner++) {
+				double lx = (corner == 1 || corner == 2 ? 0.5 : -0.5) * p2;
+				double ly = (corner >= 2 ? 0.5 : -0.5) * p3;
+				double x = viewport.screenX(p0 + lx * cos - ly * sin);
+				double y = viewport.screenY(p1 + lx * sin + ly * cos);
+				if (corner == 0) {
+					path.moveTo(x, y);
+				} else {
+					path.lineTo(x, y);
+				}
+			}
+			path.closePath();
+			break;
+		}
+	}
+
+	// Every charge as a filled disc with its sign and value, the selected one
+	// (index, or -1) highlighted. Discs go first, one fill per sign, then the
+	// text. Charges keep their size in pixels at any zoom.
+	public void drawCharges(Graphics2D g2d, int selected) {
+		int n = engine.size();
+		int radius = CHARGE_RADIUS;
+		positiveCharges.reset();
+		negativeCharges.reset();
+		for (int i = 0; i < n; i++) {
+			appendCircle(engine.charge(i) > 0 ? positiveCharges : negativeCharges, viewport.screenX(engine.x(i)),
+					viewport.screenY(engine.y(i)), radius);
+		}
+		g2d.setColor(POSITIVE_CHARGE_COLOR);
+		g2d.fill(positiveCharges);
+		g2d.setColor(NEGATIVE_CHARGE_COLOR);
+		g2d.fill(negativeCharges);
+
+		if (selected >= 0 && selected < n) { // Highlight selected charge
+			double x = viewport.screenX(engine.x(selected));
+			double y = viewport.screenY(engine.y(selected));
+			g2d.setColor(Color.YELLOW);
+			g2d.setStroke(HIGHLIGHT_STROKE);
+			disc.setFrame(x - radius - 2, y - radius - 2, 2 * radius + 4, 2 * radius + 4);
+			g2d.draw(disc);
+			g2d.setStroke(THIN_STROKE);
+		}
+
+		if (labels.length < n) {
+			labels = Arrays.copyOf(labels, n);
+			labelValues = Arrays.copyOf(labelValues, n);
+		}
+		FontMetrics fm = g2d.getFontMetrics();
+		int textHeight = fm.getHeight();
+		int plusWidth = fm.stringWidth("+");
+		int minusWidth = fm.stringWidth("-");
+		for (int i = 0; i < n; i++) {
+			double x = viewport.screenX(engine.x(i));
+			double y = viewport.screenY(engine.y(i));
+			double value = engine.charge(i);
+			if (labels[i] == null || labelValues[i] != value) {
+				labels[i] = labelFormat.format(value);
+				labelValues[i] = value;
+			}
+
+			g2d.setColor(Color.WHITE);
+			int textWidth = value > 0 ? plusWidth : minusWidth;
+			g2d.drawString(value > 0 ? "+" : "-", (float) (x - textWidth / 2), (float) (y + textHeight / 4));
+
+			// Draw charge value as text
+			g2d.setColor(Color.BLACK);
+			g2d.drawString(labels[i], (float) (x + radius + 2), (float) (y + radius));
+		}
+	}
+}
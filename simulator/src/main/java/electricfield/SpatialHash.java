@@ -0,0 +1,228 @@
+package electricfield;
+
+import java.util.Arrays;
+
+// Uniform-grid spatial hash over point positions, for "is anything within r
+// of here" questions (field line stopping, vector skipping, hit tests,
+// particle capture). Cells live in an open-addressing table keyed by packed
+// cell coordinates; the points of a cell form a linked list threaded through
+// primitive arrays, so queries never allocate.
+public class SpatialHash {
+	public static final double DEFAULT_CELL_SIZE = 32;
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private final double cellSize;
+	private double[] xs = new double[16], ys = new double[16]; // Point positions
+	private long[] cellOf = new long[16]; // Cell key of each point
+	private int[] next = new int[16]; // Next point in the same cell, -1 ends
+	private int count;
+
+	private long[] keys; // Table of cells, EMPTY where unused
+	private int[] heads; // First point of each cell, -1 when the cell emptied
+	private int used; // Occupied table slots, including emptied cells
+
+	public SpatialHash() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	public SpatialHash(double cellSize) {
+		if (cellSize <= 0) {
+			throw new IllegalArgumentException("cellSize must be > 0");
+		}
+		this.cellSize = cellSize;
+		keys = new long[64];
+		heads = new int[64];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	public int size() {
+		return count;
+	}
+
+	// Appends point count (indices match the caller's own arrays)
+	public void add(double x, double y) {
+		if (count == xs.length) {
+			int capacity = count * 2;
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			cellOf = Arrays.copyOf(cellOf, capacity);
+			next = Arrays.copyOf(next, capacity);
+		}
+		int i = count++;
+		xs[i] = x;
+		ys[i] = y;
+		link(i, key(x, y));
+	}
+
+	public void move(int i, double x, double y) {
+		long key = key(x, y);
+		xs[i] = x;
+		ys[i] = y;
+		if (key != cellOf[i]) {
+			unlink(i);
+			link(i, key);
+		}
+	}
+
+	// Replaces the contents with the first n points of xs/ys, e.g. after a
+	// removal shifted every later index down by one
+	public void rebuild(double[] px, double[] py, int n) {
+		count = 0;
+		used = 0;
+		Arrays.fill(keys, EMPTY);
+		if (n > xs.length) { // Size once for bulk loads instead of doubling
+			xs = new double[n];
+			ys = new double[n];
+			cellOf = new long[n];
+			next = new int[n];
+		}
+		for (int i = 0; i < n; i++) {
+			add(px[i], py[i]);
+		}
+	}
+
+	public void clear() {
+		rebuild(xs, ys, 0);
+	}
+
+	// Index of the point nearest to (x, y) within radius, or -1
+	public int nearestWithin(double x, double y, double radius) {
+		int minCol = (int) Math.floor((x - radius) / cellSize);
+		int maxCol = (int) Math.floor((x + radius) / cellSize);
+		int minRow = (int) Math.floor((y - radius) / cellSize);
+		int maxRow = (int) Math.floor((y + radius) / cellSize);
+		double best = radius * radius;
+		int nearest = -1;
+		for (int row = minRow; row <= maxRow; row++) {
+			for (int col = minCol; col <= maxCol; col++) {
+				int slot = find(pack(col, row));
+				if (slot < 0) {
+					continue;
+				}
+				for (int i = heads[slot]; i >= 0; i = next[i]) {
+					double dx = xs[i] - x;
+					double dy = ys[i] - y;
+					double d = dx * dx + dy * dy;
+					if (d <= best) {
+						best = d;
+						nearest = i;
+					}
+				}
+			}
+		}
+		return nearest;
+	}
+
+	public boolean anyWithin(double x, double y, double radius) {
+		return nearestWithin(x, y, radius) >= 0;
+	}
+
+	public SpatialHash copy() {
+		SpatialHash copy = new SpatialHash(cellSize);
+		copy.xs = Arrays.copyOf(xs, Math.max(1, count));
+		copy.ys = Arrays.copyOf(ys, Math.max(1, count));
+		copy.cellOf = Arrays.copyOf(cellOf, Math.max(1, count));
+		copy.next = Arrays.copyOf(next, Math.max(1, count));
+		copy.count = count;
+		copy.keys = keys.clone();
+		copy.heads = heads.clone();
+		copy.used = used;
+		return copy;
+	}
+
+	private long key(double x, double y) {
+		return pack((int) Math.floor(x / cellSize), (int) Math.floor(y / cellSize));
+	}
+
+	private static long pack(int col, int row) {
+		return ((long) col << 32) | (row & 0xffffffffL);
+	}
+
+	private void link(int i, long key) {
+		int slot = find(key);
+		if (slot < 0) {
+			slot = insertKey(key);
+		}
+		cellOf[i] = key;
+		next[i] = heads[slot];
+		heads[slot] = i;
+	}
+
+	private void unlink(int i) {
+		int slot = find(cellOf[i]);
+		if (heads[slot] == i) {
+			heads[slot] = next[i];
+			return;
+		}
+		for (int p = heads[slot]; p >= 0; p = next[p]) {
+			if (next[p] == i) {
+				next[p] = next[i];
+				return;
+			}
+		}
+	}
+
+	private int find(long key) {
+		int mask = keys.length - 1;
+		for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+			if (keys[slot] == key) {
+				return slot;
+			}
+			if (keys[slot] == EMPTY) {
+				return -1;
+			}
+		}
+	}
+
+	private int insertKey(long key) {
+		if (2 * (used + 1) > keys.length) {
+			rehash();
+		}
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		heads[slot] = -1;
+		used++;
+		return slot;
+	}
+
+	// Grows the table if needed and drops cells that have emptied out
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldHeads = heads;
+		int live = 0;
+		for (int s = 0; s < oldKeys.length; s++) {
+			if (oldKeys[s] != EMPTY && oldHeads[s] >= 0) {
+				live++;
+			}
+		}
+		int capacity = 64;
+		while (capacity < 4 * (live + 1)) {
+			capacity *= 2;
+		}
+		keys = new long[capacity];
+		heads = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		used = 0;
+		int mask = capacity - 1;
+		for (int s = 0; s < oldKeys.length; s++) {
+			if (oldKeys[s] != EMPTY && oldHeads[s] >= 0) {
+				int slot = hash(oldKeys[s]) & mask;
+				while (keys[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[s];
+				heads[slot] = oldHeads[s];
+				used++;
+			}
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,282 @@
+package electricfield;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+// Memory-bounded LRU cache of rendered view tiles, for a view that pans and
+// zooms over an unbounded plane. The plane, scaled by the zoom, is cut into
+// TILE_SIZE squares; a tile is keyed by zoom level, column and row, and
+// stamped with the version of the scene it shows. paint composes a viewport
+// from the tiles: current ones are drawn as they are, while missing or
+// outdated ones are queued on a fork-join pool, where they render in
+// parallel. Until a tile lands, its outdated image stands in, or failing
+// that the tiles of the previously shown level scaled to fit. So panning
+// only renders the tiles that scroll into view, and an edit re-renders the
+// view without it ever going blank.
+//
+// Each position keeps one tile, so a newer version replaces the older image
+// rather than sitting next to it. Once the images take more than maxBytes
+// the least recently drawn tiles are evicted; their images are recycled for
+// tiles rendered later. Queued tiles whose version or level has been
+// overtaken by the time a worker picks them up are dropped unrendered.
+public class TileCache {
+	public static final int TILE_SIZE = 256; // Pixels per side
+	public static final long DEFAULT_MAX_BYTES = 64L << 20;
+	private static final long TILE_BYTES = 4L * TILE_SIZE * TILE_SIZE; // TYPE_INT_RGB
+	private static final int MAX_SPARES = 8; // Recycled images kept for reuse
+
+	// Draws the plane scaled by zoom into a size x size tile whose top-left
+	// pixel is (originX, originY) of the zoomed plane. Called on pool
+	// threads, several tiles at once.
+	public interface TilePainter {
+		void paint(Graphics2D g2d, double zoom, int originX, int originY, int size);
+	}
+
+	private static final class Key {
+		int level, col, row;
+
+		Key set(int level, int col, int row) {
+			this.level = level;
+			this.col = col;
+			this.row = row;
+			return this;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return level == k.level && col == k.col && row == k.row;
+		}
+
+		@Override
+		public int hashCode() {
+			return (level * 31 + col) * 1000003 + row;
+		}
+	}
+
+	private static final class Tile {
+		final Key key;
+		BufferedImage image; // null until first rendered
+		long version = -1; // Version image shows
+		long queued = -1; // Version being rendered, -1 if none
+
+		Tile(Key key) {
+			this.key = key;
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private final LinkedHashMap<Key, Tile> tiles = new LinkedHashMap<>(64, 0.75f, true); // Access order
+	private final ArrayDeque<BufferedImage> spares = new ArrayDeque<>();
+	private final Key probe = new Key(); // Lookups without allocating a key
+	private long maxBytes;
+	private long bytes; // Held by tile images
+	private volatile long latestVersion = -1;
+	private volatile int latestLevel;
+	private int fallbackLevel; // Last level drawn, scaled up while the current one renders
+	private long rendered, hits, misses;
+
+	public TileCache() {
+		this(ForkJoinPool.commonPool(), DEFAULT_MAX_BYTES);
+	}
+
+	public TileCache(ForkJoinPool pool, long maxBytes) {
+		this.pool = pool;
+		setMaxBytes(maxBytes);
+	}
+
+	public synchronized void setMaxBytes(long maxBytes) {
+		if (maxBytes < TILE_BYTES) {
+			throw new IllegalArgumentException("maxBytes must hold at least one tile");
+		}
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	public synchronized long maxBytes() {
+		return maxBytes;
+	}
+
+	// Bytes held by cached tile images
+	public synchronized long bytes() {
+		return bytes;
+	}
+
+	public synchronized int size() {
+		return tiles.size();
+	}
+
+	// Tiles rendered so far
+	public synchronized long rendered() {
+		return rendered;
+	}
+
+	// Tiles paint found current, and those it had to queue
+	public synchronized long hits() {
+		return hits;
+	}
+
+	public synchronized long misses() {
+		return misses;
+	}
+
+	public synchronized void clear() {
+		tiles.clear();
+		spares.clear();
+		bytes = 0;
+	}
+
+	// Draws the width x height viewport from the cache and queues every tile
+	// in it that is missing or older than version; painter renders them and
+	// onTileReady runs on the pool thread after each one lands. Returns true
+	// when every tile drawn was current.
+	public synchronized boolean paint(Graphics2D g2d, Viewport view, int width, int height, long version,
+			TilePainter painter, Runnable onTileReady) {
+		int level = view.level();
+		latestVersion = version;
+		latestLevel = level;
+		int firstCol = Math.floorDiv(view.panX(), TILE_SIZE);
+		int firstRow = Math.floorDiv(view.panY(), TILE_SIZE);
+		int lastCol = Math.floorDiv(view.panX() + width - 1, TILE_SIZE);
+		int lastRow = Math.floorDiv(view.panY() + height - 1, TILE_SIZE);
+		boolean complete = true;
+		g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int col = firstCol; col <= lastCol; col++) {
+				int x = col * TILE_SIZE - view.panX();
+				int y = row * TILE_SIZE - view.panY();
+				Tile tile = tiles.get(probe.set(level, col, row));
+				if (tile == null) {
+					tile = new Tile(new Key().set(level, col, row));
+					tiles.put(tile.key, tile);
+				}
+				if (tile.version == version) {
+					hits++;
+				} else {
+					complete = false;
+					if (tile.queued != version) {
+						misses++;
+						queue(tile, view.zoom(), version, painter, onTileReady);
+					}
+				}
+				if (tile.image != null) {
+					g2d.drawImage(tile.image, x, y, null);
+				} else if (fallbackLevel != level) {
+					drawFallback(g2d, view, col, row, x, y);
+				}
+			}
+		}
+		if (complete) {
+			fallbackLevel = level;
+		}
+		return complete;
+	}
+
+	// Fills the tile at (x, y) with the parts of fallbackLevel's tiles that
+	// cover it, scaled to the current zoom
+	private void drawFallback(Graphics2D g2d, Viewport view, int col, int row, int x, int y) {
+		double scale = Viewport.zoom(fallbackLevel) / view.zoom(); // Current plane to fallback plane
+		int fromCol = (int) Math.floor(col * TILE_SIZE * scale / TILE_SIZE);
+		int toCol = (int) Math.floor(((col + 1) * TILE_SIZE * scale - 1e-9) / TILE_SIZE);
+		int fromRow = (int) Math.floor(row * TILE_SIZE * scale / TILE_SIZE);
+		int toRow = (int) Math.floor(((row + 1) * TILE_SIZE * scale - 1e-9) / TILE_SIZE);
+		Shape clip = g2d.getClip();
+		g2d.clipRect(x, y, TILE_SIZE, TILE_SIZE);
+		for (int r = fromRow; r <= toRow; r++) {
+			for (int c = fromCol; c <= toCol; c++) {
+				Tile old = tiles.get(probe.set(fallbackLevel, c, r));
+				if (old != null && old.image != null) {
+					int x0 = (int) Math.floor(c * TILE_SIZE / scale) - view.panX();
+					int y0 = (int) Math.floor(r * TILE_SIZE / scale) - view.panY();
+					int x1 = (int) Math.ceil((c + 1) * TILE_SIZE / scale) - view.panX();
+					int y1 = (int) Math.ceil((r + 1) * TILE_SIZE / scale) - view.panY();
+					g2d.drawImage(old.image, x0, y0, x1 - x0, y1 - y0, null);
+				}
+			}
+		}
+		g2d.setClip(clip);
+	}
+
+	private void queue(Tile tile, double zoom, long version, TilePainter painter, Runnable onTileReady) {
+		tile.queued = version;
+		pool.execute(() -> render(tile, zoom, version, painter, onTileReady));
+	}
+
+	private void render(Tile tile, double zoom, long version, TilePainter painter, Runnable onTileReady) {
+		BufferedImage image;
+		synchronized (this) {
+			if (version != latestVersion || tile.key.level != latestLevel) {
+				if (tile.queued == version) {
+					tile.queued = -1; // Overtaken while waiting
+				}
+				return;
+			}
+			image = spares.poll();
+		}
+		if (image == null) {
+			image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+		}
+		Graphics2D g2d = image.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		painter.paint(g2d, zoom, tile.key.col * TILE_SIZE, tile.key.row * TILE_SIZE, TILE_SIZE);
+		g2d.dispose();
+		synchronized (this) {
+			rendered++;
+			if (tile.queued == version) {
+				tile.queued = -1;
+			}
+			if (version < tile.version) {
+				recycle(image); // A newer render got there first
+				return;
+			}
+			if (tile.image != null) {
+				recycle(tile.image);
+			} else {
+				bytes += TILE_BYTES;
+			}
+			tile.image = image;
+			tile.version = version;
+			if (tiles.get(tile.key) != tile) {
+				tiles.put(tile.key, tile); // Evicted while rendering
+			}
+			evict();
+		}
+		onTileReady.run();
+	}
+
+	// Drops the least recently drawn tiles until the images fit in maxBytes,
+	// and placeholders whose render was dropped before it began
+	private void evict() {
+		Iterator<Map.Entry<Key, Tile>> it = tiles.entrySet().iterator();
+		while (it.hasNext()) {
+			Tile tile = it.next().getValue();
+			if (tile.image == null) {
+				if (tile.queued == -1) {
+					it.remove();
+				}
+			} else if (bytes > maxBytes) {
+				it.remove();
+				recycle(tile.image);
+				tile.image = null;
+				tile.version = -1;
+				bytes -= TILE_BYTES;
+			}
+		}
+	}
+
+	private void recycle(BufferedImage image) {
+		if (spares.size() < MAX_SPARES) {
+			spares.push(image);
+		}
+	}
+}
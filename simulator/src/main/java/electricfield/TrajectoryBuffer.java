@@ -0,0 +1,118 @@
+package electricfield;
+
+import java.awt.geom.Path2D;
+
+// Fixed-capacity ring of trajectory points in primitive float arrays. Once
+// full the oldest points are overwritten. An incoming point that stays within
+// minDistance of the last fixed point, or within maxAngle of the direction the
+// current segment started out in, moves the segment's end instead of adding a
+// point, so straight stretches collapse to a single segment.
+public class TrajectoryBuffer {
+	public static final int DEFAULT_CAPACITY = 2000;
+	public static final double DEFAULT_MIN_DISTANCE = 2; // Pixels
+	public static final double DEFAULT_MAX_ANGLE = Math.toRadians(2);
+
+	private final float[] xs;
+	private final float[] ys;
+	private final double minDistanceSquared;
+	private final double cosMaxAngle;
+	private int start; // Index of the oldest point
+	private int size;
+	private double segmentX, segmentY; // Direction the last segment started in
+
+	public TrajectoryBuffer() {
+		this(DEFAULT_CAPACITY, DEFAULT_MIN_DISTANCE, DEFAULT_MAX_ANGLE);
+	}
+
+	public TrajectoryBuffer(int capacity) {
+		this(capacity, DEFAULT_MIN_DISTANCE, DEFAULT_MAX_ANGLE);
+	}
+
+	public TrajectoryBuffer(int capacity, double minDistance, double maxAngle) {
+		if (capacity < 2) {
+			throw new IllegalArgumentException("capacity must be >= 2");
+		}
+		xs = new float[capacity];
+		ys = new float[capacity];
+		minDistanceSquared = minDistance * minDistance;
+		cosMaxAngle = Math.cos(maxAngle);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return xs.length;
+	}
+
+	public void clear() {
+		start = 0;
+		size = 0;
+	}
+
+	public void add(float x, float y) {
+		if (size >= 2) {
+			int fixed = index(size - 2);
+			double dx = x - xs[fixed];
+			double dy = y - ys[fixed];
+			double distanceSquared = dx * dx + dy * dy;
+			double dot = segmentX * dx + segmentY * dy;
+			// Same direction when cos(turn) = dot / (|segment| |d|) >= cosMaxAngle
+			boolean straight = dot > 0 && dot * dot >= cosMaxAngle * cosMaxAngle
+					* (segmentX * segmentX + segmentY * segmentY) * distanceSquared;
+			if (distanceSquared < minDistanceSquared || straight) {
+				int tip = index(size - 1);
+				xs[tip] = x;
+				ys[tip] = y;
+				return;
+			}
+		}
+		if (size > 0) {
+			int tip = index(size - 1);
+			segmentX = x - xs[tip];
+			segmentY = y - ys[tip];
+		}
+		if (size < xs.length) {
+			int i = index(size++);
+			xs[i] = x;
+			ys[i] = y;
+		} else {
+			xs[start] = x; // Overwrite the oldest
+			ys[start] = y;
+			start = (start + 1) % xs.length;
+		}
+	}
+
+	public float x(int i) {
+		return xs[index(i)];
+	}
+
+	public float y(int i) {
+		return ys[index(i)];
+	}
+
+	private int index(int i) {
+		int j = start + i;
+		return j >= xs.length ? j - xs.length : j;
+	}
+
+	// Replaces the contents of path with this trajectory, oldest point first
+	public void toPath(Path2D.Float path) {
+		path.reset();
+		appendTo(path);
+	}
+
+	// Adds this trajectory to path as a separate subpath, so many can be
+	// stroked at once
+	public void appendTo(Path2D.Float path) {
+		if (size == 0) {
+			return;
+		}
+		path.moveTo(xs[start], ys[start]);
+		for (int i = 1; i < size; i++) {
+			int j = index(i);
+			path.lineTo(xs[j], ys[j]);
+		}
+	}
+}
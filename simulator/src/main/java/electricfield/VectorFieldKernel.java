@@ -0,0 +1,161 @@
+package electricfield;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// FieldKernel on the incubating Vector API, with lanes as wide as the host's
+// preferred vector. Single points run the charges through the lanes and
+// reduce the lane sums at the end; fieldAt instead puts a tile of points in
+// the lanes and broadcasts one charge at a time, so no reduction is needed
+// and few charges still fill the lanes. Leftover charges and points go
+// through scalar tails. Sums come out in a different order than the scalar
+// kernel's, so results agree to rounding, not bit for bit.
+//
+// Only ever loaded through FieldKernel, which checks that the
+// jdk.incubator.vector module is present first.
+final class VectorFieldKernel extends FieldKernel {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final double MIN = FieldEngine.MIN_DIST_SQUARED;
+
+	@Override
+	public int lanes() {
+		return SPECIES.length();
+	}
+
+	@Override
+	public String name() {
+		return "vector x" + SPECIES.length();
+	}
+
+	@Override
+	void field(double[] xs, double[] ys, double[] qs, int n, double x, double y, double[] out) {
+		DoubleVector px = DoubleVector.broadcast(SPECIES, x);
+		DoubleVector py = DoubleVector.broadcast(SPECIES, y);
+		DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+		DoubleVector sumX = DoubleVector.zero(SPECIES);
+		DoubleVector sumY = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector dx = px.sub(DoubleVector.fromArray(SPECIES, xs, i));
+			DoubleVector dy = py.sub(DoubleVector.fromArray(SPECIES, ys, i));
+			DoubleVector distSquared = dx.mul(dx).add(dy.mul(dy)).max(MIN);
+			DoubleVector invDist = one.div(distSquared.sqrt());
+			DoubleVector s = DoubleVector.fromArray(SPECIES, qs, i).mul(invDist.mul(invDist).mul(invDist));
+			sumX = dx.fma(s, sumX);
+			sumY = dy.fma(s, sumY);
+		}
+		double ex = sumX.reduceLanes(VectorOperators.ADD);
+		double ey = sumY.reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++) {
+			double dx = x - xs[i];
+			double dy = y - ys[i];
+			double distSquared = Math.max(dx * dx + dy * dy, MIN);
+			double invDist = 1.0 / Math.sqrt(distSquared);
+			double s = qs[i] * invDist * invDist * invDist;
+			ex += s * dx;
+			ey += s * dy;
+		}
+		out[0] = FieldEngine.K * ex;
+		out[1] = FieldEngine.K * ey;
+	}
+
+	@Override
+	double potential(double[] xs, double[] ys, double[] qs, int n, double x, double y) {
+		DoubleVector px = DoubleVector.broadcast(SPECIES, x);
+		DoubleVector py = DoubleVector.broadcast(SPECIES, y);
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector dx = px.sub(DoubleVector.fromArray(SPECIES, xs, i));
+			DoubleVector dy = py.sub(DoubleVector.fromArray(SPECIES, ys, i));
+			DoubleVector distSquared = dx.mul(dx).add(dy.mul(dy)).max(MIN);
+			sum = sum.add(DoubleVector.fromArray(SPECIES, qs, i).div(distSquared.sqrt()));
+		}
+		double v = sum.reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++) {
+			double dx = x - xs[i];
+			double dy = y - ys[i];
+			v += qs[i] / Math.sqrt(Math.max(dx * dx + dy * dy, MIN));
+		}
+		return FieldEngine.K * v;
+	}
+
+	@Override
+	void fieldAndPotential(double[] xs, double[] ys, double[] qs, int n, double x, double y, double[] out) {
+		DoubleVector px = DoubleVector.broadcast(SPECIES, x);
+		DoubleVector py = DoubleVector.broadcast(SPECIES, y);
+		DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+		DoubleVector sumX = DoubleVector.zero(SPECIES);
+		DoubleVector sumY = DoubleVector.zero(SPECIES);
+		DoubleVector sumV = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector dx = px.sub(DoubleVector.fromArray(SPECIES, xs, i));
+			DoubleVector dy = py.sub(DoubleVector.fromArray(SPECIES, ys, i));
+			DoubleVector distSquared = dx.mul(dx).add(dy.mul(dy)).max(MIN);
+			DoubleVector invDist = one.div(distSquared.sqrt());
+			DoubleVector q = DoubleVector.fromArray(SPECIES, qs, i).mul(invDist);
+			DoubleVector s = q.mul(invDist).mul(invDist);
+			sumX = dx.fma(s, sumX);
+			sumY = dy.fma(s, sumY);
+			sumV = sumV.add(q);
+		}
+		double ex = sumX.reduceLanes(VectorOperators.ADD);
+		double ey = sumY.reduceLanes(VectorOperators.ADD);
+		double v = sumV.reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++) {
+			double dx = x - xs[i];
+			double dy = y - ys[i];
+			double invDist = 1.0 / Math.sqrt(Math.max(dx * dx + dy * dy, MIN));
+			double q = qs[i] * invDist;
+			double s = q * invDist * invDist;
+			ex += s * dx;
+			ey += s * dy;
+			v += q;
+		}
+		out[0] = FieldEngine.K * ex;
+		out[1] = FieldEngine.K * ey;
+		out[2] = FieldEngine.K * v;
+	}
+
+	@Override
+	void fieldAt(double[] xs, double[] ys, double[] qs, int n, double[] px, double[] py, int m, double[] ex,
+			double[] ey) {
+		DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+		int p = 0;
+		for (int bound = SPECIES.loopBound(m); p < bound; p += SPECIES.length()) {
+			DoubleVector x = DoubleVector.fromArray(SPECIES, px, p);
+			DoubleVector y = DoubleVector.fromArray(SPECIES, py, p);
+			DoubleVector sumX = DoubleVector.zero(SPECIES);
+			DoubleVector sumY = DoubleVector.zero(SPECIES);
+			for (int i = 0; i < n; i++) {
+				DoubleVector dx = x.sub(xs[i]);
+				DoubleVector dy = y.sub(ys[i]);
+				DoubleVector distSquared = dx.mul(dx).add(dy.mul(dy)).max(MIN);
+				DoubleVector invDist = one.div(distSquared.sqrt());
+				DoubleVector s = invDist.mul(invDist).mul(invDist).mul(qs[i]);
+				sumX = dx.fma(s, sumX);
+				sumY = dy.fma(s, sumY);
+			}
+			sumX.mul(FieldEngine.K).intoArray(ex, p);
+			sumY.mul(FieldEngine.K).intoArray(ey, p);
+		}
+		for (; p < m; p++) { // Summed straight into ex/ey, nothing to allocate
+			double x = px[p];
+			double y = py[p];
+			double sx = 0;
+			double sy = 0;
+			for (int i = 0; i < n; i++) {
+				double dx = x - xs[i];
+				double dy = y - ys[i];
+				double invDist = 1.0 / Math.sqrt(Math.max(dx * dx + dy * dy, MIN));
+				double s = qs[i] * invDist * invDist * invDist;
+				sx += s * dx;
+				sy += s * dy;
+			}
+			ex[p] = FieldEngine.K * sx;
+			ey[p] = FieldEngine.K * sy;
+		}
+	}
+}
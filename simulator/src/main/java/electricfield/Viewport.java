@@ -0,0 +1,90 @@
+package electricfield;
+
+// Maps between world coordinates (the plane the charges live in) and the
+// device pixels of a view that pans and zooms over it. Zoom comes in
+// discrete levels, ZOOM_STEP^level, so tiles rendered at one zoom can be
+// looked up again by level. The pan is the pixel of the zoomed plane that
+// sits at the view's top-left corner; it is kept whole so tiles land on
+// pixel boundaries. Level 0 with no pan maps world coordinates straight to
+// pixels, as before the view could move.
+public class Viewport {
+	public static final double ZOOM_STEP = 1.25; // Per mouse wheel notch
+	public static final int MIN_LEVEL = -12; // About 1/15
+	public static final int MAX_LEVEL = 12; // About 15x
+
+	private int level;
+	private double zoom = 1;
+	private int panX, panY;
+
+	// Zoom factor at a level
+	public static double zoom(int level) {
+		return Math.pow(ZOOM_STEP, level);
+	}
+
+	public int level() {
+		return level;
+	}
+
+	public double zoom() {
+		return zoom;
+	}
+
+	public int panX() {
+		return panX;
+	}
+
+	public int panY() {
+		return panY;
+	}
+
+	public boolean isIdentity() {
+		return level == 0 && panX == 0 && panY == 0;
+	}
+
+	public double worldX(double screenX) {
+		return (screenX + panX) / zoom;
+	}
+
+	public double worldY(double screenY) {
+		return (screenY + panY) / zoom;
+	}
+
+	public double screenX(double worldX) {
+		return worldX * zoom - panX;
+	}
+
+	public double screenY(double worldY) {
+		return worldY * zoom - panY;
+	}
+
+	// Moves the view so the content follows a drag of (dx, dy) pixels
+	public void panBy(int dx, int dy) {
+		panX -= dx;
+		panY -= dy;
+	}
+
+	// Zooms in (steps > 0) or out by whole levels, keeping the world point
+	// under (screenX, screenY) where it is. Returns false when already at
+	// the limit.
+	public boolean zoomAt(double screenX, double screenY, int steps) {
+		int newLevel = Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level + steps));
+		if (newLevel == level) {
+			return false;
+		}
+		double worldX = worldX(screenX);
+		double worldY = worldY(screenY);
+		level = newLevel;
+		zoom = zoom(newLevel);
+		panX = (int) Math.round(worldX * zoom - screenX);
+		panY = (int) Math.round(worldY * zoom - screenY);
+		return true;
+	}
+
+	// Back to level 0 with no pan
+	public void reset() {
+		level = 0;
+		zoom = 1;
+		panX = 0;
+		panY = 0;
+	}
+}
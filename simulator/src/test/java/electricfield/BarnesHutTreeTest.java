@@ -0,0 +1,72 @@
+package electricfield;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// The TREE backend against the exact sum of the DIRECT one
+class BarnesHutTreeTest {
+	// Mixed-sign charges scattered over an 800 x 600 canvas
+	static FieldEngine randomCharges(int n, long seed) {
+		Random random = new Random(seed);
+		FieldEngine engine = new FieldEngine();
+		for (int i = 0; i < n; i++) {
+			double q = (random.nextBoolean() ? 1 : -1) * (0.5 + random.nextDouble()) * 1e-9;
+			engine.add(random.nextDouble() * 800, random.nextDouble() * 600, q);
+		}
+		return engine;
+	}
+
+	@Test
+	void zeroThetaMatchesDirectSum() {
+		FieldEngine engine = randomCharges(500, 1);
+		engine.setBackend(FieldEngine.Backend.TREE);
+		engine.setTheta(0);
+		Random random = new Random(2);
+		double[] tree = new double[2];
+		double[] exact = new double[2];
+		for (int s = 0; s < 200; s++) {
+			double x = random.nextDouble() * 1000 - 100;
+			double y = random.nextDouble() * 800 - 100;
+			engine.field(x, y, tree);
+			engine.directField(x, y, exact);
+			double scale = Math.hypot(exact[0], exact[1]);
+			assertEquals(exact[0], tree[0], 1e-9 * scale);
+			assertEquals(exact[1], tree[1], 1e-9 * scale);
+		}
+	}
+
+	@Test
+	void errorShrinksWithTheta() {
+		FieldEngine engine = randomCharges(2000, 3);
+		BarnesHutTree.ErrorStats coarse = BarnesHutTree.measureError(engine, 0.5, 500, 4);
+		BarnesHutTree.ErrorStats fine = BarnesHutTree.measureError(engine, 0.1, 500, 4);
+		BarnesHutTree.ErrorStats exact = BarnesHutTree.measureError(engine, 0, 500, 4);
+		assertTrue(coarse.rms < 0.01, "rms at theta 0.5: " + coarse.rms);
+		assertTrue(coarse.max < 0.05, "max at theta 0.5: " + coarse.max);
+		assertTrue(fine.rms < coarse.rms, "rms at theta 0.1: " + fine.rms);
+		assertTrue(exact.max < 1e-9, "max at theta 0: " + exact.max);
+	}
+
+	@Test
+	void treeFollowsEdits() {
+		FieldEngine engine = randomCharges(300, 5);
+		engine.setBackend(FieldEngine.Backend.TREE);
+		engine.setTheta(0);
+		double[] tree = new double[2];
+		double[] exact = new double[2];
+		engine.field(400, 300, tree); // Builds the tree
+		engine.move(0, 401, 299);
+		engine.setCharge(1, -2e-9);
+		engine.remove(2);
+		engine.add(120, 80, 3e-9);
+		engine.field(400, 300, tree);
+		engine.directField(400, 300, exact);
+		double scale = Math.hypot(exact[0], exact[1]);
+		assertEquals(exact[0], tree[0], 1e-9 * scale);
+		assertEquals(exact[1], tree[1], 1e-9 * scale);
+	}
+}
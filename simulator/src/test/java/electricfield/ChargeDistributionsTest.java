@@ -0,0 +1,114 @@
+package electricfield;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+// Each distribution's field and potential against the same total charge
+// split into many point charges along (or over) it
+class ChargeDistributionsTest {
+	private static final double Q = 2e-9;
+	private static final double TOLERANCE = 1e-4; // Relative to the field or potential's size
+
+	@Test
+	void segmentMatchesPointSum() {
+		FieldEngine exact = new FieldEngine();
+		exact.distributions().addSegment(100, 100, 300, 180, Q);
+		FieldEngine points = new FieldEngine(20000);
+		int n = 20000;
+		for (int k = 0; k < n; k++) {
+			double t = (k + 0.5) / n;
+			points.add(100 + 200 * t, 100 + 80 * t, Q / n);
+		}
+		double[][] probes = { { 200, 160 }, { 200, 120 }, { 50, 90 }, { 350, 200 }, { 310, 180 }, { 100, 300 },
+				{ 600, -200 } };
+		assertMatches(exact, points, probes);
+	}
+
+	@Test
+	void ringMatchesPointSum() {
+		FieldEngine exact = new FieldEngine();
+		exact.distributions().addRing(400, 300, 80, Q);
+		assertMatches(exact, arcPoints(400, 300, 80, 0, 2 * Math.PI),
+				new double[][] { { 430, 300 }, { 400, 250 }, { 460, 340 }, { 400, 390 }, { 550, 300 }, { 330, 180 },
+						{ 900, 800 } });
+	}
+
+	@Test
+	void arcMatchesPointSum() {
+		FieldEngine exact = new FieldEngine();
+		exact.distributions().addArc(400, 300, 80, 0.3, 2.0, Q);
+		assertMatches(exact, arcPoints(400, 300, 80, 0.3, 2.0),
+				new double[][] { { 400, 300 }, { 430, 320 }, { 470, 370 }, { 400, 392 }, { 300, 300 }, { 520, 300 },
+						{ 400, 200 }, { -100, 900 } });
+	}
+
+	@Test
+	void clockwiseArcMatchesPointSum() {
+		FieldEngine exact = new FieldEngine();
+		exact.distributions().addArc(0, 0, 50, 1.0, -4.0, -Q);
+		FieldEngine points = new FieldEngine();
+		int n = 20000;
+		for (int k = 0; k < n; k++) {
+			double angle = 1.0 - 4.0 * (k + 0.5) / n;
+			points.add(50 * Math.cos(angle), 50 * Math.sin(angle), -Q / n);
+		}
+		double[][] probes = { { 0, 0 }, { 20, -10 }, { 60, 10 }, { -70, 30 }, { 10, 65 } };
+		assertMatches(exact, points, probes);
+	}
+
+	@Test
+	void sheetMatchesPointSum() {
+		FieldEngine exact = new FieldEngine();
+		double angle = 0.4, cos = Math.cos(angle), sin = Math.sin(angle);
+		exact.distributions().addSheet(400, 300, 120, 40, angle, Q);
+		int nu = 600, nv = 200;
+		FieldEngine points = new FieldEngine(nu * nv);
+		for (int i = 0; i < nu; i++) {
+			double u = -60 + 120 * (i + 0.5) / nu;
+			for (int j = 0; j < nv; j++) {
+				double v = -20 + 40 * (j + 0.5) / nv;
+				points.add(400 + u * cos - v * sin, 300 + u * sin + v * cos, Q / (nu * nv));
+			}
+		}
+		// Outside the sheet, at least 10 pixels from it
+		double[][] probes = { { 400 - 45 * sin, 300 + 45 * cos }, { 400 + 80 * cos, 300 + 80 * sin },
+				{ 400 - 90 * cos + 30 * sin, 300 - 90 * sin - 30 * cos }, { 600, 100 }, { 150, 500 } };
+		assertMatches(exact, points, probes);
+	}
+
+	// Total charge Q spread evenly over n points along an arc
+	private static FieldEngine arcPoints(double cx, double cy, double r, double start, double sweep) {
+		int n = 20000;
+		FieldEngine points = new FieldEngine(n);
+		for (int k = 0; k < n; k++) {
+			double angle = start + sweep * (k + 0.5) / n;
+			points.add(cx + r * Math.cos(angle), cy + r * Math.sin(angle), Q / n);
+		}
+		return points;
+	}
+
+	// Field and potential of exact's distributions at every probe within
+	// TOLERANCE of the point sum's, through each query path
+	private static void assertMatches(FieldEngine exact, FieldEngine points, double[][] probes) {
+		double[] expected = new double[3];
+		double[] actual = new double[3];
+		for (double[] probe : probes) {
+			double x = probe[0], y = probe[1];
+			String at = " at " + x + ", " + y;
+			points.fieldAndPotential(x, y, expected);
+			double fieldScale = Math.hypot(expected[0], expected[1]);
+			double potentialScale = Math.abs(expected[2]);
+
+			exact.field(x, y, actual);
+			assertEquals(expected[0], actual[0], TOLERANCE * fieldScale, "Ex" + at);
+			assertEquals(expected[1], actual[1], TOLERANCE * fieldScale, "Ey" + at);
+			assertEquals(expected[2], exact.potential(x, y), TOLERANCE * potentialScale, "V" + at);
+
+			exact.fieldAndPotential(x, y, actual);
+			assertEquals(expected[0], actual[0], TOLERANCE * fieldScale, "Ex with V" + at);
+			assertEquals(expected[1], actual[1], TOLERANCE * fieldScale, "Ey with V" + at);
+			assertEquals(expected[2], actual[2], TOLERANCE * potentialScale, "V with E" + at);
+		}
+	}
+}
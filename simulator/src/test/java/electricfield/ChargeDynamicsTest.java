@@ -0,0 +1,162 @@
+package electricfield;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+// The N-body integrator: forces from the parallel pair sum, the tree and a
+// single task, and what velocity Verlet conserves with them
+class ChargeDynamicsTest {
+	// Four workers whatever the machine, so the pair triangle is split
+	private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+	@AfterAll
+	static void shutDown() {
+		POOL.shutdown();
+	}
+
+	// Mixed-sign bodies of 1e-15 kg at rest over an 800 x 600 canvas
+	private static ChargeDynamics randomBodies(ForkJoinPool pool, int n, long seed) {
+		Random random = new Random(seed);
+		ChargeDynamics dynamics = new ChargeDynamics(pool, n);
+		for (int i = 0; i < n; i++) {
+			double q = (random.nextBoolean() ? 1 : -1) * (0.5 + random.nextDouble()) * 1e-9;
+			dynamics.add(random.nextDouble() * 800, random.nextDouble() * 600, 0, 0, q,
+					(0.5 + random.nextDouble()) * 1e-15);
+		}
+		dynamics.setTreeThreshold(Integer.MAX_VALUE);
+		return dynamics;
+	}
+
+	@Test
+	void parallelPairSumConservesMomentum() {
+		ChargeDynamics dynamics = randomBodies(POOL, 1000, 1);
+		dynamics.computeAccelerations();
+		double px = 0, py = 0, scale = 0;
+		for (int i = 0; i < dynamics.count; i++) {
+			px += dynamics.m[i] * dynamics.ax[i];
+			py += dynamics.m[i] * dynamics.ay[i];
+			scale += dynamics.m[i] * Math.hypot(dynamics.ax[i], dynamics.ay[i]);
+		}
+		assertEquals(0, px, 1e-12 * scale);
+		assertEquals(0, py, 1e-12 * scale);
+	}
+
+	@Test
+	void parallelPairSumMatchesOneTask() {
+		ForkJoinPool single = new ForkJoinPool(1);
+		try {
+			for (int n : new int[] { 256, 257, 1000, 1023 }) {
+				ChargeDynamics parallel = randomBodies(POOL, n, n);
+				ChargeDynamics serial = randomBodies(single, n, n);
+				parallel.computeAccelerations();
+				serial.computeAccelerations();
+				for (int i = 0; i < n; i++) {
+					double scale = Math.hypot(serial.ax[i], serial.ay[i]);
+					assertEquals(serial.ax[i], parallel.ax[i], 1e-9 * scale, "ax of " + i + " of " + n);
+					assertEquals(serial.ay[i], parallel.ay[i], 1e-9 * scale, "ay of " + i + " of " + n);
+				}
+			}
+		} finally {
+			single.shutdown();
+		}
+	}
+
+	@Test
+	void treeMatchesPairSumWithinTheta() {
+		ChargeDynamics pairs = randomBodies(POOL, 2000, 3);
+		ChargeDynamics tree = randomBodies(POOL, 2000, 3);
+		tree.setTreeThreshold(0);
+		tree.setTheta(0.3);
+		pairs.computeAccelerations();
+		tree.computeAccelerations();
+		double error = 0, norm = 0, worst = 0;
+		for (int i = 0; i < pairs.count; i++) {
+			double dx = tree.ax[i] - pairs.ax[i];
+			double dy = tree.ay[i] - pairs.ay[i];
+			error += dx * dx + dy * dy;
+			norm += pairs.ax[i] * pairs.ax[i] + pairs.ay[i] * pairs.ay[i];
+			worst = Math.max(worst, Math.hypot(dx, dy));
+		}
+		double rms = Math.sqrt(error / norm);
+		worst /= Math.sqrt(norm / pairs.count); // Against a typical acceleration
+		assertTrue(rms < 0.01, "rms relative error " + rms);
+		assertTrue(worst < 0.05, "worst relative error " + worst);
+
+		tree.setTheta(0);
+		tree.computeAccelerations();
+		for (int i = 0; i < pairs.count; i++) {
+			double scale = Math.hypot(pairs.ax[i], pairs.ay[i]);
+			assertEquals(pairs.ax[i], tree.ax[i], 1e-9 * scale);
+			assertEquals(pairs.ay[i], tree.ay[i], 1e-9 * scale);
+		}
+	}
+
+	@Test
+	void energyStaysBounded() {
+		ChargeDynamics dynamics = randomBodies(POOL, 300, 4);
+		dynamics.setSoftening(20); // Smooth enough for the step to resolve close passes
+		double start = energy(dynamics);
+		double scale = potentialScale(dynamics);
+		double worst = 0;
+		for (int frame = 0; frame < 400; frame++) { // 4 s in N-body frames
+			dynamics.step(0.0025, 4, -1e9, -1e9, 1e9, 1e9); // Walls out of reach
+			worst = Math.max(worst, Math.abs(energy(dynamics) - start) / scale);
+		}
+		assertTrue(worst < 1e-3, "relative energy change " + worst);
+		assertTrue(kinetic(dynamics) > 0.01 * scale, "the bodies barely moved");
+
+		// And momentum, with the walls out of the way
+		double px = 0, py = 0, momentum = 0;
+		for (int i = 0; i < dynamics.count; i++) {
+			px += dynamics.m[i] * dynamics.vx[i];
+			py += dynamics.m[i] * dynamics.vy[i];
+			momentum += dynamics.m[i] * Math.hypot(dynamics.vx[i], dynamics.vy[i]);
+		}
+		assertEquals(0, px, 1e-9 * momentum);
+		assertEquals(0, py, 1e-9 * momentum);
+	}
+
+	// Sum of |K qi qj / sqrt(r^2 + eps^2)| over pairs, what the energy's
+	// terms are of the order of
+	private static double potentialScale(ChargeDynamics d) {
+		double eps2 = d.softening() * d.softening();
+		double potential = 0;
+		for (int i = 0; i < d.count; i++) {
+			for (int j = i + 1; j < d.count; j++) {
+				double dx = d.x[i] - d.x[j];
+				double dy = d.y[i] - d.y[j];
+				potential += Math.abs(FieldEngine.K * d.q[i] * d.q[j] / Math.sqrt(dx * dx + dy * dy + eps2));
+			}
+		}
+		return potential;
+	}
+
+	private static double kinetic(ChargeDynamics d) {
+		double kinetic = 0;
+		for (int i = 0; i < d.count; i++) {
+			kinetic += 0.5 * d.m[i] * (d.vx[i] * d.vx[i] + d.vy[i] * d.vy[i]);
+		}
+		return kinetic;
+	}
+
+	// Kinetic plus softened potential energy, K qi qj / sqrt(r^2 + eps^2)
+	// over pairs
+	private static double energy(ChargeDynamics d) {
+		double eps2 = d.softening() * d.softening();
+		double potential = 0;
+		for (int i = 0; i < d.count; i++) {
+			for (int j = i + 1; j < d.count; j++) {
+				double dx = d.x[i] - d.x[j];
+				double dy = d.y[i] - d.y[j];
+				potential += FieldEngine.K * d.q[i] * d.q[j] / Math.sqrt(dx * dx + dy * dy + eps2);
+			}
+		}
+		return kinetic(d) + potential;
+	}
+}
@@ -0,0 +1,60 @@
+package electricfield;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+// Contours around a lone charge, where the level V lies on the circle of
+// radius K q / V
+class EquipotentialsTest {
+	// Four workers whatever the machine, so the bands are contoured in parallel
+	private static final ForkJoinPool POOL = new ForkJoinPool(4);
+	private static final double CX = 403, CY = 297; // Off the nodes
+
+	@AfterAll
+	static void shutDown() {
+		POOL.shutdown();
+	}
+
+	@Test
+	void singleChargeContoursAreCircles() {
+		for (double q : new double[] { 1e-9, -2e-9 }) {
+			FieldEngine engine = new FieldEngine();
+			engine.add(CX, CY, q);
+			FieldGrid grid = new FieldGrid(FieldGrid.DEFAULT_CELL_SIZE, 800, 600);
+			grid.rebuild(engine);
+			double[] radii = { 40, 100, 180, 250 };
+			double[] levels = new double[radii.length];
+			for (int l = 0; l < radii.length; l++) {
+				levels[l] = FieldEngine.K * q / radii[l];
+			}
+			Equipotentials contours = Equipotentials.extract(POOL, grid, levels);
+
+			for (int l = 0; l < radii.length; l++) {
+				Path2D.Float path = new Path2D.Float();
+				contours.appendTo(l, path);
+				double length = 0, lastX = 0, lastY = 0;
+				float[] point = new float[6];
+				for (PathIterator it = path.getPathIterator(null); !it.isDone(); it.next()) {
+					int type = it.currentSegment(point);
+					double r = Math.hypot(point[0] - CX, point[1] - CY);
+					assertEquals(radii[l], r, FieldGrid.DEFAULT_CELL_SIZE, "q = " + q + ", V = " + levels[l]);
+					if (type == PathIterator.SEG_LINETO) {
+						length += Math.hypot(point[0] - lastX, point[1] - lastY);
+					}
+					lastX = point[0];
+					lastY = point[1];
+				}
+				// Closed all the way round, not just a few stray segments
+				assertTrue(Math.abs(length - 2 * Math.PI * radii[l]) < 0.05 * 2 * Math.PI * radii[l],
+						"contour length " + length + " at radius " + radii[l]);
+			}
+		}
+	}
+}
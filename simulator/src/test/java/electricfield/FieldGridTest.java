@@ -0,0 +1,118 @@
+package electricfield;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// Incremental patches (applyDelta) against a grid rebuilt from scratch
+class FieldGridTest {
+	private static final int WIDTH = 800, HEIGHT = 600;
+
+	@Test
+	void patchesMatchRebuild() {
+		FieldEngine engine = BarnesHutTreeTest.randomCharges(200, 1);
+		FieldGrid patched = new FieldGrid(FieldGrid.DEFAULT_CELL_SIZE, WIDTH, HEIGHT);
+		patched.rebuild(engine);
+		Random random = new Random(2);
+		for (int edit = 0; edit < 40; edit++) {
+			int i = random.nextInt(engine.size());
+			double x = engine.x(i), y = engine.y(i), q = engine.charge(i);
+			switch (edit % 4) {
+			case 0: // Drag
+				double newX = x + random.nextGaussian() * 20, newY = y + random.nextGaussian() * 20;
+				engine.move(i, newX, newY);
+				patched.applyDelta(engine, x, y, q, newX, newY, q, true, true);
+				break;
+			case 1: // Value edit
+				engine.setCharge(i, -q);
+				patched.applyDelta(engine, x, y, q, x, y, -q, true, true);
+				break;
+			case 2: // Add
+				double addX = random.nextDouble() * WIDTH, addY = random.nextDouble() * HEIGHT;
+				engine.add(addX, addY, 1e-9);
+				patched.applyDelta(engine, 0, 0, 0, addX, addY, 1e-9, false, true);
+				break;
+			default: // Delete
+				engine.remove(i);
+				patched.applyDelta(engine, x, y, q, 0, 0, 0, true, false);
+				break;
+			}
+			assertTrue(patched.isValidFor(engine, WIDTH, HEIGHT));
+		}
+		FieldGrid rebuilt = new FieldGrid(FieldGrid.DEFAULT_CELL_SIZE, WIDTH, HEIGHT);
+		rebuilt.rebuild(engine);
+		assertNodesEqual(rebuilt, patched, 1e-12);
+		assertSamplesEqual(rebuilt, patched);
+	}
+
+	@Test
+	void tileGridPatchesMatchRebuild() {
+		FieldEngine engine = BarnesHutTreeTest.randomCharges(50, 3);
+		FieldGrid patched = new FieldGrid(4, 300, 200, 256, 256);
+		patched.rebuild(engine);
+		double x = engine.x(0), y = engine.y(0), q = engine.charge(0);
+		engine.move(0, 420, 310); // Into the grid
+		patched.applyDelta(engine, x, y, q, 420, 310, q, true, true);
+		FieldGrid rebuilt = new FieldGrid(4, 300, 200, 256, 256);
+		rebuilt.rebuild(engine);
+		assertNodesEqual(rebuilt, patched, 1e-12);
+		assertSamplesEqual(rebuilt, patched);
+	}
+
+	@Test
+	void approximateBackendsRebuildInsteadOfPatching() {
+		FieldEngine engine = BarnesHutTreeTest.randomCharges(200, 4);
+		engine.setBackend(FieldEngine.Backend.TREE);
+		FieldGrid grid = new FieldGrid(FieldGrid.DEFAULT_CELL_SIZE, WIDTH, HEIGHT);
+		grid.rebuild(engine);
+		double x = engine.x(0), y = engine.y(0), q = engine.charge(0);
+		engine.move(0, x + 15, y - 5);
+		grid.applyDelta(engine, x, y, q, x + 15, y - 5, q, true, true);
+		FieldGrid rebuilt = new FieldGrid(FieldGrid.DEFAULT_CELL_SIZE, WIDTH, HEIGHT);
+		rebuilt.rebuild(engine);
+		assertNodesEqual(rebuilt, grid, 0);
+	}
+
+	@Test
+	void backendSwitchInvalidates() {
+		FieldEngine engine = BarnesHutTreeTest.randomCharges(20, 5);
+		FieldGrid grid = new FieldGrid(FieldGrid.DEFAULT_CELL_SIZE, WIDTH, HEIGHT);
+		grid.rebuild(engine);
+		assertTrue(grid.isValidFor(engine, WIDTH, HEIGHT));
+		engine.setBackend(FieldEngine.Backend.MESH);
+		assertFalse(grid.isValidFor(engine, WIDTH, HEIGHT));
+		assertFalse(grid.describes(engine, engine.version()));
+	}
+
+	// Every node within tolerance of the largest node value
+	private static void assertNodesEqual(FieldGrid expected, FieldGrid actual, double tolerance) {
+		assertNodesEqual(expected.ex, actual.ex, tolerance);
+		assertNodesEqual(expected.ey, actual.ey, tolerance);
+		assertNodesEqual(expected.v, actual.v, tolerance);
+	}
+
+	private static void assertNodesEqual(double[] expected, double[] actual, double tolerance) {
+		double scale = 0;
+		for (double value : expected) {
+			scale = Math.max(scale, Math.abs(value));
+		}
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], tolerance * scale, "node " + i);
+		}
+	}
+
+	// Same exact zones, so the same points fall back to the engine
+	private static void assertSamplesEqual(FieldGrid expected, FieldGrid actual) {
+		double[] a = new double[2];
+		double[] b = new double[2];
+		for (double y = expected.y0; y < expected.y0 + expected.height; y += expected.cellSize * 0.7) {
+			for (double x = expected.x0; x < expected.x0 + expected.width; x += expected.cellSize * 0.7) {
+				assertEquals(expected.sampleField(x, y, a), actual.sampleField(x, y, b), "exact zone at " + x + ", " + y);
+			}
+		}
+	}
+}
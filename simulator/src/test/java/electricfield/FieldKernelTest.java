@@ -0,0 +1,117 @@
+package electricfield;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// VectorFieldKernel against the scalar loops, for charge and point counts on
+// both sides of every multiple of the lane count so the scalar tails run
+class FieldKernelTest {
+	private FieldKernel vector;
+	private int lanes;
+
+	@BeforeEach
+	void vectorKernel() {
+		assumeTrue(FieldKernel.isVectorAvailable(), "vector kernel unavailable on this JVM");
+		vector = FieldKernel.vector();
+		lanes = vector.lanes();
+	}
+
+	// 0 to three lanes' worth and a few beyond, plus a large uneven count
+	private int[] counts() {
+		int[] counts = new int[3 * lanes + 3];
+		for (int i = 0; i < counts.length - 1; i++) {
+			counts[i] = i;
+		}
+		counts[counts.length - 1] = 1000 * lanes + lanes - 1;
+		return counts;
+	}
+
+	// Charges over an 800 x 600 canvas; the first sits exactly on (400, 300)
+	// so the clamp at MIN_DIST_SQUARED is taken
+	private static double[][] charges(int n, long seed) {
+		Random random = new Random(seed);
+		double[][] c = new double[3][n];
+		for (int i = 0; i < n; i++) {
+			c[0][i] = i == 0 ? 400 : random.nextDouble() * 800;
+			c[1][i] = i == 0 ? 300 : random.nextDouble() * 600;
+			c[2][i] = (random.nextBoolean() ? 1 : -1) * (0.5 + random.nextDouble()) * 1e-9;
+		}
+		return c;
+	}
+
+	// What a sum at (x, y) is of the order of, without cancellation: the
+	// field's terms summed by size
+	private static double scale(double[][] c, int n, double x, double y) {
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			double dx = x - c[0][i];
+			double dy = y - c[1][i];
+			sum += FieldEngine.K * Math.abs(c[2][i]) / Math.max(dx * dx + dy * dy, FieldEngine.MIN_DIST_SQUARED);
+		}
+		return sum;
+	}
+
+	@Test
+	void singlePointsMatchScalar() {
+		Random random = new Random(1);
+		double[] expected = new double[3];
+		double[] actual = new double[3];
+		for (int n : counts()) {
+			double[][] c = charges(n, n);
+			for (int s = 0; s < 20; s++) {
+				double x = s == 0 ? 400 : random.nextDouble() * 1000 - 100;
+				double y = s == 0 ? 300 : random.nextDouble() * 800 - 100;
+				double tolerance = 1e-12 * scale(c, n, x, y) + Double.MIN_VALUE;
+				String at = n + " charges at " + x + ", " + y;
+
+				FieldKernel.SCALAR.field(c[0], c[1], c[2], n, x, y, expected);
+				vector.field(c[0], c[1], c[2], n, x, y, actual);
+				assertEquals(expected[0], actual[0], tolerance, "Ex, " + at);
+				assertEquals(expected[1], actual[1], tolerance, "Ey, " + at);
+
+				// The potential's terms are r times the field's
+				double v = FieldKernel.SCALAR.potential(c[0], c[1], c[2], n, x, y);
+				double vTolerance = 1e-12 * 1000 * scale(c, n, x, y) + Double.MIN_VALUE;
+				assertEquals(v, vector.potential(c[0], c[1], c[2], n, x, y), vTolerance, "V, " + at);
+
+				vector.fieldAndPotential(c[0], c[1], c[2], n, x, y, actual);
+				assertEquals(expected[0], actual[0], tolerance, "Ex with V, " + at);
+				assertEquals(expected[1], actual[1], tolerance, "Ey with V, " + at);
+				assertEquals(v, actual[2], vTolerance, "V with E, " + at);
+			}
+		}
+	}
+
+	@Test
+	void batchesMatchScalar() {
+		Random random = new Random(2);
+		for (int n : new int[] { 0, 1, lanes - 1, lanes, lanes + 1, 37 }) {
+			double[][] c = charges(n, n + 100);
+			for (int m : counts()) {
+				double[] px = new double[m + 1], py = new double[m + 1]; // One spare that must stay untouched
+				for (int p = 0; p < m; p++) {
+					px[p] = p == 0 ? 400 : random.nextDouble() * 1000 - 100;
+					py[p] = p == 0 ? 300 : random.nextDouble() * 800 - 100;
+				}
+				double[] ex = new double[m + 1], ey = new double[m + 1];
+				double[] sx = new double[m + 1], sy = new double[m + 1];
+				ex[m] = ey[m] = 42;
+				FieldKernel.SCALAR.fieldAt(c[0], c[1], c[2], n, px, py, m, sx, sy);
+				vector.fieldAt(c[0], c[1], c[2], n, px, py, m, ex, ey);
+				for (int p = 0; p < m; p++) {
+					double tolerance = 1e-12 * scale(c, n, px[p], py[p]) + Double.MIN_VALUE;
+					String at = "point " + p + " of " + m + " with " + n + " charges";
+					assertEquals(sx[p], ex[p], tolerance, "Ex, " + at);
+					assertEquals(sy[p], ey[p], tolerance, "Ey, " + at);
+				}
+				assertEquals(42, ex[m]);
+				assertEquals(42, ey[m]);
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package electricfield;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+// Field lines from the adaptive Dormand-Prince stepper: where they go, where
+// they end, and how they compare with small fixed Euler steps
+class FieldLineTracerTest {
+	private static final int LINES = 16;
+
+	private static FieldLines trace(FieldEngine engine, FieldLineTracer.Integrator integrator, int maxSteps,
+			double stepSize) {
+		FieldLineTracer tracer = new FieldLineTracer(LINES, maxSteps, stepSize);
+		tracer.setIntegrator(integrator);
+		return tracer.traceNow(1, engine.snapshot(), null, 0, 0);
+	}
+
+	// +q at (300, 300), -q at (500, 300)
+	private static FieldEngine dipole() {
+		FieldEngine engine = new FieldEngine();
+		engine.add(300, 300, 1e-9);
+		engine.add(500, 300, -1e-9);
+		return engine;
+	}
+
+	@Test
+	void loneChargeLinesRunStraightWithGrowingSteps() {
+		FieldEngine engine = new FieldEngine();
+		engine.add(400, 300, 1e-9);
+		FieldLines lines = trace(engine, FieldLineTracer.Integrator.RK45, 100, 5);
+		assertEquals(LINES, lines.lineCount());
+		for (int l = 0; l < LINES; l++) {
+			double angle = 2 * Math.PI * l / LINES;
+			int last = lines.pointCount(l) - 1;
+			for (int p = 0; p <= last; p++) {
+				double dx = lines.x(l, p) - 400, dy = lines.y(l, p) - 300;
+				assertEquals(0, -dx * Math.sin(angle) + dy * Math.cos(angle), 1e-3, "off the ray, line " + l);
+			}
+			double reach = Math.hypot(lines.x(l, last) - 400, lines.y(l, last) - 300);
+			assertEquals(FieldLineTracer.SEED_RADIUS + 500, reach, 1e-3, "arc length of line " + l);
+			// 500 px in steps growing from 5 to MAX_STEP, where Euler takes 100
+			assertTrue(lines.evaluations(l) < 60, lines.evaluations(l) + " evaluations on line " + l);
+		}
+	}
+
+	@Test
+	void drawnSegmentsStayShort() {
+		FieldLines lines = trace(dipole(), FieldLineTracer.Integrator.RK45, 200, 5);
+		for (int l = 0; l < lines.lineCount(); l++) {
+			for (int p = 1; p < lines.pointCount(l); p++) {
+				double segment = Math.hypot(lines.x(l, p) - lines.x(l, p - 1), lines.y(l, p) - lines.y(l, p - 1));
+				// A capture jumps the last STOP_RADIUS to the sink's centre
+				double limit = p == lines.pointCount(l) - 1 ? FieldLineTracer.STOP_RADIUS + 1e-3
+						: FieldLineTracer.OUTPUT_SPACING * 1.05; // Hermite points are even in t, not arc length
+				assertTrue(segment <= limit, "segment of " + segment + " on line " + l);
+			}
+		}
+	}
+
+	@Test
+	void sinksCaptureLines() {
+		FieldLines lines = trace(dipole(), FieldLineTracer.Integrator.RK45, 200, 5);
+		int captured = 0;
+		for (int l = 0; l < lines.lineCount(); l++) {
+			int last = lines.pointCount(l) - 1;
+			if (lines.x(l, last) == 500 && lines.y(l, last) == 300) {
+				captured++;
+				assertTrue(l < LINES, "line " + l + " from the sink ends on it");
+			}
+		}
+		// The line heading straight at the sink and most of its neighbours
+		assertEquals(500, lines.x(0, lines.pointCount(0) - 1));
+		assertTrue(captured >= LINES / 2, captured + " of the source's lines captured");
+
+		// Lines from the sink run backwards along the field, so the source is
+		// what captures them
+		int toSource = LINES + LINES / 2;
+		int last = lines.pointCount(toSource) - 1;
+		assertEquals(300, lines.x(toSource, last));
+		assertEquals(300, lines.y(toSource, last));
+	}
+
+	// Every RK45 point lies within a couple of pixels, over up to 1000 px of
+	// arc, of the line fine Euler steps trace from the same seed, so rejected
+	// steps are retried small enough where the lines curve; with a small
+	// fraction of the evaluations
+	@Test
+	void agreesWithFineEuler() {
+		FieldEngine engine = dipole();
+		FieldLines adaptive = trace(engine, FieldLineTracer.Integrator.RK45, 200, 5);
+		FieldLines euler = trace(engine, FieldLineTracer.Integrator.EULER, 20000, 0.05);
+		double worst = 0;
+		for (int l = 0; l < adaptive.lineCount(); l++) {
+			for (int p = 0; p < adaptive.pointCount(l); p++) {
+				double x = adaptive.x(l, p), y = adaptive.y(l, p);
+				if (Math.hypot(x - 500, y - 300) < FieldLineTracer.STOP_RADIUS + 1
+						|| Math.hypot(x - 300, y - 300) < FieldLineTracer.STOP_RADIUS + 1) {
+					continue; // Euler stops short of the charges
+				}
+				worst = Math.max(worst, distanceToLine(euler, l, x, y));
+			}
+		}
+		assertTrue(worst < 2, "RK45 strays " + worst + " px from Euler");
+		assertTrue(adaptive.totalEvaluations() * 50 < euler.totalEvaluations(),
+				adaptive.totalEvaluations() + " evaluations against " + euler.totalEvaluations());
+	}
+
+	// Closest distance from (x, y) to the polyline of line l
+	private static double distanceToLine(FieldLines lines, int l, double x, double y) {
+		double best = Double.MAX_VALUE;
+		for (int p = 1; p < lines.pointCount(l); p++) {
+			double ax = lines.x(l, p - 1), ay = lines.y(l, p - 1);
+			double bx = lines.x(l, p), by = lines.y(l, p);
+			double ex = bx - ax, ey = by - ay;
+			double length2 = ex * ex + ey * ey;
+			double t = length2 > 0 ? Math.max(0, Math.min(1, ((x - ax) * ex + (y - ay) * ey) / length2)) : 0;
+			best = Math.min(best, Math.hypot(ax + t * ex - x, ay + t * ey - y));
+		}
+		return best;
+	}
+}
@@ -0,0 +1,153 @@
+package electricfield;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// Sweeps over a 200 x 100 box, read back from their CSV
+class ParameterSweepTest {
+	private static final double WIDTH = 200, HEIGHT = 100; // Launches from (100, 50)
+
+	private static List<String[]> run(ParameterSweep sweep, int threads) throws IOException, InterruptedException {
+		StringWriter out = new StringWriter();
+		long written = sweep.run(out, threads);
+		String[] lines = out.toString().split("\n");
+		assertEquals(ParameterSweep.CSV_HEADER, lines[0]);
+		assertEquals(written, lines.length - 1);
+		List<String[]> rows = new ArrayList<>();
+		for (int i = 1; i < lines.length; i++) {
+			rows.add(lines[i].split(","));
+		}
+		return rows;
+	}
+
+	private static String[] single(ParameterSweep sweep) throws IOException, InterruptedException {
+		List<String[]> rows = run(sweep, 1);
+		assertEquals(1, rows.size());
+		return rows.get(0);
+	}
+
+	@Test
+	void indicesDecodeWithVyFastest() throws IOException, InterruptedException {
+		ParameterSweep sweep = new ParameterSweep(new FieldEngine(), WIDTH, HEIGHT);
+		ParameterSweep.Range charge = new ParameterSweep.Range(1e-10, 3e-10, 2);
+		ParameterSweep.Range mass = new ParameterSweep.Range(1e-15, 3e-15, 3);
+		ParameterSweep.Range vx = new ParameterSweep.Range(-10, 10, 4);
+		ParameterSweep.Range vy = new ParameterSweep.Range(0, 40, 5);
+		sweep.setCharge(charge);
+		sweep.setMass(mass);
+		sweep.setVelocityX(vx);
+		sweep.setVelocityY(vy);
+		sweep.setMaxTime(0.05);
+		assertEquals(120, sweep.total());
+
+		List<String[]> rows = run(sweep, 3); // Two chunks, written in either order
+		assertEquals(120, rows.size());
+		boolean[] seen = new boolean[120];
+		for (String[] row : rows) {
+			int i = Integer.parseInt(row[0]);
+			assertFalse(seen[i], "index " + i + " twice");
+			seen[i] = true;
+			assertEquals(vy.value(i % 5), Double.parseDouble(row[4]), "vy of " + i);
+			assertEquals(vx.value(i / 5 % 4), Double.parseDouble(row[3]), "vx of " + i);
+			assertEquals(mass.value(i / 20 % 3), Double.parseDouble(row[2]), "mass of " + i);
+			assertEquals(charge.value(i / 60), Double.parseDouble(row[1]), "charge of " + i);
+		}
+	}
+
+	@Test
+	void exitEndsOnTheBounds() throws IOException, InterruptedException {
+		ParameterSweep sweep = new ParameterSweep(new FieldEngine(), WIDTH, HEIGHT);
+		sweep.setVelocityX(ParameterSweep.Range.of(80));
+		sweep.setMaxTime(5);
+		String[] row = single(sweep);
+		assertEquals("exited", row[5]);
+		assertEquals(WIDTH, Double.parseDouble(row[6]), 1e-9);
+		assertEquals(HEIGHT / 2, Double.parseDouble(row[7]), 1e-9);
+		assertEquals(100 / 80.0, Double.parseDouble(row[8]), 1e-9); // Cut at the crossing, not the step
+		assertEquals(-1, Long.parseLong(row[9]));
+	}
+
+	@Test
+	void captureEndsOnTheCharge() throws IOException, InterruptedException {
+		FieldEngine field = new FieldEngine();
+		field.add(10, 10, 1e-9); // Off the path
+		field.add(150, HEIGHT / 2, 1e-9);
+		ParameterSweep sweep = new ParameterSweep(field, WIDTH, HEIGHT);
+		sweep.setCharge(ParameterSweep.Range.of(-1e-10)); // Pulled in
+		sweep.setVelocityX(ParameterSweep.Range.of(50));
+		String[] row = single(sweep);
+		assertEquals("captured", row[5]);
+		assertEquals(150, Double.parseDouble(row[6]));
+		assertEquals(HEIGHT / 2, Double.parseDouble(row[7]));
+		assertEquals(1, Long.parseLong(row[9]));
+	}
+
+	@Test
+	void timeoutAfterMaxTime() throws IOException, InterruptedException {
+		ParameterSweep sweep = new ParameterSweep(new FieldEngine(), WIDTH, HEIGHT);
+		sweep.setTimeStep(0.01);
+		sweep.setMaxTime(0.5);
+		String[] row = single(sweep); // At rest in no field
+		assertEquals("timeout", row[5]);
+		assertEquals(WIDTH / 2, Double.parseDouble(row[6]));
+		assertEquals(HEIGHT / 2, Double.parseDouble(row[7]));
+		assertEquals(0.5, Double.parseDouble(row[8]), 1e-12);
+		assertEquals(50, Long.parseLong(row[11]));
+	}
+
+	@Test
+	void failingRunFailsTheSweep() {
+		FieldEngine field = new FieldEngine();
+		field.setKernel(new FieldKernel() {
+			@Override
+			public int lanes() {
+				return 1;
+			}
+
+			@Override
+			public String name() {
+				return "failing";
+			}
+
+			@Override
+			void field(double[] xs, double[] ys, double[] qs, int n, double x, double y, double[] out) {
+				if (x > 150) {
+					throw new IllegalStateException("no field past x = 150");
+				}
+				SCALAR.field(xs, ys, qs, n, x, y, out);
+			}
+
+			@Override
+			double potential(double[] xs, double[] ys, double[] qs, int n, double x, double y) {
+				return SCALAR.potential(xs, ys, qs, n, x, y);
+			}
+
+			@Override
+			void fieldAndPotential(double[] xs, double[] ys, double[] qs, int n, double x, double y,
+					double[] out) {
+				SCALAR.fieldAndPotential(xs, ys, qs, n, x, y, out);
+			}
+
+			@Override
+			void fieldAt(double[] xs, double[] ys, double[] qs, int n, double[] px, double[] py, int m,
+					double[] ex, double[] ey) {
+				SCALAR.fieldAt(xs, ys, qs, n, px, py, m, ex, ey);
+			}
+		});
+		ParameterSweep sweep = new ParameterSweep(field, WIDTH, HEIGHT);
+		sweep.setVelocityX(new ParameterSweep.Range(-100, 100, 20)); // Only runs going right fail
+		sweep.setVelocityY(new ParameterSweep.Range(-1, 1, 20));
+		sweep.setMaxTime(2);
+		IllegalStateException failure = assertThrows(IllegalStateException.class,
+				() -> sweep.run(new StringWriter(), 2));
+		assertEquals("no field past x = 150", failure.getMessage());
+	}
+}
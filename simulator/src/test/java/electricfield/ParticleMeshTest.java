@@ -0,0 +1,82 @@
+package electricfield;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// The MESH backend against the exact sum of the DIRECT one. The commit that
+// added it measured about 0.2% rms and 0.6-1.2% max error, relative to the
+// rms field, at the default cell size; the bounds here leave room for other
+// scenes.
+class ParticleMeshTest {
+	@Test
+	void fieldErrorWithinStatedBound() {
+		for (long seed = 1; seed <= 3; seed++) {
+			FieldEngine engine = BarnesHutTreeTest.randomCharges(2000, seed);
+			BarnesHutTree.ErrorStats stats = ParticleMesh.measureError(engine, ParticleMesh.DEFAULT_CELL_SIZE, 500,
+					seed);
+			assertTrue(stats.rms < 0.005, "rms " + stats.rms);
+			assertTrue(stats.max < 0.02, "max " + stats.max);
+		}
+	}
+
+	@Test
+	void potentialErrorWithinStatedBound() {
+		FieldEngine engine = BarnesHutTreeTest.randomCharges(2000, 4);
+		ParticleMesh mesh = new ParticleMesh(engine, ParticleMesh.DEFAULT_CELL_SIZE);
+		Random random = new Random(5);
+		double potentialSquared = 0;
+		double errorSquared = 0;
+		int samples = 0;
+		while (samples < 500) {
+			double x = random.nextDouble() * 800;
+			double y = random.nextDouble() * 600;
+			double v = mesh.potential(x, y);
+			if (Double.isNaN(v)) {
+				continue;
+			}
+			double exact = engine.kernel().potential(engine.xs, engine.ys, engine.qs, engine.size(), x, y);
+			potentialSquared += exact * exact;
+			errorSquared += (v - exact) * (v - exact);
+			samples++;
+		}
+		assertTrue(Math.sqrt(errorSquared / potentialSquared) < 0.005);
+	}
+
+	@Test
+	void nearbyChargesAreExact() {
+		// Every charge within the correction radius of every point
+		FieldEngine engine = new FieldEngine();
+		engine.add(100, 100, 1e-9);
+		engine.add(103, 104, -2e-9);
+		ParticleMesh mesh = new ParticleMesh(engine, ParticleMesh.DEFAULT_CELL_SIZE);
+		double[] approx = new double[2];
+		double[] exact = new double[2];
+		for (double x = 95; x <= 108; x += 1.3) {
+			assertTrue(mesh.field(x, 101.5, approx));
+			engine.directField(x, 101.5, exact);
+			double scale = Math.hypot(exact[0], exact[1]);
+			assertEquals(exact[0], approx[0], 1e-9 * scale);
+			assertEquals(exact[1], approx[1], 1e-9 * scale);
+		}
+	}
+
+	@Test
+	void pointsOffTheMeshFallBackToTheTree() {
+		FieldEngine engine = BarnesHutTreeTest.randomCharges(200, 6);
+		engine.setBackend(FieldEngine.Backend.MESH);
+		engine.setTheta(0);
+		double[] out = new double[2];
+		double[] exact = new double[2];
+		assertFalse(engine.mesh().field(5000, 5000, out));
+		engine.field(5000, 5000, out);
+		engine.directField(5000, 5000, exact);
+		double scale = Math.hypot(exact[0], exact[1]);
+		assertEquals(exact[0], out[0], 1e-9 * scale);
+		assertEquals(exact[1], out[1], 1e-9 * scale);
+	}
+}
@@ -0,0 +1,73 @@
+package electricfield;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+// Stepping spread over many chunk tasks against the same particles stepped
+// in stores small enough for one chunk
+class ParticleStoreTest {
+	// Four workers whatever the machine, so a big store is split many ways
+	private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+	@AfterAll
+	static void shutDown() {
+		POOL.shutdown();
+	}
+
+	@Test
+	void chunkedStepMatchesSingleChunk() {
+		Random random = new Random(3);
+		FieldEngine field = new FieldEngine();
+		for (int c = 0; c < 6; c++) {
+			field.add(100 + random.nextDouble() * 600, 100 + random.nextDouble() * 400,
+					(random.nextBoolean() ? 1 : -1) * 1e-9);
+		}
+		int n = 4 * ParticleStore.MIN_CHUNK + 321; // Partial last chunk
+		ParticleStore chunked = new ParticleStore(POOL, n);
+		ParticleStore[] singles = new ParticleStore[(n + ParticleStore.MIN_CHUNK - 1) / ParticleStore.MIN_CHUNK];
+		for (int s = 0; s < singles.length; s++) {
+			singles[s] = new ParticleStore(POOL, ParticleStore.MIN_CHUNK);
+		}
+		double[] scratch = new double[2];
+		for (int i = 0; i < n; i++) {
+			double x = random.nextDouble() * 800, y = random.nextDouble() * 600;
+			double vx = random.nextGaussian() * 200, vy = random.nextGaussian() * 200;
+			double q = (random.nextBoolean() ? 1 : -1) * 1e-12;
+			chunked.add(field, x, y, vx, vy, q, 1e-18, scratch);
+			singles[i / ParticleStore.MIN_CHUNK].add(field, x, y, vx, vy, q, 1e-18, scratch);
+		}
+		chunked.setCaptureRadius(5);
+		for (ParticleStore single : singles) {
+			single.setCaptureRadius(5);
+		}
+
+		for (int frame = 0; frame < 50; frame++) {
+			chunked.step(field, 0.0025, 4, 0, 0, 800, 600);
+			for (ParticleStore single : singles) {
+				single.step(field, 0.0025, 4, 0, 0, 800, 600);
+			}
+		}
+
+		int captured = 0;
+		for (int i = 0; i < n; i++) {
+			ParticleStore single = singles[i / ParticleStore.MIN_CHUNK];
+			int j = i % ParticleStore.MIN_CHUNK;
+			assertEquals(single.x[j], chunked.x[i], 0, "x of particle " + i);
+			assertEquals(single.y[j], chunked.y[i], 0, "y of particle " + i);
+			assertEquals(single.vx[j], chunked.vx[i], 0, "vx of particle " + i);
+			assertEquals(single.vy[j], chunked.vy[i], 0, "vy of particle " + i);
+			assertEquals(single.capturedBy(j), chunked.capturedBy(i), "capture of particle " + i);
+			if (chunked.capturedBy(i) >= 0) {
+				captured++;
+			}
+		}
+		assertTrue(captured > 0, "some particles are captured on the way");
+		assertEquals((long) n * 50 * 4, chunked.totalSteps());
+	}
+}
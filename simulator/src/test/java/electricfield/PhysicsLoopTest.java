@@ -0,0 +1,135 @@
+package electricfield;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+// The loop driven by hand through advanceFrame, in an empty field
+class PhysicsLoopTest {
+	private static final double FRAME = 0.01;
+
+	@Test
+	void heldSnapshotIsNotWrittenTo() {
+		PhysicsLoop loop = new PhysicsLoop(FRAME);
+		loop.setBounds(-1e6, -1e6, 1e6, 1e6);
+		loop.launch(0, 0, 1000, 0, 1e-19, 1e-27);
+		loop.advanceFrame();
+		PhysicsLoop.Snapshot held = loop.latestSnapshot();
+		assertEquals(1, held.frame);
+		float x = held.x[0];
+		for (int f = 0; f < 10; f++) {
+			loop.advanceFrame(); // Fills both of the other buffers in turn
+			assertEquals(1, held.frame);
+			assertEquals(x, held.x[0]);
+		}
+		PhysicsLoop.Snapshot latest = loop.latestSnapshot();
+		assertNotSame(held, latest);
+		assertEquals(11, latest.frame);
+		assertSame(latest, loop.latestSnapshot(), "no new frame, same snapshot");
+	}
+
+	@Test
+	void snapshotsStayConsistentUnderConcurrentFrames() throws InterruptedException {
+		PhysicsLoop loop = new PhysicsLoop(FRAME);
+		loop.setBounds(-1e9, -1e9, 1e9, 1e9);
+		int n = 64;
+		for (int i = 0; i < n; i++) {
+			loop.launch(0, i, 1000, 0, 1e-19, 1e-27); // All with the same x
+		}
+		AtomicBoolean done = new AtomicBoolean();
+		Thread physics = new Thread(() -> {
+			while (!done.get()) {
+				loop.advanceFrame();
+			}
+		});
+		physics.start();
+		try {
+			long lastFrame = 0;
+			int checked = 0;
+			long end = System.nanoTime() + 300_000_000L;
+			while (System.nanoTime() < end) {
+				PhysicsLoop.Snapshot s = loop.latestSnapshot();
+				assertTrue(s.frame >= lastFrame, "frames never go back");
+				lastFrame = s.frame;
+				if (s.count == 0) {
+					continue;
+				}
+				// A buffer being written would show particles from two frames
+				long frame = s.frame;
+				for (int k = 0; k < 3; k++) {
+					for (int i = 0; i < n; i++) {
+						assertEquals(s.x[0], s.x[i], "particle " + i + " of frame " + frame);
+						assertEquals(s.prevX[0], s.prevX[i], "particle " + i + " of frame " + frame);
+					}
+					assertEquals(frame, s.frame);
+				}
+				checked++;
+			}
+			assertTrue(checked > 0);
+		} finally {
+			done.set(true);
+			physics.join();
+		}
+	}
+
+	@Test
+	void traceHasEveryFrameInOrder() {
+		PhysicsLoop loop = new PhysicsLoop(FRAME);
+		loop.setBounds(-1e6, -1e6, 1e6, 1e6);
+		for (int i = 0; i < 3; i++) {
+			loop.launch(100 * i, 50, 1000 + i, -500, 1e-19, 1e-27);
+		}
+		loop.trace(0);
+		loop.trace(2);
+		int frames = 25; // Without draining in between, like a renderer falling behind
+		for (int f = 0; f < frames; f++) {
+			loop.advanceFrame();
+		}
+
+		List<float[]> points = new ArrayList<>();
+		loop.drainTrace(0, (index, x, y) -> points.add(new float[] { index, x, y }));
+		assertEquals(2 * frames, points.size());
+		for (int f = 0; f < frames; f++) {
+			for (int t = 0; t < 2; t++) {
+				float[] point = points.get(2 * f + t);
+				int i = 2 * t;
+				double time = (f + 1) * FRAME;
+				assertEquals(i, (int) point[0]);
+				assertEquals(100 * i + (1000 + i) * time, point[1], 1e-3);
+				assertEquals(50 - 500 * time, point[2], 1e-3);
+			}
+		}
+
+		points.clear();
+		loop.drainTrace(0, (index, x, y) -> points.add(new float[] { index, x, y }));
+		assertEquals(0, points.size(), "drained points are handed over once");
+	}
+
+	@Test
+	void clearDropsQueuedPoints() {
+		PhysicsLoop loop = new PhysicsLoop(FRAME);
+		loop.setBounds(-1e6, -1e6, 1e6, 1e6);
+		loop.launch(0, 0, 100, 0, 1e-19, 1e-27);
+		loop.trace(0);
+		loop.advanceFrame();
+		loop.advanceFrame();
+		loop.clear();
+		loop.launch(0, 0, 100, 0, 1e-19, 1e-27);
+		loop.trace(0);
+		loop.advanceFrame();
+
+		int[] seen = new int[2];
+		loop.drainTrace(1, (index, x, y) -> seen[0]++);
+		assertEquals(1, seen[0], "only the frame after the clear");
+		loop.advanceFrame();
+		loop.drainTrace(0, (index, x, y) -> seen[1]++);
+		assertEquals(0, seen[1], "nothing from the old generation");
+	}
+}
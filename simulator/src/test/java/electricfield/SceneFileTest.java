@@ -0,0 +1,170 @@
+package electricfield;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Scenes through the text, JSON and binary formats and back, converted
+// between every pair of them
+class SceneFileTest {
+	private static final String[] EXTENSIONS = { ".scene", ".json", ".efs" };
+
+	@TempDir
+	Path dir;
+
+	// Something of every kind, with values that do not survive sloppy
+	// formatting
+	private static Scene sampleScene() {
+		Scene scene = new Scene();
+		scene.width = 1024;
+		scene.height = 768;
+		scene.frames = 250;
+		scene.showGrid = false;
+		scene.showVectors = true;
+		scene.showFieldLines = false;
+		scene.showEquipotentials = true;
+		scene.heatmap = Heatmap.Mode.FIELD_MAGNITUDE;
+		scene.charges.add(100.25, 200.5, 1e-9);
+		scene.charges.add(-3.0 / 7, 1e6, -2.5e-9);
+		scene.charges.add(512, 384, Math.PI * 1e-10);
+		ChargeDistributions distributions = scene.charges.distributions();
+		distributions.addSegment(10, 20, 300.5, 40, 3e-9);
+		distributions.addRing(400, 300, 80, -1e-9);
+		distributions.addArc(200, 500, 60, Math.toRadians(30), Math.toRadians(-120), 2e-9);
+		distributions.addSheet(700, 200, 120, 40, Math.toRadians(15), 5e-10);
+		scene.addParticle(50, 60, 1.5, -2.25, 1e-12, 1e-15);
+		scene.addParticle(0.1, 0.2, 0, 0, -1e-12, 3e-16);
+		return scene;
+	}
+
+	@Test
+	void everyFormatRoundTrips() throws IOException {
+		Scene scene = sampleScene();
+		for (String extension : EXTENSIONS) {
+			Path file = dir.resolve("scene" + extension);
+			SceneFile.write(scene, file);
+			assertSameScene(scene, SceneFile.read(file), extension);
+		}
+	}
+
+	@Test
+	void everyPairOfFormatsConverts() throws IOException {
+		Scene scene = sampleScene();
+		for (String from : EXTENSIONS) {
+			for (String to : EXTENSIONS) {
+				Path first = dir.resolve("first" + from);
+				Path second = dir.resolve("second" + to);
+				SceneFile.write(scene, first);
+				SceneFile.write(SceneFile.read(first), second);
+				assertSameScene(scene, SceneFile.read(second), from + " to " + to);
+			}
+		}
+	}
+
+	@Test
+	void emptySceneRoundTrips() throws IOException {
+		Scene scene = new Scene();
+		for (String extension : EXTENSIONS) {
+			Path file = dir.resolve("empty" + extension);
+			SceneFile.write(scene, file);
+			Scene read = SceneFile.read(file);
+			assertSameScene(scene, read, extension);
+			read.addParticle(1, 2, 3, 4, 5, 6); // Adopted empty columns still grow
+			assertEquals(1, read.particleCount());
+		}
+	}
+
+	// Version 1 files have no distribution columns and a zero where version 2
+	// keeps their count
+	@Test
+	void readsVersionOneFiles() throws IOException {
+		Scene scene = sampleScene();
+		scene.charges.distributions().clear();
+		Path file = dir.resolve("v1.efs");
+		SceneFile.write(scene, file);
+		byte[] bytes = Files.readAllBytes(file);
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(8, 1);
+		Files.write(file, bytes);
+		assertSameScene(scene, SceneFile.read(file), "version 1");
+	}
+
+	@Test
+	void binaryRejectsWhatTheOtherFormatsReject() throws IOException {
+		double[] masses = { 0, -1e-15, Double.NaN, Double.POSITIVE_INFINITY };
+		for (double mass : masses) {
+			Scene scene = sampleScene();
+			scene.addParticle(1, 2, 0, 0, 1e-12, mass);
+			assertRejected(scene, "mass " + mass);
+		}
+		Scene nanCharge = sampleScene();
+		nanCharge.charges.add(1, 2, Double.NaN);
+		assertRejected(nanCharge, "NaN charge");
+		Scene infinitePosition = sampleScene();
+		infinitePosition.addParticle(Double.NEGATIVE_INFINITY, 2, 0, 0, 1e-12, 1e-15);
+		assertRejected(infinitePosition, "infinite particle position");
+	}
+
+	// The binary writer stores anything, the text reader rejects it with a
+	// line, the binary reader with a row
+	private void assertRejected(Scene scene, String what) throws IOException {
+		Path binary = dir.resolve("bad.efs");
+		SceneFile.write(scene, binary);
+		IOException e = assertThrows(IOException.class, () -> SceneFile.read(binary), what);
+		assertTrue(e.getMessage().startsWith(binary.toString()), e.getMessage());
+		Path text = dir.resolve("bad.scene");
+		SceneFile.write(scene, text);
+		assertThrows(IOException.class, () -> SceneFile.read(text), what + " in text");
+	}
+
+	private static void assertSameScene(Scene expected, Scene actual, String where) {
+		assertEquals(expected.width, actual.width, where);
+		assertEquals(expected.height, actual.height, where);
+		assertEquals(expected.frames, actual.frames, where);
+		assertEquals(expected.showGrid, actual.showGrid, where);
+		assertEquals(expected.showVectors, actual.showVectors, where);
+		assertEquals(expected.showFieldLines, actual.showFieldLines, where);
+		assertEquals(expected.showEquipotentials, actual.showEquipotentials, where);
+		assertEquals(expected.heatmap, actual.heatmap, where);
+
+		FieldEngine a = expected.charges, b = actual.charges;
+		assertEquals(a.size(), b.size(), where);
+		for (int i = 0; i < a.size(); i++) {
+			assertEquals(a.x(i), b.x(i), where);
+			assertEquals(a.y(i), b.y(i), where);
+			assertEquals(a.charge(i), b.charge(i), where);
+		}
+
+		ChargeDistributions da = a.distributions(), db = b.distributions();
+		assertEquals(da.size(), db.size(), where);
+		for (int i = 0; i < da.size(); i++) {
+			assertEquals(da.kind(i), db.kind(i), where);
+			double[] pa = new double[ChargeDistributions.PARAMS], pb = new double[ChargeDistributions.PARAMS];
+			for (int k = 0; k < pa.length; k++) {
+				pa[k] = da.param(i, k);
+				pb[k] = db.param(i, k);
+			}
+			assertArrayEquals(pa, pb, 1e-12, where); // Angles go through degrees in text and JSON
+			assertEquals(da.charge(i), db.charge(i), where);
+		}
+
+		assertEquals(expected.particleCount(), actual.particleCount(), where);
+		for (int i = 0; i < expected.particleCount(); i++) {
+			assertEquals(expected.particleX(i), actual.particleX(i), where);
+			assertEquals(expected.particleY(i), actual.particleY(i), where);
+			assertEquals(expected.particleVx(i), actual.particleVx(i), where);
+			assertEquals(expected.particleVy(i), actual.particleVy(i), where);
+			assertEquals(expected.particleCharge(i), actual.particleCharge(i), where);
+			assertEquals(expected.particleMass(i), actual.particleMass(i), where);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package electricfield;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// nearestWithin against a linear scan over the same points
+class SpatialHashTest {
+	private static final double[] RADII = { 0.5, 5, 20, 31.9, 32, 75, 400 };
+
+	@Test
+	void nearestWithinMatchesLinearScan() {
+		Random random = new Random(1);
+		int n = 2000;
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		SpatialHash hash = new SpatialHash();
+		for (int i = 0; i < n; i++) {
+			xs[i] = random.nextDouble() * 1600 - 400; // Negative cells too
+			ys[i] = random.nextDouble() * 1200 - 300;
+			hash.add(xs[i], ys[i]);
+		}
+		assertQueriesMatch(hash, xs, ys, n, random);
+
+		// Moves within and across cells
+		for (int k = 0; k < 500; k++) {
+			int i = random.nextInt(n);
+			xs[i] += random.nextGaussian() * (k % 2 == 0 ? 3 : 100);
+			ys[i] += random.nextGaussian() * (k % 2 == 0 ? 3 : 100);
+			hash.move(i, xs[i], ys[i]);
+		}
+		assertQueriesMatch(hash, xs, ys, n, random);
+
+		// Rebuilt after half the points went away
+		int half = n / 2;
+		hash.rebuild(xs, ys, half);
+		assertQueriesMatch(hash, xs, ys, half, random);
+	}
+
+	@Test
+	void engineIndexFollowsEdits() {
+		FieldEngine engine = BarnesHutTreeTest.randomCharges(300, 2);
+		Random random = new Random(3);
+		for (int k = 0; k < 100; k++) {
+			int i = random.nextInt(engine.size());
+			switch (k % 3) {
+			case 0:
+				engine.move(i, random.nextDouble() * 800, random.nextDouble() * 600);
+				break;
+			case 1:
+				engine.remove(i);
+				break;
+			default:
+				engine.add(random.nextDouble() * 800, random.nextDouble() * 600, 1e-9);
+				break;
+			}
+		}
+		for (int q = 0; q < 500; q++) {
+			double x = random.nextDouble() * 900 - 50;
+			double y = random.nextDouble() * 700 - 50;
+			double radius = RADII[q % RADII.length];
+			assertEquals(linearNearest(engine.xs, engine.ys, engine.size(), x, y, radius),
+					engine.nearestWithin(x, y, radius));
+		}
+	}
+
+	private static void assertQueriesMatch(SpatialHash hash, double[] xs, double[] ys, int n, Random random) {
+		for (int q = 0; q < 1000; q++) {
+			double x = random.nextDouble() * 2000 - 600;
+			double y = random.nextDouble() * 1600 - 500;
+			double radius = RADII[q % RADII.length];
+			assertEquals(linearNearest(xs, ys, n, x, y, radius), hash.nearestWithin(x, y, radius),
+					"query at " + x + ", " + y + " within " + radius);
+		}
+		// Exactly on a point
+		assertEquals(7, hash.nearestWithin(xs[7], ys[7], 0));
+	}
+
+	// Nearest of the first n points within radius, or -1
+	private static int linearNearest(double[] xs, double[] ys, int n, double x, double y, double radius) {
+		double best = radius * radius;
+		int nearest = -1;
+		for (int i = 0; i < n; i++) {
+			double dx = xs[i] - x;
+			double dy = ys[i] - y;
+			double d = dx * dx + dy * dy;
+			if (d <= best) {
+				best = d;
+				nearest = i;
+			}
+		}
+		return nearest;
+	}
+}